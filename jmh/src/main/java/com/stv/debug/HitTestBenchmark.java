@@ -0,0 +1,189 @@
+package com.stv.debug;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命中测试在不同形状和大小的合成树上的耗时:
+ * <ul>
+ * <li>{@link #findNodesAtPoint()}: 逐层遍历的 {@link ViewTreeHitTester}, 索引不可用时使用, 每次调用查询一个随机点</li>
+ * <li>{@link #gridFindDeepest()}: 设备上实际使用的 ViewSpatialIndex 的网格查询({@link SpatialGrid}), 每次调用查询一个随机点</li>
+ * <li>{@link #gridBuild()}: 展平整棵树并构建网格, 工具激活和 View 树结构变化后执行一次</li>
+ * </ul>
+ * 分配速率用 {@code -prof gc} 测量(jmh 任务默认开启), 两个网格基准在预热后不应分配内存.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+    private static final int POINT_COUNT = 1024;
+
+    @Param({"WIDE", "DEEP"})
+    public String shape;
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int nodeCount;
+
+    private SyntheticTree mTree;
+    private int[] mPoints;
+    private int mNext;
+    private final ArrayList<SyntheticTree.Node> mNodes = new ArrayList<>();
+    private TreeGrid<SyntheticTree.Node> mGrid;
+
+    @Setup
+    public void setUp() {
+        mTree = SyntheticTree.create(SyntheticTree.Shape.valueOf(shape), nodeCount);
+        mPoints = SyntheticTree.randomPoints(POINT_COUNT, 42);
+        mNext = 0;
+        mGrid = new TreeGrid<>(mTree);
+        mGrid.rebuild(mTree.root, SyntheticTree.WIDTH, SyntheticTree.HEIGHT);
+        checkGridMatchesTreeWalk();
+    }
+
+    @Benchmark
+    public int findNodesAtPoint() {
+        int i = mNext;
+        mNext = (i + 2) % mPoints.length;
+        ViewTreeHitTester.findNodesAtPoint(mTree, mTree.root, mPoints[i], mPoints[i + 1], mNodes);
+        return mNodes.size();
+    }
+
+    @Benchmark
+    public int gridFindDeepest() {
+        int i = mNext;
+        mNext = (i + 2) % mPoints.length;
+        return mGrid.findDeepest(mPoints[i], mPoints[i + 1]);
+    }
+
+    @Benchmark
+    public int gridBuild() {
+        mGrid.rebuild(mTree.root, SyntheticTree.WIDTH, SyntheticTree.HEIGHT);
+        return mGrid.grid.count;
+    }
+
+    // 两种命中测试的结果必须相同, 否则比较耗时没有意义
+    private void checkGridMatchesTreeWalk() {
+        for (int i = 0; i < mPoints.length; i += 2) {
+            ViewTreeHitTester.findNodesAtPoint(mTree, mTree.root, mPoints[i], mPoints[i + 1], mNodes);
+            SyntheticTree.Node expected = mNodes.isEmpty() ? null : mNodes.get(mNodes.size() - 1);
+            int deepest = mGrid.findDeepest(mPoints[i], mPoints[i + 1]);
+            SyntheticTree.Node actual = deepest < 0 ? null : mGrid.nodeAt(deepest);
+            if (actual != expected) {
+                throw new IllegalStateException("grid and tree walk differ at (" + mPoints[i] + ", "
+                        + mPoints[i + 1] + ")");
+            }
+        }
+    }
+
+    /**
+     * 通过 {@link ViewTreeAdapter} 展平树并构建 {@link SpatialGrid}, 与 ViewSpatialIndex 的构建和查询相同,
+     * 只是没有变换矩阵: 兄弟节点按绘制位置排列, 查询时检查 isHitTestable() 和父节点的裁剪区域.
+     * 展平不使用递归, DEEP 形状的树可能很深.
+     */
+    static final class TreeGrid<N> implements SpatialGrid.CandidateFilter {
+        final SpatialGrid grid = new SpatialGrid();
+        private final ViewTreeAdapter<N> mAdapter;
+        private N mRoot;
+        private Object[] mNodes = new Object[0];
+        // 在父节点中的绘制位置
+        private int[] mRank = new int[0];
+        // 展平时使用的栈: 容器节点序号(-1为根节点)和下一个要访问的绘制位置
+        private int[] mStackGroup = new int[16];
+        private int[] mStackNext = new int[16];
+
+        TreeGrid(ViewTreeAdapter<N> adapter) {
+            mAdapter = adapter;
+        }
+
+        void rebuild(N root, int width, int height) {
+            mRoot = root;
+            SpatialGrid grid = this.grid;
+            int count = 0;
+            int depth = 0;
+            mStackGroup[0] = -1;
+            mStackNext[0] = 0;
+            while (depth >= 0) {
+                int groupIndex = mStackGroup[depth];
+                N group = groupIndex < 0 ? root : nodeAt(groupIndex);
+                int position = mStackNext[depth];
+                if (position == mAdapter.getDrawingChildCount(group)) {
+                    depth--;
+                    continue;
+                }
+                mStackNext[depth] = position + 1;
+                N child = mAdapter.getDrawingChildAt(group, position);
+                if (child == null) {
+                    continue;
+                }
+
+                if (count == mNodes.length) {
+                    int capacity = Math.max(256, count * 2);
+                    mNodes = Arrays.copyOf(mNodes, capacity);
+                    mRank = Arrays.copyOf(mRank, capacity);
+                    grid.ensureCapacity(capacity);
+                }
+                int originX = groupIndex < 0 ? 0 : grid.left[groupIndex];
+                int originY = groupIndex < 0 ? 0 : grid.top[groupIndex];
+                int left = originX + mAdapter.getLeft(child) - mAdapter.getScrollX(group);
+                int top = originY + mAdapter.getTop(child) - mAdapter.getScrollY(group);
+                int index = count++;
+                mNodes[index] = child;
+                mRank[index] = position;
+                grid.parent[index] = groupIndex;
+                grid.left[index] = left;
+                grid.top[index] = top;
+                grid.right[index] = left + mAdapter.getRight(child) - mAdapter.getLeft(child);
+                grid.bottom[index] = top + mAdapter.getBottom(child) - mAdapter.getTop(child);
+                grid.isGroup[index] = mAdapter.isContainer(child);
+                if (grid.isGroup[index]) {
+                    depth++;
+                    if (depth == mStackGroup.length) {
+                        mStackGroup = Arrays.copyOf(mStackGroup, depth * 2);
+                        mStackNext = Arrays.copyOf(mStackNext, depth * 2);
+                    }
+                    mStackGroup[depth] = index;
+                    mStackNext[depth] = 0;
+                }
+            }
+            grid.count = count;
+            grid.build(width, height);
+        }
+
+        int findDeepest(int x, int y) {
+            return grid.findDeepest(x, y, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        N nodeAt(int i) {
+            return (N) mNodes[i];
+        }
+
+        @Override
+        public int rankOf(int i, int x, int y) {
+            if (!mAdapter.isHitTestable(nodeAt(i))) {
+                return -1;
+            }
+            int parent = grid.parent[i];
+            N parentNode = parent < 0 ? mRoot : nodeAt(parent);
+            int localX = parent < 0 ? x : x - grid.left[parent];
+            int localY = parent < 0 ? y : y - grid.top[parent];
+            return mAdapter.isInClip(parentNode, localX, localY) ? mRank[i] : -1;
+        }
+    }
+}
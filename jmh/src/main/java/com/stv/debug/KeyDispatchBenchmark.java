@@ -0,0 +1,87 @@
+package com.stv.debug;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工具激活前每个按键都要经过 {@link ActivationKeyMatcher}, 用不会完成任何激活序列的按键流测量这部分开销.
+ * 按键流混合了方向键和激活序列中的按键(会进入序列的中间状态), 与只读取按键的 {@link #baseline()} 比较.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyDispatchBenchmark {
+    private static final int STREAM_LENGTH = 4096;
+    // KeyEvent.ACTION_DOWN / ACTION_UP
+    private static final int ACTION_DOWN = 0;
+    private static final int ACTION_UP = 1;
+    // 方向键、确定、返回, 以及默认激活序列(9527、频道上下)中的按键
+    private static final int[] KEYS = {19, 20, 21, 22, 23, 4, 16, 12, 9, 14, 166, 167};
+    private static final int DPAD_LEFT = 21;
+    // 与 ActivationKeyMatcher 的默认序列相同
+    private static final String SEQUENCES = "166,167,167,166;16,12,9,14";
+
+    private final int[] mKeys = new int[STREAM_LENGTH];
+    private int mNext;
+    private KeySequenceMatcher mSequenceMatcher;
+    private ActivationKeyMatcher mActivationMatcher;
+
+    @Setup
+    public void setUp() {
+        mSequenceMatcher = KeySequenceMatcher.compile(KeySequenceMatcher.parse(SEQUENCES));
+        mActivationMatcher = new ActivationKeyMatcher();
+
+        Random random = new Random(42);
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            mKeys[i] = KEYS[random.nextInt(KEYS.length)];
+        }
+        // 把完成序列的按键换成方向键; 按键流循环使用, 所以要检查首尾相接的部分
+        KeySequenceMatcher checker = KeySequenceMatcher.compile(KeySequenceMatcher.parse(SEQUENCES));
+        for (int i = 0; i < STREAM_LENGTH * 2; i++) {
+            if (checker.onKey(mKeys[i % STREAM_LENGTH]) >= 0) {
+                mKeys[i % STREAM_LENGTH] = DPAD_LEFT;
+                checker.reset();
+            }
+        }
+        mNext = 0;
+    }
+
+    @Benchmark
+    public int baseline() {
+        int i = mNext;
+        mNext = (i + 1) % STREAM_LENGTH;
+        return mKeys[i];
+    }
+
+    @Benchmark
+    public int sequenceMatcher() {
+        int i = mNext;
+        mNext = (i + 1) % STREAM_LENGTH;
+        return mSequenceMatcher.onKey(mKeys[i]);
+    }
+
+    /**
+     * 每个按键一次 ACTION_DOWN 和一次 ACTION_UP, 与 Activity.dispatchKeyEvent() 收到的事件相同.
+     */
+    @Benchmark
+    public boolean activationMatcher() {
+        int i = mNext;
+        mNext = (i + 1) % STREAM_LENGTH;
+        int keyCode = mKeys[i];
+        return mActivationMatcher.onKey(ACTION_DOWN, keyCode) | mActivationMatcher.onKey(ACTION_UP, keyCode);
+    }
+}
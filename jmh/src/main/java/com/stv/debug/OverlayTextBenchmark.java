@@ -0,0 +1,74 @@
+package com.stv.debug;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * overlay 上的文字在光标移动和切换高亮 View 时生成, 测量耗时和分配(用 {@code -prof gc}, jmh 任务默认开启):
+ * <ul>
+ * <li>{@link #cursorReadout()}: {@link CursorReadout#format} 格式化光标信息, 每次移动光标都执行, 不应分配内存</li>
+ * <li>{@link #viewLabel()}: 与 ViewDebugger 中 {@code getSimpleName() + viewId2String(view, id)} 相同的标签,
+ * 资源名来自已预热的 {@link IdNameCache}(ResourceNameCache 的缓存). 每次生成新的字符串, 只在高亮的 View 变化时执行</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlayTextBenchmark {
+    // 与 ViewDebugger.NO_PIXEL_COLOR 相同
+    private static final int NO_PIXEL_COLOR = -1;
+    // 与 ResourceNameCache 的容量相同
+    private static final int CACHE_ENTRIES = 4096;
+
+    private final CharTextBuffer mBuffer = new CharTextBuffer(64);
+    private final IdNameCache mNames = new IdNameCache(CACHE_ENTRIES);
+    private SyntheticTree mTree;
+    private String[] mSimpleNames;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mTree = SyntheticTree.create(SyntheticTree.Shape.BALANCED, 1000);
+        mSimpleNames = new String[mTree.nodeCount];
+        for (int i = 0; i < mTree.nodeCount; i++) {
+            SyntheticTree.Node node = mTree.nodes.get(i);
+            mSimpleNames[i] = node.type.substring(node.type.lastIndexOf('.') + 1);
+            if (node.id != 0) {
+                mNames.putIfAbsent(node.id, "id/view_" + Integer.toHexString(node.id & 0xFFFF));
+            }
+        }
+        mNext = 0;
+    }
+
+    @Benchmark
+    public int cursorReadout() {
+        int i = mNext;
+        mNext = (i + 1) % 100000;
+        int color = i % 4 == 0 ? NO_PIXEL_COLOR : (i * 40503) & 0xFFFFFF;
+        int jump = i % 2 == 0 ? -1 : i % 200;
+        CursorReadout.format(mBuffer, i % SyntheticTree.WIDTH, i * 7 % SyntheticTree.HEIGHT, color, jump);
+        return mBuffer.length();
+    }
+
+    @Benchmark
+    public String viewLabel() {
+        int i = mNext;
+        mNext = (i + 1) % mTree.nodeCount;
+        SyntheticTree.Node node = mTree.nodes.get(i);
+        String name = node.id != 0 ? mNames.get(node.id) : null;
+        return mSimpleNames[i] + (name != null ? " " + name : "");
+    }
+}
@@ -0,0 +1,85 @@
+package com.stv.debug;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HierarchyChangeTracker} 的两个阶段在合成树上的耗时, 阶段的划分与 {@link SnapshotPipeline} 相同:
+ * <ul>
+ * <li>{@link #captureOnMainThread()}: 主线程部分, 抓取快照(包括 {@link ViewStableIds} 的查找).
+ * 设备上的目标是 5000 个 View 不超过 {@link SnapshotPipeline#MAIN_THREAD_BUDGET_NANOS}</li>
+ * <li>{@link #analyzeOnWorkerThread()}: 工作线程部分, 计算哈希并与上一个快照比较</li>
+ * </ul>
+ * 每次抓取前移动少量节点, 模拟一次局部的布局变化.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    private static final int MOVED_NODES = 16;
+
+    @Param({"BALANCED", "WIDE"})
+    public String shape;
+
+    @Param({"5000"})
+    public int nodeCount;
+
+    private SyntheticTree mTree;
+    private final ViewStableIds<SyntheticTree.Node> mStableIds = new ViewStableIds<>();
+    private final HierarchyDiff mDiff = new HierarchyDiff();
+    private final HierarchyDiff.Result mResult = new HierarchyDiff.Result();
+    private int mRound;
+
+    @Setup
+    public void setUp() {
+        mTree = SyntheticTree.create(SyntheticTree.Shape.valueOf(shape), nodeCount);
+        // 基准快照, 然后抓取一次有变化的快照供 analyzeOnWorkerThread() 比较
+        capture(true);
+        mDiff.analyze(mResult);
+        moveNodes();
+        capture(false);
+    }
+
+    @Benchmark
+    public int captureOnMainThread() {
+        moveNodes();
+        return capture(false);
+    }
+
+    @Benchmark
+    public int analyzeOnWorkerThread() {
+        mDiff.analyze(mResult);
+        return mResult.count;
+    }
+
+    private int capture(boolean baseline) {
+        HierarchySnapshot snapshot = mDiff.beginCapture(baseline, 0, 0);
+        snapshot.capture(mTree, mTree.root, 0, 0, mStableIds);
+        return snapshot.count;
+    }
+
+    // 每轮移动不同的节点, 来回移动1像素, 节点不会越移越远
+    private void moveNodes() {
+        int round = mRound++;
+        int dx = round % 2 == 0 ? 1 : -1;
+        for (int k = 0; k < MOVED_NODES; k++) {
+            SyntheticTree.Node node = mTree.nodes.get(1 + (round / 2 * MOVED_NODES + k) * 7919 % (mTree.nodeCount - 1));
+            node.left += dx;
+            node.right += dx;
+        }
+    }
+}
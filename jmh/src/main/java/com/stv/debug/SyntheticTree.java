@@ -0,0 +1,231 @@
+package com.stv.debug;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 合成的 View 树, 用于在普通 JVM 上测量命中测试、抓取快照等遍历 View 树的代码.
+ * <p>
+ * 节点没有变换矩阵和裁剪, 子节点按添加顺序绘制. 形状:
+ * <ul>
+ * <li>{@link Shape#WIDE}: 根节点下的所有节点排列成网格, 命中测试需要逐个检查同一层的子节点</li>
+ * <li>{@link Shape#DEEP}: 每个容器只有一个子容器, 所有节点重叠, 命中测试需要逐层下降到最深的节点</li>
+ * <li>{@link Shape#BALANCED}: 每个容器有 {@link #FANOUT} 个子节点, 接近应用中常见的布局</li>
+ * </ul>
+ */
+final class SyntheticTree implements ViewTreeAdapter<SyntheticTree.Node>, SnapshotAdapter<SyntheticTree.Node> {
+    static final int WIDTH = 1920;
+    static final int HEIGHT = 1080;
+
+    static final int FANOUT = 8;
+    // 节点类型和资源id的种类数, 与普通应用的数量级相当
+    private static final String[] CONTAINER_TYPES = {"android.widget.FrameLayout", "android.widget.LinearLayout",
+            "androidx.recyclerview.widget.RecyclerView", "androidx.constraintlayout.widget.ConstraintLayout"};
+    private static final String[] LEAF_TYPES = {"android.widget.TextView", "android.widget.ImageView",
+            "android.view.View", "android.widget.Button"};
+    private static final int ID_COUNT = 300;
+
+    enum Shape {
+        WIDE, DEEP, BALANCED
+    }
+
+    static final class Node {
+        // 可以修改, 用于模拟布局变化
+        int left;
+        int top;
+        int right;
+        int bottom;
+        final List<Node> children = new ArrayList<>();
+        final boolean container;
+        final String type;
+        // 资源id, 0表示没有
+        final int id;
+
+        Node(int left, int top, int right, int bottom, boolean container, int index) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.container = container;
+            type = container ? CONTAINER_TYPES[index % CONTAINER_TYPES.length] : LEAF_TYPES[index % LEAF_TYPES.length];
+            // 大约一半的节点有id
+            id = index % 2 == 0 ? 0 : 0x7f080000 + index / 2 % ID_COUNT;
+        }
+    }
+
+    final Node root;
+    final int nodeCount;
+    // 先序排列的所有节点
+    final List<Node> nodes = new ArrayList<>();
+
+    private SyntheticTree(Node root, int nodeCount) {
+        this.root = root;
+        this.nodeCount = nodeCount;
+        // 非递归的先序遍历, DEEP 形状的树可能很深
+        List<Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+            nodes.add(node);
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                stack.add(node.children.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param nodeCount 包括根节点在内的节点数, 至少为2
+     */
+    static SyntheticTree create(Shape shape, int nodeCount) {
+        if (nodeCount < 2) {
+            throw new IllegalArgumentException("nodeCount " + nodeCount);
+        }
+        Node root = new Node(0, 0, WIDTH, HEIGHT, true, 0);
+        if (shape == Shape.BALANCED) {
+            // 按广度优先顺序编号, 节点 k 的子节点为 k*FANOUT+1 .. k*FANOUT+FANOUT, 每个子节点占父节点 4x2 网格中的一格
+            List<Node> queue = new ArrayList<>();
+            queue.add(root);
+            for (int k = 1; k < nodeCount; k++) {
+                Node parent = queue.get((k - 1) / FANOUT);
+                int i = (k - 1) % FANOUT;
+                int width = Math.max(1, (parent.right - parent.left) / 4);
+                int height = Math.max(1, (parent.bottom - parent.top) / 2);
+                int left = i % 4 * width;
+                int top = i / 4 * height;
+                Node child = new Node(left, top, left + width, top + height, (long) k * FANOUT + 1 < nodeCount, k);
+                parent.children.add(child);
+                queue.add(child);
+            }
+        } else if (shape == Shape.WIDE) {
+            int leaves = nodeCount - 1;
+            int columns = (int) Math.ceil(Math.sqrt(leaves * (double) WIDTH / HEIGHT));
+            int rows = (leaves + columns - 1) / columns;
+            int cellWidth = Math.max(1, WIDTH / columns);
+            int cellHeight = Math.max(1, HEIGHT / rows);
+            for (int i = 0; i < leaves; i++) {
+                int left = i % columns * cellWidth;
+                int top = i / columns * cellHeight;
+                root.children.add(new Node(left, top, left + cellWidth, top + cellHeight, false, i + 1));
+            }
+        } else {
+            Node parent = root;
+            for (int i = 1; i < nodeCount; i++) {
+                Node child = new Node(0, 0, WIDTH, HEIGHT, i < nodeCount - 1, i);
+                parent.children.add(child);
+                parent = child;
+            }
+        }
+        return new SyntheticTree(root, nodeCount);
+    }
+
+    /**
+     * @return count 个在树范围内均匀分布的点, 依次为 x0, y0, x1, y1, ...
+     */
+    static int[] randomPoints(int count, long seed) {
+        Random random = new Random(seed);
+        int[] points = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            points[i * 2] = random.nextInt(WIDTH);
+            points[i * 2 + 1] = random.nextInt(HEIGHT);
+        }
+        return points;
+    }
+
+    @Override
+    public int getChildCount(Node node) {
+        return node.children.size();
+    }
+
+    @Override
+    public Node getChildAt(Node node, int index) {
+        return node.children.get(index);
+    }
+
+    @Override
+    public Object getType(Node node) {
+        return node.type;
+    }
+
+    @Override
+    public String getTypeName(Object type) {
+        return (String) type;
+    }
+
+    @Override
+    public int getId(Node node) {
+        return node.id;
+    }
+
+    @Override
+    public int getVisibility(Node node) {
+        return 0;
+    }
+
+    @Override
+    public int getFlags(Node node) {
+        return node.container ? HierarchySnapshotFormat.FLAG_VIEW_GROUP
+                : HierarchySnapshotFormat.FLAG_FOCUSABLE | HierarchySnapshotFormat.FLAG_CLICKABLE
+                | HierarchySnapshotFormat.FLAG_ENABLED;
+    }
+
+    @Override
+    public int getDrawingChildCount(Node node) {
+        return node.children.size();
+    }
+
+    @Override
+    public Node getDrawingChildAt(Node node, int drawingPosition) {
+        return node.children.get(drawingPosition);
+    }
+
+    @Override
+    public boolean isInClip(Node node, float x, float y) {
+        return true;
+    }
+
+    @Override
+    public boolean unmapPoint(Node node, float[] point) {
+        return true;
+    }
+
+    @Override
+    public boolean isHitTestable(Node node) {
+        return true;
+    }
+
+    @Override
+    public boolean isContainer(Node node) {
+        return node.container;
+    }
+
+    @Override
+    public int getLeft(Node node) {
+        return node.left;
+    }
+
+    @Override
+    public int getTop(Node node) {
+        return node.top;
+    }
+
+    @Override
+    public int getRight(Node node) {
+        return node.right;
+    }
+
+    @Override
+    public int getBottom(Node node) {
+        return node.bottom;
+    }
+
+    @Override
+    public int getScrollX(Node node) {
+        return 0;
+    }
+
+    @Override
+    public int getScrollY(Node node) {
+        return 0;
+    }
+}
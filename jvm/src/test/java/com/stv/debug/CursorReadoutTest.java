@@ -0,0 +1,68 @@
+package com.stv.debug;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+
+public class CursorReadoutTest {
+    // 与 ViewDebugger.NO_PIXEL_COLOR 相同
+    private static final int NO_PIXEL_COLOR = -1;
+    private static final int ITERATIONS = 100000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void formatsPositionColorAndSnapDistance() {
+        CharTextBuffer buffer = new CharTextBuffer(64);
+        CursorReadout.format(buffer, 960, 540, 0x12AB0F, 24);
+        assertEquals("(960, 540)  #12AB0F  snap 24px", buffer.toString());
+
+        CursorReadout.format(buffer, -3, 0, NO_PIXEL_COLOR, -1);
+        assertEquals("(-3, 0)", buffer.toString());
+    }
+
+    /**
+     * 光标每移动一次都要重新格式化光标信息, 这条路径不能分配内存.
+     */
+    @Test
+    public void formatDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        CharTextBuffer buffer = new CharTextBuffer(64);
+        int checksum = 0;
+        // 预热: 类加载和 JIT 编译完成后, 格式化的每个分支都不应再分配内存
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            checksum += moveCursor(buffer);
+        }
+        // getThreadAllocatedBytes() 本身可能分配内存, 从每一轮中减去
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+        for (int round = 0; round < ROUNDS; round++) {
+            before = threads.getThreadAllocatedBytes(threadId);
+            checksum += moveCursor(buffer);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+            assertEquals("round " + round + ", checksum " + checksum, 0, allocated);
+        }
+    }
+
+    // 模拟按方向键移动光标: 坐标、颜色和吸附距离每次都变化, 覆盖所有分支
+    private static int moveCursor(CharTextBuffer buffer) {
+        int checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            int color = i % 4 == 0 ? NO_PIXEL_COLOR : (i * 40503) & 0xFFFFFF;
+            int jump = i % 2 == 0 ? -1 : i % 200;
+            CursorReadout.format(buffer, i % 1920, i * 7 % 1080, color, jump);
+            checksum += buffer.length();
+        }
+        return checksum;
+    }
+}
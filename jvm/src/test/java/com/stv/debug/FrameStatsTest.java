@@ -0,0 +1,37 @@
+package com.stv.debug;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameStatsTest {
+    private static final long VSYNC_NANOS = 16666667;
+
+    /**
+     * 被排除的长帧不影响百分位数、帧率和掉帧数, 移出窗口时也不会从直方图中减去.
+     */
+    @Test
+    public void excludedIntervalIsNotCounted() {
+        FrameStats stats = new FrameStats(8);
+        long time = 0;
+        stats.onFrame(time);
+        for (int i = 0; i < 20; i++) {
+            if (i % 4 == 0) {
+                // 统计者自己造成的卡顿
+                stats.excludeNextInterval();
+                time += VSYNC_NANOS * 5;
+            } else {
+                time += VSYNC_NANOS;
+            }
+            stats.onFrame(time);
+
+            assertEquals(0, stats.getDroppedFrames(VSYNC_NANOS));
+            if (stats.getCount() > 0) {
+                assertEquals((VSYNC_NANOS / FrameStats.BUCKET_NANOS + 1) * FrameStats.BUCKET_NANOS,
+                        stats.getPercentileNanos(100));
+            }
+            assertEquals(stats.getCount() * VSYNC_NANOS, stats.getSpanNanos());
+        }
+        assertEquals(6, stats.getCount());
+    }
+}
@@ -0,0 +1,108 @@
+package com.stv.debug;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HierarchySnapshotTest {
+    private static final class Node {
+        final int id;
+        final List<Node> children = new ArrayList<>();
+
+        Node(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final SnapshotAdapter<Node> ADAPTER = new SnapshotAdapter<Node>() {
+        @Override
+        public int getChildCount(Node node) {
+            return node.children.size();
+        }
+
+        @Override
+        public Node getChildAt(Node node, int index) {
+            return node.children.get(index);
+        }
+
+        @Override
+        public Object getType(Node node) {
+            return Node.class;
+        }
+
+        @Override
+        public String getTypeName(Object type) {
+            return ((Class<?>) type).getName();
+        }
+
+        @Override
+        public int getId(Node node) {
+            return node.id;
+        }
+
+        @Override
+        public int getLeft(Node node) {
+            return 0;
+        }
+
+        @Override
+        public int getTop(Node node) {
+            return 0;
+        }
+
+        @Override
+        public int getRight(Node node) {
+            return 10;
+        }
+
+        @Override
+        public int getBottom(Node node) {
+            return 10;
+        }
+
+        @Override
+        public int getScrollX(Node node) {
+            return 0;
+        }
+
+        @Override
+        public int getScrollY(Node node) {
+            return 0;
+        }
+
+        @Override
+        public int getVisibility(Node node) {
+            return 0;
+        }
+
+        @Override
+        public int getFlags(Node node) {
+            return 0;
+        }
+    };
+
+    /**
+     * 列表滚动时不断创建不同id的 View, 已经移除的 View 的id不能一直留在 ids 中.
+     */
+    @Test
+    public void idsContainOnlyCurrentCapture() {
+        HierarchySnapshot snapshot = new HierarchySnapshot();
+        Node root = new Node(0);
+        for (int round = 0; round < 100; round++) {
+            root.children.clear();
+            for (int k = 0; k < 50; k++) {
+                root.children.add(new Node(0x7f080000 + round * 50 + k));
+            }
+            snapshot.capture(ADAPTER, root, 0, 0, null);
+
+            assertEquals(51, snapshot.count);
+            assertEquals(51, snapshot.idCount);
+            for (int i = 0; i < snapshot.count; i++) {
+                assertEquals(snapshot.id[i], snapshot.ids[snapshot.idIndex[i]]);
+            }
+        }
+    }
+}
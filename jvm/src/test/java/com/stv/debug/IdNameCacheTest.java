@@ -0,0 +1,37 @@
+package com.stv.debug;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IdNameCacheTest {
+    /**
+     * 超出容量时淘汰最久未使用的条目, 删除后同一探测序列中的其他条目仍能找到.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        IdNameCache cache = new IdNameCache(64);
+        for (int i = 0; i < 64; i++) {
+            cache.putIfAbsent(0x7f080000 + i, "id/v" + i);
+        }
+        // 0 成为最近使用的条目, 最久未使用的是 1
+        assertEquals("id/v0", cache.get(0x7f080000));
+        cache.putIfAbsent(0x7f080000 + 64, "id/v64");
+
+        assertNull(cache.get(0x7f080000 + 1));
+        for (int i = 0; i <= 64; i++) {
+            if (i != 1) {
+                assertEquals("id/v" + i, cache.get(0x7f080000 + i));
+            }
+        }
+    }
+
+    @Test
+    public void putIfAbsentKeepsFirstValue() {
+        IdNameCache cache = new IdNameCache(4);
+        cache.putIfAbsent(0x7f080001, "id/a");
+        cache.putIfAbsent(0x7f080001, "id/b");
+        assertEquals("id/a", cache.get(0x7f080001));
+    }
+}
@@ -0,0 +1,57 @@
+package com.stv.debug;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ViewStableIdsTest {
+    @Test
+    public void clearRestartsFromOne() {
+        ViewStableIds<Object> ids = new ViewStableIds<>();
+        Object view = new Object();
+        for (int i = 0; i < 1000; i++) {
+            ids.getId(new Object());
+        }
+        ids.clear();
+        assertEquals(1, ids.getId(view));
+        assertSame(view, ids.getView(1));
+    }
+
+    /**
+     * 不断创建新的 View 并丢弃旧的, id的最大值只与同时存在的 View 数量有关.
+     */
+    @Test
+    public void idsOfCollectedViewsAreRecycled() throws InterruptedException {
+        ViewStableIds<Object> ids = new ViewStableIds<>(0);
+        final List<Integer> recycled = new ArrayList<>();
+        ids.setRecycleListener(new ViewStableIds.RecycleListener() {
+            @Override
+            public void onIdRecycled(int id) {
+                recycled.add(id);
+            }
+        });
+
+        int maxId = 0;
+        for (int round = 0; round < 50; round++) {
+            List<Object> views = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                Object view = new Object();
+                views.add(view);
+                maxId = Math.max(maxId, ids.getId(view));
+            }
+            views.clear();
+            System.gc();
+            Thread.sleep(1);
+        }
+
+        assertTrue("recycled " + recycled.size(), !recycled.isEmpty());
+        assertTrue("max id " + maxId, maxId < 200 * 10);
+        assertNull(ids.getView(maxId + 1));
+    }
+}
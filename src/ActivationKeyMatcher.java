@@ -0,0 +1,74 @@
+package com.stv.debug;
+
+import android.util.Log;
+import android.view.KeyEvent;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 工具激活前 Activity 只持有这个对象: 用 {@link KeySequenceMatcher} 匹配激活按键序列.
+ * <p>
+ * 激活序列可以通过 debug.view_debugger.secret_keys 属性配置, 属性只在 {@link #reload()} 时读取
+ * (由 Activity 在 onStart() 中调用), 按键处理过程中不读取属性, 也不分配内存.
+ */
+final class ActivationKeyMatcher {
+    private static final String TAG = "ViewDebugTool";
+
+    // 默认的激活序列
+    @NonNull
+    private static final int[][] DEFAULT_SECRET_KEY_CODES = {
+            {KeyEvent.KEYCODE_CHANNEL_UP, KeyEvent.KEYCODE_CHANNEL_DOWN,
+                    KeyEvent.KEYCODE_CHANNEL_DOWN, KeyEvent.KEYCODE_CHANNEL_UP},
+            {KeyEvent.KEYCODE_9, KeyEvent.KEYCODE_5, KeyEvent.KEYCODE_2, KeyEvent.KEYCODE_7}};
+
+    // 编译mMatcher时使用的属性值
+    @NonNull
+    private String mSpec = "";
+    @NonNull
+    private KeySequenceMatcher mMatcher = KeySequenceMatcher.compile(DEFAULT_SECRET_KEY_CODES);
+
+    /**
+     * 重新读取 debug.view_debugger.secret_keys 属性, 属性值变化时重新编译匹配器.
+     */
+    void reload() {
+        String spec = SystemPropertiesUtil.getStr(DebugToolProperties.SYS_PROP_KEY_SECRET_KEYS, "");
+        if (spec == null) {
+            spec = "";
+        }
+        if (spec.equals(mSpec)) {
+            return;
+        }
+
+        mSpec = spec;
+        int[][] sequences = KeySequenceMatcher.parse(spec);
+        if (sequences == null) {
+            if (!spec.isEmpty()) {
+                Log.w(TAG, "Invalid " + DebugToolProperties.SYS_PROP_KEY_SECRET_KEYS + ": " + spec);
+            }
+            sequences = DEFAULT_SECRET_KEY_CODES;
+        }
+        mMatcher = KeySequenceMatcher.compile(sequences);
+    }
+
+    /**
+     * @return 该按键完成了一个激活序列时返回true
+     */
+    boolean onKeyEvent(@NonNull KeyEvent keyEvent) {
+        return onKey(keyEvent.getAction(), keyEvent.getKeyCode());
+    }
+
+    /**
+     * 与 {@link #onKeyEvent(KeyEvent)} 相同, 参数为 KeyEvent 的 action 和 keyCode.
+     */
+    boolean onKey(int action, int keyCode) {
+        if (action != KeyEvent.ACTION_UP) {
+            return false;
+        }
+
+        if (mMatcher.onKey(keyCode) >= 0) {
+            mMatcher.reset();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+package com.stv.debug;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 以 android.view.View 为节点的 {@link SnapshotAdapter}. DebugToolView(IDebugView) 不包含在快照中.
+ */
+final class AndroidSnapshotAdapter implements SnapshotAdapter<View> {
+    static final AndroidSnapshotAdapter INSTANCE = new AndroidSnapshotAdapter();
+
+    private AndroidSnapshotAdapter() {
+    }
+
+    /**
+     * 抓取以 root 为根的整个 View 树, 只能在主线程调用.
+     *
+     * @param stableIds 不为null时为每个节点记录跨快照不变的id, 用于比较两次快照
+     */
+    static void capture(@NonNull HierarchySnapshot snapshot, @NonNull View root,
+                        @Nullable ViewStableIds<View> stableIds) {
+        int[] location = new int[2];
+        root.getLocationOnScreen(location);
+        snapshot.capture(INSTANCE, root, location[0], location[1], stableIds);
+    }
+
+    /**
+     * @return View 的 HierarchySnapshotFormat.FLAG_*
+     */
+    static int flagsOf(@NonNull View view) {
+        int f = 0;
+        if (view instanceof ViewGroup) {
+            f |= HierarchySnapshotFormat.FLAG_VIEW_GROUP;
+        }
+        if (view.isFocusable()) {
+            f |= HierarchySnapshotFormat.FLAG_FOCUSABLE;
+        }
+        if (view.isFocused()) {
+            f |= HierarchySnapshotFormat.FLAG_FOCUSED;
+        }
+        if (view.isClickable()) {
+            f |= HierarchySnapshotFormat.FLAG_CLICKABLE;
+        }
+        if (view.isEnabled()) {
+            f |= HierarchySnapshotFormat.FLAG_ENABLED;
+        }
+        return f;
+    }
+
+    @Override
+    public int getChildCount(View node) {
+        return node instanceof ViewGroup ? ((ViewGroup) node).getChildCount() : 0;
+    }
+
+    @Nullable
+    @Override
+    public View getChildAt(View node, int index) {
+        View child = ((ViewGroup) node).getChildAt(index);
+        return child instanceof IDebugView ? null : child;
+    }
+
+    @NonNull
+    @Override
+    public Object getType(View node) {
+        return node.getClass();
+    }
+
+    @NonNull
+    @Override
+    public String getTypeName(@NonNull Object type) {
+        return ((Class<?>) type).getName();
+    }
+
+    @Override
+    public int getId(View node) {
+        return node.getId();
+    }
+
+    @Override
+    public int getLeft(View node) {
+        return node.getLeft();
+    }
+
+    @Override
+    public int getTop(View node) {
+        return node.getTop();
+    }
+
+    @Override
+    public int getRight(View node) {
+        return node.getRight();
+    }
+
+    @Override
+    public int getBottom(View node) {
+        return node.getBottom();
+    }
+
+    @Override
+    public int getScrollX(View node) {
+        return node.getScrollX();
+    }
+
+    @Override
+    public int getScrollY(View node) {
+        return node.getScrollY();
+    }
+
+    @Override
+    public int getVisibility(View node) {
+        return node.getVisibility();
+    }
+
+    @Override
+    public int getFlags(View node) {
+        return flagsOf(node);
+    }
+}
@@ -0,0 +1,84 @@
+package com.stv.debug;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 以 android.view.View 为节点的 {@link ViewTreeAdapter}. DebugToolView(IDebugView) 不参与命中测试.
+ * 子View的绘制顺序和裁剪区域由 {@link ChildDrawingOrder} 计算并缓存, 变换矩阵的逆矩阵由 {@link ViewTransforms} 缓存, 每次命中测试前需要调用
+ * {@link ChildDrawingOrder#startQuery()}.
+ */
+final class AndroidViewTreeAdapter implements ViewTreeAdapter<View> {
+    @NonNull
+    private final ChildDrawingOrder mDrawingOrder;
+    @NonNull
+    private final ViewTransforms mTransforms;
+
+    AndroidViewTreeAdapter(@NonNull ChildDrawingOrder drawingOrder, @NonNull ViewTransforms transforms) {
+        mDrawingOrder = drawingOrder;
+        mTransforms = transforms;
+    }
+
+    @Override
+    public int getDrawingChildCount(View node) {
+        return node instanceof ViewGroup ? mDrawingOrder.get((ViewGroup) node).count : 0;
+    }
+
+    @Override
+    public View getDrawingChildAt(View node, int drawingPosition) {
+        ViewGroup group = (ViewGroup) node;
+        return group.getChildAt(mDrawingOrder.get(group).children[drawingPosition]);
+    }
+
+    @Override
+    public boolean isInClip(View node, float x, float y) {
+        return !(node instanceof ViewGroup) || mDrawingOrder.get((ViewGroup) node).isInClip(x, y);
+    }
+
+    @Override
+    public boolean unmapPoint(View node, float[] point) {
+        return mTransforms.unmapPoint(node, point);
+    }
+
+    @Override
+    public boolean isHitTestable(View node) {
+        return node.getVisibility() == View.VISIBLE && !(node instanceof IDebugView);
+    }
+
+    @Override
+    public boolean isContainer(View node) {
+        return node instanceof ViewGroup;
+    }
+
+    @Override
+    public int getLeft(View node) {
+        return node.getLeft();
+    }
+
+    @Override
+    public int getTop(View node) {
+        return node.getTop();
+    }
+
+    @Override
+    public int getRight(View node) {
+        return node.getRight();
+    }
+
+    @Override
+    public int getBottom(View node) {
+        return node.getBottom();
+    }
+
+    @Override
+    public int getScrollX(View node) {
+        return node.getScrollX();
+    }
+
+    @Override
+    public int getScrollY(View node) {
+        return node.getScrollY();
+    }
+}
@@ -0,0 +1,373 @@
+package com.stv.debug;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.res.Resources;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.Log;
+import android.view.View;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+
+/**
+ * 批量命中测试, 供自动化测试一次验证大量坐标, 不需要逐个移动光标再按确定键. 只在可调试(debuggable)的应用中、
+ * 工具激活期间注册, 并且要求发送者持有 android.permission.DUMP(adb shell 有此权限):
+ * <pre>
+ * adb shell am broadcast -a com.stv.debug.action.BATCH_HIT_TEST --es input points.txt [--es output result.txt]
+ * </pre>
+ * 相对路径相对于应用的 getExternalFilesDir(null). 输入文件每行一个点 "x y"(与光标相同, 相对于根 View 左上角),
+ * 以#开头的行被忽略; 输出默认写到输入文件名加 ".out":
+ * <pre>
+ * V &lt;view&gt; &lt;parent&gt; &lt;class&gt; &lt;id&gt; &lt;left&gt; &lt;top&gt; &lt;right&gt; &lt;bottom&gt;
+ * P &lt;x&gt; &lt;y&gt; &lt;view&gt; ...
+ * </pre>
+ * V 行是被命中的 View 及其父View, 矩形相对于根 View; P 行按输入顺序列出每个点上从外到内的 View 链, 没有命中时为空.
+ * <p>
+ * 文件读取、解析和资源名查找、写文件都在后台线程进行; 主线程只用 {@link ViewSpatialIndex} 一次查询所有点
+ * (共用网格和绘制顺序缓存), 并抓取被命中 View 的类名、id和矩形. 广播的结果码为 RESULT_OK 时结果数据是输出文件路径,
+ * 否则是错误信息, am broadcast 会等待处理完成并打印出来.
+ */
+final class BatchHitTester extends BroadcastReceiver {
+    private static final String TAG = "BatchHitTester";
+    static final String ACTION_BATCH_HIT_TEST = "com.stv.debug.action.BATCH_HIT_TEST";
+    static final String EXTRA_INPUT = "input";
+    static final String EXTRA_OUTPUT = "output";
+    private static final String PERMISSION = "android.permission.DUMP";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @NonNull
+    private final ViewSpatialIndex mSpatialIndex;
+    @Nullable
+    private Context mContext;
+
+    BatchHitTester(@NonNull ViewSpatialIndex spatialIndex) {
+        mSpatialIndex = spatialIndex;
+    }
+
+    /**
+     * 应用不可调试时不注册.
+     */
+    @MainThread
+    void register(@NonNull Context context) {
+        if (mContext != null || (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return;
+        }
+
+        IntentFilter filter = new IntentFilter(ACTION_BATCH_HIT_TEST);
+        // Android 13 开始动态注册的接收者默认不接收其他应用(包括shell)的广播
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(this, filter, PERMISSION, DebugThreads.getMainHandler(), Context.RECEIVER_EXPORTED);
+        } else {
+            context.registerReceiver(this, filter, PERMISSION, DebugThreads.getMainHandler());
+        }
+        mContext = context;
+    }
+
+    @MainThread
+    void unregister() {
+        if (mContext != null) {
+            mContext.unregisterReceiver(this);
+            mContext = null;
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String input = intent.getStringExtra(EXTRA_INPUT);
+        if (input == null) {
+            setResultCode(Activity.RESULT_CANCELED);
+            setResultData("Missing extra: " + EXTRA_INPUT);
+            return;
+        }
+
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        File inputFile = resolve(dir, input);
+        String output = intent.getStringExtra(EXTRA_OUTPUT);
+        File outputFile = output != null ? resolve(dir, output) : new File(inputFile.getPath() + ".out");
+        new Request(context.getResources(), inputFile, outputFile, goAsync()).start();
+    }
+
+    @NonNull
+    private static File resolve(@NonNull File dir, @NonNull String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(dir, path);
+    }
+
+    /**
+     * 一次批量查询, 依次在后台线程(读取)、主线程(查询)、后台线程(写出)执行.
+     */
+    private final class Request {
+        @NonNull
+        private final Resources mResources;
+        @NonNull
+        private final File mInputFile;
+        @NonNull
+        private final File mOutputFile;
+        @NonNull
+        private final PendingResult mResult;
+
+        // x0, y0, x1, y1, ...
+        @NonNull
+        private int[] mPoints = new int[0];
+        private int mPointCount;
+        // 每个点上最下层的View在抓取结果中的序号, 没有命中时为-1
+        @NonNull
+        private int[] mDeepest = new int[0];
+
+        // 抓取的View, 按序号存放
+        private int mViewCount;
+        @NonNull
+        private int[] mParent = new int[0];
+        @NonNull
+        private String[] mClassName = new String[0];
+        @NonNull
+        private int[] mId = new int[0];
+        @NonNull
+        private int[] mBounds = new int[0];
+
+        private long mParseNanos;
+        private long mQueryNanos;
+
+        Request(@NonNull Resources resources, @NonNull File inputFile, @NonNull File outputFile,
+                @NonNull PendingResult result) {
+            mResources = resources;
+            mInputFile = inputFile;
+            mOutputFile = outputFile;
+            mResult = result;
+        }
+
+        void start() {
+            DebugThreads.getBackgroundHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    try {
+                        parse(readFile(mInputFile));
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to read " + mInputFile, e);
+                        finish(false, "Failed to read " + mInputFile + ": " + e.getMessage());
+                        return;
+                    }
+                    mParseNanos = System.nanoTime() - start;
+
+                    DebugThreads.getMainHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            query();
+                        }
+                    });
+                }
+            });
+        }
+
+        @WorkerThread
+        private void parse(@NonNull byte[] data) {
+            int[] points = new int[256];
+            int count = 0;
+            int i = 0;
+            int length = data.length;
+            while (i < length) {
+                byte c = data[i];
+                if (c == '#') {
+                    while (i < length && data[i] != '\n') {
+                        i++;
+                    }
+                } else if ((c >= '0' && c <= '9') || (c == '-' && i + 1 < length && data[i + 1] >= '0'
+                        && data[i + 1] <= '9')) {
+                    boolean negative = c == '-';
+                    if (negative) {
+                        i++;
+                    }
+                    int value = 0;
+                    while (i < length && data[i] >= '0' && data[i] <= '9') {
+                        value = value * 10 + (data[i] - '0');
+                        i++;
+                    }
+                    if (count == points.length) {
+                        points = Arrays.copyOf(points, count * 2);
+                    }
+                    points[count++] = negative ? -value : value;
+                } else {
+                    // 空白、逗号等分隔符
+                    i++;
+                }
+            }
+            mPoints = points;
+            mPointCount = count / 2;
+        }
+
+        @MainThread
+        private void query() {
+            long start = System.nanoTime();
+            int pointCount = mPointCount;
+            int[] nodes = new int[pointCount];
+            ViewSpatialIndex index = mSpatialIndex;
+            if (!index.findNodesAtPoints(mPoints, pointCount, nodes)) {
+                finish(false, "View debug tool is not active");
+                return;
+            }
+
+            // 只抓取被命中的View及其父View, 节点序号映射为抓取结果中的序号
+            int[] remap = new int[index.getNodeCount()];
+            Arrays.fill(remap, -1);
+            int[] captured = new int[64];
+            int viewCount = 0;
+            for (int p = 0; p < pointCount; p++) {
+                for (int node = nodes[p]; node >= 0 && remap[node] < 0; node = index.getNodeParent(node)) {
+                    if (viewCount == captured.length) {
+                        captured = Arrays.copyOf(captured, viewCount * 2);
+                    }
+                    remap[node] = viewCount;
+                    captured[viewCount++] = node;
+                }
+                nodes[p] = nodes[p] >= 0 ? remap[nodes[p]] : -1;
+            }
+
+            mViewCount = viewCount;
+            mParent = new int[viewCount];
+            mClassName = new String[viewCount];
+            mId = new int[viewCount];
+            mBounds = new int[viewCount * 4];
+            Rect bounds = new Rect();
+            for (int v = 0; v < viewCount; v++) {
+                int node = captured[v];
+                View view = index.getNodeView(node);
+                int parent = index.getNodeParent(node);
+                mParent[v] = parent >= 0 ? remap[parent] : -1;
+                mClassName[v] = view.getClass().getName();
+                mId[v] = view.getId();
+                index.getNodeBounds(node, bounds);
+                mBounds[4 * v] = bounds.left;
+                mBounds[4 * v + 1] = bounds.top;
+                mBounds[4 * v + 2] = bounds.right;
+                mBounds[4 * v + 3] = bounds.bottom;
+            }
+            mDeepest = nodes;
+            mQueryNanos = System.nanoTime() - start;
+
+            DebugThreads.getBackgroundHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    try {
+                        write();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to write " + mOutputFile, e);
+                        finish(false, "Failed to write " + mOutputFile + ": " + e.getMessage());
+                        return;
+                    }
+                    Log.i(TAG, "Resolved " + mPointCount + " points (" + mViewCount + " views) to " + mOutputFile
+                            + ": parse " + mParseNanos / 1000 + "us, query " + mQueryNanos / 1000 + "us on main thread, write "
+                            + (System.nanoTime() - start) / 1000 + "us");
+                    finish(true, mOutputFile.getAbsolutePath());
+                }
+            });
+        }
+
+        @WorkerThread
+        private void write() throws IOException {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mOutputFile), "UTF-8"),
+                    BUFFER_SIZE);
+            try {
+                StringBuilder line = new StringBuilder(256);
+                writer.write("# " + mPointCount + " points, " + mViewCount + " views\n");
+                writer.write("# V <view> <parent> <class> <id> <left> <top> <right> <bottom>\n");
+                writer.write("# P <x> <y> <view> ...\n");
+                for (int v = 0; v < mViewCount; v++) {
+                    line.setLength(0);
+                    line.append("V ").append(v).append(' ').append(mParent[v]).append(' ').append(mClassName[v])
+                            .append(' ');
+                    appendId(line, mId[v]);
+                    for (int k = 0; k < 4; k++) {
+                        line.append(' ').append(mBounds[4 * v + k]);
+                    }
+                    line.append('\n');
+                    writer.append(line);
+                }
+
+                int[] chain = new int[16];
+                for (int p = 0; p < mPointCount; p++) {
+                    int depth = 0;
+                    for (int v = mDeepest[p]; v >= 0; v = mParent[v]) {
+                        if (depth == chain.length) {
+                            chain = Arrays.copyOf(chain, depth * 2);
+                        }
+                        chain[depth++] = v;
+                    }
+
+                    line.setLength(0);
+                    line.append("P ").append(mPoints[2 * p]).append(' ').append(mPoints[2 * p + 1]);
+                    while (depth > 0) {
+                        line.append(' ').append(chain[--depth]);
+                    }
+                    line.append('\n');
+                    writer.append(line);
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        // 资源名, 没有资源名时为十六进制id, 没有id时为"-"
+        private void appendId(@NonNull StringBuilder out, int id) {
+            if (id == View.NO_ID) {
+                out.append('-');
+                return;
+            }
+            String name = ResourceNameCache.getName(mResources, id);
+            if (name != null) {
+                out.append(name);
+            } else {
+                out.append("0x").append(Integer.toHexString(id));
+            }
+        }
+
+        private void finish(boolean success, @NonNull String data) {
+            mResult.setResultCode(success ? Activity.RESULT_OK : Activity.RESULT_CANCELED);
+            mResult.setResultData(data);
+            mResult.finish();
+        }
+    }
+
+    @NonNull
+    private static byte[] readFile(@NonNull File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + length);
+            }
+            byte[] data = new byte[(int) length];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return offset == data.length ? data : Arrays.copyOf(data, offset);
+        } finally {
+            in.close();
+        }
+    }
+}
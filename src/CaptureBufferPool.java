@@ -0,0 +1,96 @@
+package com.stv.debug;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 截屏缓冲区(Bitmap)池, 在多次激活之间共用, 只能在主线程访问.
+ * <p>
+ * 工具退出时 {@link ScreenCapturer} 把缓冲区还给池, 下次激活时可以直接复用, 不需要重新分配几十MB的内存.
+ * 池中的缓冲区总大小不超过 debug.view_debugger.capture_budget_kb, 闲置 {@link #IDLE_TRIM_DELAY_MS} 后,
+ * 或者 Activity 收到 onTrimMemory() 时全部释放.
+ */
+final class CaptureBufferPool {
+    private static final String TAG = "CaptureBufferPool";
+    private static final long IDLE_TRIM_DELAY_MS = 30 * 1000;
+
+    // 按放入的先后顺序排列, 超出预算时先释放最早放入的
+    private static final List<Bitmap> sPool = new ArrayList<>();
+    private static long sPooledBytes;
+
+    private static final Runnable sTrimRunnable = new Runnable() {
+        @Override
+        public void run() {
+            trim();
+        }
+    };
+
+    private CaptureBufferPool() {
+    }
+
+    /**
+     * @return 大小和格式都相同的池中缓冲区, 没有时新分配一个
+     */
+    @NonNull
+    static Bitmap acquire(int width, int height, @NonNull Bitmap.Config config) {
+        for (int i = sPool.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = sPool.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                sPool.remove(i);
+                sPooledBytes -= bitmap.getAllocationByteCount();
+                return bitmap;
+            }
+        }
+        // 大小不合适的缓冲区(例如旋转屏幕前的)不太可能再被用到, 先释放再分配, 避免同时占用两份内存
+        trim();
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * 把缓冲区还给池. 超出预算的部分立即释放.
+     */
+    static void release(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+
+        long budget = DebugToolProperties.getInstance().getCaptureBudgetBytes();
+        long size = bitmap.getAllocationByteCount();
+        if (size > budget) {
+            bitmap.recycle();
+            return;
+        }
+        while (sPooledBytes + size > budget && !sPool.isEmpty()) {
+            Bitmap oldest = sPool.remove(0);
+            sPooledBytes -= oldest.getAllocationByteCount();
+            oldest.recycle();
+        }
+        sPool.add(bitmap);
+        sPooledBytes += size;
+
+        DebugThreads.getMainHandler().removeCallbacks(sTrimRunnable);
+        DebugThreads.getMainHandler().postDelayed(sTrimRunnable, IDLE_TRIM_DELAY_MS);
+    }
+
+    /**
+     * 释放池中所有的缓冲区.
+     */
+    static void trim() {
+        DebugThreads.getMainHandler().removeCallbacks(sTrimRunnable);
+        if (sPool.isEmpty()) {
+            return;
+        }
+
+        Log.d(TAG, "Release " + sPool.size() + " pooled capture buffers, " + sPooledBytes / 1024 + "KB");
+        for (int i = 0; i < sPool.size(); i++) {
+            sPool.get(i).recycle();
+        }
+        sPool.clear();
+        sPooledBytes = 0;
+    }
+}
@@ -0,0 +1,117 @@
+package com.stv.debug;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 可复用的字符缓冲区, 用于在 onDraw() 中拼接要显示的文字.
+ * 数字(十进制/十六进制)直接格式化到 char 数组中, 拼接和绘制过程都不分配堆内存.
+ * 超出容量的字符会被丢弃.
+ */
+final class CharTextBuffer {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    @NonNull
+    private final char[] mChars;
+    private int mLength;
+
+    CharTextBuffer(int capacity) {
+        mChars = new char[capacity];
+    }
+
+    @NonNull
+    CharTextBuffer clear() {
+        mLength = 0;
+        return this;
+    }
+
+    int length() {
+        return mLength;
+    }
+
+    boolean isEmpty() {
+        return mLength == 0;
+    }
+
+    @NonNull
+    CharTextBuffer append(char c) {
+        if (mLength < mChars.length) {
+            mChars[mLength++] = c;
+        }
+        return this;
+    }
+
+    @NonNull
+    CharTextBuffer append(@NonNull String s) {
+        int count = Math.min(s.length(), mChars.length - mLength);
+        s.getChars(0, count, mChars, mLength);
+        mLength += count;
+        return this;
+    }
+
+    @NonNull
+    CharTextBuffer append(int value) {
+        return append((long) value);
+    }
+
+    @NonNull
+    CharTextBuffer append(long value) {
+        if (value < 0) {
+            append('-');
+            if (value == Long.MIN_VALUE) {
+                return append("9223372036854775808");
+            }
+            value = -value;
+        }
+
+        // 先计算位数, 再从后往前写入, 避免使用临时数组
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        if (mLength + digits > mChars.length) {
+            return this;
+        }
+        for (int i = mLength + digits - 1; i >= mLength; i--) {
+            mChars[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        mLength += digits;
+        return this;
+    }
+
+    /**
+     * 以固定位数的大写十六进制追加 value 的低 digits*4 位, 等价于 String.format("%0{digits}X").
+     */
+    @NonNull
+    CharTextBuffer appendHex(int value, int digits) {
+        if (mLength + digits > mChars.length) {
+            return this;
+        }
+        for (int i = mLength + digits - 1; i >= mLength; i--) {
+            mChars[i] = HEX_DIGITS[value & 0xF];
+            value >>>= 4;
+        }
+        mLength += digits;
+        return this;
+    }
+
+    float measure(@NonNull Paint paint) {
+        return paint.measureText(mChars, 0, mLength);
+    }
+
+    void draw(@NonNull Canvas canvas, float x, float y, @NonNull Paint paint) {
+        canvas.drawText(mChars, 0, mLength, x, y, paint);
+    }
+
+    /**
+     * 会分配内存, 只用于日志和测试.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+}
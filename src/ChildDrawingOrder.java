@@ -0,0 +1,292 @@
+package com.stv.debug;
+
+import android.os.Build;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * 按实际绘制顺序排列的子View, 用于命中测试时找到最上层的子View. 只能在主线程访问.
+ * <p>
+ * 顺序与 ViewGroup 分发触摸事件时相同(ViewGroup.buildOrderedChildList()): 先按自定义绘制顺序
+ * (isChildrenDrawingOrderEnabled() 和 getChildDrawingOrder()), 再按 Z(elevation + translationZ)稳定排序.
+ * 完全在父View裁剪区域(clipChildren/clipToPadding)之外的子View不会被画出来, 不放进列表.
+ * <p>
+ * 每个 ViewGroup 的结果缓存在 WeakHashMap 中, 全局布局和焦点变化(自定义绘制顺序通常与焦点有关)后全部失效.
+ * 使用缓存前检查子View数量、滚动位置和每个子View的Z, Z变化(例如获得焦点时的translationZ动画)时重新排序.
+ * 一次命中测试中同一个 ViewGroup 只检查一次, 见 {@link #startQuery()}.
+ */
+final class ChildDrawingOrder implements ViewTreeObserver.OnGlobalLayoutListener,
+        ViewTreeObserver.OnGlobalFocusChangeListener {
+    private static final String TAG = "ChildDrawingOrder";
+
+    // isChildrenDrawingOrderEnabled() 和 API 29 以下的 getChildDrawingOrder(int, int) 是 protected 方法
+    @Nullable
+    private static Method sIsChildrenDrawingOrderEnabled;
+    @Nullable
+    private static Method sGetChildDrawingOrder;
+    private static boolean sReflectionInitialized;
+
+    @NonNull
+    private final WeakHashMap<ViewGroup, Order> mOrders = new WeakHashMap<>();
+    @Nullable
+    private View mRoot;
+    @Nullable
+    private ViewTreeObserver mObserver;
+    private int mGeneration;
+    private int mQuery;
+
+    /**
+     * 一个 ViewGroup 的子View绘制顺序. 返回给调用者的对象在下一次 {@link #get(ViewGroup)} 之前有效, 调用者不能修改.
+     */
+    static final class Order {
+        // 从下到上(先绘制到后绘制)的子View序号, 被裁剪掉的子View不包括在内
+        @NonNull
+        int[] children = new int[0];
+        int count;
+        // 以子View序号为下标的绘制位置, 被裁剪掉的为-1
+        @NonNull
+        int[] rank = new int[0];
+        // 裁剪区域, 相对于ViewGroup左上角(不包括滚动)
+        int clipLeft;
+        int clipTop;
+        int clipRight;
+        int clipBottom;
+
+        // 用于检查缓存是否有效
+        private int generation;
+        private int checkedQuery;
+        private int childCount;
+        private int scrollX;
+        private int scrollY;
+        // 按 children 的顺序保存的Z
+        @NonNull
+        private float[] z = new float[0];
+
+        /**
+         * @param x 相对于ViewGroup左上角(不包括滚动)的坐标
+         */
+        boolean isInClip(float x, float y) {
+            return x >= clipLeft && y >= clipTop && x < clipRight && y < clipBottom;
+        }
+
+        /**
+         * @return 子View的绘制位置, 被裁剪掉或序号超出范围时返回-1
+         */
+        int rankOf(int childIndex) {
+            return childIndex >= 0 && childIndex < childCount ? rank[childIndex] : -1;
+        }
+    }
+
+    void attach(@NonNull View root) {
+        detach();
+
+        mRoot = root;
+        mObserver = root.getViewTreeObserver();
+        mObserver.addOnGlobalLayoutListener(this);
+        mObserver.addOnGlobalFocusChangeListener(this);
+        mGeneration++;
+    }
+
+    void detach() {
+        mOrders.clear();
+        if (mRoot == null) {
+            return;
+        }
+
+        ViewTreeObserver observer = mObserver;
+        if (observer == null || !observer.isAlive()) {
+            observer = mRoot.getViewTreeObserver();
+        }
+        observer.removeOnGlobalLayoutListener(this);
+        observer.removeOnGlobalFocusChangeListener(this);
+        mObserver = null;
+        mRoot = null;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        mGeneration++;
+    }
+
+    @Override
+    public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+        mGeneration++;
+    }
+
+    /**
+     * 开始一次命中测试. 之后到下一次调用之前, 认为 View 树没有变化, 每个 ViewGroup 的缓存只检查一次.
+     */
+    void startQuery() {
+        mQuery++;
+    }
+
+    /**
+     * @return group 的子View绘制顺序. 没有attach时不能确定布局是否变化, 每次查询都重新计算
+     */
+    @NonNull
+    Order get(@NonNull ViewGroup group) {
+        Order order = mOrders.get(group);
+        if (order == null) {
+            order = new Order();
+            mOrders.put(group, order);
+        } else if (order.checkedQuery == mQuery || (mRoot != null && isValid(group, order))) {
+            order.checkedQuery = mQuery;
+            return order;
+        }
+
+        build(group, order);
+        order.generation = mGeneration;
+        order.checkedQuery = mQuery;
+        return order;
+    }
+
+    private boolean isValid(@NonNull ViewGroup group, @NonNull Order order) {
+        if (order.generation != mGeneration || order.childCount != group.getChildCount()
+                || order.scrollX != group.getScrollX() || order.scrollY != group.getScrollY()) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            for (int d = 0; d < order.count; d++) {
+                View child = group.getChildAt(order.children[d]);
+                if (child == null || child.getZ() != order.z[d]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void build(@NonNull ViewGroup group, @NonNull Order order) {
+        int childCount = group.getChildCount();
+        int scrollX = group.getScrollX();
+        int scrollY = group.getScrollY();
+        order.childCount = childCount;
+        order.scrollX = scrollX;
+        order.scrollY = scrollY;
+        if (order.rank.length < childCount) {
+            int capacity = Math.max(childCount, order.rank.length * 2);
+            order.children = new int[capacity];
+            order.rank = new int[capacity];
+            order.z = new float[capacity];
+        }
+
+        // clipToPadding 的裁剪与 clipChildren 无关, 见 ViewGroup.dispatchDraw()
+        if (group.getClipToPadding()) {
+            order.clipLeft = group.getPaddingLeft();
+            order.clipTop = group.getPaddingTop();
+            order.clipRight = group.getWidth() - group.getPaddingRight();
+            order.clipBottom = group.getHeight() - group.getPaddingBottom();
+        } else if (group.getClipChildren()) {
+            order.clipLeft = 0;
+            order.clipTop = 0;
+            order.clipRight = group.getWidth();
+            order.clipBottom = group.getHeight();
+        } else {
+            order.clipLeft = Integer.MIN_VALUE;
+            order.clipTop = Integer.MIN_VALUE;
+            order.clipRight = Integer.MAX_VALUE;
+            order.clipBottom = Integer.MAX_VALUE;
+        }
+
+        boolean customOrder = childCount > 1 && isChildrenDrawingOrderEnabled(group);
+        int count = 0;
+        int[] children = order.children;
+        float[] z = order.z;
+        Arrays.fill(order.rank, 0, childCount, -1);
+        for (int d = 0; d < childCount; d++) {
+            int index = customOrder ? getChildDrawingOrder(group, childCount, d) : d;
+            View child = group.getChildAt(index);
+            if (child == null || isClipped(order, child, scrollX, scrollY)) {
+                continue;
+            }
+
+            float childZ = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? child.getZ() : 0f;
+            // 按Z插入排序, Z相同时保持原来的顺序
+            int pos = count;
+            while (pos > 0 && z[pos - 1] > childZ) {
+                children[pos] = children[pos - 1];
+                z[pos] = z[pos - 1];
+                pos--;
+            }
+            children[pos] = index;
+            z[pos] = childZ;
+            count++;
+        }
+        order.count = count;
+        for (int d = 0; d < count; d++) {
+            order.rank[children[d]] = d;
+        }
+    }
+
+    // 有变换的子View实际显示的范围与 left/top/right/bottom 不同, 不裁剪
+    private static boolean isClipped(@NonNull Order order, @NonNull View child, int scrollX, int scrollY) {
+        if (ViewTransforms.hasTransform(child)) {
+            return false;
+        }
+        int left = child.getLeft() - scrollX;
+        int top = child.getTop() - scrollY;
+        int right = child.getRight() - scrollX;
+        int bottom = child.getBottom() - scrollY;
+        return left >= right || top >= bottom || right <= order.clipLeft || bottom <= order.clipTop
+                || left >= order.clipRight || top >= order.clipBottom;
+    }
+
+    private static boolean isChildrenDrawingOrderEnabled(@NonNull ViewGroup group) {
+        initReflection();
+        if (sIsChildrenDrawingOrderEnabled == null) {
+            return false;
+        }
+        try {
+            return (Boolean) sIsChildrenDrawingOrderEnabled.invoke(group);
+        } catch (Exception e) {
+            Log.w(TAG, "isChildrenDrawingOrderEnabled() failed", e);
+            return false;
+        }
+    }
+
+    // 与 ViewGroup.getAndVerifyPreorderedIndex() 相同, 返回值无效时按原来的顺序
+    private static int getChildDrawingOrder(@NonNull ViewGroup group, int childCount, int drawingPosition) {
+        int index = drawingPosition;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            index = group.getChildDrawingOrder(drawingPosition);
+        } else if (sGetChildDrawingOrder != null) {
+            try {
+                index = (Integer) sGetChildDrawingOrder.invoke(group, childCount, drawingPosition);
+            } catch (Exception e) {
+                Log.w(TAG, "getChildDrawingOrder() failed", e);
+            }
+        }
+        return index >= 0 && index < childCount ? index : drawingPosition;
+    }
+
+    private static void initReflection() {
+        if (sReflectionInitialized) {
+            return;
+        }
+
+        sReflectionInitialized = true;
+        try {
+            Method method = ViewGroup.class.getDeclaredMethod("isChildrenDrawingOrderEnabled");
+            method.setAccessible(true);
+            sIsChildrenDrawingOrderEnabled = method;
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                method = ViewGroup.class.getDeclaredMethod("getChildDrawingOrder", int.class, int.class);
+                method.setAccessible(true);
+                sGetChildDrawingOrder = method;
+            }
+        } catch (Exception e) {
+            // 无法读取自定义绘制顺序时按子View序号和Z排序
+            Log.w(TAG, "Custom child drawing order is unavailable", e);
+            sIsChildrenDrawingOrderEnabled = null;
+        }
+    }
+}
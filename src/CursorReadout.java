@@ -0,0 +1,26 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 屏幕左上角的光标信息文字: "(x, y)  #RRGGBB  snap Npx". DebugToolView 每次绘制光标时调用, 直接格式化到
+ * {@link CharTextBuffer} 中, 不分配内存. 不依赖 Android API, 可以在普通 JVM 上测试.
+ */
+final class CursorReadout {
+    private CursorReadout() {
+    }
+
+    /**
+     * @param pixelColor   光标处像素的RGB值(0xRRGGBB), 小于0(没有可用像素)时不显示
+     * @param jumpDistance 吸附模式下本次跳跃的距离, 小于0时不显示
+     */
+    static void format(@NonNull CharTextBuffer out, int x, int y, int pixelColor, int jumpDistance) {
+        out.clear().append('(').append(x).append(", ").append(y).append(')');
+        if (pixelColor >= 0) {
+            out.append("  #").appendHex(pixelColor, 6);
+        }
+        if (jumpDistance >= 0) {
+            out.append("  snap ").append(jumpDistance).append("px");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.stv.debug;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 调试工具共用的线程. 后台线程在第一次使用时才创建, 避免工具未激活时占用资源.
+ */
+final class DebugThreads {
+    @Nullable
+    private static Handler sMainHandler;
+    @Nullable
+    private static Handler sBackgroundHandler;
+    @Nullable
+    private static ExecutorService sWorkerExecutor;
+    private static final int MAX_WORKER_THREADS = 4;
+
+    private DebugThreads() {
+    }
+
+    @NonNull
+    static synchronized Handler getMainHandler() {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return sMainHandler;
+    }
+
+    /**
+     * 串行执行的后台线程, 用于截屏回调等需要Looper的工作.
+     */
+    @NonNull
+    static synchronized Handler getBackgroundHandler() {
+        if (sBackgroundHandler == null) {
+            HandlerThread thread = new HandlerThread("ViewDebugTool", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sBackgroundHandler = new Handler(thread.getLooper());
+        }
+        return sBackgroundHandler;
+    }
+
+    /**
+     * 并行计算用的线程池, 线程数为CPU核数(最多 {@link #MAX_WORKER_THREADS} 个). 提交的任务不能访问 View.
+     */
+    @NonNull
+    static synchronized ExecutorService getWorkerExecutor() {
+        if (sWorkerExecutor == null) {
+            sWorkerExecutor = Executors.newFixedThreadPool(getWorkerCount(), new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public Thread newThread(@NonNull final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "ViewDebugTool-worker-" + (++mCount));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sWorkerExecutor;
+    }
+
+    static int getWorkerCount() {
+        return Math.max(1, Math.min(MAX_WORKER_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+}
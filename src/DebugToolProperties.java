@@ -0,0 +1,190 @@
+package com.stv.debug;
+
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 缓存所有 debug.view_debugger.* 属性的值. 绘制路径只读取这里缓存的字段, 不做任何反射;
+ * 属性值只在 SystemProperties 变化回调或低频轮询时重新读取, 因此 setprop 调整仍然可以实时生效.
+ */
+final class DebugToolProperties {
+    static final String SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_SELECTED_VIEW = "debug.view_debugger.color";
+    static final String SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_FOCUSED_VIEW = "debug.view_debugger.focus_color";
+    static final String SYS_PROP_KEY_VIEW_INFO_TEXT_SIZE = "debug.view_debugger.text_size";
+    static final String SYS_PROP_KEY_CAPTURE_RADIUS = "debug.view_debugger.capture_radius";
+    static final String SYS_PROP_KEY_CAPTURE_BUDGET_KB = "debug.view_debugger.capture_budget_kb";
+    static final String SYS_PROP_KEY_INSPECT_PORT = "debug.view_debugger.inspect_port";
+    // 激活序列由 ActivationKeyMatcher 自己读取, 工具激活前不需要创建本对象
+    static final String SYS_PROP_KEY_SECRET_KEYS = "debug.view_debugger.secret_keys";
+
+    private static final int DEFAULT_VIEW_INFO_TEXT_SIZE = 20;
+    private static final int SELECTED_VIEW_DEFAULT_HIGHLIGHT_COLOR = Color.WHITE;
+    private static final int FOCUSED_VIEW_DEFAULT_HIGHLIGHT_COLOR = Color.BLUE;
+    // 足够1080p屏幕以ARGB_8888格式截取两个(前后)缓冲区
+    private static final int DEFAULT_CAPTURE_BUDGET_KB = 20 * 1024;
+    // 预算再小也至少能截取一个较小的区域
+    private static final int MIN_CAPTURE_BUDGET_KB = 256;
+
+    // 变化回调不可用(或没有被触发)时的轮询间隔
+    private static final long POLL_INTERVAL_MS = 1000;
+
+    interface OnChangedListener {
+        void onDebugToolPropertiesChanged();
+    }
+
+    private static final DebugToolProperties sInstance = new DebugToolProperties();
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final List<OnChangedListener> mListeners = new ArrayList<>();
+    private boolean mChangeCallbackRegistered;
+    private long mLastRefreshTime;
+
+    // 每次有属性值发生变化时加1, 使用者可以用它做廉价的"是否需要重新配置"检查
+    private volatile int mGeneration;
+    private volatile int mViewInfoTextSize = DEFAULT_VIEW_INFO_TEXT_SIZE;
+    private volatile int mHighlightColorOfSelectedView = SELECTED_VIEW_DEFAULT_HIGHLIGHT_COLOR;
+    private volatile int mHighlightColorOfFocusedView = FOCUSED_VIEW_DEFAULT_HIGHLIGHT_COLOR;
+    private volatile int mCaptureRadius;
+    private volatile int mCaptureBudgetKb = DEFAULT_CAPTURE_BUDGET_KB;
+    private volatile int mInspectPort;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
+
+    private final Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (SystemClock.uptimeMillis() - mLastRefreshTime >= POLL_INTERVAL_MS) {
+                refresh();
+            }
+            mMainHandler.postDelayed(this, POLL_INTERVAL_MS);
+        }
+    };
+
+    private DebugToolProperties() {
+        refresh();
+    }
+
+    @NonNull
+    static DebugToolProperties getInstance() {
+        return sInstance;
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    int getViewInfoTextSize() {
+        return mViewInfoTextSize;
+    }
+
+    int getHighlightColorOfSelectedView() {
+        return mHighlightColorOfSelectedView;
+    }
+
+    int getHighlightColorOfFocusedView() {
+        return mHighlightColorOfFocusedView;
+    }
+
+    /**
+     * @return 截屏时只截取光标周围该半径(px)内的区域, 0表示截取整个屏幕
+     */
+    int getCaptureRadius() {
+        return mCaptureRadius;
+    }
+
+    /**
+     * @return 截屏缓冲区(包括前后两个缓冲区和缓冲区池)可以使用的内存(字节)
+     */
+    long getCaptureBudgetBytes() {
+        return mCaptureBudgetKb * 1024L;
+    }
+
+    /**
+     * @return InspectionServer 监听的本地端口, 0表示不启动. 工具激活时读取
+     */
+    int getInspectPort() {
+        return mInspectPort;
+    }
+
+    /**
+     * 只能在主线程调用. 有监听者期间才轮询属性值, 最后一个监听者移除后停止轮询.
+     */
+    void addListener(@NonNull OnChangedListener listener) {
+        if (mListeners.contains(listener)) {
+            return;
+        }
+        mListeners.add(listener);
+
+        if (!mChangeCallbackRegistered) {
+            // SystemProperties 的回调可能在binder线程中执行, 转到主线程刷新
+            mChangeCallbackRegistered = SystemPropertiesUtil.addChangeCallback(new Runnable() {
+                @Override
+                public void run() {
+                    mMainHandler.post(mRefreshRunnable);
+                }
+            });
+        }
+        if (mListeners.size() == 1) {
+            refresh();
+            mMainHandler.postDelayed(mPollRunnable, POLL_INTERVAL_MS);
+        }
+    }
+
+    void removeListener(@NonNull OnChangedListener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty()) {
+            mMainHandler.removeCallbacks(mPollRunnable);
+        }
+    }
+
+    /**
+     * 重新读取所有属性, 有变化时通知监听者.
+     */
+    void refresh() {
+        mLastRefreshTime = SystemClock.uptimeMillis();
+
+        int textSize = (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_VIEW_INFO_TEXT_SIZE, DEFAULT_VIEW_INFO_TEXT_SIZE);
+        int selectedColor = (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_SELECTED_VIEW,
+                SELECTED_VIEW_DEFAULT_HIGHLIGHT_COLOR);
+        int focusedColor = (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_FOCUSED_VIEW,
+                FOCUSED_VIEW_DEFAULT_HIGHLIGHT_COLOR);
+        int captureRadius = Math.max(0, (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_CAPTURE_RADIUS, 0));
+        int captureBudgetKb = Math.max(MIN_CAPTURE_BUDGET_KB,
+                (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_CAPTURE_BUDGET_KB, DEFAULT_CAPTURE_BUDGET_KB));
+        int inspectPort = (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_INSPECT_PORT, 0);
+        if (inspectPort < 0 || inspectPort > 65535) {
+            inspectPort = 0;
+        }
+
+        if (textSize == mViewInfoTextSize && selectedColor == mHighlightColorOfSelectedView
+                && focusedColor == mHighlightColorOfFocusedView && captureRadius == mCaptureRadius
+                && captureBudgetKb == mCaptureBudgetKb && inspectPort == mInspectPort) {
+            return;
+        }
+
+        mViewInfoTextSize = textSize;
+        mHighlightColorOfSelectedView = selectedColor;
+        mHighlightColorOfFocusedView = focusedColor;
+        mCaptureRadius = captureRadius;
+        mCaptureBudgetKb = captureBudgetKb;
+        mInspectPort = inspectPort;
+        mGeneration++;
+
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onDebugToolPropertiesChanged();
+        }
+    }
+}
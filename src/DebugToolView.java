@@ -1,11 +1,13 @@
 package com.stv.debug;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.View;
@@ -13,26 +15,50 @@ import android.view.View;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-public class DebugToolView extends View implements IDebugView {
-    private static final int CURSOR_TEXT_SIZE = 40;
-
-    private static final String SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_SELECTED_VIEW = "debug.view_debugger.color";
-    private static final String SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_FOCUSED_VIEW = "debug.view_debugger.focus_color";
-    private static final String SYS_PROP_KEY_VIEW_INFO_TEXT_SIZE = "debug.view_debugger.text_size";
+import java.util.ArrayList;
+import java.util.List;
 
-    private static final int DEFAULT_VIEW_INFO_TEXT_SIZE = 20;
-    private static final int SELECTED_VIEW_DEFAULT_HIGHLIGHT_COLOR = Color.WHITE;
-    private static final int FOCUSED_VIEW_DEFAULT_HIGHLIGHT_COLOR = Color.BLUE;
+public class DebugToolView extends View implements IDebugView, DebugToolProperties.OnChangedListener {
+    private static final int CURSOR_TEXT_SIZE = 40;
+    private static final int PROFILE_PANEL_PADDING = 8;
+    private static final int PROFILE_PANEL_COLOR = 0xB0000000;
+    private static final int FOCUS_EDGE_COLOR = 0xFF00C853;
+    private static final int FOCUS_ASYMMETRIC_EDGE_COLOR = 0xFFFFD600;
+    private static final int FOCUS_NODE_COLOR = 0xFF00B8D4;
+    private static final int FOCUS_UNREACHABLE_COLOR = 0x60FF1744;
+    private static final int FOCUS_TRAP_COLOR = 0xFFFF6D00;
+    private static final int CHANGE_ADDED_COLOR = 0xFF00E676;
+    private static final int CHANGE_REMOVED_COLOR = 0xFFFF1744;
+    private static final int CHANGE_MOVED_COLOR = 0xFFFFEA00;
+    private static final int LOUPE_MARGIN = 16;
+    private static final int LOUPE_PADDING = 8;
+    private static final int HISTOGRAM_HEIGHT = 64;
+    private static final int STATS_REGION_COLOR = 0xFF18FFFF;
+    private static final int HEAT_COLD_COLOR = 0xFF2979FF;
+    // 每秒布局和重绘次数之和达到该值(每帧一次)时显示为最热的颜色
+    private static final float HEAT_FULL_RATE = 60f;
+    // 变化的View闪烁显示的时长, 期间逐渐变淡
+    private static final long CHANGE_FLASH_MS = 600;
 
     private int mCursorX, mCursorY;
     @NonNull
-    private Rect mViewBounds = new Rect();
+    private final Rect mViewBounds = new Rect();
     @NonNull
     private String mViewInfo = "";
     @NonNull
-    private Rect mFocusedViewBounds = new Rect();
+    private final Rect mFocusedViewBounds = new Rect();
     @NonNull
     private String mFocusedViewInfo = "";
+    // 有变换(缩放、旋转)的View画出变换后的四边形, 4条边的端点
+    @NonNull
+    private final float[] mViewQuadLines = new float[16];
+    private boolean mHasViewQuad;
+    @NonNull
+    private final float[] mFocusedViewQuadLines = new float[16];
+    private boolean mHasFocusedViewQuad;
+    // 信息文字宽度只在文字或字号变化时测量, 不在每帧测量
+    private int mViewInfoWidth;
+    private int mFocusedViewInfoWidth;
 
     // 下面3个成员在 init()方法中被调用, 而 init()只被构造方法调用, 因此这3个成员是初始化了
     @SuppressWarnings("NotNullFieldNotInitialized")
@@ -40,11 +66,21 @@ public class DebugToolView extends View implements IDebugView {
     private TextPaint mTextPaint;
     @SuppressWarnings("NotNullFieldNotInitialized")
     @NonNull
+    private TextPaint mCursorTextPaint;
+    @SuppressWarnings("NotNullFieldNotInitialized")
+    @NonNull
     private Paint mCursorPaint;
     @SuppressWarnings("NotNullFieldNotInitialized")
     @NonNull
     private Paint mViewHighlightPaint;
     private Paint mFocusedViewHighlightPaint;
+    @SuppressWarnings("NotNullFieldNotInitialized")
+    @NonNull
+    private Paint mProfilePanelPaint;
+    // 放大镜、焦点导航图、变化跟踪、颜色统计区域等共用, 每次使用前设置样式和颜色
+    @SuppressWarnings("NotNullFieldNotInitialized")
+    @NonNull
+    private Paint mScratchPaint;
 
     private int mRight;
     private int mLeft;
@@ -54,6 +90,96 @@ public class DebugToolView extends View implements IDebugView {
     private int mOriginY;
     private ViewDebugger mViewDebugger;
 
+    @NonNull
+    private final DebugToolProperties mProperties = DebugToolProperties.getInstance();
+    // 已应用到Paint上的属性版本, 与mProperties.getGeneration()不同时才重新配置Paint
+    private int mAppliedPropertiesGeneration = -1;
+    private int mViewInfoTextSize;
+
+    // onDraw()中复用的对象, 保证绘制过程不分配堆内存
+    @NonNull
+    private final CharTextBuffer mCursorInfo = new CharTextBuffer(64);
+    // 吸附模式下光标跳跃的距离, 负数表示不在吸附模式
+    private int mCursorJumpDistance = -1;
+    @NonNull
+    private final Point mViewInfoLocation = new Point();
+    @NonNull
+    private final Point mFocusedViewInfoLocation = new Point();
+
+    // 只重绘发生变化的区域: 记录上一次绘制的光标信息文字区域, 以及两个高亮(矩形+信息文字)所占的区域
+    @NonNull
+    private final Rect mCursorInfoBounds = new Rect();
+    @NonNull
+    private final Rect mViewHighlightBounds = new Rect();
+    @NonNull
+    private final Rect mFocusedViewHighlightBounds = new Rect();
+    @NonNull
+    private final Rect mDirtyRect = new Rect();
+    @NonNull
+    private final Rect mClipBounds = new Rect();
+
+    // 性能统计面板, 显示在选中View的高亮框下方(下方放不下时显示在上方)
+    @NonNull
+    private final List<String> mProfileLines = new ArrayList<>();
+    @NonNull
+    private final Rect mProfileBounds = new Rect();
+    private int mProfileLineHeight;
+
+    // 焦点导航图, 覆盖整个屏幕, 更新时整体重绘
+    @Nullable
+    private FocusGraph mFocusGraph;
+    @NonNull
+    private final CharTextBuffer mFocusGraphSummary = new CharTextBuffer(96);
+
+    // View树变化, 覆盖整个屏幕
+    @Nullable
+    private HierarchyChangeTracker mChangeTracker;
+    private long mChangesShownTime;
+    @NonNull
+    private final CharTextBuffer mChangeSummary = new CharTextBuffer(128);
+    @NonNull
+    private final CharTextBuffer mChangeLabel = new CharTextBuffer(16);
+
+    // 布局和重绘热力图, 覆盖整个屏幕
+    @Nullable
+    private LayoutHeatmap mHeatmap;
+    @NonNull
+    private final CharTextBuffer mHeatmapSummary = new CharTextBuffer(96);
+    @NonNull
+    private final CharTextBuffer[] mHeatmapLabels = new CharTextBuffer[LayoutHeatmap.MAX_LABELS];
+    private int mHeatmapLabelCount;
+
+    // 帧率统计, 显示在光标坐标下方; 文字只在统计结果更新时拼接
+    @Nullable
+    private FrameMeter mFrameMeter;
+    @NonNull
+    private final CharTextBuffer[] mFrameMeterLines = {new CharTextBuffer(96), new CharTextBuffer(64)};
+    @NonNull
+    private final Rect mFrameMeterBounds = new Rect();
+
+    // 放大镜和区域颜色统计面板, 固定在屏幕右上角; 放大倍数为0时不显示
+    private int mLoupeZoom;
+    @NonNull
+    private final Rect mLoupeBounds = new Rect();
+    @NonNull
+    private final Rect mLoupeRegion = new Rect();
+    @NonNull
+    private final Rect mLoupeSrc = new Rect();
+    @NonNull
+    private final Rect mLoupeDst = new Rect();
+    @SuppressWarnings("NotNullFieldNotInitialized")
+    @NonNull
+    private Paint mLoupePaint;
+    @Nullable
+    private RegionColorStats mRegionStats;
+    @NonNull
+    private final Rect mStatsRegionBounds = new Rect();
+    @NonNull
+    private final CharTextBuffer[] mStatsLines = {new CharTextBuffer(48), new CharTextBuffer(48),
+            new CharTextBuffer(48)};
+    @NonNull
+    private final float[] mHistogramLines = new float[RegionColorStats.HISTOGRAM_SIZE * 4];
+
     public DebugToolView(Context context) {
         super(context);
         init(null, 0);
@@ -65,6 +191,10 @@ public class DebugToolView extends View implements IDebugView {
         mTextPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
         mTextPaint.setTextAlign(Paint.Align.LEFT);
 
+        mCursorTextPaint = new TextPaint(mTextPaint);
+        mCursorTextPaint.setColor(Color.WHITE);
+        mCursorTextPaint.setTextSize(CURSOR_TEXT_SIZE);
+
         mCursorPaint = new Paint();
         mCursorPaint.setColor(Color.RED);
         mCursorPaint.setStrokeWidth(1.0f);
@@ -76,6 +206,21 @@ public class DebugToolView extends View implements IDebugView {
         mFocusedViewHighlightPaint = new Paint();
         mFocusedViewHighlightPaint.setStrokeWidth(1.0f);
         mFocusedViewHighlightPaint.setStyle(Paint.Style.STROKE);
+
+        mProfilePanelPaint = new Paint();
+        mProfilePanelPaint.setColor(PROFILE_PANEL_COLOR);
+        mProfilePanelPaint.setStyle(Paint.Style.FILL);
+
+        mScratchPaint = new Paint();
+        mScratchPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
+
+        for (int i = 0; i < mHeatmapLabels.length; i++) {
+            mHeatmapLabels[i] = new CharTextBuffer(96);
+        }
+
+        // 放大时不做插值, 每个屏幕像素显示为一个方块
+        mLoupePaint = new Paint();
+        mLoupePaint.setFilterBitmap(false);
     }
 
     public DebugToolView(Context context, AttributeSet attrs) {
@@ -100,74 +245,481 @@ public class DebugToolView extends View implements IDebugView {
         mOriginY = (mBottom - mTop) / 2;
         mCursorX=mOriginX;
         mCursorY=mOriginY;
+
+        // 信息文字的位置与mRight有关
+        updateHighlightLayout();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mViewDebugger != null) {
+            mViewDebugger.onDebugViewSizeChanged();
+        }
     }
 
     // Android Framework 传递的参数 canvas 一定是非空
     @Override
     protected void onDraw(@SuppressWarnings("NullableProblems") @NonNull Canvas canvas) {
+        long drawStart = mFrameMeter != null ? System.nanoTime() : 0;
         super.onDraw(canvas);
 
+        if (mAppliedPropertiesGeneration != mProperties.getGeneration()) {
+            applyProperties();
+        }
+
+        // 只有被invalidate的区域需要重绘, 与该区域不相交的高亮直接跳过
+        if (!canvas.getClipBounds(mClipBounds)) {
+            return;
+        }
+
         // draw cursor line
         canvas.drawLine(0, mCursorY, getRight(), mCursorY, mCursorPaint);
         canvas.drawLine(mCursorX, 0, mCursorX, getBottom(), mCursorPaint);
 
         // draw cursor's location (x,y)
-        String debugInfo = "(" + mCursorX + ", " + mCursorY + ")";
+        formatCursorInfo();
+        mCursorInfo.draw(canvas, 0, 50 + CURSOR_TEXT_SIZE, mCursorTextPaint);
+        getCursorInfoBounds(mCursorInfoBounds);
+
+        if (mFocusGraph != null) {
+            drawFocusGraph(canvas, mFocusGraph);
+        }
+        if (mChangeTracker != null) {
+            drawHierarchyChanges(canvas, mChangeTracker);
+        }
+        if (mHeatmap != null) {
+            drawLayoutHeatmap(canvas, mHeatmap);
+        }
+
+        // draw view's info & bound box
+        if (!mViewInfo.isEmpty() && Rect.intersects(mClipBounds, mViewHighlightBounds)) {
+            mTextPaint.setColor(mViewHighlightPaint.getColor());
+            canvas.drawText(mViewInfo, mViewInfoLocation.x, mViewInfoLocation.y, mTextPaint);
+            if (mHasViewQuad) {
+                canvas.drawLines(mViewQuadLines, 0, mViewQuadLines.length, mViewHighlightPaint);
+            } else {
+                canvas.drawRect(mViewBounds, mViewHighlightPaint);
+            }
+        }
+
+        // draw focused view's info & bound box
+        if (!mFocusedViewInfo.isEmpty() && Rect.intersects(mClipBounds, mFocusedViewHighlightBounds)) {
+            mTextPaint.setColor(mFocusedViewHighlightPaint.getColor());
+            canvas.drawText(mFocusedViewInfo, mFocusedViewInfoLocation.x, mFocusedViewInfoLocation.y, mTextPaint);
+            if (mHasFocusedViewQuad) {
+                canvas.drawLines(mFocusedViewQuadLines, 0, mFocusedViewQuadLines.length, mFocusedViewHighlightPaint);
+            } else {
+                canvas.drawRect(mFocusedViewBounds, mFocusedViewHighlightPaint);
+            }
+        }
+
+        if (!mProfileLines.isEmpty() && Rect.intersects(mClipBounds, mProfileBounds)) {
+            drawProfile(canvas);
+        }
+
+        if (mRegionStats != null && Rect.intersects(mClipBounds, mStatsRegionBounds)) {
+            mScratchPaint.setStyle(Paint.Style.STROKE);
+            mScratchPaint.setStrokeWidth(1.0f);
+            mScratchPaint.setColor(STATS_REGION_COLOR);
+            canvas.drawRect(mRegionStats.getRegion(), mScratchPaint);
+        }
+        if (mLoupeZoom > 0 && Rect.intersects(mClipBounds, mLoupeBounds)) {
+            drawLoupe(canvas);
+        }
+
+        if (mFrameMeter != null) {
+            if (Rect.intersects(mClipBounds, mFrameMeterBounds)) {
+                drawFrameMeter(canvas);
+            }
+            mFrameMeter.onOverlayDrawn(System.nanoTime() - drawStart);
+        }
+    }
+
+    private void drawFrameMeter(@NonNull Canvas canvas) {
+        canvas.drawRect(mFrameMeterBounds, mProfilePanelPaint);
+        float baseline = mFrameMeterBounds.top - mCursorTextPaint.ascent();
+        float lineHeight = mCursorTextPaint.descent() - mCursorTextPaint.ascent();
+        for (CharTextBuffer line : mFrameMeterLines) {
+            line.draw(canvas, 0, baseline, mCursorTextPaint);
+            baseline += lineHeight;
+        }
+    }
+
+    private void drawLoupe(@NonNull Canvas canvas) {
+        canvas.drawRect(mLoupeBounds, mProfilePanelPaint);
+        int zoom = mLoupeZoom;
+        int imageLeft = mLoupeBounds.left + LOUPE_PADDING;
+        int imageTop = mLoupeBounds.top + LOUPE_PADDING;
+        // 光标所在的像素位于放大图中心
+        int size = ViewDebugger.LOUPE_SIZE / zoom;
+        int regionLeft = mCursorX - size / 2;
+        int regionTop = mCursorY - size / 2;
+        mLoupeRegion.set(regionLeft, regionTop, regionLeft + size, regionTop + size);
+        Bitmap bitmap = mViewDebugger.getScreenRegion(mLoupeRegion, mLoupeSrc);
+        if (bitmap != null) {
+            // 截取范围之外的部分留空
+            mLoupeDst.set(imageLeft + (mLoupeRegion.left - regionLeft) * zoom,
+                    imageTop + (mLoupeRegion.top - regionTop) * zoom,
+                    imageLeft + (mLoupeRegion.right - regionLeft) * zoom,
+                    imageTop + (mLoupeRegion.bottom - regionTop) * zoom);
+            canvas.drawBitmap(bitmap, mLoupeSrc, mLoupeDst, mLoupePaint);
+        }
+
+        Paint paint = mScratchPaint;
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(1.0f);
+        paint.setColor(Color.GRAY);
+        canvas.drawRect(imageLeft, imageTop, imageLeft + size * zoom, imageTop + size * zoom, paint);
+        int centerLeft = imageLeft + (size / 2) * zoom;
+        int centerTop = imageTop + (size / 2) * zoom;
+        paint.setColor(Color.RED);
+        canvas.drawRect(centerLeft, centerTop, centerLeft + zoom, centerTop + zoom, paint);
+
+        RegionColorStats stats = mRegionStats;
+        if (stats == null) {
+            return;
+        }
+        mTextPaint.setColor(Color.WHITE);
+        int lineHeight = (int) Math.ceil(mTextPaint.descent() - mTextPaint.ascent());
+        float baseline = imageTop + ViewDebugger.LOUPE_SIZE + LOUPE_PADDING - mTextPaint.ascent();
+        for (CharTextBuffer line : mStatsLines) {
+            line.draw(canvas, imageLeft, baseline, mTextPaint);
+            baseline += lineHeight;
+        }
+
+        // 亮度直方图, 每个亮度值一条竖线, 高度按最大值归一化
+        int histogramBottom = mLoupeBounds.bottom - LOUPE_PADDING;
+        int[] histogram = stats.getHistogram();
+        int max = Math.max(1, stats.getHistogramMax());
+        int lineCount = 0;
+        for (int bin = 0; bin < RegionColorStats.HISTOGRAM_SIZE; bin++) {
+            if (histogram[bin] == 0) {
+                continue;
+            }
+            float x = imageLeft + bin + 0.5f;
+            mHistogramLines[lineCount++] = x;
+            mHistogramLines[lineCount++] = histogramBottom;
+            mHistogramLines[lineCount++] = x;
+            mHistogramLines[lineCount++] = histogramBottom
+                    - Math.max(1f, (float) HISTOGRAM_HEIGHT * histogram[bin] / max);
+        }
+        paint.setColor(Color.WHITE);
+        canvas.drawLines(mHistogramLines, 0, lineCount, paint);
+    }
+
+    private void layoutLoupe() {
+        if (mLoupeZoom == 0) {
+            mLoupeBounds.setEmpty();
+            return;
+        }
+
+        int lineHeight = (int) Math.ceil(mTextPaint.descent() - mTextPaint.ascent());
+        int width = ViewDebugger.LOUPE_SIZE + LOUPE_PADDING * 2;
+        int height = LOUPE_PADDING + ViewDebugger.LOUPE_SIZE + LOUPE_PADDING + lineHeight * mStatsLines.length
+                + LOUPE_PADDING + HISTOGRAM_HEIGHT + LOUPE_PADDING;
+        int left = Math.max(0, getWidth() - LOUPE_MARGIN - width);
+        mLoupeBounds.set(left, LOUPE_MARGIN, left + width, LOUPE_MARGIN + height);
+    }
+
+    private void drawFocusGraph(@NonNull Canvas canvas, @NonNull FocusGraph graph) {
+        Paint paint = mScratchPaint;
+        for (int i = 0; i < graph.getCount(); i++) {
+            int left = graph.getLeft(i);
+            int top = graph.getTop(i);
+            int right = graph.getRight(i);
+            int bottom = graph.getBottom(i);
+            if (!mClipBounds.intersects(left - 2, top - 2, right + 2, bottom + 2)) {
+                continue;
+            }
+
+            int flags = graph.getFlags(i);
+            if ((flags & FocusGraph.FLAG_UNREACHABLE) != 0) {
+                paint.setStyle(Paint.Style.FILL);
+                paint.setColor(FOCUS_UNREACHABLE_COLOR);
+                canvas.drawRect(left, top, right, bottom, paint);
+            }
+            paint.setStyle(Paint.Style.STROKE);
+            if ((flags & FocusGraph.FLAG_TRAP) != 0) {
+                paint.setColor(FOCUS_TRAP_COLOR);
+                paint.setStrokeWidth(3.0f);
+            } else {
+                paint.setColor(FOCUS_NODE_COLOR);
+                paint.setStrokeWidth((flags & FocusGraph.FLAG_FOCUSED) != 0 ? 3.0f : 1.0f);
+            }
+            canvas.drawRect(left, top, right, bottom, paint);
+        }
+
+        paint.setStrokeWidth(2.0f);
+        paint.setColor(FOCUS_EDGE_COLOR);
+        canvas.drawLines(graph.getSymmetricLines(), 0, graph.getSymmetricLineCount(), paint);
+        paint.setColor(FOCUS_ASYMMETRIC_EDGE_COLOR);
+        canvas.drawLines(graph.getAsymmetricLines(), 0, graph.getAsymmetricLineCount(), paint);
+
+        mFocusGraphSummary.draw(canvas, 0, getHeight() - mCursorTextPaint.descent(), mCursorTextPaint);
+    }
+
+    private void drawHierarchyChanges(@NonNull Canvas canvas, @NonNull HierarchyChangeTracker tracker) {
+        long elapsed = SystemClock.uptimeMillis() - mChangesShownTime;
+        if (elapsed < CHANGE_FLASH_MS) {
+            Paint paint = mScratchPaint;
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(2.0f);
+            int alpha = (int) (255 * (CHANGE_FLASH_MS - elapsed) / CHANGE_FLASH_MS);
+            for (int i = 0; i < tracker.getCount(); i++) {
+                int left = tracker.getLeft(i);
+                int top = tracker.getTop(i);
+                int right = tracker.getRight(i);
+                int bottom = tracker.getBottom(i);
+                if (!mClipBounds.intersects(left - 2, top - 2, right + 2, bottom + 2)) {
+                    continue;
+                }
+
+                switch (tracker.getType(i)) {
+                    case HierarchyChangeTracker.TYPE_ADDED:
+                        paint.setColor(CHANGE_ADDED_COLOR);
+                        break;
+                    case HierarchyChangeTracker.TYPE_REMOVED:
+                        paint.setColor(CHANGE_REMOVED_COLOR);
+                        break;
+                    default:
+                        paint.setColor(CHANGE_MOVED_COLOR);
+                        break;
+                }
+                paint.setAlpha(alpha);
+                canvas.drawRect(left, top, right, bottom, paint);
+                // 连续多次布局都在变化的View标出次数
+                int streak = tracker.getStreak(i);
+                if (streak > 1) {
+                    mTextPaint.setColor(paint.getColor());
+                    mChangeLabel.clear().append('x').append(streak)
+                            .draw(canvas, left + 2, top - mTextPaint.ascent(), mTextPaint);
+                }
+            }
+            // 淡出期间每帧重绘
+            postInvalidateOnAnimation();
+        }
+
+        // 与焦点导航图同时显示时放在其统计文字上面
+        float baseline = getHeight() - mCursorTextPaint.descent();
+        if (mFocusGraph != null) {
+            baseline += mCursorTextPaint.ascent() - mCursorTextPaint.descent();
+        }
+        mChangeSummary.draw(canvas, 0, baseline, mCursorTextPaint);
+    }
+
+    private void drawLayoutHeatmap(@NonNull Canvas canvas, @NonNull LayoutHeatmap heatmap) {
+        Paint paint = mScratchPaint;
+        paint.setStrokeWidth(2.0f);
+        float rateScale = 1000f / Math.max(1, heatmap.getWindowMs());
+        // 从冷到热绘制, 最热的View在最上面
+        for (int i = heatmap.getCount() - 1; i >= 0; i--) {
+            int left = heatmap.getLeft(i);
+            int top = heatmap.getTop(i);
+            int right = heatmap.getRight(i);
+            int bottom = heatmap.getBottom(i);
+            if (!mClipBounds.intersects(left - 2, top - 2, right + 2, bottom + 2)) {
+                continue;
+            }
+
+            float rate = (heatmap.getLayoutCount(i) + heatmap.getDrawCount(i)) * rateScale;
+            float heat = Math.min(1f, rate / HEAT_FULL_RATE);
+            int color = heatColor(heat);
+            paint.setStyle(Paint.Style.FILL);
+            paint.setColor(color);
+            paint.setAlpha(0x30 + (int) (0x70 * heat));
+            canvas.drawRect(left, top, right, bottom, paint);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setColor(color);
+            canvas.drawRect(left, top, right, bottom, paint);
+        }
+
+        for (int i = 0; i < mHeatmapLabelCount; i++) {
+            CharTextBuffer label = mHeatmapLabels[i];
+            float x = heatmap.getLeft(i) + 2;
+            float y = heatmap.getTop(i) - mTextPaint.ascent();
+            canvas.drawRect(x, heatmap.getTop(i), x + label.measure(mTextPaint), y + mTextPaint.descent(),
+                    mProfilePanelPaint);
+            mTextPaint.setColor(Color.WHITE);
+            label.draw(canvas, x, y, mTextPaint);
+        }
+
+        // 放在焦点导航图和变化跟踪的统计文字上面
+        float baseline = getHeight() - mCursorTextPaint.descent();
+        int linesBelow = (mFocusGraph != null ? 1 : 0) + (mChangeTracker != null ? 1 : 0);
+        baseline += linesBelow * (mCursorTextPaint.ascent() - mCursorTextPaint.descent());
+        mHeatmapSummary.draw(canvas, 0, baseline, mCursorTextPaint);
+    }
+
+    // 0为蓝色, 0.5为黄色, 1为红色
+    private static int heatColor(float heat) {
+        if (heat <= 0f) {
+            return HEAT_COLD_COLOR;
+        }
+        int r;
+        int g;
+        int b;
+        if (heat < 0.5f) {
+            r = (int) (510 * heat);
+            g = r;
+            b = (int) (255 * (1f - 2 * heat));
+        } else {
+            r = 255;
+            g = (int) (255 * (2f - 2 * heat));
+            b = 0;
+        }
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    private void drawProfile(@NonNull Canvas canvas) {
+        canvas.drawRect(mProfileBounds, mProfilePanelPaint);
+        mTextPaint.setColor(Color.WHITE);
+        int x = mProfileBounds.left + PROFILE_PANEL_PADDING;
+        int baseline = mProfileBounds.top + PROFILE_PANEL_PADDING - (int) Math.floor(mTextPaint.ascent());
+        for (int i = 0; i < mProfileLines.size(); i++) {
+            canvas.drawText(mProfileLines.get(i), x, baseline, mTextPaint);
+            baseline += mProfileLineHeight;
+        }
+    }
+
+    private void formatCursorInfo() {
         // 由于DebugToolView一定是全屏的View, 因此mCursorX, mCursorY就是屏幕坐标, 不需要转换
-        Integer pixelColor = mViewDebugger.getRgbOfScreenPixel(mCursorX, mCursorY);
-        if (pixelColor != null) {
-            debugInfo += String.format("  #%06X", (pixelColor & 0xFFFFFF));
+        int pixelColor = mViewDebugger.getRgbOfScreenPixel(mCursorX, mCursorY);
+        CursorReadout.format(mCursorInfo, mCursorX, mCursorY, pixelColor, mCursorJumpDistance);
+    }
+
+    private void getCursorInfoBounds(@NonNull Rect outBounds) {
+        int baseline = 50 + CURSOR_TEXT_SIZE;
+        outBounds.set(0, baseline + (int) Math.floor(mCursorTextPaint.ascent()),
+                (int) Math.ceil(mCursorInfo.measure(mCursorTextPaint)) + 1,
+                baseline + (int) Math.ceil(mCursorTextPaint.descent()) + 1);
+    }
+
+    /**
+     * 光标移动后只重绘移动了的十字线(旧位置和新位置)以及光标信息文字.
+     */
+    private void invalidateCursor(int oldX, int oldY) {
+        // 放大镜的内容跟随光标
+        invalidateRect(mLoupeBounds);
+        if (oldX != mCursorX) {
+            invalidate(oldX - 1, 0, oldX + 2, getHeight());
+            invalidate(mCursorX - 1, 0, mCursorX + 2, getHeight());
+        }
+        if (oldY != mCursorY) {
+            invalidate(0, oldY - 1, getWidth(), oldY + 2);
+            invalidate(0, mCursorY - 1, getWidth(), mCursorY + 2);
         }
 
-        TextPaint largeTextPaint = new TextPaint(mTextPaint);
-        largeTextPaint.setColor(Color.WHITE);
-        largeTextPaint.setTextSize(CURSOR_TEXT_SIZE);
-        canvas.drawText(debugInfo, 0, 50+CURSOR_TEXT_SIZE, largeTextPaint);
+        mDirtyRect.set(mCursorInfoBounds);
+        formatCursorInfo();
+        getCursorInfoBounds(mCursorInfoBounds);
+        mDirtyRect.union(mCursorInfoBounds);
+        invalidateRect(mDirtyRect);
+    }
 
-        mTextPaint.setTextSize(getViewInfoTextSize());
+    // 注意: 开启硬件加速时 invalidate(Rect) 等同于 invalidate(), 局部重绘只对软件绘制有效
+    private void invalidateRect(@NonNull Rect dirty) {
+        if (!dirty.isEmpty()) {
+            invalidate(dirty);
+        }
+    }
 
-        // draw view's info & bound box
-        if (!mViewInfo.isEmpty()) {
-            mTextPaint.setColor(getHighlightColorOfSelectedView());
-            int viewInfoWidth = (int) mTextPaint.measureText(mViewInfo);
-            Point viewInfoLocation = getViewInfoLocation(mViewBounds, getViewInfoTextSize(), viewInfoWidth);
-            canvas.drawText(mViewInfo, viewInfoLocation.x, viewInfoLocation.y, mTextPaint);
-            mViewHighlightPaint.setColor(getHighlightColorOfSelectedView());
-            canvas.drawRect(mViewBounds, mViewHighlightPaint);
+    // 高亮框和信息文字的位置只在高亮内容、字号或布局变化时计算, 不在每帧计算
+    private void updateHighlightLayout() {
+        layoutHighlight(mViewBounds, mViewInfo, mViewInfoWidth, mViewInfoLocation, mViewHighlightBounds);
+        layoutHighlight(mFocusedViewBounds, mFocusedViewInfo, mFocusedViewInfoWidth, mFocusedViewInfoLocation,
+                mFocusedViewHighlightBounds);
+        layoutProfile();
+        layoutLoupe();
+    }
+
+    private void layoutProfile() {
+        if (mProfileLines.isEmpty()) {
+            mProfileBounds.setEmpty();
+            return;
         }
 
-        // draw focused view's info & bound box
-        if (!mFocusedViewInfo.isEmpty()) {
-            mTextPaint.setColor(getHighlightColorOfFocusedView());
-            int viewInfoWidth = (int) mTextPaint.measureText(mFocusedViewInfo);
-            Point viewInfoLocation = getViewInfoLocation(mFocusedViewBounds, getViewInfoTextSize(), viewInfoWidth);
-            canvas.drawText(mFocusedViewInfo, viewInfoLocation.x, viewInfoLocation.y, mTextPaint);
-            mFocusedViewHighlightPaint.setColor(getHighlightColorOfFocusedView());
-            canvas.drawRect(mFocusedViewBounds, mFocusedViewHighlightPaint);
+        int textWidth = 0;
+        for (int i = 0; i < mProfileLines.size(); i++) {
+            textWidth = Math.max(textWidth, (int) Math.ceil(mTextPaint.measureText(mProfileLines.get(i))));
+        }
+        mProfileLineHeight = (int) Math.ceil(mTextPaint.descent() - mTextPaint.ascent());
+        int width = textWidth + PROFILE_PANEL_PADDING * 2;
+        int height = mProfileLineHeight * mProfileLines.size() + PROFILE_PANEL_PADDING * 2;
+
+        int left;
+        int top;
+        if (mViewHighlightBounds.isEmpty()) {
+            // 没有选中View时显示在光标坐标文字下面
+            left = 0;
+            top = 50 + CURSOR_TEXT_SIZE * 2;
+        } else {
+            left = mViewBounds.left;
+            top = mViewHighlightBounds.bottom;
+            if (top + height > getHeight() && mViewHighlightBounds.top - height >= 0) {
+                top = mViewHighlightBounds.top - height;
+            }
         }
+        left = Math.max(0, Math.min(left, getWidth() - width));
+        top = Math.max(0, Math.min(top, getHeight() - height));
+        mProfileBounds.set(left, top, left + width, top + height);
     }
 
-    @NonNull
-    private Point getViewInfoLocation(@NonNull Rect viewBounds, int textSize, int textWidth) {
-        int top = viewBounds.top < textSize ? viewBounds.top + textSize : viewBounds.top;
-        int left = viewBounds.left + textWidth < mRight ? viewBounds.left : mRight - textWidth;
-        return new Point(left, top);
+    private void layoutHighlight(@NonNull Rect viewBounds, @NonNull String info, int infoWidth,
+                                 @NonNull Point outInfoLocation, @NonNull Rect outHighlightBounds) {
+        if (info.isEmpty()) {
+            outHighlightBounds.setEmpty();
+            return;
+        }
+
+        getViewInfoLocation(viewBounds, mViewInfoTextSize, infoWidth, outInfoLocation);
+        // 矩形边框的线宽为1, 向外扩展2个像素以包含抗锯齿的部分
+        outHighlightBounds.set(viewBounds);
+        outHighlightBounds.inset(-2, -2);
+        outHighlightBounds.union(outInfoLocation.x, outInfoLocation.y + (int) Math.floor(mTextPaint.ascent()),
+                outInfoLocation.x + infoWidth + 1, outInfoLocation.y + (int) Math.ceil(mTextPaint.descent()) + 1);
+    }
+
+    // 属性值已被DebugToolProperties缓存, 这里只是把缓存值配置到Paint上, 不涉及反射
+    private void applyProperties() {
+        mAppliedPropertiesGeneration = mProperties.getGeneration();
+        mViewInfoTextSize = mProperties.getViewInfoTextSize();
+        mTextPaint.setTextSize(mViewInfoTextSize);
+        mViewHighlightPaint.setColor(mProperties.getHighlightColorOfSelectedView());
+        mFocusedViewHighlightPaint.setColor(mProperties.getHighlightColorOfFocusedView());
+        mViewInfoWidth = (int) mTextPaint.measureText(mViewInfo);
+        mFocusedViewInfoWidth = (int) mTextPaint.measureText(mFocusedViewInfo);
+        updateHighlightLayout();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mProperties.addListener(this);
     }
 
-    private int getViewInfoTextSize() {
-        return (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_VIEW_INFO_TEXT_SIZE, DEFAULT_VIEW_INFO_TEXT_SIZE);
+    @Override
+    protected void onDetachedFromWindow() {
+        mProperties.removeListener(this);
+        super.onDetachedFromWindow();
     }
 
-    private int getHighlightColorOfSelectedView() {
-        return (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_SELECTED_VIEW, SELECTED_VIEW_DEFAULT_HIGHLIGHT_COLOR);
+    @Override
+    public void onDebugToolPropertiesChanged() {
+        // 字号变化会影响所有文字的位置, 重绘整个View
+        invalidate();
     }
 
-    private int getHighlightColorOfFocusedView() {
-        return (int) SystemPropertiesUtil.getLong(SYS_PROP_KEY_HIGHLIGHT_COLOR_OF_FOCUSED_VIEW, FOCUSED_VIEW_DEFAULT_HIGHLIGHT_COLOR);
+    private void getViewInfoLocation(@NonNull Rect viewBounds, int textSize, int textWidth, @NonNull Point outLocation) {
+        int top = viewBounds.top < textSize ? viewBounds.top + textSize : viewBounds.top;
+        int left = viewBounds.left + textWidth < mRight ? viewBounds.left : mRight - textWidth;
+        outLocation.set(left, top);
     }
 
     @Override
     public void moveCursor(int xOff, int yOff) {
+        int oldX = mCursorX;
+        int oldY = mCursorY;
         mCursorX += xOff;
         mCursorY += yOff;
         if (mCursorX < mLeft) {
@@ -181,7 +733,7 @@ public class DebugToolView extends View implements IDebugView {
             mCursorY = mBottom-1;
         }
 
-        invalidate();
+        invalidateCursor(oldX, oldY);
     }
 
     @Override
@@ -200,41 +752,214 @@ public class DebugToolView extends View implements IDebugView {
         }
 
         if (mCursorX != x || mCursorY != y) {
+            int oldX = mCursorX;
+            int oldY = mCursorY;
             mCursorX = x;
             mCursorY = y;
-            invalidate();
+            invalidateCursor(oldX, oldY);
         }
     }
 
     @Override
     public void moveToOrigin() {
+        int oldX = mCursorX;
+        int oldY = mCursorY;
         mCursorX=mOriginX;
         mCursorY=mOriginY;
 
-        invalidate();
+        invalidateCursor(oldX, oldY);
     }
 
     @Override
-    public void hightlightView(@Nullable  Rect viewBounds, @NonNull String info) {
-        mViewBounds = new Rect(viewBounds);
+    public void hightlightView(@Nullable Rect viewBounds, @Nullable float[] quad, @NonNull String info) {
+        invalidateRect(mViewHighlightBounds);
+        setBounds(mViewBounds, viewBounds);
+        mHasViewQuad = setQuadLines(mViewQuadLines, viewBounds != null ? quad : null);
         mViewInfo = info;
+        mViewInfoWidth = (int) mTextPaint.measureText(info);
+        layoutHighlight(mViewBounds, mViewInfo, mViewInfoWidth, mViewInfoLocation, mViewHighlightBounds);
+        invalidateRect(mViewHighlightBounds);
+
+        // 统计面板跟随选中View的高亮框
+        if (!mProfileLines.isEmpty()) {
+            invalidateRect(mProfileBounds);
+            layoutProfile();
+            invalidateRect(mProfileBounds);
+        }
+    }
+
+    @Override
+    public void hightlightFocusedView(@Nullable Rect viewBounds, @Nullable float[] quad, @NonNull String info) {
+        invalidateRect(mFocusedViewHighlightBounds);
+        setBounds(mFocusedViewBounds, viewBounds);
+        mHasFocusedViewQuad = setQuadLines(mFocusedViewQuadLines, viewBounds != null ? quad : null);
+        mFocusedViewInfo = info;
+        mFocusedViewInfoWidth = (int) mTextPaint.measureText(info);
+        layoutHighlight(mFocusedViewBounds, mFocusedViewInfo, mFocusedViewInfoWidth, mFocusedViewInfoLocation,
+                mFocusedViewHighlightBounds);
+        invalidateRect(mFocusedViewHighlightBounds);
+    }
+
+    @Override
+    public void showProfile(@NonNull List<String> lines) {
+        invalidateRect(mProfileBounds);
+        mProfileLines.clear();
+        mProfileLines.addAll(lines);
+        layoutProfile();
+        invalidateRect(mProfileBounds);
+    }
+
+    @Override
+    public void showCursorJumpDistance(int distance) {
+        if (mCursorJumpDistance != distance) {
+            mCursorJumpDistance = distance;
+            invalidateCursor(mCursorX, mCursorY);
+        }
+    }
 
+    @Override
+    public void showFocusGraph(@Nullable FocusGraph graph) {
+        mFocusGraph = graph;
+        if (graph != null) {
+            mFocusGraphSummary.clear().append("focus: ").append(graph.getCount()).append(" views, ")
+                    .append(graph.getUnreachableCount()).append(" unreachable, ")
+                    .append(graph.getTrapCount()).append(" trapped, ")
+                    .append(graph.getAsymmetricCount()).append(" asymmetric");
+        }
         invalidate();
     }
 
     @Override
-    public void hightlightFocusedView(@Nullable  Rect viewBounds, @NonNull String info) {
-        mFocusedViewBounds = new Rect(viewBounds);
-        mFocusedViewInfo = info;
+    public void showLoupe(int zoom) {
+        invalidateRect(mLoupeBounds);
+        mLoupeZoom = zoom;
+        layoutLoupe();
+        invalidateRect(mLoupeBounds);
+    }
+
+    @Override
+    public void showRegionStats(@Nullable RegionColorStats stats) {
+        invalidateRect(mStatsRegionBounds);
+        mRegionStats = stats;
+        if (stats != null) {
+            mStatsRegionBounds.set(stats.getRegion());
+            mStatsRegionBounds.inset(-2, -2);
+            mStatsLines[0].clear().append('x').append(mLoupeZoom).append("  avg #").appendHex(stats.getAverageColor(), 6)
+                    .append("  L").append(RegionColorStats.luma(stats.getAverageColor()));
+            mStatsLines[1].clear().append("min #").appendHex(stats.getMinColor(), 6).append(" L").append(stats.getMinLuma())
+                    .append("  max #").appendHex(stats.getMaxColor(), 6).append(" L").append(stats.getMaxLuma());
+            mStatsLines[2].clear().append(stats.getPixelCount()).append(" px  ")
+                    .append(stats.getComputeNanos() / 1000).append("us/").append(stats.getStripCount()).append(" strips");
+        } else {
+            mStatsRegionBounds.setEmpty();
+        }
+        invalidateRect(mStatsRegionBounds);
+        invalidateRect(mLoupeBounds);
+    }
+
+    @Override
+    public void showHierarchyChanges(@Nullable HierarchyChangeTracker tracker) {
+        mChangeTracker = tracker;
+        if (tracker != null) {
+            mChangesShownTime = SystemClock.uptimeMillis();
+            mChangeSummary.clear().append("changes: +").append(tracker.getAddedViewCount())
+                    .append(" -").append(tracker.getRemovedViewCount())
+                    .append(" ~").append(tracker.getChangedViewCount())
+                    .append(" (layout #").append(tracker.getLayoutCount()).append(")  snapshot ")
+                    .append(tracker.getPipeline().getLastCaptureNanos() / 1000).append("us/")
+                    .append(tracker.getPipeline().getLastCaptureCount()).append(" views, max ")
+                    .append(tracker.getPipeline().getMaxCaptureNanos() / 1000).append("us");
+        }
+        invalidate();
+    }
 
+    @Override
+    public void showLayoutHeatmap(@Nullable LayoutHeatmap heatmap) {
+        mHeatmap = heatmap;
+        mHeatmapLabelCount = 0;
+        if (heatmap != null) {
+            int window = Math.max(1, heatmap.getWindowMs());
+            mHeatmapSummary.clear().append("heatmap: ").append(heatmap.getCount()).append(" views  layout ")
+                    .append(heatmap.getTotalLayoutCount() * 1000L / window).append("/s  draw ")
+                    .append(heatmap.getTotalDrawCount() * 1000L / window).append("/s (")
+                    .append(window).append("ms)");
+            // 标签和次数只在统计更新时拼接, 不在每帧拼接
+            int labels = Math.min(heatmap.getCount(), mHeatmapLabels.length);
+            for (int i = 0; i < labels; i++) {
+                String label = heatmap.getLabel(i);
+                mHeatmapLabels[i].clear().append(label != null ? label : "").append("  L")
+                        .append(heatmap.getLayoutCount(i) * 1000L / window).append(" D")
+                        .append(heatmap.getDrawCount(i) * 1000L / window).append("/s");
+            }
+            mHeatmapLabelCount = labels;
+        }
         invalidate();
     }
 
+    @Override
+    public void showFrameMeter(@Nullable FrameMeter meter) {
+        invalidateRect(mFrameMeterBounds);
+        mFrameMeter = meter;
+        if (meter == null) {
+            mFrameMeterBounds.setEmpty();
+            return;
+        }
+
+        appendTenths(mFrameMeterLines[0].clear(), Math.round(meter.getFps() * 10)).append(" fps  dropped ")
+                .append(meter.getDroppedFrames()).append("/").append(FrameMeter.WINDOW_MS / 1000).append("s  p50 ");
+        appendTenths(mFrameMeterLines[0], meter.getP50Nanos() / 100000).append(" p95 ");
+        appendTenths(mFrameMeterLines[0], meter.getP95Nanos() / 100000).append(" p99 ");
+        appendTenths(mFrameMeterLines[0], meter.getP99Nanos() / 100000).append(" ms");
+        mFrameMeterLines[1].clear().append("meter ").append(meter.getCallbackAverageNanos() / 1000)
+                .append("us/frame  overlay draw ").append(meter.getOverlayDrawAverageNanos() / 1000).append("us");
+
+        // 放在光标坐标的下一行
+        float lineHeight = mCursorTextPaint.descent() - mCursorTextPaint.ascent();
+        int top = 50 + CURSOR_TEXT_SIZE + (int) Math.ceil(mCursorTextPaint.descent()) + 1;
+        float width = Math.max(mFrameMeterLines[0].measure(mCursorTextPaint), mFrameMeterLines[1].measure(mCursorTextPaint));
+        mFrameMeterBounds.set(0, top, (int) Math.ceil(width) + 1, top + (int) Math.ceil(lineHeight * mFrameMeterLines.length));
+        invalidateRect(mFrameMeterBounds);
+    }
+
+    // 一位小数
+    @NonNull
+    private static CharTextBuffer appendTenths(@NonNull CharTextBuffer buffer, long tenths) {
+        return buffer.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    // 把四个角转换为 drawLines() 使用的4条边
+    private static boolean setQuadLines(@NonNull float[] lines, @Nullable float[] quad) {
+        if (quad == null) {
+            return false;
+        }
+        for (int corner = 0; corner < 4; corner++) {
+            int next = (corner + 1) % 4;
+            lines[corner * 4] = quad[corner * 2];
+            lines[corner * 4 + 1] = quad[corner * 2 + 1];
+            lines[corner * 4 + 2] = quad[next * 2];
+            lines[corner * 4 + 3] = quad[next * 2 + 1];
+        }
+        return true;
+    }
+
+    private static void setBounds(@NonNull Rect dst, @Nullable Rect src) {
+        if (src != null) {
+            dst.set(src);
+        } else {
+            dst.setEmpty();
+        }
+    }
+
     @Override
     public @NonNull Point getCursorLocation() {
         return new Point(mCursorX, mCursorY);
     }
 
+    @Override
+    public void getCursorLocation(@NonNull Point out) {
+        out.set(mCursorX, mCursorY);
+    }
+
     @NonNull
     @Override
     public View getView() {
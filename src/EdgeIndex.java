@@ -0,0 +1,94 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * 所有可见 View 的左右边(x坐标)和上下边(y坐标), 分别排序去重后保存在int数组中, 用二分查找得到某个方向上的下一条边.
+ * <p>
+ * 由 {@link ViewSpatialIndex} 在布局或可见性变化后第一次使用时从它的展平数组构建, 每次变化只构建一次.
+ * 边的坐标与 Rect 相同, 右边和下边是矩形外的第一个像素; 只保留在 [0, width) x [0, height) 范围内的边.
+ */
+final class EdgeIndex {
+    static final int NONE = Integer.MIN_VALUE;
+
+    @NonNull
+    private int[] mXs = new int[0];
+    private int mXCount;
+    @NonNull
+    private int[] mYs = new int[0];
+    private int mYCount;
+
+    /**
+     * @param shown 为false的 View 不包括在内
+     */
+    void build(int count, @NonNull int[] left, @NonNull int[] top, @NonNull int[] right, @NonNull int[] bottom,
+               @NonNull boolean[] shown, int width, int height) {
+        if (mXs.length < count * 2) {
+            mXs = new int[count * 2];
+            mYs = new int[count * 2];
+        }
+        mXCount = sortUnique(mXs, left, right, shown, count, width);
+        mYCount = sortUnique(mYs, top, bottom, shown, count, height);
+    }
+
+    private static int sortUnique(@NonNull int[] out, @NonNull int[] starts, @NonNull int[] ends,
+                                  @NonNull boolean[] shown, int count, int limit) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (!shown[i]) {
+                continue;
+            }
+            if (starts[i] >= 0 && starts[i] < limit) {
+                out[n++] = starts[i];
+            }
+            if (ends[i] >= 0 && ends[i] < limit) {
+                out[n++] = ends[i];
+            }
+        }
+        Arrays.sort(out, 0, n);
+
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || out[unique - 1] != out[i]) {
+                out[unique++] = out[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * @return 大于x的最小的竖直边, 没有时返回 {@link #NONE}
+     */
+    int nextX(int x) {
+        return next(mXs, mXCount, x);
+    }
+
+    /**
+     * @return 小于x的最大的竖直边, 没有时返回 {@link #NONE}
+     */
+    int previousX(int x) {
+        return previous(mXs, mXCount, x);
+    }
+
+    int nextY(int y) {
+        return next(mYs, mYCount, y);
+    }
+
+    int previousY(int y) {
+        return previous(mYs, mYCount, y);
+    }
+
+    private static int next(@NonNull int[] edges, int count, int value) {
+        int i = Arrays.binarySearch(edges, 0, count, value);
+        i = i >= 0 ? i + 1 : -i - 1;
+        return i < count ? edges[i] : NONE;
+    }
+
+    private static int previous(@NonNull int[] edges, int count, int value) {
+        int i = Arrays.binarySearch(edges, 0, count, value);
+        i = i >= 0 ? i - 1 : -i - 2;
+        return i >= 0 ? edges[i] : NONE;
+    }
+}
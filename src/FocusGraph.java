@@ -0,0 +1,528 @@
+package com.stv.debug;
+
+import android.os.Handler;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * 整个窗口的焦点导航图: 每个可获焦 View 在上下左右4个方向上 focusSearch() 得到的下一个 View.
+ * <p>
+ * 一次性收集所有可获焦 View 并计算全部的边, 结果缓存到布局或焦点变化为止. 变化后延迟 {@link #RECOMPUTE_DELAY_MS}
+ * 重新计算, 连续的变化(例如列表滚动)只计算一次. 计算完成后做以下检查:
+ * <ul>
+ * <li>不可达: 从当前焦点出发沿导航边无法到达的 View</li>
+ * <li>焦点陷阱: 从当前焦点可以到达、但没有出边的强连通分量(Tarjan 算法), 焦点进入后无法再回到其他可到达的 View</li>
+ * <li>不对称的边: A 向某方向到 B, 但 B 向相反方向不能回到 A</li>
+ * </ul>
+ * 坐标是相对于 overlay(DebugToolView)左上角的坐标, 绘制用的线段在计算时生成, 绘制时不需要再计算.
+ */
+final class FocusGraph implements ViewTreeObserver.OnGlobalLayoutListener,
+        ViewTreeObserver.OnGlobalFocusChangeListener {
+    static final int DIRECTION_COUNT = 4;
+    // 与 DIRECTIONS 的下标对应
+    private static final int[] DIRECTIONS = {View.FOCUS_LEFT, View.FOCUS_UP, View.FOCUS_RIGHT, View.FOCUS_DOWN};
+    private static final int[] OPPOSITE = {2, 3, 0, 1};
+
+    static final int FLAG_UNREACHABLE = 1;
+    static final int FLAG_TRAP = 1 << 1;
+    static final int FLAG_FOCUSED = 1 << 2;
+
+    private static final long RECOMPUTE_DELAY_MS = 100;
+    // 箭头两翼的长度和边两个方向之间的间隔(px)
+    private static final float ARROW_SIZE = 10f;
+    private static final float EDGE_OFFSET = 3f;
+
+    interface Listener {
+        void onFocusGraphUpdated(@NonNull FocusGraph graph);
+    }
+
+    @NonNull
+    private final Listener mListener;
+    @Nullable
+    private ViewGroup mRoot;
+    @Nullable
+    private View mOverlay;
+    @Nullable
+    private ViewTreeObserver mObserver;
+
+    private int mCount;
+    @NonNull
+    private View[] mViews = new View[0];
+    // 相对于overlay的矩形
+    @NonNull
+    private int[] mLeft = new int[0];
+    @NonNull
+    private int[] mTop = new int[0];
+    @NonNull
+    private int[] mRight = new int[0];
+    @NonNull
+    private int[] mBottom = new int[0];
+    // mNext[i * DIRECTION_COUNT + d]: View i 在方向 DIRECTIONS[d] 上的下一个View, 没有或不在本窗口中时为-1
+    @NonNull
+    private int[] mNext = new int[0];
+    @NonNull
+    private int[] mFlags = new int[0];
+
+    private int mUnreachableCount;
+    private int mTrapCount;
+    private int mAsymmetricCount;
+
+    // 每条边4个float(x0, y0, x1, y1), 包括箭头两翼
+    @NonNull
+    private float[] mSymmetricLines = new float[0];
+    private int mSymmetricLineCount;
+    @NonNull
+    private float[] mAsymmetricLines = new float[0];
+    private int mAsymmetricLineCount;
+
+    // Tarjan算法使用的数组, 在各次计算之间复用
+    @NonNull
+    private int[] mSccIndex = new int[0];
+    @NonNull
+    private int[] mSccLow = new int[0];
+    @NonNull
+    private int[] mSccId = new int[0];
+    @NonNull
+    private int[] mSccStack = new int[0];
+    @NonNull
+    private int[] mCallStack = new int[0];
+    @NonNull
+    private int[] mCallEdge = new int[0];
+    @NonNull
+    private boolean[] mOnStack = new boolean[0];
+
+    @NonNull
+    private final ArrayList<View> mFocusables = new ArrayList<>();
+    @NonNull
+    private final IdentityHashMap<View, Integer> mIndexOfView = new IdentityHashMap<>();
+    @NonNull
+    private final int[] mLocation = new int[2];
+
+    @NonNull
+    private final Runnable mRecompute = new Runnable() {
+        @Override
+        public void run() {
+            compute();
+        }
+    };
+
+    FocusGraph(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    boolean isAttached() {
+        return mRoot != null;
+    }
+
+    /**
+     * 开始监听 root 的布局和焦点变化, 并立即计算一次.
+     *
+     * @param overlay 计算结果的坐标相对于该View
+     */
+    void attach(@NonNull ViewGroup root, @NonNull View overlay) {
+        detach();
+
+        mRoot = root;
+        mOverlay = overlay;
+        mObserver = root.getViewTreeObserver();
+        mObserver.addOnGlobalLayoutListener(this);
+        mObserver.addOnGlobalFocusChangeListener(this);
+        compute();
+    }
+
+    void detach() {
+        DebugThreads.getMainHandler().removeCallbacks(mRecompute);
+        if (mRoot == null) {
+            return;
+        }
+
+        ViewTreeObserver observer = mObserver;
+        if (observer == null || !observer.isAlive()) {
+            observer = mRoot.getViewTreeObserver();
+        }
+        observer.removeOnGlobalLayoutListener(this);
+        observer.removeOnGlobalFocusChangeListener(this);
+        mObserver = null;
+        mRoot = null;
+        mOverlay = null;
+
+        for (int i = 0; i < mCount; i++) {
+            mViews[i] = null;
+        }
+        mCount = 0;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        scheduleRecompute();
+    }
+
+    @Override
+    public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+        scheduleRecompute();
+    }
+
+    private void scheduleRecompute() {
+        Handler handler = DebugThreads.getMainHandler();
+        handler.removeCallbacks(mRecompute);
+        handler.postDelayed(mRecompute, RECOMPUTE_DELAY_MS);
+    }
+
+    private void compute() {
+        ViewGroup root = mRoot;
+        View overlay = mOverlay;
+        if (root == null || overlay == null) {
+            return;
+        }
+
+        collectFocusables(root);
+        computeBounds(overlay);
+        computeEdges();
+        computeReachability(root.findFocus());
+        computeTraps();
+        buildLines();
+        mListener.onFocusGraphUpdated(this);
+    }
+
+    private void collectFocusables(@NonNull ViewGroup root) {
+        for (int i = 0; i < mCount; i++) {
+            mViews[i] = null;
+        }
+        mFocusables.clear();
+        mIndexOfView.clear();
+        root.addFocusables(mFocusables, View.FOCUS_DOWN);
+
+        int n = 0;
+        ensureCapacity(mFocusables.size());
+        for (int k = 0; k < mFocusables.size(); k++) {
+            View view = mFocusables.get(k);
+            if (view instanceof IDebugView || mIndexOfView.containsKey(view)) {
+                continue;
+            }
+            mIndexOfView.put(view, n);
+            mViews[n++] = view;
+        }
+        mCount = n;
+        mFocusables.clear();
+    }
+
+    private void computeBounds(@NonNull View overlay) {
+        overlay.getLocationOnScreen(mLocation);
+        int originX = mLocation[0];
+        int originY = mLocation[1];
+        for (int i = 0; i < mCount; i++) {
+            View view = mViews[i];
+            view.getLocationOnScreen(mLocation);
+            mLeft[i] = mLocation[0] - originX;
+            mTop[i] = mLocation[1] - originY;
+            mRight[i] = mLeft[i] + view.getWidth();
+            mBottom[i] = mTop[i] + view.getHeight();
+        }
+    }
+
+    // 与 ViewDebugger.showNextFocusedView() 一样使用 View.focusSearch(), 这样 ViewGroup 对焦点搜索的定制
+    // (例如 RecyclerView) 也会被考虑进去, 结果与实际按键时一致
+    private void computeEdges() {
+        for (int i = 0; i < mCount; i++) {
+            mFlags[i] = mViews[i].isFocused() ? FLAG_FOCUSED : 0;
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                View next = mViews[i].focusSearch(DIRECTIONS[d]);
+                Integer j = next == null ? null : mIndexOfView.get(next);
+                mNext[i * DIRECTION_COUNT + d] = j == null || j == i ? -1 : j;
+            }
+        }
+    }
+
+    // 从当前焦点(没有焦点时从第一个可获焦View)出发做广度优先搜索, mSccStack 临时用作队列
+    private void computeReachability(@Nullable View focused) {
+        mUnreachableCount = 0;
+        if (mCount == 0) {
+            return;
+        }
+
+        Integer start = focused == null ? null : mIndexOfView.get(focused);
+        boolean[] visited = mOnStack;
+        for (int i = 0; i < mCount; i++) {
+            visited[i] = false;
+        }
+        int[] queue = mSccStack;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start == null ? 0 : start;
+        visited[queue[0]] = true;
+        while (head < tail) {
+            int i = queue[head++];
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                int j = mNext[i * DIRECTION_COUNT + d];
+                if (j >= 0 && !visited[j]) {
+                    visited[j] = true;
+                    queue[tail++] = j;
+                }
+            }
+        }
+
+        for (int i = 0; i < mCount; i++) {
+            if (!visited[i]) {
+                mFlags[i] |= FLAG_UNREACHABLE;
+                mUnreachableCount++;
+            }
+        }
+    }
+
+    /**
+     * 非递归的 Tarjan 强连通分量算法. 没有指向其他分量的出边的分量是"汇", 焦点进入汇分量后无法离开.
+     * 只有从当前焦点可以到达(见 {@link #computeReachability(View)})、并且分量之外还有可到达的 View 时,
+     * 汇分量才是焦点陷阱; 没有任何边的分量(孤立的 View)不算陷阱.
+     */
+    private void computeTraps() {
+        mTrapCount = 0;
+        int n = mCount;
+        for (int i = 0; i < n; i++) {
+            mSccIndex[i] = -1;
+            mOnStack[i] = false;
+        }
+
+        int index = 0;
+        int sccCount = 0;
+        int sccTop = 0;
+        for (int s = 0; s < n; s++) {
+            if (mSccIndex[s] >= 0) {
+                continue;
+            }
+            int callTop = 0;
+            mCallStack[callTop] = s;
+            mCallEdge[callTop] = 0;
+            mSccIndex[s] = mSccLow[s] = index++;
+            mSccStack[sccTop++] = s;
+            mOnStack[s] = true;
+
+            while (callTop >= 0) {
+                int v = mCallStack[callTop];
+                if (mCallEdge[callTop] < DIRECTION_COUNT) {
+                    int w = mNext[v * DIRECTION_COUNT + mCallEdge[callTop]++];
+                    if (w < 0) {
+                        continue;
+                    }
+                    if (mSccIndex[w] < 0) {
+                        callTop++;
+                        mCallStack[callTop] = w;
+                        mCallEdge[callTop] = 0;
+                        mSccIndex[w] = mSccLow[w] = index++;
+                        mSccStack[sccTop++] = w;
+                        mOnStack[w] = true;
+                    } else if (mOnStack[w]) {
+                        mSccLow[v] = Math.min(mSccLow[v], mSccIndex[w]);
+                    }
+                    continue;
+                }
+
+                if (mSccLow[v] == mSccIndex[v]) {
+                    int w;
+                    do {
+                        w = mSccStack[--sccTop];
+                        mOnStack[w] = false;
+                        mSccId[w] = sccCount;
+                    } while (w != v);
+                    sccCount++;
+                }
+                callTop--;
+                if (callTop >= 0) {
+                    int parent = mCallStack[callTop];
+                    mSccLow[parent] = Math.min(mSccLow[parent], mSccLow[v]);
+                }
+            }
+        }
+
+        if (sccCount <= 1) {
+            return;
+        }
+
+        // 复用数组: mSccLow 为"分量是否有出边", mCallEdge 为"分量是否有边(出边或入边)", mSccIndex 为分量的 View 数
+        for (int c = 0; c < sccCount; c++) {
+            mSccLow[c] = 0;
+            mCallEdge[c] = 0;
+            mSccIndex[c] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            int c = mSccId[i];
+            mSccIndex[c]++;
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                int j = mNext[i * DIRECTION_COUNT + d];
+                if (j >= 0) {
+                    mCallEdge[c] = 1;
+                    mCallEdge[mSccId[j]] = 1;
+                    if (mSccId[j] != c) {
+                        mSccLow[c] = 1;
+                    }
+                }
+            }
+        }
+        // 汇分量之外的 View 都无法从分量中到达, 因此只要可到达的 View 比分量多, 就有 View 回不去
+        int reachableCount = n - mUnreachableCount;
+        for (int i = 0; i < n; i++) {
+            int c = mSccId[i];
+            if ((mFlags[i] & FLAG_UNREACHABLE) == 0 && mSccLow[c] == 0 && mCallEdge[c] != 0
+                    && mSccIndex[c] < reachableCount) {
+                mFlags[i] |= FLAG_TRAP;
+                mTrapCount++;
+            }
+        }
+    }
+
+    private void buildLines() {
+        mAsymmetricCount = 0;
+        mSymmetricLineCount = 0;
+        mAsymmetricLineCount = 0;
+        int edgeCount = 0;
+        for (int k = 0; k < mCount * DIRECTION_COUNT; k++) {
+            if (mNext[k] >= 0) {
+                edgeCount++;
+            }
+        }
+        // 每条边3条线段: 边本身和箭头两翼
+        int capacity = edgeCount * 3 * 4;
+        if (mSymmetricLines.length < capacity) {
+            mSymmetricLines = new float[capacity];
+            mAsymmetricLines = new float[capacity];
+        }
+
+        for (int i = 0; i < mCount; i++) {
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                int j = mNext[i * DIRECTION_COUNT + d];
+                if (j < 0) {
+                    continue;
+                }
+                if (mNext[j * DIRECTION_COUNT + OPPOSITE[d]] == i) {
+                    mSymmetricLineCount = addArrow(mSymmetricLines, mSymmetricLineCount, i, j);
+                } else {
+                    mAsymmetricCount++;
+                    mAsymmetricLineCount = addArrow(mAsymmetricLines, mAsymmetricLineCount, i, j);
+                }
+            }
+        }
+    }
+
+    // 从i的中心指向j的中心, 向行进方向的右侧偏移一点, 使 A->B 和 B->A 两条边不重叠
+    private int addArrow(@NonNull float[] lines, int offset, int i, int j) {
+        float x0 = (mLeft[i] + mRight[i]) / 2f;
+        float y0 = (mTop[i] + mBottom[i]) / 2f;
+        float x1 = (mLeft[j] + mRight[j]) / 2f;
+        float y1 = (mTop[j] + mBottom[j]) / 2f;
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length < 1f) {
+            return offset;
+        }
+        float ux = dx / length;
+        float uy = dy / length;
+        x0 -= uy * EDGE_OFFSET;
+        y0 += ux * EDGE_OFFSET;
+        x1 -= uy * EDGE_OFFSET;
+        y1 += ux * EDGE_OFFSET;
+
+        offset = putLine(lines, offset, x0, y0, x1, y1);
+        offset = putLine(lines, offset, x1, y1,
+                x1 - (ux - uy) * ARROW_SIZE, y1 - (uy + ux) * ARROW_SIZE);
+        return putLine(lines, offset, x1, y1,
+                x1 - (ux + uy) * ARROW_SIZE, y1 - (uy - ux) * ARROW_SIZE);
+    }
+
+    private static int putLine(@NonNull float[] lines, int offset, float x0, float y0, float x1, float y1) {
+        lines[offset] = x0;
+        lines[offset + 1] = y0;
+        lines[offset + 2] = x1;
+        lines[offset + 3] = y1;
+        return offset + 4;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (mViews.length >= capacity) {
+            return;
+        }
+        capacity = Math.max(capacity, mViews.length * 2);
+        mViews = new View[capacity];
+        mLeft = new int[capacity];
+        mTop = new int[capacity];
+        mRight = new int[capacity];
+        mBottom = new int[capacity];
+        mNext = new int[capacity * DIRECTION_COUNT];
+        mFlags = new int[capacity];
+        mSccIndex = new int[capacity];
+        mSccLow = new int[capacity];
+        mSccId = new int[capacity];
+        mSccStack = new int[capacity];
+        mCallStack = new int[capacity];
+        mCallEdge = new int[capacity];
+        mOnStack = new boolean[capacity];
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    @NonNull
+    View getView(int i) {
+        return mViews[i];
+    }
+
+    int getLeft(int i) {
+        return mLeft[i];
+    }
+
+    int getTop(int i) {
+        return mTop[i];
+    }
+
+    int getRight(int i) {
+        return mRight[i];
+    }
+
+    int getBottom(int i) {
+        return mBottom[i];
+    }
+
+    int getFlags(int i) {
+        return mFlags[i];
+    }
+
+    int getUnreachableCount() {
+        return mUnreachableCount;
+    }
+
+    int getTrapCount() {
+        return mTrapCount;
+    }
+
+    int getAsymmetricCount() {
+        return mAsymmetricCount;
+    }
+
+    /**
+     * 对称的边(包括箭头)的线段, 用于 Canvas.drawLines(lines, 0, count, paint).
+     */
+    @NonNull
+    float[] getSymmetricLines() {
+        return mSymmetricLines;
+    }
+
+    int getSymmetricLineCount() {
+        return mSymmetricLineCount;
+    }
+
+    @NonNull
+    float[] getAsymmetricLines() {
+        return mAsymmetricLines;
+    }
+
+    int getAsymmetricLineCount() {
+        return mAsymmetricLineCount;
+    }
+}
@@ -0,0 +1,175 @@
+package com.stv.debug;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 帧率和掉帧统计: 用 Choreographer 帧回调记录最近 {@link #WINDOW_MS} 内的帧时间({@link FrameStats}),
+ * 每隔 {@link #UPDATE_INTERVAL_MS} 计算一次帧率、掉帧数和帧间隔的 p50/p95/p99.
+ * <p>
+ * 同时统计自身的开销, 用于确认调试工具本身没有造成卡顿: 帧回调中的耗时(包括计算统计结果), 以及 DebugToolView
+ * 每次绘制的耗时(由 {@link #onOverlayDrawn(long)} 报告), 都按最近一个统计周期的平均值显示.
+ */
+final class FrameMeter implements Choreographer.FrameCallback {
+    static final long WINDOW_MS = 5000;
+    private static final long UPDATE_INTERVAL_MS = 500;
+    // 足够 WINDOW_MS 内 120Hz 的所有帧
+    private static final int CAPACITY = 1024;
+    private static final long DEFAULT_VSYNC_NANOS = 1000000000L / 60;
+
+    interface Listener {
+        /**
+         * 每隔 {@link #UPDATE_INTERVAL_MS} 在主线程调用一次, 可以通过 getter 读取统计结果.
+         */
+        void onFrameMeterUpdated(@NonNull FrameMeter meter);
+    }
+
+    @NonNull
+    private final Listener mListener;
+    @NonNull
+    private final FrameStats mStats = new FrameStats(CAPACITY, WINDOW_MS * 1000000);
+    private boolean mRunning;
+    private long mVsyncNanos = DEFAULT_VSYNC_NANOS;
+    private long mLastUpdateTime;
+
+    // 当前统计周期内的自身开销
+    private long mCallbackNanos;
+    private int mCallbackCount;
+    private long mOverlayDrawNanos;
+    private int mOverlayDrawCount;
+
+    // 最近一次的统计结果
+    private float mFps;
+    private int mDroppedFrames;
+    private long mP50Nanos;
+    private long mP95Nanos;
+    private long mP99Nanos;
+    private long mCallbackAverageNanos;
+    private long mOverlayDrawAverageNanos;
+
+    FrameMeter(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @param view 用于读取屏幕刷新率
+     */
+    void start(@NonNull View view) {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        Display display = view.getDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 0f;
+        mVsyncNanos = refreshRate > 1f ? (long) (1e9 / refreshRate) : DEFAULT_VSYNC_NANOS;
+        mStats.reset();
+        mCallbackNanos = 0;
+        mCallbackCount = 0;
+        mOverlayDrawNanos = 0;
+        mOverlayDrawCount = 0;
+        mLastUpdateTime = SystemClock.uptimeMillis();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        mStats.onFrame(frameTimeNanos);
+        Choreographer.getInstance().postFrameCallback(this);
+
+        long now = SystemClock.uptimeMillis();
+        boolean update = now - mLastUpdateTime >= UPDATE_INTERVAL_MS;
+        if (update) {
+            mLastUpdateTime = now;
+            mFps = mStats.getFps();
+            mDroppedFrames = mStats.getDroppedFrames(mVsyncNanos);
+            mP50Nanos = mStats.getPercentileNanos(50);
+            mP95Nanos = mStats.getPercentileNanos(95);
+            mP99Nanos = mStats.getPercentileNanos(99);
+        }
+        mCallbackNanos += System.nanoTime() - start;
+        mCallbackCount++;
+
+        if (update) {
+            mCallbackAverageNanos = mCallbackNanos / mCallbackCount;
+            mOverlayDrawAverageNanos = mOverlayDrawCount > 0 ? mOverlayDrawNanos / mOverlayDrawCount : 0;
+            mCallbackNanos = 0;
+            mCallbackCount = 0;
+            mOverlayDrawNanos = 0;
+            mOverlayDrawCount = 0;
+            mListener.onFrameMeterUpdated(this);
+        }
+    }
+
+    /**
+     * DebugToolView 每次绘制后调用.
+     */
+    void onOverlayDrawn(long nanos) {
+        mOverlayDrawNanos += nanos;
+        mOverlayDrawCount++;
+    }
+
+    float getFps() {
+        return mFps;
+    }
+
+    /**
+     * @return 最近 {@link #WINDOW_MS} 内的掉帧数
+     */
+    int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    long getP50Nanos() {
+        return mP50Nanos;
+    }
+
+    long getP95Nanos() {
+        return mP95Nanos;
+    }
+
+    long getP99Nanos() {
+        return mP99Nanos;
+    }
+
+    /**
+     * @return 窗口内的帧数
+     */
+    int getFrameCount() {
+        return mStats.getCount();
+    }
+
+    /**
+     * @return 帧回调的平均耗时
+     */
+    long getCallbackAverageNanos() {
+        return mCallbackAverageNanos;
+    }
+
+    /**
+     * @return DebugToolView 绘制的平均耗时, 统计周期内没有绘制时为0
+     */
+    long getOverlayDrawAverageNanos() {
+        return mOverlayDrawAverageNanos;
+    }
+}
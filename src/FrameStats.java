@@ -0,0 +1,190 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 记录最近若干帧的 Choreographer 帧时间, 用于计算帧间隔的百分位数、帧率和掉帧数.
+ * <p>
+ * 帧时间保存在预先分配的 long 环形缓冲区中, 超过容量(或时间窗口)的旧帧被移出. 每个帧间隔进入和移出窗口时
+ * 增减按 {@link #BUCKET_NANOS} 分桶的直方图中的计数, 查询百分位数只需累加直方图, 不需要排序.
+ * 记录和查询都不分配内存. 只在主线程访问, 不加锁.
+ * <p>
+ * 统计者自己在帧回调中做了耗时的工作时, 可以用 {@link #excludeNextInterval()} 把随后的一个帧间隔排除在统计之外.
+ */
+final class FrameStats {
+    // 直方图的精度, 百分位数向上取整到桶的上界
+    static final long BUCKET_NANOS = 250 * 1000;
+    // 覆盖0-100ms, 更长的帧间隔放进最后一个桶
+    private static final int BUCKET_COUNT = 400;
+
+    @NonNull
+    private final long[] mTimestamps;
+    // 0表示只按容量限制
+    private final long mWindowNanos;
+    private int mFirst;
+    private int mFrameCount;
+    @NonNull
+    private final int[] mHistogram = new int[BUCKET_COUNT];
+    // 最后一个桶中帧间隔的总和, 用于计算这些长帧的掉帧数
+    private long mOverflowNanos;
+    // 与 mTimestamps 对应: 以该帧结束的帧间隔不计入统计
+    @NonNull
+    private final boolean[] mExcluded;
+    private boolean mExcludeNext;
+    // 窗口内被排除的帧间隔的数量和总时间
+    private int mExcludedCount;
+    private long mExcludedNanos;
+
+    FrameStats(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param windowNanos 只保留最近这段时间内的帧, 0表示只保留最近 capacity 帧
+     */
+    FrameStats(int capacity, long windowNanos) {
+        mTimestamps = new long[capacity + 1];
+        mExcluded = new boolean[capacity + 1];
+        mWindowNanos = windowNanos;
+    }
+
+    void reset() {
+        mFirst = 0;
+        mFrameCount = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            mHistogram[bucket] = 0;
+        }
+        mOverflowNanos = 0;
+        mExcludeNext = false;
+        mExcludedCount = 0;
+        mExcludedNanos = 0;
+    }
+
+    /**
+     * 下一次 {@link #onFrame(long)} 与上一帧之间的帧间隔不计入百分位数、帧率和掉帧数.
+     */
+    void excludeNextInterval() {
+        mExcludeNext = true;
+    }
+
+    void onFrame(long frameTimeNanos) {
+        int capacity = mTimestamps.length;
+        long interval = 0;
+        if (mFrameCount > 0) {
+            interval = frameTimeNanos - mTimestamps[(mFirst + mFrameCount - 1) % capacity];
+            // 同一帧的重复回调或时间回退
+            if (interval <= 0) {
+                return;
+            }
+            if (mFrameCount == capacity) {
+                removeOldest();
+            }
+        }
+
+        int slot = (mFirst + mFrameCount) % capacity;
+        mTimestamps[slot] = frameTimeNanos;
+        mExcluded[slot] = interval > 0 && mExcludeNext;
+        mExcludeNext = false;
+        mFrameCount++;
+        if (mExcluded[slot]) {
+            mExcludedCount++;
+            mExcludedNanos += interval;
+        } else if (interval > 0) {
+            addInterval(interval, 1);
+        }
+
+        if (mWindowNanos > 0) {
+            while (mFrameCount > 1 && frameTimeNanos - mTimestamps[mFirst] > mWindowNanos) {
+                removeOldest();
+            }
+        }
+    }
+
+    private void removeOldest() {
+        if (mFrameCount > 1) {
+            int next = (mFirst + 1) % mTimestamps.length;
+            long interval = mTimestamps[next] - mTimestamps[mFirst];
+            if (mExcluded[next]) {
+                mExcludedCount--;
+                mExcludedNanos -= interval;
+            } else {
+                addInterval(interval, -1);
+            }
+        }
+        mFirst = (mFirst + 1) % mTimestamps.length;
+        mFrameCount--;
+    }
+
+    private void addInterval(long interval, int delta) {
+        int bucket = (int) Math.min(BUCKET_COUNT - 1, interval / BUCKET_NANOS);
+        mHistogram[bucket] += delta;
+        if (bucket == BUCKET_COUNT - 1) {
+            mOverflowNanos += delta * interval;
+        }
+    }
+
+    /**
+     * @return 窗口内的帧间隔数, 不包括被排除的
+     */
+    int getCount() {
+        return Math.max(0, mFrameCount - 1 - mExcludedCount);
+    }
+
+    /**
+     * @return 窗口内第一帧到最后一帧的时间, 减去被排除的帧间隔
+     */
+    long getSpanNanos() {
+        if (mFrameCount < 2) {
+            return 0;
+        }
+        return mTimestamps[(mFirst + mFrameCount - 1) % mTimestamps.length] - mTimestamps[mFirst] - mExcludedNanos;
+    }
+
+    /**
+     * @return 每秒帧数, 没有数据时返回0
+     */
+    float getFps() {
+        long span = getSpanNanos();
+        return span > 0 ? getCount() * 1e9f / span : 0f;
+    }
+
+    /**
+     * @param percentile 0-100
+     * @return 帧间隔的百分位数(精度为 {@link #BUCKET_NANOS}), 没有数据时返回0
+     */
+    long getPercentileNanos(int percentile) {
+        int count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        int rank = Math.max(1, Math.min(count, (int) Math.ceil(percentile / 100.0 * count)));
+        int bucket = 0;
+        for (int seen = mHistogram[0]; seen < rank; seen += mHistogram[bucket]) {
+            bucket++;
+        }
+        return (bucket + 1) * BUCKET_NANOS;
+    }
+
+    /**
+     * @param vsyncNanos 屏幕刷新周期
+     * @return 窗口内估计的掉帧数: 每个帧间隔四舍五入为刷新周期的整数倍, 超过1倍的部分计为掉帧
+     */
+    int getDroppedFrames(long vsyncNanos) {
+        if (vsyncNanos <= 0) {
+            return 0;
+        }
+        long dropped = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT - 1; bucket++) {
+            int count = mHistogram[bucket];
+            if (count > 0) {
+                long periods = (bucket * BUCKET_NANOS + BUCKET_NANOS / 2 + vsyncNanos / 2) / vsyncNanos;
+                dropped += Math.max(0, periods - 1) * count;
+            }
+        }
+        int overflow = mHistogram[BUCKET_COUNT - 1];
+        if (overflow > 0) {
+            dropped += Math.max(0, (mOverflowNanos + vsyncNanos / 2) / vsyncNanos - overflow);
+        }
+        return (int) dropped;
+    }
+}
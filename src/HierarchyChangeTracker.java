@@ -0,0 +1,205 @@
+package com.stv.debug;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 每次全局布局后比较 View 树与上一次的差别: 新增、删除, 以及位置、大小、可见性等属性变化(包括移到其他父View下)的 View.
+ * 比较方法见 {@link HierarchyDiff}.
+ * <p>
+ * 通过 {@link SnapshotPipeline} 分两个阶段进行: 主线程只抓取快照, 哈希和比较在工作线程中进行, 结果在主线程发布.
+ * 比较结果有两份, 工作线程写入其中一份时 overlay 读取的是另一份. 比较期间发生的多次布局合并为一次.
+ * <p>
+ * 结果的坐标相对于 overlay(DebugToolView)左上角.
+ */
+final class HierarchyChangeTracker implements ViewTreeObserver.OnGlobalLayoutListener, SnapshotPipeline.Analysis {
+    static final int TYPE_ADDED = HierarchyDiff.TYPE_ADDED;
+    static final int TYPE_REMOVED = HierarchyDiff.TYPE_REMOVED;
+    static final int TYPE_CHANGED = HierarchyDiff.TYPE_CHANGED;
+
+    interface Listener {
+        /**
+         * 有变化的布局比较完成后在主线程调用.
+         */
+        void onHierarchyChanged(@NonNull HierarchyChangeTracker tracker);
+    }
+
+    @NonNull
+    private final Listener mListener;
+    @NonNull
+    private final SnapshotPipeline mPipeline = new SnapshotPipeline(this);
+    // 以下字段只在主线程访问
+    @Nullable
+    private View mRoot;
+    @Nullable
+    private View mOverlay;
+    @Nullable
+    private ViewTreeObserver mObserver;
+    @NonNull
+    private final ViewStableIds<View> mStableIds = new ViewStableIds<>();
+    private int mLayoutCount;
+    private boolean mNeedsBaseline;
+    @NonNull
+    private final int[] mLocation = new int[2];
+    // 已发布的比较结果
+    @NonNull
+    private HierarchyDiff.Result mPublished = new HierarchyDiff.Result();
+
+    // 以下字段由 capture()、analyze()、publish() 依次访问, SnapshotPipeline 保证它们不会同时执行
+    @NonNull
+    private final HierarchyDiff mDiff = new HierarchyDiff();
+    private int mCaptureLayout;
+    @NonNull
+    private HierarchyDiff.Result mNext = new HierarchyDiff.Result();
+
+    HierarchyChangeTracker(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    boolean isAttached() {
+        return mRoot != null;
+    }
+
+    /**
+     * 开始监听 root 的布局, 并抓取第一个快照作为比较的基准.
+     *
+     * @param overlay 比较结果的坐标相对于该View
+     */
+    void attach(@NonNull View root, @NonNull View overlay) {
+        detach();
+
+        mRoot = root;
+        mOverlay = overlay;
+        mObserver = root.getViewTreeObserver();
+        mObserver.addOnGlobalLayoutListener(this);
+        mLayoutCount = 0;
+        mNeedsBaseline = true;
+        mPipeline.attach(root);
+        mPipeline.request();
+    }
+
+    void detach() {
+        if (mRoot == null) {
+            return;
+        }
+
+        ViewTreeObserver observer = mObserver;
+        if (observer == null || !observer.isAlive()) {
+            observer = mRoot.getViewTreeObserver();
+        }
+        observer.removeOnGlobalLayoutListener(this);
+        mObserver = null;
+        mRoot = null;
+        mOverlay = null;
+        // 快照和连续次数可能还在工作线程中使用, 在下一次基准抓取时清除
+        mPipeline.detach();
+        mStableIds.clear();
+        mPublished.count = 0;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        if (mRoot == null) {
+            return;
+        }
+        mLayoutCount++;
+        mPipeline.request();
+    }
+
+    @Override
+    public int capture(@NonNull View root) {
+        View overlay = mOverlay;
+        if (overlay == null) {
+            return 0;
+        }
+
+        overlay.getLocationOnScreen(mLocation);
+        HierarchySnapshot snapshot = mDiff.beginCapture(mNeedsBaseline, mLocation[0], mLocation[1]);
+        mNeedsBaseline = false;
+        AndroidSnapshotAdapter.capture(snapshot, root, mStableIds);
+        mCaptureLayout = mLayoutCount;
+        return snapshot.count;
+    }
+
+    @Override
+    public void analyze() {
+        mDiff.analyze(mNext);
+        mNext.layout = mCaptureLayout;
+    }
+
+    @Override
+    public void publish() {
+        if (mNext.count == 0) {
+            return;
+        }
+
+        HierarchyDiff.Result result = mPublished;
+        mPublished = mNext;
+        mNext = result;
+        mListener.onHierarchyChanged(this);
+    }
+
+    /**
+     * @return 最近一次有变化的比较中记录的变化数量
+     */
+    int getCount() {
+        return mPublished.count;
+    }
+
+    int getType(int i) {
+        return mPublished.type[i];
+    }
+
+    int getLeft(int i) {
+        return mPublished.left[i];
+    }
+
+    int getTop(int i) {
+        return mPublished.top[i];
+    }
+
+    int getRight(int i) {
+        return mPublished.right[i];
+    }
+
+    int getBottom(int i) {
+        return mPublished.bottom[i];
+    }
+
+    /**
+     * @return 该View连续发生变化的比较次数, 至少为1
+     */
+    int getStreak(int i) {
+        return mPublished.streak[i];
+    }
+
+    int getAddedViewCount() {
+        return mPublished.addedViews;
+    }
+
+    int getRemovedViewCount() {
+        return mPublished.removedViews;
+    }
+
+    int getChangedViewCount() {
+        return mPublished.changedViews;
+    }
+
+    /**
+     * @return 最近一次有变化的比较对应的全局布局序号(attach() 之后的第几次布局)
+     */
+    int getLayoutCount() {
+        return mPublished.layout;
+    }
+
+    /**
+     * @return 抓取快照的耗时统计, 见 {@link SnapshotPipeline}
+     */
+    @NonNull
+    SnapshotPipeline getPipeline() {
+        return mPipeline;
+    }
+}
@@ -0,0 +1,356 @@
+package com.stv.debug;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+
+/**
+ * 比较两次 {@link HierarchySnapshot}: 新增、删除, 以及位置、大小、可见性等属性变化(包括移到其他父View下)的 View.
+ * <p>
+ * 快照中的每个 View 用 {@link ViewStableIds} 的id标识, 并计算自身属性的哈希和整个子树的哈希.
+ * 比较时从根开始, 子树哈希相同的整个子树直接跳过, 只进入有变化的子树, 因此比较的耗时与变化的部分成正比.
+ * id到快照序号的映射是以id为下标的int数组, 不装箱.
+ * <p>
+ * 分两个阶段使用: 主线程 {@link #beginCapture(boolean, int, int)} 后填充返回的快照, 工作线程 {@link #analyze(Result)}
+ * 计算哈希并比较. 两个阶段由调用者保证依次执行(见 {@link SnapshotPipeline}), 不加锁. 不依赖 Android API.
+ * <p>
+ * 结果的坐标相对于 beginCapture() 传入的原点. 新增和删除的子树只记录子树的根, 数量统计包括整个子树.
+ * 同一个 View 在连续多次比较中都发生变化时记录连续次数, 用于发现每帧都在重新布局的 View.
+ * <p>
+ * ViewStableIds 会把已回收的 View 的id分配给新的 View. View 被移除时会触发布局和一次新的抓取, 回收之前的快照中
+ * 不会再有该id, 因此比较时不会把新的 View 当作被回收的 View.
+ */
+final class HierarchyDiff {
+    static final int TYPE_ADDED = 0;
+    static final int TYPE_REMOVED = 1;
+    static final int TYPE_CHANGED = 2;
+
+    // 两个快照交替使用
+    @NonNull
+    private State mCurrent = new State();
+    @NonNull
+    private State mPrevious = new State();
+    // 本次抓取是基准, 只计算哈希, 不比较
+    private boolean mBaseline;
+    private int mCaptureCount;
+    private int mOriginX;
+    private int mOriginY;
+    // analyze() 期间写入的结果
+    @NonNull
+    private Result mOut = new Result();
+    // 以stable id为下标: 该View最近一次变化的抓取序号和连续变化的次数
+    @NonNull
+    private int[] mLastChangedCapture = new int[0];
+    @NonNull
+    private int[] mChangeStreak = new int[0];
+
+    /**
+     * 开始一次抓取, 调用者随后在主线程把 View 树抓取到返回的快照中(需要记录 stable id).
+     *
+     * @param baseline 为true时清除之前的快照和连续次数, 本次抓取只作为下一次比较的基准
+     * @param originX  结果坐标的原点(屏幕坐标)
+     */
+    @MainThread
+    @NonNull
+    HierarchySnapshot beginCapture(boolean baseline, int originX, int originY) {
+        mBaseline = baseline;
+        if (baseline) {
+            // 基准抓取前 ViewStableIds 通常已经清除, 以id为下标的数组重新分配, 不保留之前最大的id对应的大小
+            mCurrent.release();
+            mPrevious.release();
+            mCaptureCount = 0;
+            mLastChangedCapture = new int[0];
+            mChangeStreak = new int[0];
+        } else {
+            State state = mPrevious;
+            mPrevious = mCurrent;
+            mCurrent = state;
+            mCurrent.clear();
+        }
+        mCaptureCount++;
+        mOriginX = originX;
+        mOriginY = originY;
+        return mCurrent.snapshot;
+    }
+
+    /**
+     * 计算最近一次抓取的快照的哈希, 并与上一次抓取比较, 结果写入 out(原有内容被清除). 基准抓取没有结果.
+     */
+    @WorkerThread
+    void analyze(@NonNull Result out) {
+        mCurrent.index();
+        out.count = 0;
+        out.addedViews = 0;
+        out.removedViews = 0;
+        out.changedViews = 0;
+        if (!mBaseline) {
+            mOut = out;
+            diff();
+        }
+    }
+
+    private void diff() {
+        State cur = mCurrent;
+        State prev = mPrevious;
+        if (cur.snapshot.count == 0 || prev.snapshot.count == 0) {
+            return;
+        }
+
+        if (cur.snapshot.stableId[0] == prev.snapshot.stableId[0]) {
+            diffNode(0, 0);
+        } else {
+            addSubtree(TYPE_ADDED, cur, prev, 0);
+            addSubtree(TYPE_REMOVED, prev, cur, 0);
+        }
+    }
+
+    // n 和 p 分别为同一个View在当前和上一个快照中的序号
+    private void diffNode(int n, int p) {
+        State cur = mCurrent;
+        State prev = mPrevious;
+        if (cur.subtreeHash[n] == prev.subtreeHash[p]) {
+            return;
+        }
+        if (cur.ownHash[n] != prev.ownHash[p]) {
+            addResult(TYPE_CHANGED, cur, n, 1);
+        }
+        diffChildren(n, p);
+    }
+
+    // 比较子View, 不比较n自身
+    private void diffChildren(int n, int p) {
+        State cur = mCurrent;
+        State prev = mPrevious;
+        if (cur.subtreeHash[n] == prev.subtreeHash[p]) {
+            return;
+        }
+
+        int[] curParent = cur.snapshot.parent;
+        int[] prevParent = prev.snapshot.parent;
+        int[] curIds = cur.snapshot.stableId;
+        int[] prevIds = prev.snapshot.stableId;
+        // 先序排列中子View紧跟在父View之后, 按子树大小跳到下一个兄弟
+        int end = n + cur.size[n];
+        for (int c = n + 1; c < end; c += cur.size[c]) {
+            int q = prev.indexOf(curIds[c]);
+            if (q < 0) {
+                addSubtree(TYPE_ADDED, cur, prev, c);
+                continue;
+            }
+            if (prevParent[q] < 0 || prevIds[prevParent[q]] != curIds[curParent[c]]) {
+                // 从其他父View移过来, 子树内容相同时也要报告
+                if (cur.ownHash[c] == prev.ownHash[q]) {
+                    addResult(TYPE_CHANGED, cur, c, 1);
+                }
+            }
+            diffNode(c, q);
+        }
+
+        end = p + prev.size[p];
+        for (int d = p + 1; d < end; d += prev.size[d]) {
+            // 仍然存在但换了父View的, 已在新的父View下处理
+            if (cur.indexOf(prevIds[d]) < 0) {
+                addSubtree(TYPE_REMOVED, prev, cur, d);
+            }
+        }
+    }
+
+    /**
+     * 记录新增(或删除)的子树. 子树中在另一个快照里仍然存在的View是被移进(或移出)的, 不计入数量:
+     * 移进的在这里按移动处理, 移出的在其新的父View下处理.
+     */
+    private void addSubtree(int type, @NonNull State state, @NonNull State other, int root) {
+        int[] ids = state.snapshot.stableId;
+        int views = 0;
+        int end = root + state.size[root];
+        for (int x = root; x < end; ) {
+            int o = other.indexOf(ids[x]);
+            if (o < 0) {
+                views++;
+                x++;
+                continue;
+            }
+            if (type == TYPE_ADDED) {
+                // 父View是新增的, 一定是移动过来的
+                addResult(TYPE_CHANGED, state, x, 1);
+                diffChildren(x, o);
+            }
+            x += state.size[x];
+        }
+        addResult(type, state, root, views);
+    }
+
+    private void addResult(int type, @NonNull State state, int index, int views) {
+        HierarchySnapshot snapshot = state.snapshot;
+        Result r = mOut;
+        int i = r.add();
+        r.type[i] = type;
+        r.left[i] = snapshot.screenLeft[index] - mOriginX;
+        r.top[i] = snapshot.screenTop[index] - mOriginY;
+        r.right[i] = r.left[i] + snapshot.right[index] - snapshot.left[index];
+        r.bottom[i] = r.top[i] + snapshot.bottom[index] - snapshot.top[index];
+        r.streak[i] = updateStreak(snapshot.stableId[index]);
+        switch (type) {
+            case TYPE_ADDED:
+                r.addedViews += views;
+                break;
+            case TYPE_REMOVED:
+                r.removedViews += views;
+                break;
+            default:
+                r.changedViews += views;
+                break;
+        }
+    }
+
+    private int updateStreak(int stableId) {
+        if (stableId >= mChangeStreak.length) {
+            int capacity = Math.max(stableId + 1, mChangeStreak.length * 2);
+            mLastChangedCapture = Arrays.copyOf(mLastChangedCapture, capacity);
+            mChangeStreak = Arrays.copyOf(mChangeStreak, capacity);
+        }
+        if (mLastChangedCapture[stableId] != mCaptureCount) {
+            mChangeStreak[stableId] = mLastChangedCapture[stableId] == mCaptureCount - 1 && mChangeStreak[stableId] > 0
+                    ? mChangeStreak[stableId] + 1 : 1;
+            mLastChangedCapture[stableId] = mCaptureCount;
+        }
+        return mChangeStreak[stableId];
+    }
+
+    /**
+     * 一次比较的结果, 矩形相对于 beginCapture() 传入的原点.
+     */
+    static final class Result {
+        int count;
+        @NonNull
+        int[] type = new int[0];
+        @NonNull
+        int[] left = new int[0];
+        @NonNull
+        int[] top = new int[0];
+        @NonNull
+        int[] right = new int[0];
+        @NonNull
+        int[] bottom = new int[0];
+        @NonNull
+        int[] streak = new int[0];
+        int addedViews;
+        int removedViews;
+        int changedViews;
+        // 由 HierarchyChangeTracker 设置: 对应的全局布局序号
+        int layout;
+
+        int add() {
+            if (count == type.length) {
+                int capacity = Math.max(32, count * 2);
+                type = Arrays.copyOf(type, capacity);
+                left = Arrays.copyOf(left, capacity);
+                top = Arrays.copyOf(top, capacity);
+                right = Arrays.copyOf(right, capacity);
+                bottom = Arrays.copyOf(bottom, capacity);
+                streak = Arrays.copyOf(streak, capacity);
+            }
+            return count++;
+        }
+    }
+
+    /**
+     * 一个快照及其哈希和索引.
+     */
+    private static final class State {
+        @NonNull
+        final HierarchySnapshot snapshot = new HierarchySnapshot();
+        @NonNull
+        long[] ownHash = new long[0];
+        // 自身哈希与所有子View的子树哈希按顺序组合
+        @NonNull
+        long[] subtreeHash = new long[0];
+        // 子树的节点数(包括自身)
+        @NonNull
+        int[] size = new int[0];
+        // 以stable id为下标的快照序号, -1表示不在快照中
+        @NonNull
+        int[] indexOfId = new int[0];
+
+        int indexOf(int stableId) {
+            return stableId < indexOfId.length ? indexOfId[stableId] : -1;
+        }
+
+        void clear() {
+            HierarchySnapshot s = snapshot;
+            for (int i = 0; i < s.count; i++) {
+                int id = s.stableId[i];
+                if (id < indexOfId.length) {
+                    indexOfId[id] = -1;
+                }
+            }
+            s.count = 0;
+        }
+
+        void release() {
+            snapshot.count = 0;
+            indexOfId = new int[0];
+        }
+
+        /**
+         * 在工作线程计算哈希和 stable id 到快照序号的索引.
+         */
+        void index() {
+            HierarchySnapshot s = snapshot;
+            int count = s.count;
+            if (ownHash.length < count) {
+                int capacity = Math.max(count, ownHash.length * 2);
+                ownHash = new long[capacity];
+                subtreeHash = new long[capacity];
+                size = new int[capacity];
+            }
+
+            for (int i = 0; i < count; i++) {
+                int id = s.stableId[i];
+                if (id >= indexOfId.length) {
+                    int oldLength = indexOfId.length;
+                    indexOfId = Arrays.copyOf(indexOfId, Math.max(id + 1, oldLength * 2));
+                    Arrays.fill(indexOfId, oldLength, indexOfId.length, -1);
+                }
+                indexOfId[id] = i;
+
+                long h = id;
+                h = h * 31 + s.classNames.get(s.classIndex[i]).hashCode();
+                h = h * 31 + s.id[i];
+                h = h * 31 + s.left[i];
+                h = h * 31 + s.top[i];
+                h = h * 31 + s.right[i];
+                h = h * 31 + s.bottom[i];
+                h = h * 31 + s.scrollX[i];
+                h = h * 31 + s.scrollY[i];
+                h = h * 31 + s.visibility[i];
+                h = h * 31 + s.flags[i];
+                ownHash[i] = mix(h);
+                subtreeHash[i] = 0;
+                size[i] = 1;
+            }
+
+            // 逆先序遍历时子View都在父View之前处理完. 兄弟按从后往前的顺序组合, 顺序变化也会改变父View的子树哈希
+            for (int i = count - 1; i >= 0; i--) {
+                subtreeHash[i] = mix(ownHash[i] + subtreeHash[i] * 0x9E3779B97F4A7C15L);
+                int parent = s.parent[i];
+                if (parent >= 0) {
+                    subtreeHash[parent] = subtreeHash[parent] * 1000003L + subtreeHash[i];
+                    size[parent] += size[i];
+                }
+            }
+        }
+
+        // 64位 MurmurHash3 的 finalizer
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.stv.debug;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 把整个 View 树导出为 .vdh 二进制文件(格式见 {@link HierarchySnapshotFormat}).
+ * <p>
+ * 主线程只抓取 {@link HierarchySnapshot}, 资源名解析、编码和文件写入都在后台线程进行, 通过 NIO FileChannel 流式写出.
+ * 导出的文件可以用 adb pull 取出, 在PC上用 {@link HierarchySnapshotReader} 查看或比较.
+ */
+final class HierarchyExporter {
+    private static final String TAG = "HierarchyExporter";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    interface Callback {
+        /**
+         * 在主线程调用.
+         *
+         * @param file 导出成功时为导出的文件, 失败时为null
+         */
+        void onHierarchyExported(@Nullable File file);
+    }
+
+    private HierarchyExporter() {
+    }
+
+    static void export(@NonNull View root, @NonNull final Callback callback) {
+        final HierarchySnapshot snapshot = new HierarchySnapshot();
+        AndroidSnapshotAdapter.capture(snapshot, root, null);
+
+        Context context = root.getContext();
+        final Resources resources = context.getResources();
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        final File file = new File(dir, "view_hierarchy_" + snapshot.captureTimeMillis + ".vdh");
+
+        DebugThreads.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = false;
+                try {
+                    long start = System.nanoTime();
+                    write(snapshot, resources, file);
+                    success = true;
+                    Log.i(TAG, "Exported " + snapshot.count + " views to " + file + " in "
+                            + (System.nanoTime() - start) / 1000000 + "ms, " + file.length() + " bytes");
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to export view hierarchy to " + file, e);
+                }
+
+                final File result = success ? file : null;
+                DebugThreads.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onHierarchyExported(result);
+                    }
+                });
+            }
+        });
+    }
+
+    @WorkerThread
+    private static void write(@NonNull HierarchySnapshot snapshot, @NonNull Resources resources, @NonNull File file)
+            throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            new Writer(out.getChannel(), resources).write(snapshot);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static final class Writer {
+        @NonNull
+        private final FileChannel mChannel;
+        @NonNull
+        private final Resources mResources;
+        @NonNull
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private int mStringCount;
+        // 类名字符串序号: 快照中的类序号 -> 文件中的字符串序号, -1表示还没有写入
+        private int[] mClassStrings = new int[0];
+        // id名字符串序号: 快照中的id序号 -> 文件中的字符串序号, -1表示没有名字, -2表示还没有查找
+        private int[] mIdNameStrings = new int[0];
+
+        Writer(@NonNull FileChannel channel, @NonNull Resources resources) {
+            mChannel = channel;
+            mResources = resources;
+        }
+
+        void write(@NonNull HierarchySnapshot s) throws IOException {
+            mClassStrings = new int[s.classNames.size()];
+            for (int i = 0; i < mClassStrings.length; i++) {
+                mClassStrings[i] = -1;
+            }
+            mIdNameStrings = new int[s.idCount];
+            for (int i = 0; i < mIdNameStrings.length; i++) {
+                mIdNameStrings[i] = -2;
+            }
+
+            mBuffer.putInt(HierarchySnapshotFormat.MAGIC);
+            mBuffer.put((byte) HierarchySnapshotFormat.VERSION);
+            mBuffer.putLong(s.captureTimeMillis);
+            HierarchySnapshotFormat.putVarint(mBuffer, s.rootWidth);
+            HierarchySnapshotFormat.putVarint(mBuffer, s.rootHeight);
+            HierarchySnapshotFormat.putVarint(mBuffer, s.count);
+
+            for (int i = 0; i < s.count; i++) {
+                int classString = mClassStrings[s.classIndex[i]];
+                if (classString < 0) {
+                    classString = writeString(s.classNames.get(s.classIndex[i]));
+                    mClassStrings[s.classIndex[i]] = classString;
+                }
+                int idNameString = mIdNameStrings[s.idIndex[i]];
+                if (idNameString == -2) {
+                    idNameString = getIdNameString(s.id[i]);
+                    mIdNameStrings[s.idIndex[i]] = idNameString;
+                }
+
+                ensureRemaining(HierarchySnapshotFormat.MAX_NODE_RECORD_SIZE);
+                ByteBuffer b = mBuffer;
+                b.put((byte) HierarchySnapshotFormat.TAG_NODE);
+                HierarchySnapshotFormat.putVarint(b, s.parent[i] + 1);
+                HierarchySnapshotFormat.putVarint(b, classString);
+                b.putInt(s.id[i]);
+                HierarchySnapshotFormat.putVarint(b, idNameString + 1);
+                HierarchySnapshotFormat.putZigzag(b, s.left[i]);
+                HierarchySnapshotFormat.putZigzag(b, s.top[i]);
+                HierarchySnapshotFormat.putZigzag(b, s.right[i] - s.left[i]);
+                HierarchySnapshotFormat.putZigzag(b, s.bottom[i] - s.top[i]);
+                HierarchySnapshotFormat.putZigzag(b, s.screenLeft[i]);
+                HierarchySnapshotFormat.putZigzag(b, s.screenTop[i]);
+                b.put(s.visibility[i]);
+                b.put(s.flags[i]);
+                HierarchySnapshotFormat.putZigzag(b, s.scrollX[i]);
+                HierarchySnapshotFormat.putZigzag(b, s.scrollY[i]);
+            }
+
+            ensureRemaining(1);
+            mBuffer.put((byte) HierarchySnapshotFormat.TAG_END);
+            flush();
+            mChannel.force(false);
+        }
+
+        // 写入id的名字, 返回字符串序号, 没有名字时返回-1. 调用者按快照中的id序号保证同一个id只写一次
+        private int getIdNameString(int id) throws IOException {
+            if (id == View.NO_ID) {
+                return -1;
+            }
+
+            // 动态生成的id没有名字
+            String name = ResourceNameCache.getName(mResources, id);
+            return name != null ? writeString(name) : -1;
+        }
+
+        private int writeString(@NonNull String string) throws IOException {
+            byte[] bytes = string.getBytes(HierarchySnapshotFormat.UTF_8);
+            int index = mStringCount++;
+            ensureRemaining(1 + 5 + 5);
+            mBuffer.put((byte) HierarchySnapshotFormat.TAG_STRING);
+            HierarchySnapshotFormat.putVarint(mBuffer, index);
+            HierarchySnapshotFormat.putVarint(mBuffer, bytes.length);
+
+            // 字符串可能比缓冲区还长, 分段写入
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!mBuffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(mBuffer.remaining(), bytes.length - offset);
+                mBuffer.put(bytes, offset, length);
+                offset += length;
+            }
+            return index;
+        }
+
+        private void ensureRemaining(int size) throws IOException {
+            if (mBuffer.remaining() < size) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            mBuffer.flip();
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * View 树某一时刻的快照, 按先序遍历展平后以"数组结构"(每个属性一个数组)保存, 只包含基本类型数据.
+ * <p>
+ * 在主线程抓取(设备上通过 {@link AndroidSnapshotAdapter#capture}), 之后可以交给后台线程处理(编码、写文件等),
+ * 后台线程不再访问 View. 类名和资源id都驻留为序号, 后台线程按不同的类和id各处理一次(例如资源名只查找一次).
+ * 通过 {@link SnapshotAdapter} 访问 View 树, 不依赖 Android API, 可以在普通 JVM 上抓取合成的树.
+ */
+final class HierarchySnapshot {
+    long captureTimeMillis;
+    int rootWidth;
+    int rootHeight;
+
+    int count;
+    // 父View在快照中的序号, 根View为-1
+    int[] parent = new int[0];
+    int[] depth = new int[0];
+    // 类名在 classNames 中的序号
+    int[] classIndex = new int[0];
+    int[] id = new int[0];
+    // id在 ids 中的序号
+    int[] idIndex = new int[0];
+    // 相对于父View的矩形
+    int[] left = new int[0];
+    int[] top = new int[0];
+    int[] right = new int[0];
+    int[] bottom = new int[0];
+    // 屏幕坐标, 宽高与相对矩形相同
+    int[] screenLeft = new int[0];
+    int[] screenTop = new int[0];
+    int[] scrollX = new int[0];
+    int[] scrollY = new int[0];
+    // View.VISIBLE/INVISIBLE/GONE
+    byte[] visibility = new byte[0];
+    // HierarchySnapshotFormat.FLAG_*
+    byte[] flags = new byte[0];
+    // ViewStableIds 分配的id, 抓取时没有传入 ViewStableIds 则全为0
+    int[] stableId = new int[0];
+
+    // 类名在多次抓取之间保留, 应用中类的数量是有限的
+    @NonNull
+    final List<String> classNames = new ArrayList<>();
+    // 本次抓取中出现的不同id, 前 idCount 个有效. 每次抓取重新建立, 已经移除的View的id不会一直累积
+    @NonNull
+    int[] ids = new int[0];
+    int idCount;
+    // 类型到classNames序号的映射, 按对象地址做开放寻址, 抓取时不装箱
+    @NonNull
+    private Object[] mClassKeys = new Object[64];
+    @NonNull
+    private int[] mClassValues = new int[64];
+
+    // id到ids序号的映射, 开放寻址, 槽中保存序号+1, 0表示空
+    @NonNull
+    private int[] mIdSlots = new int[64];
+
+    /**
+     * 抓取以 root 为根的整个树, 只能在主线程调用.
+     *
+     * @param rootScreenX root 左上角的屏幕坐标
+     * @param stableIds   不为null时为每个节点记录跨快照不变的id, 用于比较两次快照
+     */
+    <N> void capture(@NonNull SnapshotAdapter<N> adapter, @NonNull N root, int rootScreenX, int rootScreenY,
+                     @Nullable ViewStableIds<N> stableIds) {
+        count = 0;
+        // 已有的id槽位大小足够本次抓取使用, 清空即可, 不需要重新分配
+        Arrays.fill(mIdSlots, 0);
+        idCount = 0;
+        captureTimeMillis = System.currentTimeMillis();
+        rootWidth = adapter.getRight(root) - adapter.getLeft(root);
+        rootHeight = adapter.getBottom(root) - adapter.getTop(root);
+
+        int index = addNode(adapter, stableIds, root, -1, 0, rootScreenX, rootScreenY);
+        addChildren(adapter, stableIds, root, index, 1, rootScreenX, rootScreenY);
+    }
+
+    private <N> void addChildren(@NonNull SnapshotAdapter<N> adapter, @Nullable ViewStableIds<N> stableIds,
+                                 @NonNull N group, int groupIndex, int childDepth, int originX, int originY) {
+        int childCount = adapter.getChildCount(group);
+        if (childCount == 0) {
+            return;
+        }
+        int groupScrollX = adapter.getScrollX(group);
+        int groupScrollY = adapter.getScrollY(group);
+        for (int i = 0; i < childCount; i++) {
+            N child = adapter.getChildAt(group, i);
+            if (child == null) {
+                continue;
+            }
+
+            int childLeft = originX + adapter.getLeft(child) - groupScrollX;
+            int childTop = originY + adapter.getTop(child) - groupScrollY;
+            int index = addNode(adapter, stableIds, child, groupIndex, childDepth, childLeft, childTop);
+            addChildren(adapter, stableIds, child, index, childDepth + 1, childLeft, childTop);
+        }
+    }
+
+    private <N> int addNode(@NonNull SnapshotAdapter<N> adapter, @Nullable ViewStableIds<N> stableIds,
+                            @NonNull N node, int parentIndex, int nodeDepth, int nodeScreenLeft, int nodeScreenTop) {
+        if (count == parent.length) {
+            grow(Math.max(256, count * 2));
+        }
+
+        int i = count++;
+        parent[i] = parentIndex;
+        depth[i] = nodeDepth;
+        classIndex[i] = internClass(adapter, adapter.getType(node));
+        id[i] = adapter.getId(node);
+        idIndex[i] = internId(id[i]);
+        left[i] = adapter.getLeft(node);
+        top[i] = adapter.getTop(node);
+        right[i] = adapter.getRight(node);
+        bottom[i] = adapter.getBottom(node);
+        screenLeft[i] = nodeScreenLeft;
+        screenTop[i] = nodeScreenTop;
+        scrollX[i] = adapter.getScrollX(node);
+        scrollY[i] = adapter.getScrollY(node);
+        visibility[i] = (byte) adapter.getVisibility(node);
+        flags[i] = (byte) adapter.getFlags(node);
+        stableId[i] = stableIds != null ? stableIds.getId(node) : 0;
+        return i;
+    }
+
+    private int internClass(@NonNull SnapshotAdapter<?> adapter, @NonNull Object type) {
+        int mask = mClassKeys.length - 1;
+        int slot = System.identityHashCode(type) & mask;
+        while (true) {
+            Object key = mClassKeys[slot];
+            if (key == type) {
+                return mClassValues[slot];
+            }
+            if (key == null) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = classNames.size();
+        classNames.add(adapter.getTypeName(type));
+        mClassKeys[slot] = type;
+        mClassValues[slot] = index;
+        // 负载因子不超过1/2
+        if (classNames.size() * 2 > mClassKeys.length) {
+            rehashClasses();
+        }
+        return index;
+    }
+
+    private int internId(int value) {
+        int mask = mIdSlots.length - 1;
+        int slot = mix(value) & mask;
+        while (true) {
+            int entry = mIdSlots[slot];
+            if (entry == 0) {
+                break;
+            }
+            if (ids[entry - 1] == value) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (idCount == ids.length) {
+            int[] newIds = new int[Math.max(64, idCount * 2)];
+            System.arraycopy(ids, 0, newIds, 0, idCount);
+            ids = newIds;
+        }
+        int index = idCount++;
+        ids[index] = value;
+        mIdSlots[slot] = index + 1;
+        // 负载因子不超过1/2
+        if (idCount * 2 > mIdSlots.length) {
+            int[] slots = new int[mIdSlots.length * 2];
+            mask = slots.length - 1;
+            for (int k = 0; k < idCount; k++) {
+                int s = mix(ids[k]) & mask;
+                while (slots[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                slots[s] = k + 1;
+            }
+            mIdSlots = slots;
+        }
+        return index;
+    }
+
+    // 资源id的低位集中在较小的范围内, 打散后再取模
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehashClasses() {
+        Object[] oldKeys = mClassKeys;
+        int[] oldValues = mClassValues;
+        mClassKeys = new Object[oldKeys.length * 2];
+        mClassValues = new int[oldKeys.length * 2];
+        int mask = mClassKeys.length - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            Object key = oldKeys[k];
+            if (key == null) {
+                continue;
+            }
+            int slot = System.identityHashCode(key) & mask;
+            while (mClassKeys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            mClassKeys[slot] = key;
+            mClassValues[slot] = oldValues[k];
+        }
+    }
+
+    private void grow(int capacity) {
+        parent = copyOf(parent, capacity);
+        depth = copyOf(depth, capacity);
+        classIndex = copyOf(classIndex, capacity);
+        id = copyOf(id, capacity);
+        idIndex = copyOf(idIndex, capacity);
+        left = copyOf(left, capacity);
+        top = copyOf(top, capacity);
+        right = copyOf(right, capacity);
+        bottom = copyOf(bottom, capacity);
+        screenLeft = copyOf(screenLeft, capacity);
+        screenTop = copyOf(screenTop, capacity);
+        scrollX = copyOf(scrollX, capacity);
+        scrollY = copyOf(scrollY, capacity);
+        byte[] newVisibility = new byte[capacity];
+        System.arraycopy(visibility, 0, newVisibility, 0, count);
+        visibility = newVisibility;
+        byte[] newFlags = new byte[capacity];
+        System.arraycopy(flags, 0, newFlags, 0, count);
+        flags = newFlags;
+        stableId = copyOf(stableId, capacity);
+    }
+
+    @NonNull
+    private int[] copyOf(@NonNull int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, count);
+        return copy;
+    }
+}
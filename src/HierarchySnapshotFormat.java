@@ -0,0 +1,72 @@
+package com.stv.debug;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * View 树快照导出文件(.vdh)的二进制格式, 写入端(设备上)和读取端(PC上的JVM)共用. 不依赖 Android API.
+ * <pre>
+ * 文件头: int MAGIC, byte VERSION, long 抓取时间(ms), varint 根View宽, varint 根View高, varint View数量
+ * 之后是一串记录, 每个记录以1字节的类型开头:
+ *   TAG_STRING: varint 字符串序号, varint UTF-8字节数, UTF-8字节      (字符串在第一次被引用前定义)
+ *   TAG_NODE:   varint 父View序号+1, varint 类名字符串序号, int32 id, varint id名字符串序号+1(0表示无),
+ *               zigzag left, zigzag top, zigzag 宽, zigzag 高 (相对于父View),
+ *               zigzag 屏幕left, zigzag 屏幕top, byte visibility, byte flags, zigzag scrollX, zigzag scrollY
+ *   TAG_END:    文件结束
+ * </pre>
+ * View 按先序遍历顺序写入, 第 n 个 TAG_NODE 记录的 View 序号为 n.
+ * 整数使用 LEB128 varint 编码, 可能为负的值先做 zigzag 编码. 多字节定长整数为大端序.
+ */
+final class HierarchySnapshotFormat {
+    static final int MAGIC = 0x56444854; // "VDHT"
+    static final int VERSION = 1;
+
+    static final int TAG_END = 0;
+    static final int TAG_STRING = 1;
+    static final int TAG_NODE = 2;
+
+    // TAG_NODE 记录中 flags 的各个位
+    static final int FLAG_VIEW_GROUP = 1;
+    static final int FLAG_FOCUSABLE = 1 << 1;
+    static final int FLAG_FOCUSED = 1 << 2;
+    static final int FLAG_CLICKABLE = 1 << 3;
+    static final int FLAG_ENABLED = 1 << 4;
+
+    // 一个TAG_NODE记录的最大字节数
+    static final int MAX_NODE_RECORD_SIZE = 1 + 5 * 3 + 4 + 5 * 8 + 2;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private HierarchySnapshotFormat() {
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void putZigzag(ByteBuffer buffer, int value) {
+        putVarint(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static int getZigzag(ByteBuffer buffer) throws IOException {
+        int value = getVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
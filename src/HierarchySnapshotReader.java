@@ -0,0 +1,251 @@
+package com.stv.debug;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在PC上(普通JVM)读取 {@link HierarchyExporter} 导出的 .vdh 文件, 不依赖 Android API.
+ * <p>
+ * 作为命令行工具使用时, 把快照按层级缩进输出为文本, 每个View一行, 方便用 diff 比较两个快照:
+ * <pre>
+ * java -cp classes com.stv.debug.HierarchySnapshotReader a.vdh &gt; a.txt
+ * </pre>
+ */
+public final class HierarchySnapshotReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final class Node {
+        public int index;
+        public int parent;
+        public int depth;
+        public String className;
+        public int id;
+        // 没有资源名时为null
+        public String idName;
+        public int left;
+        public int top;
+        public int width;
+        public int height;
+        public int screenLeft;
+        public int screenTop;
+        public int visibility;
+        public int flags;
+        public int scrollX;
+        public int scrollY;
+    }
+
+    public static final class Snapshot {
+        public long captureTimeMillis;
+        public int rootWidth;
+        public int rootHeight;
+        public final List<Node> nodes = new ArrayList<>();
+    }
+
+    private final ReadableByteChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final List<String> mStrings = new ArrayList<>();
+    private boolean mEof;
+
+    private HierarchySnapshotReader(ReadableByteChannel channel) {
+        mChannel = channel;
+        mBuffer.flip();
+    }
+
+    public static Snapshot read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return read(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+
+    public static Snapshot read(ReadableByteChannel channel) throws IOException {
+        try {
+            return new HierarchySnapshotReader(channel).readSnapshot();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Truncated snapshot");
+        }
+    }
+
+    private Snapshot readSnapshot() throws IOException {
+        require(4 + 1 + 8 + 5 * 3);
+        if (mBuffer.getInt() != HierarchySnapshotFormat.MAGIC) {
+            throw new IOException("Not a view hierarchy snapshot");
+        }
+        int version = mBuffer.get();
+        if (version != HierarchySnapshotFormat.VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.captureTimeMillis = mBuffer.getLong();
+        snapshot.rootWidth = HierarchySnapshotFormat.getVarint(mBuffer);
+        snapshot.rootHeight = HierarchySnapshotFormat.getVarint(mBuffer);
+        int expectedCount = HierarchySnapshotFormat.getVarint(mBuffer);
+
+        while (true) {
+            require(1);
+            int tag = mBuffer.get();
+            if (tag == HierarchySnapshotFormat.TAG_END) {
+                break;
+            } else if (tag == HierarchySnapshotFormat.TAG_STRING) {
+                readString();
+            } else if (tag == HierarchySnapshotFormat.TAG_NODE) {
+                snapshot.nodes.add(readNode(snapshot));
+            } else {
+                throw new IOException("Unknown record tag " + tag);
+            }
+        }
+
+        if (snapshot.nodes.size() != expectedCount) {
+            throw new IOException("Expected " + expectedCount + " views but read " + snapshot.nodes.size());
+        }
+        return snapshot;
+    }
+
+    private void readString() throws IOException {
+        require(5 + 5);
+        int index = HierarchySnapshotFormat.getVarint(mBuffer);
+        int length = HierarchySnapshotFormat.getVarint(mBuffer);
+        if (index != mStrings.size()) {
+            throw new IOException("Unexpected string index " + index);
+        }
+
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            require(1);
+            int n = Math.min(mBuffer.remaining(), length - offset);
+            mBuffer.get(bytes, offset, n);
+            offset += n;
+        }
+        mStrings.add(new String(bytes, HierarchySnapshotFormat.UTF_8));
+    }
+
+    private Node readNode(Snapshot snapshot) throws IOException {
+        require(HierarchySnapshotFormat.MAX_NODE_RECORD_SIZE - 1);
+        ByteBuffer b = mBuffer;
+        Node node = new Node();
+        node.index = snapshot.nodes.size();
+        node.parent = HierarchySnapshotFormat.getVarint(b) - 1;
+        node.depth = node.parent < 0 ? 0 : snapshot.nodes.get(node.parent).depth + 1;
+        node.className = getString(HierarchySnapshotFormat.getVarint(b));
+        node.id = b.getInt();
+        int idName = HierarchySnapshotFormat.getVarint(b) - 1;
+        node.idName = idName < 0 ? null : getString(idName);
+        node.left = HierarchySnapshotFormat.getZigzag(b);
+        node.top = HierarchySnapshotFormat.getZigzag(b);
+        node.width = HierarchySnapshotFormat.getZigzag(b);
+        node.height = HierarchySnapshotFormat.getZigzag(b);
+        node.screenLeft = HierarchySnapshotFormat.getZigzag(b);
+        node.screenTop = HierarchySnapshotFormat.getZigzag(b);
+        node.visibility = b.get();
+        node.flags = b.get();
+        node.scrollX = HierarchySnapshotFormat.getZigzag(b);
+        node.scrollY = HierarchySnapshotFormat.getZigzag(b);
+        return node;
+    }
+
+    private String getString(int index) throws IOException {
+        if (index < 0 || index >= mStrings.size()) {
+            throw new IOException("Undefined string index " + index);
+        }
+        return mStrings.get(index);
+    }
+
+    /**
+     * 保证缓冲区中至少有 size 个字节; 文件在记录中间结束时抛出 EOFException.
+     * 最后一个记录可能比 size 短, 因此读到文件末尾时只要缓冲区不为空就返回.
+     */
+    private void require(int size) throws IOException {
+        if (mBuffer.remaining() >= size || mEof) {
+            if (!mBuffer.hasRemaining()) {
+                throw new EOFException();
+            }
+            return;
+        }
+
+        mBuffer.compact();
+        while (mBuffer.position() < size) {
+            if (mChannel.read(mBuffer) < 0) {
+                mEof = true;
+                break;
+            }
+        }
+        mBuffer.flip();
+        if (!mBuffer.hasRemaining()) {
+            throw new EOFException();
+        }
+    }
+
+    static void dump(Snapshot snapshot, PrintStream out) {
+        out.println("# captured at " + snapshot.captureTimeMillis + ", root " + snapshot.rootWidth + "x"
+                + snapshot.rootHeight + ", " + snapshot.nodes.size() + " views");
+        StringBuilder line = new StringBuilder(128);
+        for (Node node : snapshot.nodes) {
+            line.setLength(0);
+            for (int i = 0; i < node.depth; i++) {
+                line.append("  ");
+            }
+            line.append(node.className);
+            if (node.idName != null) {
+                line.append(' ').append(node.idName);
+            } else if (node.id != -1) {
+                line.append(" #").append(Integer.toHexString(node.id));
+            }
+            line.append(" [").append(node.left).append(',').append(node.top).append(' ')
+                    .append(node.width).append('x').append(node.height).append(']');
+            line.append(" screen(").append(node.screenLeft).append(',').append(node.screenTop).append(')');
+            if (node.scrollX != 0 || node.scrollY != 0) {
+                line.append(" scroll(").append(node.scrollX).append(',').append(node.scrollY).append(')');
+            }
+            line.append(' ').append(visibilityToString(node.visibility));
+            if ((node.flags & HierarchySnapshotFormat.FLAG_FOCUSABLE) != 0) {
+                line.append(" focusable");
+            }
+            if ((node.flags & HierarchySnapshotFormat.FLAG_FOCUSED) != 0) {
+                line.append(" focused");
+            }
+            if ((node.flags & HierarchySnapshotFormat.FLAG_CLICKABLE) != 0) {
+                line.append(" clickable");
+            }
+            if ((node.flags & HierarchySnapshotFormat.FLAG_ENABLED) == 0) {
+                line.append(" disabled");
+            }
+            out.println(line);
+        }
+    }
+
+    // 与 View.VISIBLE/INVISIBLE/GONE 的值对应
+    private static String visibilityToString(int visibility) {
+        switch (visibility) {
+            case 0:
+                return "V";
+            case 4:
+                return "I";
+            case 8:
+                return "G";
+            default:
+                return "?" + visibility;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: HierarchySnapshotReader <file.vdh>...");
+            System.exit(1);
+        }
+        for (String path : args) {
+            dump(read(new File(path)), System.out);
+        }
+    }
+}
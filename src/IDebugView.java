@@ -5,6 +5,9 @@ import android.graphics.Rect;
 import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
 
 /**
  * @author hechuan1 on 2020/9/27.
@@ -16,13 +19,69 @@ interface IDebugView {
 
     void moveToOrigin();
 
-    void hightlightView(@NonNull Rect viewBounds, @NonNull String info);
+    /**
+     * @param viewBounds View的矩形, 为null时取消高亮; View有变换时为包含变换后四个角的最小矩形
+     * @param quad       View变换后四个角的坐标(左上、右上、右下、左下, 8个元素), 为null时画 viewBounds.
+     *                   实现需要复制其内容
+     */
+    void hightlightView(@Nullable Rect viewBounds, @Nullable float[] quad, @NonNull String info);
+
+    void hightlightFocusedView(@Nullable Rect viewBounds, @Nullable float[] quad, @NonNull String info);
+
+    /**
+     * 在选中View的高亮框旁边显示性能统计面板, lines 为空时隐藏面板. 实现需要复制 lines 的内容, 调用者会复用该列表.
+     */
+    void showProfile(@NonNull List<String> lines);
+
+    /**
+     * 在光标坐标后面显示吸附模式下光标最近一次跳跃的距离(px), distance 为负数时不显示.
+     */
+    void showCursorJumpDistance(int distance);
+
+    /**
+     * 显示整个窗口的焦点导航图, graph 为 null 时隐藏. graph 的内容更新后需要再次调用.
+     */
+    void showFocusGraph(@Nullable FocusGraph graph);
 
-    void hightlightFocusedView(@NonNull Rect viewBounds, @NonNull String info);
+    /**
+     * 短暂闪烁显示最近一次布局中变化的View, 并在屏幕底部显示变化的数量; tracker 为 null 时隐藏.
+     * 每次有变化时都需要再次调用.
+     */
+    void showHierarchyChanges(@Nullable HierarchyChangeTracker tracker);
 
+    /**
+     * 在屏幕右上角显示光标周围像素的放大图, zoom 为放大倍数, 0 表示隐藏.
+     */
+    void showLoupe(int zoom);
+
+    /**
+     * 在放大镜下方显示区域颜色统计, 并标出统计的区域; stats 为 null 时隐藏. 每次统计结果更新后需要再次调用.
+     */
+    void showRegionStats(@Nullable RegionColorStats stats);
+
+    /**
+     * 用颜色标出最近一段时间内频繁重新布局和重绘的View, 最热的几个View标出标签和次数; heatmap 为 null 时隐藏.
+     * 每次统计结果更新后需要再次调用.
+     */
+    void showLayoutHeatmap(@Nullable LayoutHeatmap heatmap);
+
+    /**
+     * 在光标坐标下方显示帧率、掉帧数和帧间隔百分位数, 以及调试工具自身的开销; meter 为 null 时隐藏.
+     * 显示期间每次绘制后调用 meter.onOverlayDrawn(), 每次统计结果更新后需要再次调用.
+     */
+    void showFrameMeter(@Nullable FrameMeter meter);
+
+    /**
+     * 每次返回新的 Point, 频繁调用的路径使用 {@link #getCursorLocation(Point)}.
+     */
     @NonNull
     Point getCursorLocation();
 
+    /**
+     * 把光标坐标写入 out, 不分配内存.
+     */
+    void getCursorLocation(@NonNull Point out);
+
     @NonNull
     View getView();
 
@@ -0,0 +1,158 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 以int为键、字符串为值的LRU缓存, 是 {@link ResourceNameCache} 中不依赖 Android API 的部分. 可以在任意线程访问.
+ * <p>
+ * 开放寻址哈希表(线性探测, 删除时向前移动后续元素), 不装箱. 条目数超过容量时淘汰最久未使用的条目,
+ * LRU链表用int数组表示.
+ */
+final class IdNameCache {
+    private static final int NONE = -1;
+
+    private final int mCapacity;
+    // 哈希表大小为容量向上取整到2的幂后的2倍, 负载因子不超过1/2
+    private final int mMask;
+    // 哈希表的槽中保存条目序号, NONE表示空槽
+    @NonNull
+    private final int[] mTable;
+    @NonNull
+    private final int[] mKeys;
+    @NonNull
+    private final String[] mNames;
+    // LRU双向链表, mHead为最近使用的条目, mTail为最久未使用的条目
+    @NonNull
+    private final int[] mPrev;
+    @NonNull
+    private final int[] mNext;
+    private int mHead = NONE;
+    private int mTail = NONE;
+    private int mCount;
+
+    IdNameCache(int capacity) {
+        mCapacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 2;
+        mMask = tableSize - 1;
+        mTable = new int[tableSize];
+        for (int i = 0; i < tableSize; i++) {
+            mTable[i] = NONE;
+        }
+        mKeys = new int[capacity];
+        mNames = new String[capacity];
+        mPrev = new int[capacity];
+        mNext = new int[capacity];
+    }
+
+    /**
+     * @return id对应的值, 没有缓存时返回null. 命中的条目成为最近使用的条目
+     */
+    @Nullable
+    synchronized String get(int id) {
+        int entry = find(id);
+        if (entry == NONE) {
+            return null;
+        }
+        moveToHead(entry);
+        return mNames[entry];
+    }
+
+    /**
+     * 缓存中没有 id 时加入, 已有时不改变(两个线程同时查找同一个id时结果相同, 后写入的被忽略).
+     */
+    synchronized void putIfAbsent(int id, @NonNull String name) {
+        if (find(id) == NONE) {
+            insert(id, name);
+        }
+    }
+
+    private int slotOf(int id) {
+        // 资源id的低位是连续分配的, 乘以黄金分割常数打散
+        return ((id * 0x9E3779B9) >>> 16) & mMask;
+    }
+
+    private int find(int id) {
+        for (int slot = slotOf(id); ; slot = (slot + 1) & mMask) {
+            int entry = mTable[slot];
+            if (entry == NONE || mKeys[entry] == id) {
+                return entry;
+            }
+        }
+    }
+
+    private void insert(int id, @NonNull String name) {
+        int entry;
+        if (mCount < mCapacity) {
+            entry = mCount++;
+        } else {
+            entry = mTail;
+            unlink(entry);
+            removeFromTable(mKeys[entry]);
+        }
+
+        mKeys[entry] = id;
+        mNames[entry] = name;
+        int slot = slotOf(id);
+        while (mTable[slot] != NONE) {
+            slot = (slot + 1) & mMask;
+        }
+        mTable[slot] = entry;
+        linkAtHead(entry);
+    }
+
+    // 线性探测表的删除: 清空槽后, 把同一探测序列中后面的条目向前移动, 保证查找不会提前遇到空槽
+    private void removeFromTable(int id) {
+        int mask = mMask;
+        int slot = slotOf(id);
+        while (mKeys[mTable[slot]] != id) {
+            slot = (slot + 1) & mask;
+        }
+
+        int hole = slot;
+        mTable[hole] = NONE;
+        for (slot = (hole + 1) & mask; mTable[slot] != NONE; slot = (slot + 1) & mask) {
+            int home = slotOf(mKeys[mTable[slot]]);
+            // home 不在 (hole, slot] 区间内时, 该条目可以移到hole
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                mTable[hole] = mTable[slot];
+                mTable[slot] = NONE;
+                hole = slot;
+            }
+        }
+    }
+
+    private void moveToHead(int entry) {
+        if (entry != mHead) {
+            unlink(entry);
+            linkAtHead(entry);
+        }
+    }
+
+    private void linkAtHead(int entry) {
+        mPrev[entry] = NONE;
+        mNext[entry] = mHead;
+        if (mHead != NONE) {
+            mPrev[mHead] = entry;
+        }
+        mHead = entry;
+        if (mTail == NONE) {
+            mTail = entry;
+        }
+    }
+
+    private void unlink(int entry) {
+        int prev = mPrev[entry];
+        int next = mNext[entry];
+        if (prev != NONE) {
+            mNext[prev] = next;
+        } else {
+            mHead = next;
+        }
+        if (next != NONE) {
+            mPrev[next] = prev;
+        } else {
+            mTail = prev;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.stv.debug;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在PC上(普通JVM)连接 {@link InspectionServer} 的客户端, 不依赖 Android API. 协议见 {@link InspectionProtocol}.
+ * <p>
+ * 请求方法都是同步的, 可以在多个线程中同时调用; 订阅的增量在读线程中回调. 作为命令行工具使用:
+ * <pre>
+ * adb shell setprop debug.view_debugger.inspect_port 7100
+ * adb forward tcp:7100 tcp:7100
+ * java -cp classes com.stv.debug.InspectionClient 7100 hit 300 200
+ * java -cp classes com.stv.debug.InspectionClient 7100 watch 200
+ * </pre>
+ */
+public final class InspectionClient implements Closeable {
+    private static final long TIMEOUT_MS = 10000;
+    // View.FOCUS_LEFT/UP/RIGHT/DOWN
+    private static final String[] DIRECTION_NAMES = {"LEFT", "UP", "RIGHT", "DOWN"};
+    private static final int[] DIRECTIONS = {0x11, 0x21, 0x42, 0x82};
+
+    public interface DeltaListener {
+        /**
+         * 在读线程调用. 订阅后的第一次回调包含所有节点.
+         *
+         * @param changed 新增或内容变化的节点, 父节点在子节点之前
+         */
+        void onDelta(long captureTimeMillis, int[] removedIds, List<InspectionProtocol.Node> changed);
+
+        /**
+         * 连接断开时在读线程调用.
+         */
+        void onDisconnected(IOException e);
+    }
+
+    /**
+     * 请求的结果: 节点列表或错误, 由读线程交给等待的请求线程.
+     */
+    private static final class Response {
+        final List<InspectionProtocol.Node> nodes;
+        final IOException error;
+
+        Response(List<InspectionProtocol.Node> nodes, IOException error) {
+            this.nodes = nodes;
+            this.error = error;
+        }
+    }
+
+    private final Socket mSocket;
+    private final DataInputStream mIn;
+    private final DataOutputStream mOut;
+    private final Map<Integer, BlockingQueue<Response>> mPending = new HashMap<>();
+    private int mNextRequestId = 1;
+    private int mSubscriptionId;
+    private volatile DeltaListener mDeltaListener;
+    private volatile IOException mDisconnectError;
+
+    private InspectionClient(Socket socket) throws IOException {
+        mSocket = socket;
+        mIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        mOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public static InspectionClient connect(String host, int port) throws IOException {
+        Socket socket = new Socket(host, port);
+        try {
+            InspectionClient client = new InspectionClient(socket);
+            client.readHello();
+            client.startReader();
+            return client;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void readHello() throws IOException {
+        mSocket.setSoTimeout((int) TIMEOUT_MS);
+        DataInputStream frame = InspectionProtocol.readFrame(mIn);
+        int type = frame.readUnsignedByte();
+        frame.readInt();
+        if (type != InspectionProtocol.MSG_HELLO) {
+            throw new IOException("Unexpected frame type " + type);
+        }
+        int version = frame.readInt();
+        if (version != InspectionProtocol.VERSION) {
+            throw new IOException("Unsupported protocol version " + version);
+        }
+        mSocket.setSoTimeout(0);
+    }
+
+    private void startReader() {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLoop();
+            }
+        }, "InspectionClient-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * @return DebugToolView坐标(x, y)处的View, 从根View到最下层的View
+     */
+    public List<InspectionProtocol.Node> hitTest(int x, int y) throws IOException {
+        return request(InspectionProtocol.REQ_HIT_TEST, x, y);
+    }
+
+    /**
+     * @return 设备上当前光标处的View链, 从根View到最下层的View
+     */
+    public List<InspectionProtocol.Node> getChain() throws IOException {
+        return request(InspectionProtocol.REQ_CHAIN);
+    }
+
+    /**
+     * @param direction View.FOCUS_LEFT/UP/RIGHT/DOWN
+     * @return 从节点向该方向移动焦点时的下一个View, 没有时返回null
+     */
+    public InspectionProtocol.Node focusSearch(int nodeId, int direction) throws IOException {
+        List<InspectionProtocol.Node> nodes = request(InspectionProtocol.REQ_FOCUS_SEARCH, nodeId, direction);
+        return nodes.isEmpty() ? null : nodes.get(0);
+    }
+
+    /**
+     * @return 整个View树, 先序排列
+     */
+    public List<InspectionProtocol.Node> getSnapshot() throws IOException {
+        return request(InspectionProtocol.REQ_SNAPSHOT);
+    }
+
+    /**
+     * 订阅增量, 服务端最多每 intervalMs 推送一次. 重复调用时替换之前的订阅.
+     */
+    public void subscribe(int intervalMs, DeltaListener listener) throws IOException {
+        mDeltaListener = listener;
+        int requestId;
+        synchronized (mPending) {
+            requestId = mNextRequestId++;
+            mSubscriptionId = requestId;
+        }
+        send(InspectionProtocol.REQ_SUBSCRIBE, requestId, intervalMs);
+    }
+
+    public void unsubscribe() throws IOException {
+        int requestId;
+        synchronized (mPending) {
+            requestId = mNextRequestId++;
+            mSubscriptionId = 0;
+        }
+        send(InspectionProtocol.REQ_UNSUBSCRIBE, requestId);
+        mDeltaListener = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+    }
+
+    private List<InspectionProtocol.Node> request(int type, int... args) throws IOException {
+        BlockingQueue<Response> queue = new ArrayBlockingQueue<>(1);
+        int requestId;
+        synchronized (mPending) {
+            if (mDisconnectError != null) {
+                throw new IOException("Disconnected", mDisconnectError);
+            }
+            requestId = mNextRequestId++;
+            mPending.put(requestId, queue);
+        }
+
+        Response result;
+        try {
+            send(type, requestId, args);
+            result = queue.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } finally {
+            synchronized (mPending) {
+                mPending.remove(requestId);
+            }
+        }
+
+        if (result == null) {
+            throw new IOException("Request timed out");
+        }
+        if (result.error != null) {
+            throw result.error;
+        }
+        return result.nodes;
+    }
+
+    private void send(int type, int requestId, int... args) throws IOException {
+        InspectionProtocol.FrameWriter frame = new InspectionProtocol.FrameWriter(type, requestId);
+        for (int arg : args) {
+            frame.out.writeInt(arg);
+        }
+        synchronized (mOut) {
+            frame.writeTo(mOut);
+        }
+    }
+
+    private void readLoop() {
+        IOException error;
+        try {
+            while (true) {
+                DataInputStream frame = InspectionProtocol.readFrame(mIn);
+                int type = frame.readUnsignedByte();
+                int requestId = frame.readInt();
+                switch (type) {
+                    case InspectionProtocol.RESP_NODES:
+                        complete(requestId, new Response(readNodes(frame, frame.readInt()), null));
+                        break;
+                    case InspectionProtocol.RESP_ERROR:
+                        complete(requestId, new Response(null, new IOException(frame.readUTF())));
+                        break;
+                    case InspectionProtocol.MSG_DELTA:
+                        readDelta(requestId, frame);
+                        break;
+                    default:
+                        // 新版本服务端增加的消息, 忽略
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+
+        List<BlockingQueue<Response>> pending;
+        synchronized (mPending) {
+            mDisconnectError = error;
+            pending = new ArrayList<>(mPending.values());
+        }
+        for (BlockingQueue<Response> queue : pending) {
+            queue.offer(new Response(null, new IOException("Disconnected", error)));
+        }
+        DeltaListener listener = mDeltaListener;
+        if (listener != null) {
+            listener.onDisconnected(error);
+        }
+    }
+
+    private void complete(int requestId, Response result) {
+        BlockingQueue<Response> queue;
+        synchronized (mPending) {
+            queue = mPending.get(requestId);
+        }
+        if (queue != null) {
+            queue.offer(result);
+        }
+    }
+
+    private void readDelta(int requestId, DataInputStream frame) throws IOException {
+        long captureTimeMillis = frame.readLong();
+        int[] removed = new int[frame.readInt()];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = frame.readInt();
+        }
+        List<InspectionProtocol.Node> changed = readNodes(frame, frame.readInt());
+
+        DeltaListener listener = mDeltaListener;
+        boolean current;
+        synchronized (mPending) {
+            // 忽略之前的订阅在取消前已经发出的增量
+            current = requestId == mSubscriptionId;
+        }
+        if (current && listener != null) {
+            listener.onDelta(captureTimeMillis, removed, changed);
+        }
+    }
+
+    private static List<InspectionProtocol.Node> readNodes(DataInputStream frame, int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Bad node count " + count);
+        }
+        List<InspectionProtocol.Node> nodes = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            nodes.add(InspectionProtocol.Node.read(frame));
+        }
+        return nodes;
+    }
+
+    /**
+     * 应用增量得到的 View 树副本, 可以在任意线程访问.
+     */
+    public static final class Mirror {
+        private final Map<Integer, InspectionProtocol.Node> mNodes = new HashMap<>();
+
+        public synchronized void apply(int[] removedIds, List<InspectionProtocol.Node> changed) {
+            for (int id : removedIds) {
+                mNodes.remove(id);
+            }
+            for (InspectionProtocol.Node node : changed) {
+                mNodes.put(node.id, node);
+            }
+        }
+
+        public synchronized int size() {
+            return mNodes.size();
+        }
+
+        public synchronized InspectionProtocol.Node get(int id) {
+            return mNodes.get(id);
+        }
+
+        /**
+         * 按层级缩进输出, 兄弟节点按 childIndex 排序.
+         */
+        public synchronized void dump(PrintStream out) {
+            Map<Integer, List<InspectionProtocol.Node>> children = new HashMap<>();
+            List<InspectionProtocol.Node> roots = new ArrayList<>();
+            for (InspectionProtocol.Node node : mNodes.values()) {
+                if (node.parentId == -1 || !mNodes.containsKey(node.parentId)) {
+                    roots.add(node);
+                    continue;
+                }
+                List<InspectionProtocol.Node> list = children.get(node.parentId);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    children.put(node.parentId, list);
+                }
+                list.add(node);
+            }
+            dump(roots, children, 0, out);
+        }
+
+        private static void dump(List<InspectionProtocol.Node> nodes, Map<Integer, List<InspectionProtocol.Node>> children,
+                                 int depth, PrintStream out) {
+            Collections.sort(nodes, new Comparator<InspectionProtocol.Node>() {
+                @Override
+                public int compare(InspectionProtocol.Node a, InspectionProtocol.Node b) {
+                    return a.childIndex < b.childIndex ? -1 : (a.childIndex == b.childIndex ? 0 : 1);
+                }
+            });
+            StringBuilder indent = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                indent.append("  ");
+            }
+            for (InspectionProtocol.Node node : nodes) {
+                out.println(indent.toString() + node);
+                List<InspectionProtocol.Node> list = children.get(node.id);
+                if (list != null) {
+                    dump(list, children, depth + 1, out);
+                }
+            }
+        }
+    }
+
+    private static void printNodes(List<InspectionProtocol.Node> nodes, PrintStream out) {
+        for (InspectionProtocol.Node node : nodes) {
+            out.println(node);
+        }
+    }
+
+    private static int parseDirection(String name) {
+        for (int i = 0; i < DIRECTION_NAMES.length; i++) {
+            if (DIRECTION_NAMES[i].equalsIgnoreCase(name)) {
+                return DIRECTIONS[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown direction " + name);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: InspectionClient <port> hit <x> <y> | chain | focus <id> <LEFT|UP|RIGHT|DOWN>"
+                    + " | snapshot | watch [intervalMs]");
+            System.exit(1);
+        }
+
+        InspectionClient client = connect("127.0.0.1", Integer.parseInt(args[0]));
+        try {
+            String command = args[1];
+            if ("hit".equals(command)) {
+                printNodes(client.hitTest(Integer.parseInt(args[2]), Integer.parseInt(args[3])), System.out);
+            } else if ("chain".equals(command)) {
+                printNodes(client.getChain(), System.out);
+            } else if ("focus".equals(command)) {
+                InspectionProtocol.Node node = client.focusSearch(Integer.parseInt(args[2]), parseDirection(args[3]));
+                System.out.println(node != null ? node.toString() : "(none)");
+            } else if ("snapshot".equals(command)) {
+                Mirror mirror = new Mirror();
+                mirror.apply(new int[0], client.getSnapshot());
+                mirror.dump(System.out);
+            } else if ("watch".equals(command)) {
+                watch(client, args.length > 2 ? Integer.parseInt(args[2]) : 200);
+            } else {
+                System.err.println("Unknown command " + command);
+                System.exit(1);
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    // 输出每个增量的摘要和变化的节点, 直到连接断开
+    private static void watch(InspectionClient client, int intervalMs) throws IOException, InterruptedException {
+        final Mirror mirror = new Mirror();
+        final Object lock = new Object();
+        final boolean[] disconnected = new boolean[1];
+        client.subscribe(intervalMs, new DeltaListener() {
+            @Override
+            public void onDelta(long captureTimeMillis, int[] removedIds, List<InspectionProtocol.Node> changed) {
+                mirror.apply(removedIds, changed);
+                System.out.println("# delta at " + captureTimeMillis + ": " + removedIds.length + " removed, "
+                        + changed.size() + " changed, " + mirror.size() + " views");
+                for (int id : removedIds) {
+                    System.out.println("- #" + id);
+                }
+                for (InspectionProtocol.Node node : changed) {
+                    System.out.println("* " + node);
+                }
+            }
+
+            @Override
+            public void onDisconnected(IOException e) {
+                synchronized (lock) {
+                    disconnected[0] = true;
+                    lock.notifyAll();
+                }
+            }
+        });
+        synchronized (lock) {
+            while (!disconnected[0]) {
+                lock.wait();
+            }
+        }
+    }
+}
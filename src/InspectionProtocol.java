@@ -0,0 +1,167 @@
+package com.stv.debug;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * {@link InspectionServer} 与 {@link InspectionClient} 之间的二进制协议, 两端共用, 不依赖 Android API.
+ * <pre>
+ * 帧:    int32 长度(不含本字段), byte 类型, int32 请求序号, 内容
+ * 请求(客户端 -> 服务端):
+ *   REQ_HIT_TEST       int32 x, int32 y (DebugToolView坐标, 与屏幕上显示的光标坐标相同)  -> RESP_NODES
+ *   REQ_CHAIN          无, 当前光标处(最近一次按确定键或触摸时)的View链                 -> RESP_NODES
+ *   REQ_FOCUS_SEARCH   int32 节点id, int32 方向(View.FOCUS_*)                       -> RESP_NODES(0或1个)
+ *   REQ_SNAPSHOT       无, 整个View树                                                -> RESP_NODES
+ *   REQ_SUBSCRIBE      int32 最小推送间隔(ms), 之后以该请求序号推送 MSG_DELTA
+ *   REQ_UNSUBSCRIBE    无
+ * 响应和推送(服务端 -> 客户端):
+ *   MSG_HELLO          int32 协议版本, 连接后第一个帧, 请求序号为0
+ *   RESP_NODES         int32 数量, 节点...
+ *   RESP_ERROR         UTF 错误信息
+ *   MSG_DELTA          int64 抓取时间, int32 删除数量, int32 节点id..., int32 新增或变化的数量, 节点...
+ * 节点:  int32 id, int32 父节点id(根为-1), int32 在兄弟中的序号, UTF 类名, int32 资源id, boolean 有资源名, [UTF 资源名],
+ *        int32 屏幕left, int32 屏幕top, int32 宽, int32 高, byte visibility, byte flags, int32 scrollX, int32 scrollY
+ * </pre>
+ * 节点id在一次连接期间对同一个View保持不变; 被移除的View的id在它被回收一段时间后可能分配给新的View(此前已在增量中报告删除).
+ * 订阅后的第一个 MSG_DELTA 包含所有节点, 之后只包含变化;
+ * 新增或变化的节点按先序排列, 父节点总在子节点之前. 多字节整数为大端序(DataOutputStream).
+ */
+public final class InspectionProtocol {
+    static final int VERSION = 1;
+    // 单个帧的最大长度, 超出时认为数据已损坏
+    static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    static final int REQ_HIT_TEST = 1;
+    static final int REQ_CHAIN = 2;
+    static final int REQ_FOCUS_SEARCH = 3;
+    static final int REQ_SNAPSHOT = 4;
+    static final int REQ_SUBSCRIBE = 5;
+    static final int REQ_UNSUBSCRIBE = 6;
+
+    static final int MSG_HELLO = 64;
+    static final int RESP_NODES = 65;
+    static final int RESP_ERROR = 66;
+    static final int MSG_DELTA = 67;
+
+    private InspectionProtocol() {
+    }
+
+    /**
+     * 一个View的信息, 字段含义与 {@link HierarchySnapshotReader.Node} 相同, 坐标为屏幕坐标.
+     */
+    public static final class Node {
+        public int id;
+        public int parentId = -1;
+        public int childIndex;
+        public String className;
+        public int resourceId;
+        // 没有资源名时为null
+        public String idName;
+        public int left;
+        public int top;
+        public int width;
+        public int height;
+        public int visibility;
+        // HierarchySnapshotFormat.FLAG_*
+        public int flags;
+        public int scrollX;
+        public int scrollY;
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(id);
+            out.writeInt(parentId);
+            out.writeInt(childIndex);
+            out.writeUTF(className);
+            out.writeInt(resourceId);
+            out.writeBoolean(idName != null);
+            if (idName != null) {
+                out.writeUTF(idName);
+            }
+            out.writeInt(left);
+            out.writeInt(top);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeByte(visibility);
+            out.writeByte(flags);
+            out.writeInt(scrollX);
+            out.writeInt(scrollY);
+        }
+
+        static Node read(DataInputStream in) throws IOException {
+            Node node = new Node();
+            node.id = in.readInt();
+            node.parentId = in.readInt();
+            node.childIndex = in.readInt();
+            node.className = in.readUTF();
+            node.resourceId = in.readInt();
+            node.idName = in.readBoolean() ? in.readUTF() : null;
+            node.left = in.readInt();
+            node.top = in.readInt();
+            node.width = in.readInt();
+            node.height = in.readInt();
+            node.visibility = in.readByte();
+            node.flags = in.readByte();
+            node.scrollX = in.readInt();
+            node.scrollY = in.readInt();
+            return node;
+        }
+
+        // id相同的两个节点内容是否相同, 用于计算增量
+        boolean sameAs(Node other) {
+            return parentId == other.parentId && childIndex == other.childIndex
+                    && className.equals(other.className) && resourceId == other.resourceId
+                    && (idName == null ? other.idName == null : idName.equals(other.idName))
+                    && left == other.left && top == other.top && width == other.width && height == other.height
+                    && visibility == other.visibility && flags == other.flags
+                    && scrollX == other.scrollX && scrollY == other.scrollY;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(96);
+            sb.append('#').append(id).append(' ').append(className);
+            if (idName != null) {
+                sb.append(' ').append(idName);
+            }
+            sb.append(" [").append(left).append(',').append(top).append(' ')
+                    .append(width).append('x').append(height).append(']');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 帧内容的缓冲区, 写完后调用 {@link #writeTo(DataOutputStream)} 一次性写出整个帧.
+     */
+    static final class FrameWriter {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(mBytes);
+
+        FrameWriter(int type, int requestId) throws IOException {
+            out.writeByte(type);
+            out.writeInt(requestId);
+        }
+
+        void writeTo(DataOutputStream stream) throws IOException {
+            out.flush();
+            stream.writeInt(mBytes.size());
+            mBytes.writeTo(stream);
+            stream.flush();
+        }
+    }
+
+    /**
+     * 读取一个帧的内容(类型, 请求序号及其后的数据).
+     */
+    static DataInputStream readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 5 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+}
@@ -0,0 +1,759 @@
+package com.stv.debug;
+
+import android.content.pm.ApplicationInfo;
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 本地调试服务, 只监听127.0.0.1, 通过 adb forward 转发后由PC上的 {@link InspectionClient} 连接. 协议见 {@link InspectionProtocol}.
+ * <p>
+ * 线程: 接受连接和读取请求各在独立线程中阻塞; 所有访问 View 的工作都转到主线程, 并且只做抓取,
+ * 资源名解析、增量计算、编码和写socket在每个连接自己的写线程中进行.
+ * <p>
+ * 订阅增量后, View 树发生布局、滚动、焦点变化或 View 的可见性变化时只标记为"有变化", 每个连接按自己的推送间隔最多
+ * 抓取一次快照, 与该连接上次发出的内容比较, 把所有变化合并到一个 MSG_DELTA 帧中. 没有变化时不发送.
+ * 只重绘(包括 overlay 随光标移动的重绘)不算变化.
+ * <p>
+ * 与 {@link BatchHitTester} 相同, 只在可调试(debuggable)的应用中启动.
+ */
+final class InspectionServer {
+    private static final String TAG = "InspectionServer";
+    private static final int MIN_DELTA_INTERVAL_MS = 50;
+    private static final int MAX_CONNECTIONS = 4;
+
+    interface Target {
+        /**
+         * 在主线程调用, 查找DebugToolView坐标(x, y)处的View, 结果从根View到最下层的View.
+         */
+        void findViewsAtPoint(int x, int y, @NonNull List<View> out);
+
+        /**
+         * 在主线程调用, 返回当前光标处的View链(最近一次按确定键或触摸抬起时查找的结果).
+         */
+        void getViewsAtCursor(@NonNull List<View> out);
+    }
+
+    @NonNull
+    private final Target mTarget;
+    // 以下字段只在主线程访问
+    @NonNull
+    private final ViewStableIds<View> mStableIds = new ViewStableIds<>();
+    @NonNull
+    private final List<Connection> mConnections = new ArrayList<>();
+    @Nullable
+    private View mRoot;
+    @Nullable
+    private ServerSocket mServerSocket;
+    private boolean mPushScheduled;
+    // 以stable id为下标, 最近一次抓取时的 visibility+1, 0表示未知
+    @NonNull
+    private byte[] mVisibility = new byte[0];
+
+    @NonNull
+    private final ViewTreeObserver.OnGlobalLayoutListener mLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override
+        public void onGlobalLayout() {
+            onTreeChanged();
+        }
+    };
+    @NonNull
+    private final ViewTreeObserver.OnScrollChangedListener mScrollListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+            onTreeChanged();
+        }
+    };
+    @NonNull
+    private final ViewTreeObserver.OnGlobalFocusChangeListener mFocusListener =
+            new ViewTreeObserver.OnGlobalFocusChangeListener() {
+                @Override
+                public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+                    onTreeChanged();
+                }
+            };
+    // VISIBLE和INVISIBLE之间的切换不重新布局, 只使View及其父View需要重绘. 绘制前沿着需要重绘的路径比较子View的
+    // visibility, 其他原因的重绘(例如 overlay 随光标移动)不标记变化
+    @NonNull
+    private final ViewTreeObserver.OnPreDrawListener mPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            View root = mRoot;
+            if (root != null && root.isDirty() && isSubscribed() && visibilityChanged(root)) {
+                onTreeChanged();
+            }
+            return true;
+        }
+    };
+    @NonNull
+    private final Runnable mPushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mPushScheduled = false;
+            pushDeltas();
+        }
+    };
+
+    InspectionServer(@NonNull Target target) {
+        mTarget = target;
+        mStableIds.setRecycleListener(new ViewStableIds.RecycleListener() {
+            @Override
+            public void onIdRecycled(int id) {
+                if (id < mVisibility.length) {
+                    mVisibility[id] = 0;
+                }
+            }
+        });
+    }
+
+    @MainThread
+    boolean isRunning() {
+        return mServerSocket != null;
+    }
+
+    /**
+     * @param root 快照和增量的根View
+     */
+    @MainThread
+    void start(@NonNull View root, final int port) {
+        if (mServerSocket != null
+                || (root.getContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return;
+        }
+
+        final ServerSocket serverSocket;
+        try {
+            serverSocket = new ServerSocket();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to create server socket", e);
+            return;
+        }
+        mServerSocket = serverSocket;
+        mRoot = root;
+        ViewTreeObserver observer = root.getViewTreeObserver();
+        observer.addOnGlobalLayoutListener(mLayoutListener);
+        observer.addOnScrollChangedListener(mScrollListener);
+        observer.addOnGlobalFocusChangeListener(mFocusListener);
+        observer.addOnPreDrawListener(mPreDrawListener);
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop(serverSocket, port);
+            }
+        }, "ViewDebugInspector");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    @MainThread
+    void stop() {
+        if (mServerSocket == null) {
+            return;
+        }
+
+        closeQuietly(mServerSocket);
+        mServerSocket = null;
+        for (int i = mConnections.size() - 1; i >= 0; i--) {
+            mConnections.get(i).close();
+        }
+        mConnections.clear();
+        if (mRoot != null) {
+            ViewTreeObserver observer = mRoot.getViewTreeObserver();
+            observer.removeOnGlobalLayoutListener(mLayoutListener);
+            observer.removeOnScrollChangedListener(mScrollListener);
+            observer.removeOnGlobalFocusChangeListener(mFocusListener);
+            observer.removeOnPreDrawListener(mPreDrawListener);
+            mRoot = null;
+        }
+        DebugThreads.getMainHandler().removeCallbacks(mPushRunnable);
+        mPushScheduled = false;
+        mStableIds.clear();
+        mVisibility = new byte[0];
+    }
+
+    @WorkerThread
+    private void acceptLoop(@NonNull final ServerSocket serverSocket, int port) {
+        try {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+            Log.i(TAG, "Listening on 127.0.0.1:" + port + ", run: adb forward tcp:" + port + " tcp:" + port);
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                DebugThreads.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mServerSocket != serverSocket || mConnections.size() >= MAX_CONNECTIONS) {
+                            closeQuietly(socket);
+                            return;
+                        }
+                        Connection connection = new Connection(socket);
+                        mConnections.add(connection);
+                        connection.start();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // stop()关闭ServerSocket时accept()抛出异常, 属于正常退出
+            if (!serverSocket.isClosed()) {
+                Log.w(TAG, "Inspection server stopped", e);
+                DebugThreads.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mServerSocket == serverSocket) {
+                            stop();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    @MainThread
+    private void onTreeChanged() {
+        boolean subscribed = false;
+        for (int i = 0; i < mConnections.size(); i++) {
+            Connection connection = mConnections.get(i);
+            if (connection.mSubscriptionId != 0) {
+                connection.mDirty = true;
+                subscribed = true;
+            }
+        }
+        if (subscribed) {
+            schedulePush();
+        }
+    }
+
+    @MainThread
+    private boolean isSubscribed() {
+        for (int i = 0; i < mConnections.size(); i++) {
+            if (mConnections.get(i).mSubscriptionId != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只进入需要重绘的子View, 比较途经的 ViewGroup 的所有子View与最近一次抓取时的 visibility.
+     * 调用时 view.isDirty() 为true.
+     */
+    @MainThread
+    private boolean visibilityChanged(@NonNull View view) {
+        if (!(view instanceof ViewGroup)) {
+            return false;
+        }
+        ViewGroup group = (ViewGroup) view;
+        for (int i = 0; i < group.getChildCount(); i++) {
+            View child = group.getChildAt(i);
+            if (child == null || child instanceof IDebugView) {
+                continue;
+            }
+            int id = mStableIds.getId(child);
+            if (id < mVisibility.length && mVisibility[id] != 0 && mVisibility[id] != child.getVisibility() + 1) {
+                return true;
+            }
+            if (child.isDirty() && visibilityChanged(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @MainThread
+    private void schedulePush() {
+        if (mPushScheduled) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long nextTime = Long.MAX_VALUE;
+        for (int i = 0; i < mConnections.size(); i++) {
+            Connection connection = mConnections.get(i);
+            if (connection.mSubscriptionId != 0 && connection.mDirty) {
+                nextTime = Math.min(nextTime, connection.mLastPushTime + connection.mIntervalMs);
+            }
+        }
+        if (nextTime != Long.MAX_VALUE) {
+            mPushScheduled = true;
+            DebugThreads.getMainHandler().postDelayed(mPushRunnable, Math.max(0, nextTime - now));
+        }
+    }
+
+    // 所有到期的连接共用同一个快照, 快照交给写线程后不再修改
+    @MainThread
+    private void pushDeltas() {
+        if (mRoot == null) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        HierarchySnapshot snapshot = null;
+        for (int i = 0; i < mConnections.size(); i++) {
+            Connection connection = mConnections.get(i);
+            if (connection.mSubscriptionId == 0 || !connection.mDirty
+                    || now - connection.mLastPushTime < connection.mIntervalMs) {
+                continue;
+            }
+            if (snapshot == null) {
+                snapshot = captureSnapshot();
+            }
+            connection.mDirty = false;
+            connection.mLastPushTime = now;
+            connection.sendDelta(connection.mSubscriptionId, snapshot);
+        }
+        schedulePush();
+    }
+
+    @MainThread
+    @NonNull
+    private HierarchySnapshot captureSnapshot() {
+        HierarchySnapshot snapshot = new HierarchySnapshot();
+        //noinspection ConstantConditions
+        AndroidSnapshotAdapter.capture(snapshot, mRoot, mStableIds);
+        for (int i = 0; i < snapshot.count; i++) {
+            int id = snapshot.stableId[i];
+            if (id >= mVisibility.length) {
+                mVisibility = Arrays.copyOf(mVisibility, Math.max(id + 1, mVisibility.length * 2));
+            }
+            mVisibility[id] = (byte) (snapshot.visibility[i] + 1);
+        }
+        return snapshot;
+    }
+
+    @MainThread
+    @NonNull
+    private InspectionProtocol.Node toNode(@NonNull View view, @NonNull int[] location) {
+        InspectionProtocol.Node node = new InspectionProtocol.Node();
+        node.id = mStableIds.getId(view);
+        ViewParent parent = view.getParent();
+        if (parent instanceof View) {
+            node.parentId = mStableIds.getId((View) parent);
+        }
+        if (parent instanceof ViewGroup) {
+            node.childIndex = ((ViewGroup) parent).indexOfChild(view);
+        }
+        node.className = view.getClass().getName();
+        node.resourceId = view.getId();
+        view.getLocationOnScreen(location);
+        node.left = location[0];
+        node.top = location[1];
+        node.width = view.getWidth();
+        node.height = view.getHeight();
+        node.visibility = view.getVisibility();
+        node.flags = AndroidSnapshotAdapter.flagsOf(view);
+        node.scrollX = view.getScrollX();
+        node.scrollY = view.getScrollY();
+        return node;
+    }
+
+    @MainThread
+    @NonNull
+    private List<InspectionProtocol.Node> toNodes(@NonNull List<View> views) {
+        List<InspectionProtocol.Node> nodes = new ArrayList<>(views.size());
+        int[] location = new int[2];
+        for (int i = 0; i < views.size(); i++) {
+            nodes.add(toNode(views.get(i), location));
+        }
+        return nodes;
+    }
+
+    /**
+     * 把快照转换为协议中的节点, 顺序与快照相同(先序). 在写线程调用.
+     */
+    @WorkerThread
+    @NonNull
+    static InspectionProtocol.Node[] toNodes(@NonNull HierarchySnapshot snapshot, @Nullable Resources resources) {
+        InspectionProtocol.Node[] nodes = new InspectionProtocol.Node[snapshot.count];
+        int[] childCount = new int[snapshot.count];
+        for (int i = 0; i < snapshot.count; i++) {
+            InspectionProtocol.Node node = new InspectionProtocol.Node();
+            node.id = snapshot.stableId[i];
+            int parent = snapshot.parent[i];
+            if (parent >= 0) {
+                node.parentId = snapshot.stableId[parent];
+                node.childIndex = childCount[parent]++;
+            }
+            node.className = snapshot.classNames.get(snapshot.classIndex[i]);
+            node.resourceId = snapshot.id[i];
+            node.idName = resources != null ? ResourceNameCache.getName(resources, node.resourceId) : null;
+            node.left = snapshot.screenLeft[i];
+            node.top = snapshot.screenTop[i];
+            node.width = snapshot.right[i] - snapshot.left[i];
+            node.height = snapshot.bottom[i] - snapshot.top[i];
+            node.visibility = snapshot.visibility[i];
+            node.flags = snapshot.flags[i];
+            node.scrollX = snapshot.scrollX[i];
+            node.scrollY = snapshot.scrollY[i];
+            nodes[i] = node;
+        }
+        return nodes;
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 一个客户端连接. mSubscriptionId 等订阅状态只在主线程访问, mSent 只在写线程访问.
+     */
+    private final class Connection {
+        @NonNull
+        private final Socket mSocket;
+        @Nullable
+        private final Resources mResources;
+        @NonNull
+        private final ExecutorService mWriter;
+        private DataOutputStream mOut;
+        private volatile boolean mClosed;
+
+        // 订阅请求的序号, 0表示没有订阅
+        int mSubscriptionId;
+        int mIntervalMs;
+        long mLastPushTime;
+        boolean mDirty;
+
+        // 已经发给客户端的节点, 用于计算增量
+        @NonNull
+        private final Map<Integer, InspectionProtocol.Node> mSent = new HashMap<>();
+
+        Connection(@NonNull Socket socket) {
+            mSocket = socket;
+            //noinspection ConstantConditions
+            mResources = mRoot.getResources();
+            mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "ViewDebugInspector-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        @MainThread
+        void start() {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readLoop();
+                }
+            }, "ViewDebugInspector-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /**
+         * 可以在任意线程调用, 可以重复调用.
+         */
+        void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            closeQuietly(mSocket);
+            mWriter.shutdownNow();
+            DebugThreads.getMainHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    mConnections.remove(Connection.this);
+                }
+            });
+        }
+
+        @WorkerThread
+        private void readLoop() {
+            try {
+                // 之后所有写操作都在写线程中进行, 提交任务保证写线程能看到mOut
+                mOut = new DataOutputStream(new BufferedOutputStream(mSocket.getOutputStream()));
+                execute(new Task() {
+                    @Override
+                    public void run() throws IOException {
+                        InspectionProtocol.FrameWriter hello =
+                                new InspectionProtocol.FrameWriter(InspectionProtocol.MSG_HELLO, 0);
+                        hello.out.writeInt(InspectionProtocol.VERSION);
+                        send(hello);
+                    }
+                });
+
+                DataInputStream in = new DataInputStream(new BufferedInputStream(mSocket.getInputStream()));
+                while (!mClosed) {
+                    DataInputStream frame = InspectionProtocol.readFrame(in);
+                    int type = frame.readUnsignedByte();
+                    int requestId = frame.readInt();
+                    handleRequest(type, requestId, frame);
+                }
+            } catch (IOException e) {
+                if (!mClosed) {
+                    Log.d(TAG, "Inspection client disconnected: " + e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        // 在读线程中解析参数, 然后转到主线程处理
+        @WorkerThread
+        private void handleRequest(int type, final int requestId, @NonNull DataInputStream frame) throws IOException {
+            switch (type) {
+                case InspectionProtocol.REQ_HIT_TEST: {
+                    final int x = frame.readInt();
+                    final int y = frame.readInt();
+                    postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            List<View> views = new ArrayList<>();
+                            mTarget.findViewsAtPoint(x, y, views);
+                            sendNodes(requestId, toNodes(views));
+                        }
+                    });
+                    break;
+                }
+                case InspectionProtocol.REQ_CHAIN:
+                    postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            List<View> views = new ArrayList<>();
+                            mTarget.getViewsAtCursor(views);
+                            sendNodes(requestId, toNodes(views));
+                        }
+                    });
+                    break;
+                case InspectionProtocol.REQ_FOCUS_SEARCH: {
+                    final int nodeId = frame.readInt();
+                    final int direction = frame.readInt();
+                    postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            View view = mStableIds.getView(nodeId);
+                            if (view == null || !view.isAttachedToWindow()) {
+                                sendError(requestId, "Unknown node " + nodeId);
+                                return;
+                            }
+                            List<View> views = new ArrayList<>(1);
+                            View next = view.focusSearch(direction);
+                            if (next != null) {
+                                views.add(next);
+                            }
+                            sendNodes(requestId, toNodes(views));
+                        }
+                    });
+                    break;
+                }
+                case InspectionProtocol.REQ_SNAPSHOT:
+                    postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            sendSnapshot(requestId, captureSnapshot());
+                        }
+                    });
+                    break;
+                case InspectionProtocol.REQ_SUBSCRIBE: {
+                    if (requestId == 0) {
+                        sendError(requestId, "Subscription request id must not be 0");
+                        break;
+                    }
+                    final int intervalMs = Math.max(MIN_DELTA_INTERVAL_MS, frame.readInt());
+                    postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            mSubscriptionId = requestId;
+                            mIntervalMs = intervalMs;
+                            mLastPushTime = 0;
+                            mDirty = true;
+                            // 订阅后的第一个增量包含所有节点
+                            execute(new Task() {
+                                @Override
+                                public void run() {
+                                    mSent.clear();
+                                }
+                            });
+                            schedulePush();
+                        }
+                    });
+                    break;
+                }
+                case InspectionProtocol.REQ_UNSUBSCRIBE:
+                    postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            mSubscriptionId = 0;
+                            mDirty = false;
+                        }
+                    });
+                    break;
+                default:
+                    sendError(requestId, "Unknown request type " + type);
+                    break;
+            }
+        }
+
+        private void postToMain(@NonNull final Runnable runnable) {
+            DebugThreads.getMainHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mClosed && mRoot != null) {
+                        runnable.run();
+                    }
+                }
+            });
+        }
+
+        private void sendNodes(final int requestId, @NonNull final List<InspectionProtocol.Node> nodes) {
+            execute(new Task() {
+                @Override
+                public void run() throws IOException {
+                    InspectionProtocol.FrameWriter frame =
+                            new InspectionProtocol.FrameWriter(InspectionProtocol.RESP_NODES, requestId);
+                    frame.out.writeInt(nodes.size());
+                    for (InspectionProtocol.Node node : nodes) {
+                        node.idName = mResources != null ? ResourceNameCache.getName(mResources, node.resourceId) : null;
+                        node.write(frame.out);
+                    }
+                    send(frame);
+                }
+            });
+        }
+
+        private void sendSnapshot(final int requestId, @NonNull final HierarchySnapshot snapshot) {
+            execute(new Task() {
+                @Override
+                public void run() throws IOException {
+                    InspectionProtocol.Node[] nodes = toNodes(snapshot, mResources);
+                    InspectionProtocol.FrameWriter frame =
+                            new InspectionProtocol.FrameWriter(InspectionProtocol.RESP_NODES, requestId);
+                    frame.out.writeInt(nodes.length);
+                    for (InspectionProtocol.Node node : nodes) {
+                        node.write(frame.out);
+                    }
+                    send(frame);
+                }
+            });
+        }
+
+        void sendDelta(final int requestId, @NonNull final HierarchySnapshot snapshot) {
+            execute(new Task() {
+                @Override
+                public void run() throws IOException {
+                    writeDelta(requestId, snapshot);
+                }
+            });
+        }
+
+        private void sendError(final int requestId, @NonNull final String message) {
+            execute(new Task() {
+                @Override
+                public void run() throws IOException {
+                    InspectionProtocol.FrameWriter frame =
+                            new InspectionProtocol.FrameWriter(InspectionProtocol.RESP_ERROR, requestId);
+                    frame.out.writeUTF(message);
+                    send(frame);
+                }
+            });
+        }
+
+        // 与上次发出的节点比较, 删除的id和新增或变化的节点写到一个帧中
+        @WorkerThread
+        private void writeDelta(int requestId, @NonNull HierarchySnapshot snapshot) throws IOException {
+            InspectionProtocol.Node[] nodes = toNodes(snapshot, mResources);
+            Map<Integer, InspectionProtocol.Node> current = new HashMap<>(nodes.length * 2);
+            List<InspectionProtocol.Node> changed = new ArrayList<>();
+            for (InspectionProtocol.Node node : nodes) {
+                current.put(node.id, node);
+                InspectionProtocol.Node old = mSent.get(node.id);
+                if (old == null || !old.sameAs(node)) {
+                    changed.add(node);
+                }
+            }
+            List<Integer> removed = new ArrayList<>();
+            for (Integer id : mSent.keySet()) {
+                if (!current.containsKey(id)) {
+                    removed.add(id);
+                }
+            }
+            boolean first = mSent.isEmpty();
+            mSent.clear();
+            mSent.putAll(current);
+            if (!first && changed.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+
+            InspectionProtocol.FrameWriter frame = new InspectionProtocol.FrameWriter(InspectionProtocol.MSG_DELTA, requestId);
+            frame.out.writeLong(snapshot.captureTimeMillis);
+            frame.out.writeInt(removed.size());
+            for (int i = 0; i < removed.size(); i++) {
+                frame.out.writeInt(removed.get(i));
+            }
+            frame.out.writeInt(changed.size());
+            for (int i = 0; i < changed.size(); i++) {
+                changed.get(i).write(frame.out);
+            }
+            send(frame);
+        }
+
+        @WorkerThread
+        private void send(@NonNull InspectionProtocol.FrameWriter frame) throws IOException {
+            frame.writeTo(mOut);
+        }
+
+        private void execute(@NonNull final Task task) {
+            try {
+                mWriter.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mClosed) {
+                            return;
+                        }
+                        try {
+                            task.run();
+                        } catch (IOException e) {
+                            Log.d(TAG, "Failed to write to inspection client: " + e);
+                            close();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 连接已关闭
+            }
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,188 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 同时匹配多个激活按键序列的自动机(Aho-Corasick, 预先展开为DFA转移表).
+ * <p>
+ * 按键值先通过 mClassOfKeyCode 映射为"字符类"(不在任何序列中的按键都属于类0), 每个按键只需查两次数组,
+ * 不分配内存. 序列之间有公共前缀或一个序列的后缀是另一个序列的前缀时也能正确匹配,
+ * 例如序列 1,1,2 在按键 1,1,1,2 中可以被匹配到.
+ * <p>
+ * 匹配器创建后不可修改, 序列变化时重新 {@link #compile(int[][])} 一个新的匹配器.
+ */
+final class KeySequenceMatcher {
+    // 序列中允许的最大按键值. KeyEvent.getMaxKeyCode() 目前在300左右
+    static final int MAX_KEY_CODE = 1023;
+
+    @NonNull
+    private final int[] mClassOfKeyCode;
+    private final int mClassCount;
+    // mTransitions[state * mClassCount + class] 为下一个状态, 状态0为初始状态
+    @NonNull
+    private final int[] mTransitions;
+    // 到达该状态时匹配成功的序列序号, 不匹配时为-1
+    @NonNull
+    private final int[] mMatches;
+    private int mState;
+
+    private KeySequenceMatcher(@NonNull int[] classOfKeyCode, int classCount, @NonNull int[] transitions,
+                               @NonNull int[] matches) {
+        mClassOfKeyCode = classOfKeyCode;
+        mClassCount = classCount;
+        mTransitions = transitions;
+        mMatches = matches;
+    }
+
+    /**
+     * 输入一个按键.
+     *
+     * @return 以该按键结束的激活序列的序号, 没有序列被匹配时返回-1
+     */
+    int onKey(int keyCode) {
+        int c = keyCode >= 0 && keyCode < mClassOfKeyCode.length ? mClassOfKeyCode[keyCode] : 0;
+        mState = mTransitions[mState * mClassCount + c];
+        return mMatches[mState];
+    }
+
+    /**
+     * 回到初始状态, 之前输入的按键不再参与匹配.
+     */
+    void reset() {
+        mState = 0;
+    }
+
+    /**
+     * @param sequences 激活序列, 每个序列至少包含一个按键, 按键值在 0 到 {@link #MAX_KEY_CODE} 之间
+     * @throws IllegalArgumentException 序列为空或按键值超出范围
+     */
+    @NonNull
+    static KeySequenceMatcher compile(@NonNull int[][] sequences) {
+        // 1. 按键值 -> 字符类
+        int maxKeyCode = 0;
+        for (int[] sequence : sequences) {
+            if (sequence.length == 0) {
+                throw new IllegalArgumentException("Empty key sequence");
+            }
+            for (int keyCode : sequence) {
+                if (keyCode < 0 || keyCode > MAX_KEY_CODE) {
+                    throw new IllegalArgumentException("Invalid key code " + keyCode);
+                }
+                maxKeyCode = Math.max(maxKeyCode, keyCode);
+            }
+        }
+        int[] classOfKeyCode = new int[maxKeyCode + 1];
+        int classCount = 1;
+        for (int[] sequence : sequences) {
+            for (int keyCode : sequence) {
+                if (classOfKeyCode[keyCode] == 0) {
+                    classOfKeyCode[keyCode] = classCount++;
+                }
+            }
+        }
+
+        // 2. 字典树, 先用-1表示没有子节点
+        int maxStates = 1;
+        for (int[] sequence : sequences) {
+            maxStates += sequence.length;
+        }
+        int[] transitions = new int[maxStates * classCount];
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = -1;
+        }
+        int[] matches = new int[maxStates];
+        for (int i = 0; i < maxStates; i++) {
+            matches[i] = -1;
+        }
+        int stateCount = 1;
+        for (int index = 0; index < sequences.length; index++) {
+            int state = 0;
+            for (int keyCode : sequences[index]) {
+                int slot = state * classCount + classOfKeyCode[keyCode];
+                if (transitions[slot] < 0) {
+                    transitions[slot] = stateCount++;
+                }
+                state = transitions[slot];
+            }
+            if (matches[state] < 0) {
+                matches[state] = index;
+            }
+        }
+
+        // 3. 按广度优先顺序计算失败指针, 并把缺失的转移补全为失败状态的转移
+        int[] fail = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < classCount; c++) {
+            int next = transitions[c];
+            if (next < 0) {
+                transitions[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            if (matches[state] < 0) {
+                // 某个序列是当前输入的后缀
+                matches[state] = matches[fail[state]];
+            }
+            for (int c = 0; c < classCount; c++) {
+                int slot = state * classCount + c;
+                int next = transitions[slot];
+                int fallback = transitions[fail[state] * classCount + c];
+                if (next < 0) {
+                    transitions[slot] = fallback;
+                } else {
+                    fail[next] = fallback;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        int[] compact = new int[stateCount * classCount];
+        System.arraycopy(transitions, 0, compact, 0, compact.length);
+        int[] compactMatches = new int[stateCount];
+        System.arraycopy(matches, 0, compactMatches, 0, stateCount);
+        return new KeySequenceMatcher(classOfKeyCode, classCount, compact, compactMatches);
+    }
+
+    /**
+     * 解析激活序列的配置, 格式为以 ';' 分隔的序列, 每个序列是以 ',' 分隔的按键值, 例如 "16,12,9,14;166,167,167,166".
+     *
+     * @return 格式错误或没有任何序列时返回null
+     */
+    @Nullable
+    static int[][] parse(@Nullable String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+
+        List<int[]> sequences = new ArrayList<>();
+        for (String part : spec.split(";")) {
+            if (part.trim().isEmpty()) {
+                continue;
+            }
+            String[] keys = part.split(",");
+            int[] sequence = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                try {
+                    sequence[i] = Integer.parseInt(keys[i].trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (sequence[i] < 0 || sequence[i] > MAX_KEY_CODE) {
+                    return null;
+                }
+            }
+            sequences.add(sequence);
+        }
+        return sequences.isEmpty() ? null : sequences.toArray(new int[sequences.size()][]);
+    }
+}
@@ -0,0 +1,565 @@
+package com.stv.debug;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * 统计每个 View 在最近一段时间内重新布局和重绘的次数, 用于发现每帧都在调用 requestLayout() 或 invalidate() 的 View.
+ * <p>
+ * 三个时机采样, 都只进入被标记的路径, 没有布局和重绘时只检查根View:
+ * <ul>
+ * <li>Choreographer 帧回调(在布局之前): isLayoutRequested() 的标记会传递到所有父View, 只统计没有子View被标记的
+ * View, 即发起 requestLayout() 的 View;</li>
+ * <li>全局布局完成后: 与上次记录的位置和大小比较, 被父View移动或改变大小的 View 也算一次布局. 只检查被标记或大小变化的
+ * View 的子View; 本帧布局前根View没有被标记时(布局由更晚的回调发起)检查整个 View 树;</li>
+ * <li>绘制之前: isDirty() 的标记同样会传递到父View, 只统计没有子View被标记的 View.</li>
+ * </ul>
+ * 同一个 View 在一帧内每种事件最多计一次. overlay(DebugToolView)自身的重绘和布局不统计.
+ * <p>
+ * 计数以 {@link ViewStableIds} 的id为下标保存在 int 数组中, 不装箱. 时间窗口分成若干个桶, 每个桶记录本时段内
+ * 计数过的id, 桶过期时只从总数中减去这些id的计数. 每个桶结束时重新生成结果, 按次数从高到低排列.
+ */
+final class LayoutHeatmap implements Choreographer.FrameCallback, ViewTreeObserver.OnGlobalLayoutListener,
+        ViewTreeObserver.OnPreDrawListener {
+    static final int BUCKET_MS = 250;
+    static final int BUCKET_COUNT = 8;
+    static final int WINDOW_MS = BUCKET_MS * BUCKET_COUNT;
+    // 显示类名和资源id的最热的View的数量
+    static final int MAX_LABELS = 5;
+
+    interface Listener {
+        /**
+         * 每个时间桶结束时在主线程调用, 之后可以通过 getter 读取结果.
+         */
+        void onHeatmapUpdated(@NonNull LayoutHeatmap heatmap);
+    }
+
+    @NonNull
+    private final Listener mListener;
+    @Nullable
+    private View mRoot;
+    @Nullable
+    private View mOverlay;
+    @Nullable
+    private ViewTreeObserver mObserver;
+    @NonNull
+    private final ViewStableIds<View> mStableIds = new ViewStableIds<>();
+
+    // 帧序号从1开始, 0表示从未记录
+    private int mFrame;
+    private int mRootRequestedFrame;
+    private int mLayoutSeq;
+    private long mStartTime;
+    private long mBucketEnd;
+
+    // 以stable id为下标
+    @NonNull
+    private int[] mLayoutTotal = new int[0];
+    @NonNull
+    private int[] mDrawTotal = new int[0];
+    @NonNull
+    private int[] mLayoutFrame = new int[0];
+    @NonNull
+    private int[] mDrawFrame = new int[0];
+    @NonNull
+    private int[] mRequestedFrame = new int[0];
+    // 上次记录的相对父View的位置, mBoundsSeq为0表示还没有记录
+    @NonNull
+    private int[] mBoundsSeq = new int[0];
+    @NonNull
+    private int[] mBoundsLeft = new int[0];
+    @NonNull
+    private int[] mBoundsTop = new int[0];
+    @NonNull
+    private int[] mBoundsRight = new int[0];
+    @NonNull
+    private int[] mBoundsBottom = new int[0];
+    @NonNull
+    private String[] mLabels = new String[0];
+    @NonNull
+    private int[] mResultMark = new int[0];
+    private int mResultSeq;
+
+    @NonNull
+    private final Bucket[] mBuckets = new Bucket[BUCKET_COUNT];
+    private int mBucket;
+
+    // 结果, 按布局和重绘次数之和从高到低排列, 矩形相对于overlay
+    private int mCount;
+    @NonNull
+    private int[] mResultId = new int[0];
+    @NonNull
+    private int[] mLeft = new int[0];
+    @NonNull
+    private int[] mTop = new int[0];
+    @NonNull
+    private int[] mRight = new int[0];
+    @NonNull
+    private int[] mBottom = new int[0];
+    @NonNull
+    private int[] mLayoutCount = new int[0];
+    @NonNull
+    private int[] mDrawCount = new int[0];
+    @NonNull
+    private long[] mSortKeys = new long[0];
+    private int mTotalLayouts;
+    private int mTotalDraws;
+    private int mWindowMs;
+    @NonNull
+    private final int[] mLocation = new int[2];
+
+    LayoutHeatmap(@NonNull Listener listener) {
+        mListener = listener;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets[i] = new Bucket();
+        }
+        // id被重新分配时计数已经移出时间窗口, 只需清除上次记录的位置和标签
+        mStableIds.setRecycleListener(new ViewStableIds.RecycleListener() {
+            @Override
+            public void onIdRecycled(int id) {
+                if (id < mBoundsSeq.length) {
+                    mBoundsSeq[id] = 0;
+                    mLabels[id] = null;
+                }
+            }
+        });
+    }
+
+    boolean isAttached() {
+        return mRoot != null;
+    }
+
+    /**
+     * @param overlay 不统计该View, 结果的坐标相对于该View
+     */
+    void attach(@NonNull View root, @NonNull View overlay) {
+        detach();
+
+        mRoot = root;
+        mOverlay = overlay;
+        mObserver = root.getViewTreeObserver();
+        mObserver.addOnGlobalLayoutListener(this);
+        mObserver.addOnPreDrawListener(this);
+        mStartTime = SystemClock.uptimeMillis();
+        mBucketEnd = mStartTime + BUCKET_MS;
+        // 记录初始位置, 之后的变化才计数
+        mLayoutSeq++;
+        recordBounds(root, true, false);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void detach() {
+        if (mRoot == null) {
+            return;
+        }
+
+        Choreographer.getInstance().removeFrameCallback(this);
+        ViewTreeObserver observer = mObserver;
+        if (observer == null || !observer.isAlive()) {
+            observer = mRoot.getViewTreeObserver();
+        }
+        observer.removeOnGlobalLayoutListener(this);
+        observer.removeOnPreDrawListener(this);
+        mObserver = null;
+        mRoot = null;
+        mOverlay = null;
+        // id从1开始重新分配, 以id为下标的数组也重新分配, 下次 attach 时按新的 View 树的大小增长
+        mStableIds.clear();
+        for (Bucket bucket : mBuckets) {
+            bucket.release();
+        }
+        mLayoutTotal = new int[0];
+        mDrawTotal = new int[0];
+        mLayoutFrame = new int[0];
+        mDrawFrame = new int[0];
+        mRequestedFrame = new int[0];
+        mBoundsSeq = new int[0];
+        mBoundsLeft = new int[0];
+        mBoundsTop = new int[0];
+        mBoundsRight = new int[0];
+        mBoundsBottom = new int[0];
+        mLabels = new String[0];
+        mResultMark = new int[0];
+        mFrame = 0;
+        mRootRequestedFrame = 0;
+        mCount = 0;
+        mTotalLayouts = 0;
+        mTotalDraws = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        View root = mRoot;
+        if (root == null) {
+            return;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+
+        mFrame++;
+        if (root.isLayoutRequested()) {
+            mRootRequestedFrame = mFrame;
+            countLayoutRequests(root);
+        }
+
+        long now = SystemClock.uptimeMillis();
+        if (now >= mBucketEnd) {
+            // 长时间没有帧时最多清空整个窗口
+            for (int i = 0; i < BUCKET_COUNT && now >= mBucketEnd; i++) {
+                mBucket = (mBucket + 1) % BUCKET_COUNT;
+                expireBucket(mBuckets[mBucket]);
+                mBucketEnd += BUCKET_MS;
+            }
+            if (now >= mBucketEnd) {
+                mBucketEnd = now + BUCKET_MS;
+            }
+            updateResults(now);
+            mListener.onHeatmapUpdated(this);
+        }
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        View root = mRoot;
+        if (root == null) {
+            return;
+        }
+
+        mLayoutSeq++;
+        recordBounds(root, mRootRequestedFrame != mFrame, true);
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        View root = mRoot;
+        if (root != null && root.isDirty()) {
+            countDirty(root);
+        }
+        return true;
+    }
+
+    // 调用时 view.isLayoutRequested() 为true, 只统计没有被标记的子View的 View
+    private void countLayoutRequests(@NonNull View view) {
+        int id = mStableIds.getId(view);
+        ensureCapacity(id);
+        mRequestedFrame[id] = mFrame;
+        boolean childRequested = false;
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                View child = group.getChildAt(i);
+                if (child != null && child.isLayoutRequested()) {
+                    // overlay被标记时父View也不统计
+                    childRequested = true;
+                    if (child != mOverlay) {
+                        countLayoutRequests(child);
+                    }
+                }
+            }
+        }
+        if (!childRequested) {
+            countLayout(id);
+        }
+    }
+
+    // 调用时 view.isDirty() 为true
+    private void countDirty(@NonNull View view) {
+        boolean childDirty = false;
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                View child = group.getChildAt(i);
+                if (child != null && child.isDirty()) {
+                    childDirty = true;
+                    if (child != mOverlay) {
+                        countDirty(child);
+                    }
+                }
+            }
+        }
+        if (!childDirty) {
+            int id = mStableIds.getId(view);
+            ensureCapacity(id);
+            if (mDrawFrame[id] != mFrame) {
+                mDrawFrame[id] = mFrame;
+                mDrawTotal[id]++;
+                mBuckets[mBucket].add(id, false);
+            }
+        }
+    }
+
+    /**
+     * 记录 view 的位置和大小. 只进入被标记(requestLayout)或大小变化的 View 的子View, 它们的子View才可能被重新布局.
+     *
+     * @param all   为true时检查所有子View
+     * @param count 为true时位置或大小变化计为一次布局
+     */
+    private void recordBounds(@NonNull View view, boolean all, boolean count) {
+        if (view == mOverlay) {
+            return;
+        }
+
+        int id = mStableIds.getId(view);
+        ensureCapacity(id);
+        int left = view.getLeft();
+        int top = view.getTop();
+        int right = view.getRight();
+        int bottom = view.getBottom();
+        boolean changed = mBoundsSeq[id] != 0 && (mBoundsLeft[id] != left || mBoundsTop[id] != top
+                || mBoundsRight[id] != right || mBoundsBottom[id] != bottom);
+        mBoundsSeq[id] = mLayoutSeq;
+        mBoundsLeft[id] = left;
+        mBoundsTop[id] = top;
+        mBoundsRight[id] = right;
+        mBoundsBottom[id] = bottom;
+        if (changed && count) {
+            countLayout(id);
+        }
+
+        if (view instanceof ViewGroup && (all || changed || mRequestedFrame[id] == mFrame)) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                View child = group.getChildAt(i);
+                if (child != null) {
+                    recordBounds(child, all, count);
+                }
+            }
+        }
+    }
+
+    private void countLayout(int id) {
+        if (mLayoutFrame[id] != mFrame) {
+            mLayoutFrame[id] = mFrame;
+            mLayoutTotal[id]++;
+            mBuckets[mBucket].add(id, true);
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < mLayoutTotal.length) {
+            return;
+        }
+
+        int capacity = Math.max(id + 1, mLayoutTotal.length * 2);
+        mLayoutTotal = Arrays.copyOf(mLayoutTotal, capacity);
+        mDrawTotal = Arrays.copyOf(mDrawTotal, capacity);
+        mLayoutFrame = Arrays.copyOf(mLayoutFrame, capacity);
+        mDrawFrame = Arrays.copyOf(mDrawFrame, capacity);
+        mRequestedFrame = Arrays.copyOf(mRequestedFrame, capacity);
+        mBoundsSeq = Arrays.copyOf(mBoundsSeq, capacity);
+        mBoundsLeft = Arrays.copyOf(mBoundsLeft, capacity);
+        mBoundsTop = Arrays.copyOf(mBoundsTop, capacity);
+        mBoundsRight = Arrays.copyOf(mBoundsRight, capacity);
+        mBoundsBottom = Arrays.copyOf(mBoundsBottom, capacity);
+        mLabels = Arrays.copyOf(mLabels, capacity);
+        mResultMark = Arrays.copyOf(mResultMark, capacity);
+        for (Bucket bucket : mBuckets) {
+            bucket.ensureCapacity(capacity);
+        }
+    }
+
+    private void expireBucket(@NonNull Bucket bucket) {
+        for (int i = 0; i < bucket.touchedCount; i++) {
+            int id = bucket.touched[i];
+            mLayoutTotal[id] -= bucket.layout[id];
+            mDrawTotal[id] -= bucket.draw[id];
+        }
+        bucket.clear();
+    }
+
+    private void updateResults(long now) {
+        mCount = 0;
+        mTotalLayouts = 0;
+        mTotalDraws = 0;
+        mWindowMs = (int) Math.max(BUCKET_MS, Math.min(WINDOW_MS, now - mStartTime));
+        View overlay = mOverlay;
+        if (overlay == null) {
+            return;
+        }
+
+        overlay.getLocationOnScreen(mLocation);
+        int originX = mLocation[0];
+        int originY = mLocation[1];
+        // 窗口内计数过的id分散在各个桶中, 用mResultMark去重
+        mResultSeq++;
+        int candidates = 0;
+        for (Bucket bucket : mBuckets) {
+            candidates += bucket.touchedCount;
+        }
+        if (mSortKeys.length < candidates) {
+            mSortKeys = new long[Math.max(candidates, mSortKeys.length * 2)];
+        }
+        int keys = 0;
+        for (Bucket bucket : mBuckets) {
+            for (int i = 0; i < bucket.touchedCount; i++) {
+                int id = bucket.touched[i];
+                if (mResultMark[id] == mResultSeq) {
+                    continue;
+                }
+                mResultMark[id] = mResultSeq;
+                int score = mLayoutTotal[id] + mDrawTotal[id];
+                if (score > 0) {
+                    mTotalLayouts += mLayoutTotal[id];
+                    mTotalDraws += mDrawTotal[id];
+                    // 升序排序后从后往前取, 分数高的在前
+                    mSortKeys[keys++] = (long) score << 32 | id;
+                }
+            }
+        }
+        Arrays.sort(mSortKeys, 0, keys);
+
+        ensureResultCapacity(keys);
+        for (int k = keys - 1; k >= 0; k--) {
+            int id = (int) mSortKeys[k];
+            View view = mStableIds.getView(id);
+            if (view == null || !view.isShown()) {
+                continue;
+            }
+
+            int i = mCount++;
+            view.getLocationOnScreen(mLocation);
+            mResultId[i] = id;
+            mLeft[i] = mLocation[0] - originX;
+            mTop[i] = mLocation[1] - originY;
+            mRight[i] = mLeft[i] + view.getWidth();
+            mBottom[i] = mTop[i] + view.getHeight();
+            mLayoutCount[i] = mLayoutTotal[id];
+            mDrawCount[i] = mDrawTotal[id];
+        }
+    }
+
+    private void ensureResultCapacity(int count) {
+        if (mResultId.length >= count) {
+            return;
+        }
+
+        int capacity = Math.max(count, mResultId.length * 2);
+        mResultId = new int[capacity];
+        mLeft = new int[capacity];
+        mTop = new int[capacity];
+        mRight = new int[capacity];
+        mBottom = new int[capacity];
+        mLayoutCount = new int[capacity];
+        mDrawCount = new int[capacity];
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    int getLeft(int i) {
+        return mLeft[i];
+    }
+
+    int getTop(int i) {
+        return mTop[i];
+    }
+
+    int getRight(int i) {
+        return mRight[i];
+    }
+
+    int getBottom(int i) {
+        return mBottom[i];
+    }
+
+    /**
+     * @return 时间窗口内该View的布局次数
+     */
+    int getLayoutCount(int i) {
+        return mLayoutCount[i];
+    }
+
+    /**
+     * @return 时间窗口内该View的重绘次数
+     */
+    int getDrawCount(int i) {
+        return mDrawCount[i];
+    }
+
+    int getTotalLayoutCount() {
+        return mTotalLayouts;
+    }
+
+    int getTotalDrawCount() {
+        return mTotalDraws;
+    }
+
+    /**
+     * @return 统计的时间窗口长度, 刚开始统计时小于 {@link #WINDOW_MS}
+     */
+    int getWindowMs() {
+        return mWindowMs;
+    }
+
+    @Nullable
+    View getView(int i) {
+        return mStableIds.getView(mResultId[i]);
+    }
+
+    /**
+     * @return 由使用者设置的标签, 按View缓存, 还没有设置时返回null
+     */
+    @Nullable
+    String getLabel(int i) {
+        return mLabels[mResultId[i]];
+    }
+
+    void setLabel(int i, @NonNull String label) {
+        mLabels[mResultId[i]] = label;
+    }
+
+    /**
+     * 一个时间段内的计数, 以stable id为下标. touched 记录计数过的id, 过期时只需要处理这些id.
+     */
+    private static final class Bucket {
+        @NonNull
+        int[] layout = new int[0];
+        @NonNull
+        int[] draw = new int[0];
+        @NonNull
+        int[] touched = new int[16];
+        int touchedCount;
+
+        void ensureCapacity(int capacity) {
+            layout = Arrays.copyOf(layout, capacity);
+            draw = Arrays.copyOf(draw, capacity);
+        }
+
+        void add(int id, boolean isLayout) {
+            if (layout[id] == 0 && draw[id] == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = id;
+            }
+            if (isLayout) {
+                layout[id]++;
+            } else {
+                draw[id]++;
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                layout[touched[i]] = 0;
+                draw[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+
+        void release() {
+            layout = new int[0];
+            draw = new int[0];
+            touched = new int[16];
+            touchedCount = 0;
+        }
+    }
+}
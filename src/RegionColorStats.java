@@ -0,0 +1,374 @@
+package com.stv.debug;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 统计屏幕上一个矩形区域的颜色: 平均颜色、最暗和最亮的像素(按亮度), 以及亮度直方图, 用于检查色带和对比度.
+ * <p>
+ * 像素来自 {@link ScreenCapturer} 的前台缓冲区, 计算期间锁定该缓冲区. 区域按行分成若干条带, 在
+ * {@link DebugThreads#getWorkerExecutor()} 中并行统计, 每个条带用 getPixels() 一次读取多行到复用的 int[] 中,
+ * 最后一个完成的条带把结果转到主线程合并. 计算过程中再次请求时只保留最新的区域, 当前计算结束后再开始.
+ * <p>
+ * 截屏被缩小时(见 debug.view_debugger.capture_budget_kb)统计的是缩小后的像素.
+ */
+final class RegionColorStats {
+    static final int HISTOGRAM_SIZE = 256;
+    // 每个条带至少包含的像素数, 小区域不值得拆分
+    private static final int MIN_PIXELS_PER_STRIP = 64 * 1024;
+    // 每次 getPixels() 最多读取的像素数
+    private static final int MAX_PIXELS_PER_READ = 16 * 1024;
+
+    interface Listener {
+        /**
+         * 在主线程调用, 可以通过 getter 读取统计结果.
+         */
+        void onRegionStatsUpdated(@NonNull RegionColorStats stats);
+    }
+
+    @NonNull
+    private final ScreenCapturer mCapturer;
+    @NonNull
+    private final Listener mListener;
+
+    // 统计结果, 只在主线程访问
+    @NonNull
+    private final Rect mRegion = new Rect();
+    private long mPixelCount;
+    private int mAverageColor;
+    private int mMinColor;
+    private int mMaxColor;
+    private int mMinLuma;
+    private int mMaxLuma;
+    @NonNull
+    private final int[] mHistogram = new int[HISTOGRAM_SIZE];
+    private int mHistogramMax;
+    private long mComputeNanos;
+    private int mStripCount;
+
+    // 计算状态
+    private boolean mRunning;
+    private boolean mPending;
+    @NonNull
+    private final Rect mPendingRegion = new Rect();
+    // cancel()后递增, 之前开始的计算结果被丢弃
+    private int mGeneration;
+    @NonNull
+    private Strip[] mStrips = new Strip[0];
+    @NonNull
+    private final AtomicInteger mRemaining = new AtomicInteger();
+    @NonNull
+    private final Rect mComputingRegion = new Rect();
+    @NonNull
+    private final Rect mSrc = new Rect();
+    private long mStartNanos;
+
+    RegionColorStats(@NonNull ScreenCapturer capturer, @NonNull Listener listener) {
+        mCapturer = capturer;
+        mListener = listener;
+    }
+
+    /**
+     * 开始统计 region(根View坐标)内的像素. 区域不在已截取的范围内时不回调.
+     */
+    @MainThread
+    void request(@NonNull Rect region) {
+        if (mRunning) {
+            mPending = true;
+            mPendingRegion.set(region);
+            return;
+        }
+        start(region);
+    }
+
+    /**
+     * 丢弃正在进行和等待中的计算.
+     */
+    @MainThread
+    void cancel() {
+        mGeneration++;
+        mPending = false;
+    }
+
+    private void start(@NonNull Rect region) {
+        mComputingRegion.set(region);
+        final Bitmap bitmap = mCapturer.lockFront(mComputingRegion, mSrc);
+        if (bitmap == null) {
+            return;
+        }
+
+        int width = mSrc.width();
+        int height = mSrc.height();
+        long pixels = (long) width * height;
+        int stripCount = (int) Math.min(DebugThreads.getWorkerCount(),
+                Math.min(height, (pixels + MIN_PIXELS_PER_STRIP - 1) / MIN_PIXELS_PER_STRIP));
+        stripCount = Math.max(1, stripCount);
+        if (mStrips.length < stripCount) {
+            Strip[] strips = new Strip[stripCount];
+            System.arraycopy(mStrips, 0, strips, 0, mStrips.length);
+            for (int i = mStrips.length; i < stripCount; i++) {
+                strips[i] = new Strip();
+            }
+            mStrips = strips;
+        }
+
+        mRunning = true;
+        mStripCount = stripCount;
+        mStartNanos = System.nanoTime();
+        mRemaining.set(stripCount);
+        final int generation = mGeneration;
+        for (int i = 0; i < stripCount; i++) {
+            final Strip strip = mStrips[i];
+            strip.set(bitmap, mSrc.left, mSrc.right, mSrc.top + height * i / stripCount,
+                    mSrc.top + height * (i + 1) / stripCount);
+            DebugThreads.getWorkerExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        strip.run();
+                    } finally {
+                        // 出现异常时也要解锁缓冲区
+                        if (mRemaining.decrementAndGet() == 0) {
+                            DebugThreads.getMainHandler().post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    finish(generation);
+                                }
+                            });
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void finish(int generation) {
+        mCapturer.unlockFront();
+        mRunning = false;
+        if (generation == mGeneration) {
+            merge();
+            mComputeNanos = System.nanoTime() - mStartNanos;
+            mListener.onRegionStatsUpdated(this);
+        }
+
+        if (mPending) {
+            mPending = false;
+            start(mPendingRegion);
+        }
+    }
+
+    private void merge() {
+        mRegion.set(mComputingRegion);
+        long count = 0;
+        long sumR = 0;
+        long sumG = 0;
+        long sumB = 0;
+        mMinLuma = Integer.MAX_VALUE;
+        mMaxLuma = -1;
+        for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+            mHistogram[bin] = 0;
+        }
+        for (int i = 0; i < mStripCount; i++) {
+            Strip strip = mStrips[i];
+            count += strip.mCount;
+            sumR += strip.mSumR;
+            sumG += strip.mSumG;
+            sumB += strip.mSumB;
+            if (strip.mCount > 0 && strip.mMinLuma < mMinLuma) {
+                mMinLuma = strip.mMinLuma;
+                mMinColor = strip.mMinColor;
+            }
+            if (strip.mCount > 0 && strip.mMaxLuma > mMaxLuma) {
+                mMaxLuma = strip.mMaxLuma;
+                mMaxColor = strip.mMaxColor;
+            }
+            for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+                mHistogram[bin] += strip.mHistogram[bin];
+            }
+        }
+
+        mPixelCount = count;
+        mHistogramMax = 0;
+        for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+            mHistogramMax = Math.max(mHistogramMax, mHistogram[bin]);
+        }
+        if (count > 0) {
+            mAverageColor = (int) ((sumR + count / 2) / count) << 16 | (int) ((sumG + count / 2) / count) << 8
+                    | (int) ((sumB + count / 2) / count);
+        } else {
+            mAverageColor = 0;
+            mMinLuma = 0;
+            mMaxLuma = 0;
+        }
+    }
+
+    /**
+     * @return 统计的区域(根View坐标, 已与截取范围求交)
+     */
+    @NonNull
+    Rect getRegion() {
+        return mRegion;
+    }
+
+    long getPixelCount() {
+        return mPixelCount;
+    }
+
+    /**
+     * @return 0xRRGGBB
+     */
+    int getAverageColor() {
+        return mAverageColor;
+    }
+
+    /**
+     * @return 亮度最低的像素(0xRRGGBB)
+     */
+    int getMinColor() {
+        return mMinColor;
+    }
+
+    int getMaxColor() {
+        return mMaxColor;
+    }
+
+    int getMinLuma() {
+        return mMinLuma;
+    }
+
+    int getMaxLuma() {
+        return mMaxLuma;
+    }
+
+    /**
+     * @return 亮度(0-255)直方图, 调用者不能修改
+     */
+    @NonNull
+    int[] getHistogram() {
+        return mHistogram;
+    }
+
+    int getHistogramMax() {
+        return mHistogramMax;
+    }
+
+    long getComputeNanos() {
+        return mComputeNanos;
+    }
+
+    int getStripCount() {
+        return mStripCount;
+    }
+
+    /**
+     * BT.709 亮度的整数近似, 系数之和为256.
+     */
+    static int luma(int rgb) {
+        return (54 * ((rgb >> 16) & 0xFF) + 183 * ((rgb >> 8) & 0xFF) + 19 * (rgb & 0xFF)) >> 8;
+    }
+
+    /**
+     * 一个条带的统计, 对象和缓冲区在多次计算之间复用. 字段在工作线程中写入, 通过 mRemaining 的原子操作对主线程可见.
+     */
+    private static final class Strip {
+        private Bitmap mBitmap;
+        private int mLeft;
+        private int mRight;
+        private int mTop;
+        private int mBottom;
+        @NonNull
+        private int[] mBuffer = new int[0];
+
+        long mCount;
+        long mSumR;
+        long mSumG;
+        long mSumB;
+        int mMinLuma;
+        int mMinColor;
+        int mMaxLuma;
+        int mMaxColor;
+        @NonNull
+        final int[] mHistogram = new int[HISTOGRAM_SIZE];
+
+        void set(@NonNull Bitmap bitmap, int left, int right, int top, int bottom) {
+            mBitmap = bitmap;
+            mLeft = left;
+            mRight = right;
+            mTop = top;
+            mBottom = bottom;
+        }
+
+        @WorkerThread
+        void run() {
+            mCount = 0;
+            mSumR = 0;
+            mSumG = 0;
+            mSumB = 0;
+            mMinLuma = Integer.MAX_VALUE;
+            mMaxLuma = -1;
+            int[] histogram = mHistogram;
+            for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+                histogram[bin] = 0;
+            }
+
+            int width = mRight - mLeft;
+            if (width <= 0 || mBottom <= mTop) {
+                mBitmap = null;
+                return;
+            }
+            int rowsPerRead = Math.max(1, Math.min(mBottom - mTop, MAX_PIXELS_PER_READ / width));
+            if (mBuffer.length < width * rowsPerRead) {
+                mBuffer = new int[width * rowsPerRead];
+            }
+            int[] buffer = mBuffer;
+
+            long sumR = 0;
+            long sumG = 0;
+            long sumB = 0;
+            int minLuma = Integer.MAX_VALUE;
+            int maxLuma = -1;
+            int minColor = 0;
+            int maxColor = 0;
+            for (int y = mTop; y < mBottom; y += rowsPerRead) {
+                int rows = Math.min(rowsPerRead, mBottom - y);
+                mBitmap.getPixels(buffer, 0, width, mLeft, y, width, rows);
+                int n = width * rows;
+                for (int i = 0; i < n; i++) {
+                    int c = buffer[i];
+                    int r = (c >> 16) & 0xFF;
+                    int g = (c >> 8) & 0xFF;
+                    int b = c & 0xFF;
+                    sumR += r;
+                    sumG += g;
+                    sumB += b;
+                    int luma = (54 * r + 183 * g + 19 * b) >> 8;
+                    histogram[luma]++;
+                    if (luma < minLuma) {
+                        minLuma = luma;
+                        minColor = c & 0xFFFFFF;
+                    }
+                    if (luma > maxLuma) {
+                        maxLuma = luma;
+                        maxColor = c & 0xFFFFFF;
+                    }
+                }
+            }
+
+            mCount = (long) width * (mBottom - mTop);
+            mSumR = sumR;
+            mSumG = sumG;
+            mSumB = sumB;
+            mMinLuma = minLuma;
+            mMinColor = minColor;
+            mMaxLuma = maxLuma;
+            mMaxColor = maxColor;
+            mBitmap = null;
+        }
+    }
+}
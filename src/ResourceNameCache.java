@@ -0,0 +1,100 @@
+package com.stv.debug;
+
+import android.content.res.Resources;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 资源id到资源名("type/entry")的缓存, 所有 ViewDebugger 和 HierarchyExporter 共用, 可以在任意线程访问.
+ * <p>
+ * 缓存本身是 {@link IdNameCache}, 最多缓存 {@link #MAX_ENTRIES} 个id, 超出时按LRU淘汰.
+ * 没有名字的id(例如动态生成的id)也会被缓存, 避免重复查找资源表.
+ * <p>
+ * 工具激活时调用 {@link #prewarm(View)}, 在后台线程预先查找当前 View 树中所有id的名字.
+ */
+final class ResourceNameCache {
+    private static final int MAX_ENTRIES = 4096;
+    // 表示该id没有资源名
+    private static final String NO_NAME = "";
+
+    private static final IdNameCache sCache = new IdNameCache(MAX_ENTRIES);
+
+    private ResourceNameCache() {
+    }
+
+    /**
+     * @return id的资源名("type/entry"), 没有资源名时返回null
+     */
+    @Nullable
+    static String getName(@NonNull Resources resources, int id) {
+        if (id == View.NO_ID || id <= 0 || (id >>> 24) == 0) {
+            return null;
+        }
+
+        String name = sCache.get(id);
+        if (name == null) {
+            // 查找资源表时不持有锁
+            try {
+                name = resources.getResourceTypeName(id) + "/" + resources.getResourceEntryName(id);
+            } catch (Resources.NotFoundException e) {
+                name = NO_NAME;
+            }
+            sCache.putIfAbsent(id, name);
+        }
+        return name.isEmpty() ? null : name;
+    }
+
+    /**
+     * 在主线程收集 root 下所有View的id, 然后在后台线程查找它们的资源名.
+     */
+    static void prewarm(@NonNull View root) {
+        final Resources resources = root.getResources();
+        if (resources == null) {
+            return;
+        }
+
+        IdCollector collector = new IdCollector();
+        collector.collect(root);
+        final int[] ids = collector.mIds;
+        final int count = collector.mCount;
+        DebugThreads.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    getName(resources, ids[i]);
+                }
+            }
+        });
+    }
+
+    // 收集View树中的id(有重复也没关系, 缓存命中的代价很小)
+    private static final class IdCollector {
+        @NonNull
+        int[] mIds = new int[256];
+        int mCount;
+
+        void collect(@NonNull View view) {
+            int id = view.getId();
+            if (id != View.NO_ID) {
+                if (mCount == mIds.length) {
+                    int[] ids = new int[mCount * 2];
+                    System.arraycopy(mIds, 0, ids, 0, mCount);
+                    mIds = ids;
+                }
+                mIds[mCount++] = id;
+            }
+            if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int i = 0; i < group.getChildCount(); i++) {
+                    View child = group.getChildAt(i);
+                    if (child != null) {
+                        collect(child);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.stv.debug;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.PixelCopy;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.Window;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * 异步截取屏幕像素, 供光标处颜色显示使用.
+ * <p>
+ * 截屏时先隐藏 DebugToolView, 等隐藏后的帧绘制完成, 再把像素拷贝到后台缓冲区:
+ * Android O 及以上使用 PixelCopy 从窗口 Surface 拷贝; 更低版本在主线程把 View 树录制成 Picture,
+ * 在后台线程光栅化. 拷贝完成后在主线程交换前后台缓冲区, 因此截屏过程中 {@link #getRgb(int, int)} 仍然读取上一次的结果.
+ * <p>
+ * 坐标系与光标相同, 是相对于 DebugToolView 父 View 左上角的坐标.
+ * <p>
+ * 两个缓冲区的总大小不超过 debug.view_debugger.capture_budget_kb: 超出时先改用 RGB_565 格式,
+ * 仍然超出时按整数倍缩小截取(每个缓冲区像素对应屏幕上 scale x scale 个像素). 缓冲区从 {@link CaptureBufferPool} 获取,
+ * {@link #release()} 时还给池; 截屏过程中被 release() 的缓冲区在截屏结束后直接回收, 不放回池中
+ * (此时池可能已经被 onTrimMemory() 清空).
+ */
+final class ScreenCapturer {
+    private static final String TAG = "ScreenCapturer";
+    // 隐藏DebugToolView后等待的帧数, 保证拷贝到的是不含DebugToolView的那一帧
+    private static final int FRAMES_TO_WAIT = 2;
+    private static final int MAX_SCALE = 16;
+
+    interface Callback {
+        /**
+         * 截屏结束(无论成功、失败还是被 {@link #release()} 取消)时在主线程调用, 此时 DebugToolView 仍处于隐藏状态.
+         *
+         * @param cancelled 截屏过程中调用了 release(), 没有得到新的像素
+         */
+        void onScreenCaptureFinished(boolean success, boolean cancelled);
+    }
+
+    @NonNull
+    private final View mOverlay;
+    @Nullable
+    private final Window mWindow;
+    @NonNull
+    private final Callback mCallback;
+
+    // 前台缓冲区: 主线程读取; mFrontLeft/mFrontTop 为其左上角在根View中的坐标
+    @Nullable
+    private Bitmap mFrontBitmap;
+    private int mFrontLeft;
+    private int mFrontTop;
+    private int mFrontScale = 1;
+    // 后台缓冲区: 正在被填充, 截屏完成后与前台缓冲区交换
+    @Nullable
+    private Bitmap mBackBitmap;
+    @NonNull
+    private final Rect mBackRegion = new Rect();
+    private int mBackScale = 1;
+
+    // 被 lockFront() 锁定、正在被后台线程读取的缓冲区
+    @Nullable
+    private Bitmap mLockedBitmap;
+    // 锁定期间被 release(), 解锁时直接回收
+    private boolean mDropLocked;
+
+    private boolean mInFlight;
+    private boolean mReleased;
+    private boolean mPending;
+    @NonNull
+    private final Rect mPendingRegion = new Rect();
+    private int mFramesToWait;
+    @NonNull
+    private final int[] mLocationInWindow = new int[2];
+
+    @NonNull
+    private final Choreographer.FrameCallback mWaitFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (--mFramesToWait > 0) {
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                startCopy();
+            }
+        }
+    };
+
+    ScreenCapturer(@NonNull View overlay, @Nullable Window window, @NonNull Callback callback) {
+        mOverlay = overlay;
+        mWindow = window;
+        mCallback = callback;
+    }
+
+    /**
+     * 开始一次异步截屏, 只能在主线程调用. 上一次截屏还未结束时, 本次请求会在其结束后执行(多次请求合并为一次).
+     *
+     * @param region 只截取该区域(根View坐标), 为null时截取整个根View
+     */
+    void capture(@Nullable Rect region) {
+        mReleased = false;
+        View root = getRoot();
+        if (root == null) {
+            return;
+        }
+
+        if (mInFlight) {
+            mPending = true;
+            setRegion(mPendingRegion, root, region);
+            return;
+        }
+
+        setRegion(mBackRegion, root, region);
+        if (mBackRegion.isEmpty()) {
+            // 还没有完成布局
+            Log.w(TAG, "Root view has not been laid out, skip capture");
+            return;
+        }
+
+        // 前后两个缓冲区共用预算
+        long bufferBudget = DebugToolProperties.getInstance().getCaptureBudgetBytes() / 2;
+        int width = mBackRegion.width();
+        int height = mBackRegion.height();
+        Bitmap.Config config = Bitmap.Config.ARGB_8888;
+        int scale = 1;
+        if ((long) width * height * 4 > bufferBudget) {
+            config = Bitmap.Config.RGB_565;
+            while (scale < MAX_SCALE && (long) scaledSize(width, scale) * scaledSize(height, scale) * 2 > bufferBudget) {
+                scale++;
+            }
+        }
+        mBackScale = scale;
+        width = scaledSize(width, scale);
+        height = scaledSize(height, scale);
+
+        // 被锁定的缓冲区不能写入, 解锁时再还给池
+        if (mBackBitmap != null && mBackBitmap == mLockedBitmap) {
+            mBackBitmap = null;
+        }
+        // 大小或格式变化(例如旋转屏幕)后重新获取后台缓冲区
+        if (mBackBitmap == null || mBackBitmap.getWidth() != width || mBackBitmap.getHeight() != height
+                || mBackBitmap.getConfig() != config) {
+            if (mBackBitmap != null) {
+                CaptureBufferPool.release(mBackBitmap);
+            }
+            mBackBitmap = CaptureBufferPool.acquire(width, height, config);
+        }
+
+        mInFlight = true;
+        mOverlay.setVisibility(View.INVISIBLE);
+        mFramesToWait = FRAMES_TO_WAIT;
+        Choreographer.getInstance().postFrameCallback(mWaitFrameCallback);
+    }
+
+    private static int scaledSize(int size, int scale) {
+        return (size + scale - 1) / scale;
+    }
+
+    private static void setRegion(@NonNull Rect outRegion, @NonNull View root, @Nullable Rect region) {
+        if (region == null) {
+            outRegion.set(0, 0, root.getWidth(), root.getHeight());
+        } else {
+            outRegion.set(region);
+            if (!outRegion.intersect(0, 0, root.getWidth(), root.getHeight())) {
+                outRegion.setEmpty();
+            }
+        }
+    }
+
+    @Nullable
+    private View getRoot() {
+        ViewParent parent = mOverlay.getParent();
+        return parent instanceof View ? (View) parent : null;
+    }
+
+    private void startCopy() {
+        View root = getRoot();
+        Bitmap target = mBackBitmap;
+        if (root == null || target == null || mReleased) {
+            finish(false);
+            return;
+        }
+
+        Log.d(TAG, "Capture screen region " + mBackRegion);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && mWindow != null) {
+            copyWithPixelCopy(root, target);
+        } else {
+            copyWithPicture(root, target);
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private void copyWithPixelCopy(@NonNull View root, @NonNull Bitmap target) {
+        root.getLocationInWindow(mLocationInWindow);
+        Rect srcRect = new Rect(mBackRegion);
+        srcRect.offset(mLocationInWindow[0], mLocationInWindow[1]);
+
+        // 拷贝由系统完成(目标缓冲区比srcRect小时由系统缩放), 完成回调在后台线程执行
+        PixelCopy.request(mWindow, srcRect, target, new PixelCopy.OnPixelCopyFinishedListener() {
+            @Override
+            public void onPixelCopyFinished(final int copyResult) {
+                DebugThreads.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (copyResult != PixelCopy.SUCCESS) {
+                            Log.w(TAG, "PixelCopy failed, result=" + copyResult);
+                        }
+                        finish(copyResult == PixelCopy.SUCCESS);
+                    }
+                });
+            }
+        }, DebugThreads.getBackgroundHandler());
+    }
+
+    private void copyWithPicture(@NonNull View root, @NonNull final Bitmap target) {
+        // 主线程只录制绘制命令, 光栅化在后台线程完成
+        final float scale = 1f / mBackScale;
+        final Picture picture = new Picture();
+        Canvas recordingCanvas = picture.beginRecording(mBackRegion.width(), mBackRegion.height());
+        recordingCanvas.translate(-mBackRegion.left, -mBackRegion.top);
+        root.draw(recordingCanvas);
+        picture.endRecording();
+
+        DebugThreads.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                target.eraseColor(0);
+                Canvas canvas = new Canvas(target);
+                canvas.scale(scale, scale);
+                canvas.drawPicture(picture);
+                DebugThreads.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(true);
+                    }
+                });
+            }
+        });
+    }
+
+    private void finish(boolean success) {
+        mInFlight = false;
+
+        if (mReleased) {
+            recycleBitmaps(false);
+            mPending = false;
+            mCallback.onScreenCaptureFinished(false, true);
+            return;
+        }
+
+        if (success) {
+            Bitmap front = mFrontBitmap;
+            mFrontBitmap = mBackBitmap;
+            mFrontLeft = mBackRegion.left;
+            mFrontTop = mBackRegion.top;
+            int scale = mFrontScale;
+            mFrontScale = mBackScale;
+            mBackScale = scale;
+            // 旧的前台缓冲区留作下一次的后台缓冲区, 大小不合适时在capture()中重新创建
+            mBackBitmap = front;
+        }
+
+        mCallback.onScreenCaptureFinished(success, false);
+
+        if (mPending) {
+            mPending = false;
+            capture(mPendingRegion);
+        }
+    }
+
+    boolean isCapturing() {
+        return mInFlight;
+    }
+
+    /**
+     * @return 根View坐标(x, y)处像素的RGB值, 不在已截取的区域内时返回 {@link ViewDebugger#NO_PIXEL_COLOR}
+     */
+    int getRgb(int x, int y) {
+        Bitmap bitmap = mFrontBitmap;
+        if (bitmap == null) {
+            return ViewDebugger.NO_PIXEL_COLOR;
+        }
+
+        x -= mFrontLeft;
+        y -= mFrontTop;
+        if (x < 0 || y < 0) {
+            return ViewDebugger.NO_PIXEL_COLOR;
+        }
+        x /= mFrontScale;
+        y /= mFrontScale;
+        if (x < bitmap.getWidth() && y < bitmap.getHeight()) {
+            return bitmap.getPixel(x, y) & 0xFFFFFF;
+        } else {
+            return ViewDebugger.NO_PIXEL_COLOR;
+        }
+    }
+
+    /**
+     * 返回前台缓冲区及区域在其中的位置, 用于在主线程绘制放大镜. 返回的缓冲区只能在当前消息中使用.
+     *
+     * @param region 根View坐标, 返回时被修改为实际可用的区域(与截取范围求交, 按缩小倍数对齐)
+     * @param outSrc 区域在缓冲区中的坐标
+     * @return 没有可用像素或区域不在截取范围内时返回null
+     */
+    @Nullable
+    Bitmap getFrontRegion(@NonNull Rect region, @NonNull Rect outSrc) {
+        Bitmap bitmap = mFrontBitmap;
+        if (bitmap == null) {
+            return null;
+        }
+
+        int scale = mFrontScale;
+        outSrc.set(floorDiv(region.left - mFrontLeft, scale), floorDiv(region.top - mFrontTop, scale),
+                -floorDiv(mFrontLeft - region.right, scale), -floorDiv(mFrontTop - region.bottom, scale));
+        if (!outSrc.intersect(0, 0, bitmap.getWidth(), bitmap.getHeight())) {
+            return null;
+        }
+        region.set(mFrontLeft + outSrc.left * scale, mFrontTop + outSrc.top * scale,
+                mFrontLeft + outSrc.right * scale, mFrontTop + outSrc.bottom * scale);
+        return bitmap;
+    }
+
+    private static int floorDiv(int x, int y) {
+        int q = x / y;
+        return (x % y != 0 && x < 0) ? q - 1 : q;
+    }
+
+    /**
+     * 锁定前台缓冲区供后台线程读取, 直到 {@link #unlockFront()}. 锁定期间该缓冲区不会被截屏写入, 也不会还给池.
+     * 同一时间只能锁定一个缓冲区. 参数和返回值与 {@link #getFrontRegion(Rect, Rect)} 相同.
+     */
+    @Nullable
+    Bitmap lockFront(@NonNull Rect region, @NonNull Rect outSrc) {
+        if (mLockedBitmap != null) {
+            throw new IllegalStateException("Front buffer is already locked");
+        }
+        mLockedBitmap = getFrontRegion(region, outSrc);
+        return mLockedBitmap;
+    }
+
+    void unlockFront() {
+        Bitmap locked = mLockedBitmap;
+        boolean drop = mDropLocked;
+        mLockedBitmap = null;
+        mDropLocked = false;
+        // 锁定期间已被替换或释放
+        if (locked != null && locked != mFrontBitmap && locked != mBackBitmap) {
+            if (drop) {
+                locked.recycle();
+            } else {
+                CaptureBufferPool.release(locked);
+            }
+        }
+    }
+
+    /**
+     * 把缓冲区还给 {@link CaptureBufferPool}. 正在截屏时, 截屏结束后直接回收缓冲区, 并以 cancelled 回调
+     * {@link Callback#onScreenCaptureFinished(boolean, boolean)}. 之后再调用 {@link #capture(Rect)} 会重新获取缓冲区.
+     */
+    void release() {
+        mReleased = true;
+        mPending = false;
+        if (!mInFlight) {
+            recycleBitmaps(true);
+        }
+    }
+
+    /**
+     * @param pool true 时还给池, false 时直接回收
+     */
+    private void recycleBitmaps(boolean pool) {
+        // 被锁定的缓冲区在unlockFront()中释放
+        if (mFrontBitmap != null) {
+            recycleBitmap(mFrontBitmap, pool);
+            mFrontBitmap = null;
+        }
+        if (mBackBitmap != null) {
+            recycleBitmap(mBackBitmap, pool);
+            mBackBitmap = null;
+        }
+    }
+
+    private void recycleBitmap(@NonNull Bitmap bitmap, boolean pool) {
+        if (bitmap == mLockedBitmap) {
+            mDropLocked = !pool;
+        } else if (pool) {
+            CaptureBufferPool.release(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link HierarchySnapshot} 抓取 View 树所需的接口, 不依赖 Android API.
+ * <p>
+ * 设备上由 {@link AndroidSnapshotAdapter} 实现; 在普通 JVM 上可以用合成的树实现该接口, 用于测量抓取和分析快照的耗时.
+ * 坐标约定与 {@link ViewTreeAdapter} 相同.
+ *
+ * @param <N> 节点类型
+ */
+interface SnapshotAdapter<N> {
+    /**
+     * @return 子节点数量, 不是容器时为0
+     */
+    int getChildCount(N node);
+
+    /**
+     * @return 第 index 个子节点, 不应出现在快照中(例如调试工具自己的View)时返回null
+     */
+    @Nullable
+    N getChildAt(N node, int index);
+
+    /**
+     * @return 标识节点类型的对象(设备上是节点的 Class), 快照按对象地址把类型驻留为序号
+     */
+    @NonNull
+    Object getType(N node);
+
+    @NonNull
+    String getTypeName(@NonNull Object type);
+
+    int getId(N node);
+
+    int getLeft(N node);
+
+    int getTop(N node);
+
+    int getRight(N node);
+
+    int getBottom(N node);
+
+    int getScrollX(N node);
+
+    int getScrollY(N node);
+
+    /**
+     * @return View.VISIBLE/INVISIBLE/GONE
+     */
+    int getVisibility(N node);
+
+    /**
+     * @return HierarchySnapshotFormat.FLAG_*
+     */
+    int getFlags(N node);
+}
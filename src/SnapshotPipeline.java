@@ -0,0 +1,156 @@
+package com.stv.debug;
+
+import android.util.Log;
+import android.view.View;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * 两阶段的 View 树分析: 主线程只把 View 树展平为 {@link HierarchySnapshot}(基本类型数组, 类名和id已驻留为序号),
+ * 哈希、比较等计算在 {@link DebugThreads#getWorkerExecutor()} 中进行, 结果再转回主线程交给 overlay.
+ * <p>
+ * 主线程暂停的目标是 5000 个 View 的树不超过 {@link #MAIN_THREAD_BUDGET_NANOS}. 每次抓取都计时,
+ * 超出目标时打印警告, 最近一次和最长的抓取耗时可以显示在 overlay 上.
+ * <p>
+ * 同一时间只有一次分析在进行, 因此 {@link Analysis} 的三个方法严格依次执行, 可以不加锁地在它们之间交接数据.
+ * 分析期间再次请求时只记下"有新请求", 当前分析结束后抓取最新的 View 树, 中间的状态被合并.
+ */
+final class SnapshotPipeline {
+    private static final String TAG = "SnapshotPipeline";
+    static final long MAIN_THREAD_BUDGET_NANOS = 2000000;
+
+    interface Analysis {
+        /**
+         * 在主线程抓取快照, 只读取 View 的属性, 不做计算.
+         *
+         * @return 抓取的 View 数
+         */
+        @MainThread
+        int capture(@NonNull View root);
+
+        /**
+         * 在工作线程分析最近一次抓取的快照, 不能访问 View.
+         */
+        @WorkerThread
+        void analyze();
+
+        /**
+         * 在主线程发布分析结果. detach() 之后完成的分析不会发布.
+         */
+        @MainThread
+        void publish();
+    }
+
+    @NonNull
+    private final Analysis mAnalysis;
+    @Nullable
+    private View mRoot;
+    private boolean mRunning;
+    private boolean mPending;
+    // detach()后递增, 之前开始的分析结果被丢弃
+    private int mGeneration;
+
+    private long mLastCaptureNanos;
+    private long mMaxCaptureNanos;
+    private int mLastCaptureCount;
+
+    SnapshotPipeline(@NonNull Analysis analysis) {
+        mAnalysis = analysis;
+    }
+
+    @MainThread
+    void attach(@NonNull View root) {
+        mRoot = root;
+        mMaxCaptureNanos = 0;
+    }
+
+    /**
+     * 停止发布结果. 正在进行的分析仍会执行完, 在它结束之前不会开始新的抓取.
+     */
+    @MainThread
+    void detach() {
+        mRoot = null;
+        mPending = false;
+        mGeneration++;
+    }
+
+    /**
+     * 请求一次抓取和分析.
+     */
+    @MainThread
+    void request() {
+        if (mRoot == null) {
+            return;
+        }
+        if (mRunning) {
+            mPending = true;
+            return;
+        }
+        start(mRoot);
+    }
+
+    private void start(@NonNull View root) {
+        long start = System.nanoTime();
+        int count = mAnalysis.capture(root);
+        long nanos = System.nanoTime() - start;
+        mLastCaptureNanos = nanos;
+        mLastCaptureCount = count;
+        mMaxCaptureNanos = Math.max(mMaxCaptureNanos, nanos);
+        // 按5000个View的目标折算, 小的树也能发现单个View抓取过慢
+        if (nanos > MAIN_THREAD_BUDGET_NANOS && nanos * 5000 > MAIN_THREAD_BUDGET_NANOS * Math.max(count, 1)) {
+            Log.w(TAG, "Snapshot of " + count + " views took " + nanos / 1000 + "us on main thread, budget "
+                    + MAIN_THREAD_BUDGET_NANOS / 1000 + "us per 5000 views");
+        }
+
+        mRunning = true;
+        final int generation = mGeneration;
+        DebugThreads.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mAnalysis.analyze();
+                } finally {
+                    DebugThreads.getMainHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            finish(generation);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void finish(int generation) {
+        mRunning = false;
+        if (generation == mGeneration) {
+            mAnalysis.publish();
+        }
+
+        if (mPending && mRoot != null) {
+            mPending = false;
+            start(mRoot);
+        }
+    }
+
+    /**
+     * @return 最近一次抓取在主线程的耗时
+     */
+    long getLastCaptureNanos() {
+        return mLastCaptureNanos;
+    }
+
+    /**
+     * @return attach() 之后最长的一次抓取耗时
+     */
+    long getMaxCaptureNanos() {
+        return mMaxCaptureNanos;
+    }
+
+    int getLastCaptureCount() {
+        return mLastCaptureCount;
+    }
+}
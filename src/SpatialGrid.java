@@ -0,0 +1,301 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link ViewSpatialIndex} 中不依赖 Android API 的部分: 按先序展平的树节点的矩形, 以及把它们按矩形放入的均匀网格.
+ * 可以在普通 JVM 上对合成的树构建和查询, 用于测量性能.
+ * <p>
+ * 使用者填写 {@link #count} 个节点的 parent/left/top/right/bottom/isGroup (坐标相对于根节点左上角), 然后调用
+ * {@link #build(int, int)}. 之后位置变化的节点通过 {@link #setBounds} 暂时移出网格, 查询时逐个检查.
+ * 节点能否命中以及兄弟节点之间的绘制顺序由查询时传入的 {@link CandidateFilter} 决定.
+ */
+final class SpatialGrid {
+    // 网格每边大约的格子数
+    private static final int TARGET_CELLS_PER_SIDE = 64;
+    private static final int MIN_CELL_SHIFT = 4;
+    // 覆盖的格子数超过这个值的节点(通常是大的容器)不放进网格, 查询时逐个检查
+    private static final int MAX_CELLS_PER_VIEW = 64;
+
+    interface CandidateFilter {
+        /**
+         * 矩形包含点(x, y)的节点 i 是否命中. 调用顺序不确定.
+         *
+         * @return 节点 i 在父节点的子节点中的绘制位置(越大越靠上), 不命中时返回-1
+         */
+        int rankOf(int i, int x, int y);
+    }
+
+    // 按先序遍历展平的树. 节点 i 的父节点为 parent[i], 父节点是根节点时为-1
+    int count;
+    @NonNull
+    int[] parent = new int[0];
+    @NonNull
+    int[] left = new int[0];
+    @NonNull
+    int[] top = new int[0];
+    @NonNull
+    int[] right = new int[0];
+    @NonNull
+    int[] bottom = new int[0];
+    @NonNull
+    boolean[] isGroup = new boolean[0];
+
+    // 位置已变化、在网格中的记录已失效的节点
+    @NonNull
+    private boolean[] mLoose = new boolean[0];
+    @NonNull
+    private int[] mLooseItems = new int[0];
+    private int mLooseCount;
+
+    // 网格, CSR格式: 格子c中的节点为 mCellItems[mCellStart[c] .. mCellStart[c+1])
+    private int mCellShift;
+    private int mWidth;
+    private int mHeight;
+    private int mCols;
+    private int mRows;
+    @NonNull
+    private int[] mCellStart = new int[1];
+    @NonNull
+    private int[] mCellItems = new int[0];
+    @NonNull
+    private int[] mCellCursor = new int[0];
+    @NonNull
+    private int[] mLargeItems = new int[0];
+    private int mLargeCount;
+
+    // 查询时使用: mBestChild[p+1] 为父节点 p(-1表示根节点)中包含查询点的最晚绘制的子节点, mBestRank为其绘制位置
+    @NonNull
+    private int[] mBestChild = new int[1];
+    @NonNull
+    private int[] mBestRank = new int[1];
+    @NonNull
+    private int[] mBestStamp = new int[1];
+    private int mStamp;
+
+    /**
+     * 保证节点数组至少有 capacity 个元素, 保留原有内容(可以在填写节点的过程中调用).
+     */
+    void ensureCapacity(int capacity) {
+        if (parent.length >= capacity) {
+            return;
+        }
+        parent = copyOf(parent, capacity);
+        left = copyOf(left, capacity);
+        top = copyOf(top, capacity);
+        right = copyOf(right, capacity);
+        bottom = copyOf(bottom, capacity);
+        isGroup = copyOf(isGroup, capacity);
+        mLoose = copyOf(mLoose, capacity);
+    }
+
+    /**
+     * 按当前的节点矩形构建覆盖 [0, width) x [0, height) 的网格. 网格外的部分只能通过大节点和移出网格的节点命中.
+     */
+    void build(int width, int height) {
+        int shift = MIN_CELL_SHIFT;
+        while ((width >> shift) >= TARGET_CELLS_PER_SIDE || (height >> shift) >= TARGET_CELLS_PER_SIDE) {
+            shift++;
+        }
+        mCellShift = shift;
+        mWidth = width;
+        mHeight = height;
+        mCols = Math.max(1, (width + (1 << shift) - 1) >> shift);
+        mRows = Math.max(1, (height + (1 << shift) - 1) >> shift);
+
+        int cellCount = mCols * mRows;
+        if (mCellStart.length < cellCount + 1) {
+            mCellStart = new int[cellCount + 1];
+        } else {
+            for (int c = 0; c <= cellCount; c++) {
+                mCellStart[c] = 0;
+            }
+        }
+
+        // 第一遍: 统计每个格子中的节点数量; 第二遍: 填入节点序号
+        mLargeCount = 0;
+        mLooseCount = 0;
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            mLoose[i] = false;
+            int c0 = firstCol(i), c1 = lastCol(i);
+            int r0 = firstRow(i), r1 = lastRow(i);
+            if (c1 < c0 || r1 < r0) {
+                // 完全在网格外或大小为0, 不可能被查询到
+                continue;
+            }
+            if ((c1 - c0 + 1) * (r1 - r0 + 1) > MAX_CELLS_PER_VIEW) {
+                if (mLargeCount == mLargeItems.length) {
+                    mLargeItems = copyOf(mLargeItems, Math.max(16, mLargeCount * 2));
+                }
+                mLargeItems[mLargeCount++] = i;
+                continue;
+            }
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    mCellStart[r * mCols + c + 1]++;
+                    total++;
+                }
+            }
+        }
+        for (int c = 0; c < cellCount; c++) {
+            mCellStart[c + 1] += mCellStart[c];
+        }
+
+        if (mCellItems.length < total) {
+            mCellItems = new int[Math.max(total, mCellItems.length * 2)];
+        }
+        if (mCellCursor.length < cellCount) {
+            mCellCursor = new int[cellCount];
+        }
+        System.arraycopy(mCellStart, 0, mCellCursor, 0, cellCount);
+        for (int i = 0, k = 0; i < count; i++) {
+            if (k < mLargeCount && mLargeItems[k] == i) {
+                k++;
+                continue;
+            }
+            int c0 = firstCol(i), c1 = lastCol(i);
+            int r0 = firstRow(i), r1 = lastRow(i);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int cell = r * mCols + c;
+                    mCellItems[mCellCursor[cell]++] = i;
+                }
+            }
+        }
+
+        if (mBestChild.length < count + 1) {
+            mBestChild = new int[count + 1];
+            mBestRank = new int[count + 1];
+            mBestStamp = new int[count + 1];
+            mStamp = 0;
+        }
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return 移出网格的节点数量
+     */
+    int getLooseCount() {
+        return mLooseCount;
+    }
+
+    /**
+     * 更新节点 i 的矩形, 矩形变化时把节点移出网格.
+     *
+     * @return 矩形是否变化
+     */
+    boolean setBounds(int i, int l, int t, int r, int b) {
+        if (l == left[i] && t == top[i] && r == right[i] && b == bottom[i]) {
+            return false;
+        }
+
+        left[i] = l;
+        top[i] = t;
+        right[i] = r;
+        bottom[i] = b;
+        if (!mLoose[i]) {
+            mLoose[i] = true;
+            if (mLooseCount == mLooseItems.length) {
+                mLooseItems = copyOf(mLooseItems, Math.max(64, mLooseCount * 2));
+            }
+            mLooseItems[mLooseCount++] = i;
+        }
+        return true;
+    }
+
+    /**
+     * 查找点(x, y)上最下层的节点: 从根节点开始, 每一层取 filter 给出的绘制位置最大的命中子节点.
+     * 只检查点所在格子中的节点、大节点和移出网格的节点. 不分配内存.
+     *
+     * @return 节点序号, 没有命中时返回-1
+     */
+    int findDeepest(int x, int y, @NonNull CandidateFilter filter) {
+        mStamp++;
+        if (x >= 0 && y >= 0) {
+            int col = x >> mCellShift;
+            int row = y >> mCellShift;
+            if (col < mCols && row < mRows) {
+                int cell = row * mCols + col;
+                for (int k = mCellStart[cell], end = mCellStart[cell + 1]; k < end; k++) {
+                    int i = mCellItems[k];
+                    if (!mLoose[i]) {
+                        considerCandidate(i, x, y, filter);
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < mLargeCount; k++) {
+            considerCandidate(mLargeItems[k], x, y, filter);
+        }
+        for (int k = 0; k < mLooseCount; k++) {
+            considerCandidate(mLooseItems[k], x, y, filter);
+        }
+
+        int deepest = -1;
+        int slot = 0;
+        while (mBestStamp[slot] == mStamp) {
+            deepest = mBestChild[slot];
+            if (!isGroup[deepest]) {
+                break;
+            }
+            slot = deepest + 1;
+        }
+        return deepest;
+    }
+
+    private void considerCandidate(int i, int x, int y, @NonNull CandidateFilter filter) {
+        if (x < left[i] || y < top[i] || x >= right[i] || y >= bottom[i]) {
+            return;
+        }
+        int rank = filter.rankOf(i, x, y);
+        if (rank < 0) {
+            return;
+        }
+
+        int slot = parent[i] + 1;
+        if (mBestStamp[slot] != mStamp || mBestRank[slot] < rank) {
+            mBestStamp[slot] = mStamp;
+            mBestChild[slot] = i;
+            mBestRank[slot] = rank;
+        }
+    }
+
+    // 节点的矩形可能超出根节点, 只计算在网格内的格子范围
+    private int firstCol(int i) {
+        return Math.max(0, left[i] >> mCellShift);
+    }
+
+    private int lastCol(int i) {
+        return Math.min(mCols - 1, (right[i] - 1) >> mCellShift);
+    }
+
+    private int firstRow(int i) {
+        return Math.max(0, top[i] >> mCellShift);
+    }
+
+    private int lastRow(int i) {
+        return Math.min(mRows - 1, (bottom[i] - 1) >> mCellShift);
+    }
+
+    @NonNull
+    static int[] copyOf(@NonNull int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, capacity));
+        return copy;
+    }
+
+    @NonNull
+    static boolean[] copyOf(@NonNull boolean[] array, int capacity) {
+        boolean[] copy = new boolean[capacity];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, capacity));
+        return copy;
+    }
+}
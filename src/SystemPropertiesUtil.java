@@ -1,7 +1,9 @@
-package com.example.hechuan.myfirstapplication.view_debug;
+package com.stv.debug;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import java.lang.reflect.Method;
 
 /**
@@ -10,29 +12,89 @@ import java.lang.reflect.Method;
 public class SystemPropertiesUtil {
     private static final String TAG = "SystemPropertiesUtil";
 
-    public static String getStr(String key, String defaultValue) {
-        String value = defaultValue;
+    // android.os.SystemProperties 是隐藏API, 反射得到的Method只解析一次, 之后直接invoke
+    private static boolean sResolved;
+    @Nullable
+    private static Class<?> sClass;
+    @Nullable
+    private static Method sGet;
+    @Nullable
+    private static Method sGetLong;
+    @Nullable
+    private static Method sAddChangeCallback;
+
+    private static synchronized void resolve() {
+        if (sResolved) {
+            return;
+        }
+        sResolved = true;
+
         try {
-            Class<?> c = Class.forName("android.os.SystemProperties");
-            Method get = c.getMethod("get", String.class, String.class);
-            value = (String) (get.invoke(c, key, defaultValue));
+            sClass = Class.forName("android.os.SystemProperties");
+            sGet = sClass.getMethod("get", String.class, String.class);
+            sGetLong = sClass.getMethod("getLong", String.class, long.class);
         } catch (Exception e) {
-            Log.w(TAG, "getProperty catch exception, e=" + e);
+            Log.w(TAG, "resolve SystemProperties catch exception, e=" + e);
+        }
+
+        if (sClass != null) {
+            try {
+                sAddChangeCallback = sClass.getMethod("addChangeCallback", Runnable.class);
+            } catch (Exception e) {
+                // 部分ROM限制了该隐藏API, 调用方需要退化为轮询
+                Log.w(TAG, "SystemProperties.addChangeCallback is not accessible, e=" + e);
+            }
+        }
+    }
+
+    public static String getStr(String key, String defaultValue) {
+        resolve();
+
+        String value = defaultValue;
+        if (sGet != null) {
+            try {
+                value = (String) (sGet.invoke(sClass, key, defaultValue));
+            } catch (Exception e) {
+                Log.w(TAG, "getProperty catch exception, e=" + e);
+            }
         }
 
         return value;
     }
 
     public static long getLong(String key, long defaultValue) {
+        resolve();
+
         long value = defaultValue;
-        try {
-            Class<?> c = Class.forName("android.os.SystemProperties");
-            Method getLong = c.getMethod("getLong", String.class, long.class);
-            value = (long) getLong.invoke(c, key, defaultValue);
-        } catch (Exception e) {
-            Log.w(TAG, "getProperty catch exception, e=" + e);
+        if (sGetLong != null) {
+            try {
+                value = (long) sGetLong.invoke(sClass, key, defaultValue);
+            } catch (Exception e) {
+                Log.w(TAG, "getProperty catch exception, e=" + e);
+            }
         }
 
         return value;
     }
+
+    /**
+     * 注册属性变化回调. 注意: 单独执行 setprop 并不会触发回调, 需要有人调用 SystemProperties.reportSyspropChanged()
+     * (例如 adb shell service call activity 1599295570), 因此调用方还需要配合低频轮询.
+     *
+     * @return 注册成功返回true
+     */
+    public static boolean addChangeCallback(Runnable callback) {
+        resolve();
+
+        if (sAddChangeCallback == null) {
+            return false;
+        }
+        try {
+            sAddChangeCallback.invoke(sClass, callback);
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "addChangeCallback catch exception, e=" + e);
+            return false;
+        }
+    }
 }
@@ -6,6 +6,7 @@ import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.Window;
 
 import androidx.annotation.NonNull;
@@ -17,45 +18,82 @@ import androidx.annotation.Nullable;
 public abstract class ViewDebugToolBaseActivity extends Activity {
     private static final String TAG = "ViewDebugTool";
 
-    private boolean mIsDebugViewAdded;
+    // 工具激活前只有这个匹配器, DebugToolView 和 ViewDebugger 在激活时才创建, 退出时移除
+    @NonNull
+    private final ActivationKeyMatcher mActivationKeyMatcher = new ActivationKeyMatcher();
+    @Nullable
+    private DebugToolView mDebugToolView;
     @Nullable
     private ViewDebugger mViewDebugger;
 
     @Override
     protected void onStart() {
         super.onStart();
+        mActivationKeyMatcher.reload();
+    }
 
-        if (mIsDebugViewAdded) {
-            return;
-        }
+    @Override
+    protected void onDestroy() {
+        removeDebugToolView();
+        super.onDestroy();
+    }
 
-        addDebugToolView();
-        mIsDebugViewAdded = true;
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 先让ViewDebugger把正在使用的缓冲区还给池, 再清空池
+        if (mViewDebugger != null) {
+            mViewDebugger.onTrimMemory(level);
+        }
+        CaptureBufferPool.trim();
     }
 
     private void addDebugToolView() {
+        ViewGroup contentView = findContentView();
+        if (contentView == null) {
+            Log.w(TAG, "Cannot find contentView of this Activity, view debug tool cannot run");
+            return;
+        }
 
         DebugToolView debugToolView = new DebugToolView(this);
         debugToolView.setVisibility(View.INVISIBLE);
+        final ViewDebugger viewDebugger = new ViewDebugger(debugToolView, getWindow());
+        debugToolView.setDebuggerPresenter(viewDebugger);
         debugToolView.setOnTouchListener(new View.OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
                 Log.d(TAG, "DebugToolView onTouch event: " + event);
-                mViewDebugger.handleTouch(event);
+                viewDebugger.handleTouch(event);
                 return true;
             }
         });
+        viewDebugger.setOnExitListener(new ViewDebugger.OnExitListener() {
+            @Override
+            public void onDebugToolExited() {
+                removeDebugToolView();
+            }
+        });
 
-        ViewGroup contentView = findContentView();
-        if (contentView != null) {
-            contentView.addView(debugToolView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
-                    ViewGroup.LayoutParams.MATCH_PARENT));
-        } else {
-            Log.w(TAG, "Cannot find contentView of this Activity, view debug tool cannot run");
-        }
+        contentView.addView(debugToolView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+        mDebugToolView = debugToolView;
+        mViewDebugger = viewDebugger;
+        viewDebugger.activate();
+    }
 
-        mViewDebugger = new ViewDebugger(debugToolView);
-        debugToolView.setDebuggerPresenter(mViewDebugger);
+    private void removeDebugToolView() {
+        if (mViewDebugger != null) {
+            mViewDebugger.setOnExitListener(null);
+            mViewDebugger.release();
+            mViewDebugger = null;
+        }
+        if (mDebugToolView != null) {
+            ViewParent parent = mDebugToolView.getParent();
+            if (parent instanceof ViewGroup) {
+                ((ViewGroup) parent).removeView(mDebugToolView);
+            }
+            mDebugToolView = null;
+        }
     }
 
     @Nullable
@@ -77,8 +115,13 @@ public abstract class ViewDebugToolBaseActivity extends Activity {
     // Android Framework 传递的参数 event 一定是非空
     @Override
     public boolean dispatchKeyEvent(@SuppressWarnings("NullableProblems") @NonNull KeyEvent event) {
-        if (mViewDebugger!=null && mViewDebugger.handleKey(event)) {
-            return true;
+        ViewDebugger viewDebugger = mViewDebugger;
+        if (viewDebugger != null) {
+            if (viewDebugger.handleKey(event)) {
+                return true;
+            }
+        } else if (mActivationKeyMatcher.onKeyEvent(event)) {
+            addDebugToolView();
         }
 
         return super.dispatchKeyEvent(event);
@@ -1,31 +1,38 @@
 package com.stv.debug;
 
+import android.content.ComponentCallbacks2;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.util.Log;
-import android.util.Pair;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.Window;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * @author hechuan1 on 2020/9/27.
  */
-public class ViewDebugger {
+public class ViewDebugger implements ScreenCapturer.Callback {
     private static final String TAG = "ViewDebugger";
     private static final boolean SEARCH_NON_VIEW_GROUP = false;
+    // getRgbOfScreenPixel()在没有可用像素时的返回值, 有效的RGB值都是非负数
+    static final int NO_PIXEL_COLOR = -1;
+    // 放大镜图像的边长(px), 放大倍数越大看到的屏幕区域越小
+    static final int LOUPE_SIZE = 256;
 
     @NonNull
     private final IDebugView mDebugView;
@@ -38,16 +45,6 @@ public class ViewDebugger {
     private int mIndexOfShowingViews;
     private boolean mIsShowingFocusedView = false;
 
-    @NonNull
-    private int[] mSecretKeyCodes_1 = {KeyEvent.KEYCODE_CHANNEL_UP, KeyEvent.KEYCODE_CHANNEL_DOWN,
-            KeyEvent.KEYCODE_CHANNEL_DOWN, KeyEvent.KEYCODE_CHANNEL_UP};
-    @NonNull
-    private int[] mSecretKeyCodes_2 = {KeyEvent.KEYCODE_9, KeyEvent.KEYCODE_5,
-            KeyEvent.KEYCODE_2, KeyEvent.KEYCODE_7};
-    @Nullable
-    private int[] mCurrentActiveSecretKeyCodes;
-    private int mSecretKeyIndex = 0;
-
     @NonNull
     private final Integer[] mDirectionKeyCodes = {KeyEvent.KEYCODE_DPAD_UP, KeyEvent.KEYCODE_DPAD_DOWN,
             KeyEvent.KEYCODE_DPAD_LEFT, KeyEvent.KEYCODE_DPAD_RIGHT};
@@ -57,56 +54,223 @@ public class ViewDebugger {
     private int mMovingStep=10;
     @Nullable
     private View mCurrentShowingView;
+    @NonNull
+    private final ScreenCapturer mScreenCapturer;
+    @NonNull
+    private final Rect mCaptureRegion = new Rect();
+    // 子View的绘制顺序(Z和自定义绘制顺序)和变换矩阵的逆矩阵, 空间索引和逐层命中测试共用
+    @NonNull
+    private final ChildDrawingOrder mDrawingOrder = new ChildDrawingOrder();
+    @NonNull
+    private final ViewTransforms mTransforms = new ViewTransforms();
+    @NonNull
+    private final ViewSpatialIndex mSpatialIndex = new ViewSpatialIndex(mDrawingOrder, mTransforms);
+    @NonNull
+    private final AndroidViewTreeAdapter mTreeAdapter = new AndroidViewTreeAdapter(mDrawingOrder, mTransforms);
+    @NonNull
+    private final float[] mDebugViewQuad = new float[8];
+    // 读取光标位置用, 悬停、吸附、颜色统计等路径每帧或每次按键都要读取, 不为每次读取创建 Point.
+    // 读取后立即使用, findViewsAtPoint(Point) 会修改它
+    @NonNull
+    private final Point mCursor = new Point();
+
+    // 长按方向键时的加速: 按住超过ACCEL_DELAY_MS后, 步长在ACCEL_RAMP_MS内线性增加到MAX_ACCEL_FACTOR倍
+    private static final long ACCEL_DELAY_MS = 300;
+    private static final long ACCEL_RAMP_MS = 1200;
+    private static final int MAX_ACCEL_FACTOR = 10;
+
+    // 触摸拖动时实时显示手指下的View. MOVE事件只记录位置, 每个Choreographer帧最多做一次命中测试和高亮更新,
+    // 中间来不及处理的位置直接丢弃.
+    // 方向键移动光标也在这里处理: 同一帧内到达的多个按键累加成一次移动和一次重绘. 拖动时的区域颜色统计同样每帧最多请求一次.
+    @NonNull
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameCallbackPosted = false;
+            flushPendingCursorMove();
+            if (mHoverPending) {
+                mHoverPending = false;
+                updateHoveredView();
+            }
+            if (mRegionStatsPending) {
+                mRegionStatsPending = false;
+                updateRegionStats();
+            }
+        }
+    };
+    private int mPendingCursorDx;
+    private int mPendingCursorDy;
+
+    // 吸附模式: 方向键把光标移动到该方向上下一条View的边
+    private boolean mSnapMode;
+    private boolean mPendingSnap;
+    private boolean mFrameCallbackPosted;
+    private boolean mHoverPending;
+    private boolean mRegionStatsPending;
+    @NonNull
+    private final List<View> mViewsAtHover = new ArrayList<>();
     @Nullable
-    private Bitmap mScreenBitmap;
+    private View mHoveredView;
+
+    // 性能统计模式: 统计选中View及其父View的measure/layout/draw耗时, 结果显示在高亮框旁边
+    @NonNull
+    private final ViewProfiler mProfiler = new ViewProfiler(new ViewProfiler.Listener() {
+        @Override
+        public void onProfileUpdated(@NonNull ViewProfiler profiler) {
+            showProfile(profiler);
+        }
+    });
+    @NonNull
+    private final List<String> mProfileLines = new ArrayList<>();
+
+    // 焦点导航图模式: 显示所有可获焦View之间的焦点移动关系
+    @NonNull
+    private final FocusGraph mFocusGraph = new FocusGraph(new FocusGraph.Listener() {
+        @Override
+        public void onFocusGraphUpdated(@NonNull FocusGraph graph) {
+            mDebugView.showFocusGraph(graph);
+            dumpFocusGraphProblems(graph);
+        }
+    });
+
+    // 变化跟踪模式: 每次布局后闪烁显示新增、删除和移动/改变大小的View
+    @NonNull
+    private final HierarchyChangeTracker mChangeTracker = new HierarchyChangeTracker(
+            new HierarchyChangeTracker.Listener() {
+                @Override
+                public void onHierarchyChanged(@NonNull HierarchyChangeTracker tracker) {
+                    mDebugView.showHierarchyChanges(tracker);
+                }
+            });
+
+    // 热力图模式: 统计最近一段时间内每个View重新布局和重绘的次数
+    @NonNull
+    private final LayoutHeatmap mHeatmap = new LayoutHeatmap(new LayoutHeatmap.Listener() {
+        @Override
+        public void onHeatmapUpdated(@NonNull LayoutHeatmap heatmap) {
+            int labels = Math.min(heatmap.getCount(), LayoutHeatmap.MAX_LABELS);
+            for (int i = 0; i < labels; i++) {
+                View view = heatmap.getView(i);
+                if (view != null && heatmap.getLabel(i) == null) {
+                    heatmap.setLabel(i, view.getClass().getSimpleName() + viewId2String(view, view.getId()));
+                }
+            }
+            mDebugView.showLayoutHeatmap(heatmap);
+        }
+    });
+
+    // 帧率和掉帧统计, 显示在光标坐标下方
+    @NonNull
+    private final FrameMeter mFrameMeter = new FrameMeter(new FrameMeter.Listener() {
+        @Override
+        public void onFrameMeterUpdated(@NonNull FrameMeter meter) {
+            mDebugView.showFrameMeter(meter);
+        }
+    });
+
+    // 放大镜和区域颜色统计: 蓝色键依次切换放大倍数, 0表示关闭
+    @NonNull
+    private final int[] mLoupeZooms = {0, 4, 8, 16};
+    private int mLoupeZoomIndex;
+    @NonNull
+    private final RegionColorStats mRegionStats;
+    // 当前高亮View在DebugToolView中的矩形, 选中View时统计该矩形的颜色
+    @NonNull
+    private final Rect mSelectedViewBounds = new Rect();
+    @NonNull
+    private final Rect mStatsRegion = new Rect();
+
+    // 本地调试服务, debug.view_debugger.inspect_port 大于0时在工具激活期间运行
+    @NonNull
+    private final InspectionServer mInspectionServer = new InspectionServer(new InspectionServer.Target() {
+        @Override
+        public void findViewsAtPoint(int x, int y, @NonNull List<View> out) {
+            ViewDebugger.this.findViewsAtPoint(x, y, out);
+        }
+
+        @Override
+        public void getViewsAtCursor(@NonNull List<View> out) {
+            out.addAll(mViewsAtCursor);
+        }
+    });
+
+    // 自动化测试用的批量命中测试, 只在可调试的应用中、工具激活期间接收广播
+    @NonNull
+    private final BatchHitTester mBatchHitTester = new BatchHitTester(mSpatialIndex);
 
     public ViewDebugger(@NonNull IDebugView debugView) {
+        this(debugView, null);
+    }
+
+    /**
+     * @param window DebugToolView所在的窗口, 用于通过PixelCopy截屏; 为null时退化为录制View树后在后台线程光栅化
+     */
+    public ViewDebugger(@NonNull IDebugView debugView, @Nullable Window window) {
         mDebugView = debugView;
+        mScreenCapturer = new ScreenCapturer(debugView.getView(), window, this);
+        mRegionStats = new RegionColorStats(mScreenCapturer, new RegionColorStats.Listener() {
+            @Override
+            public void onRegionStatsUpdated(@NonNull RegionColorStats stats) {
+                if (mLoupeZoomIndex != 0) {
+                    mDebugView.showRegionStats(stats);
+                }
+            }
+        });
     }
 
-    public boolean handleKey(@NonNull KeyEvent keyEvent) {
-        if (mEnabled) {
-            handleDebugKey(keyEvent);
-            return true;
-        } else {
-            handleEnableKey(keyEvent);
-            return false;
-        }
+    /**
+     * 工具退出(按返回键)时调用, 使用者可以在这里移除 DebugToolView 并释放 ViewDebugger.
+     */
+    public interface OnExitListener {
+        void onDebugToolExited();
     }
 
-    private void handleEnableKey(@NonNull KeyEvent keyEvent) {
-        if (keyEvent.getAction() != KeyEvent.ACTION_UP) {
-            return;
+    @Nullable
+    private OnExitListener mOnExitListener;
+
+    public void setOnExitListener(@Nullable OnExitListener listener) {
+        mOnExitListener = listener;
+    }
+
+    /**
+     * 激活工具. 激活序列由使用者匹配(见 ActivationKeyMatcher), 调用时 DebugToolView 应该已经加入 View 树.
+     */
+    public void activate() {
+        enableDebugTool(true);
+        // 刚加入View树的DebugToolView可能还没有完成布局, 此时等onDebugViewSizeChanged()再截屏
+        if (mDebugView.getView().getWidth() > 0) {
+            captureScreen();
         }
+    }
 
-        int keyCode = keyEvent.getKeyCode();
-        if (mSecretKeyIndex == 0) {
-            if (keyCode == mSecretKeyCodes_1[mSecretKeyIndex]) {
-                mCurrentActiveSecretKeyCodes = mSecretKeyCodes_1;
-            } else if (keyCode == mSecretKeyCodes_2[mSecretKeyIndex]) {
-                mCurrentActiveSecretKeyCodes = mSecretKeyCodes_2;
-            }
+    /**
+     * 停用工具并释放截屏缓冲区等资源, 之后可以再次 {@link #activate()}.
+     */
+    public void release() {
+        if (mEnabled) {
+            enableDebugTool(false);
         }
+        mScreenCapturer.release();
+    }
 
-        if (mCurrentActiveSecretKeyCodes != null) {
-            if (keyCode == mCurrentActiveSecretKeyCodes[mSecretKeyIndex]) {
-                mSecretKeyIndex++;
-                if (mSecretKeyIndex >= mCurrentActiveSecretKeyCodes.length) {
-                    enableDebugTool(true);
-                    getScreenPixels();
+    /**
+     * 由 Activity.onTrimMemory() 调用. 内存紧张时释放截屏缓冲区, 之后按菜单键可以重新截屏.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mScreenCapturer.release();
+        }
+    }
 
-                    mSecretKeyIndex = 0;
-                    mCurrentActiveSecretKeyCodes = null;
-                }
-            } else {
-                mCurrentActiveSecretKeyCodes = null;
-                // 如果不匹配的是序列的非首个键值, 则从序列的第一个键值开始重新匹配.
-                if (mSecretKeyIndex > 0) {
-                    mSecretKeyIndex = 0;
-                    handleEnableKey(keyEvent);
-                }
-            }
+    /**
+     * @return 工具未激活时返回false, 按键应继续正常分发
+     */
+    public boolean handleKey(@NonNull KeyEvent keyEvent) {
+        if (mEnabled) {
+            handleDebugKey(keyEvent);
+            return true;
         }
+        return false;
     }
 
     private void handleDebugKey(@NonNull KeyEvent keyEvent) {
@@ -122,7 +286,7 @@ public class ViewDebugger {
                 }
             } else {
                 if (keyAction != KeyEvent.ACTION_UP) {
-                    moveCursorByDirectionKey(keyCode);
+                    moveCursorByDirectionKey(keyEvent);
                 }
             }
         } else if (keyAction == KeyEvent.ACTION_UP) {
@@ -137,16 +301,47 @@ public class ViewDebugger {
                         if (mIsShowingCurrentView) {
                             mIsShowingCurrentView = false;
                             mCurrentShowingView = null;
-                            mDebugView.hightlightView(null, "");
+                            mDebugView.hightlightView(null, null, "");
+                            if (mProfiler.isRunning()) {
+                                mProfiler.setTarget(null);
+                            }
+                            updateRegionStats();
                         } else {
-                            enableDebugTool(false);
+                            exit();
                         }
                         break;
                     case KeyEvent.KEYCODE_0:
+                        mPendingCursorDx = 0;
+                        mPendingCursorDy = 0;
                         mDebugView.moveToOrigin();
+                        updateRegionStats();
                         break;
                     case KeyEvent.KEYCODE_MENU:
-                        getScreenPixels();
+                        captureScreen();
+                        break;
+                    case KeyEvent.KEYCODE_7:
+                        toggleProfiling();
+                        break;
+                    case KeyEvent.KEYCODE_8:
+                        exportHierarchy();
+                        break;
+                    case KeyEvent.KEYCODE_9:
+                        toggleFocusGraph();
+                        break;
+                    case KeyEvent.KEYCODE_PROG_RED:
+                        toggleSnapMode();
+                        break;
+                    case KeyEvent.KEYCODE_PROG_YELLOW:
+                        toggleHierarchyChanges();
+                        break;
+                    case KeyEvent.KEYCODE_PROG_GREEN:
+                        toggleLayoutHeatmap();
+                        break;
+                    case KeyEvent.KEYCODE_PROG_BLUE:
+                        cycleLoupeZoom();
+                        break;
+                    case KeyEvent.KEYCODE_INFO:
+                        toggleFrameMeter();
                         break;
                 }
             }
@@ -170,7 +365,7 @@ public class ViewDebugger {
     }
 
     private void hideNextFocusedView() {
-        mDebugView.hightlightFocusedView(null, "");
+        mDebugView.hightlightFocusedView(null, null, "");
         mIsShowingFocusedView = false;
     }
 
@@ -214,47 +409,176 @@ public class ViewDebugger {
         return directionStr;
     }
 
-    private void moveCursorByDirectionKey(int keyCode) {
-        Pair<Integer, Integer> xyOffset = key2Offset(keyCode);
-        if (xyOffset.first != 0 || xyOffset.second != 0) {
-            mDebugView.moveCursor(xyOffset.first, xyOffset.second);
+    private void moveCursorByDirectionKey(@NonNull KeyEvent keyEvent) {
+        // 按住方向键时每次重复都会调用, 偏移量直接用int计算, 不创建Pair/Integer对象
+        int keyCode = keyEvent.getKeyCode();
+        if (mSnapMode && snapCursor(keyCode)) {
+            mIsShowingCurrentView = false;
+            return;
+        }
+
+        int factor = getAccelerationFactor(keyEvent);
+        int xOff = key2OffsetX(keyCode) * factor;
+        int yOff = key2OffsetY(keyCode) * factor;
+        if (xOff != 0 || yOff != 0) {
+            // 只累加偏移量, 在下一帧统一移动光标
+            mPendingCursorDx += xOff;
+            mPendingCursorDy += yOff;
+            scheduleFrame();
 //                mDebugView.showViewInfo(null, null);
             mIsShowingCurrentView = false;
         }
     }
 
-    private Pair<Integer, Integer> key2Offset(int keyCode) {
-        int xOff = 0, yOff = 0;
+    // 第一次按下时为1; 重复按键时按按住的时长计算, 与遥控器的按键重复频率无关
+    private int getAccelerationFactor(@NonNull KeyEvent keyEvent) {
+        if (keyEvent.getRepeatCount() == 0) {
+            return 1;
+        }
+        long heldMs = keyEvent.getEventTime() - keyEvent.getDownTime();
+        if (heldMs <= ACCEL_DELAY_MS) {
+            return 1;
+        }
+        long factor = 1 + (heldMs - ACCEL_DELAY_MS) * (MAX_ACCEL_FACTOR - 1) / ACCEL_RAMP_MS;
+        return (int) Math.min(MAX_ACCEL_FACTOR, factor);
+    }
+
+    /**
+     * 从光标位置(包括还没有处理的移动)出发, 找到该方向上的下一条边, 把差值累加到待处理的移动中.
+     *
+     * @return 边索引不可用时返回false, 由调用者按普通方式移动光标
+     */
+    private boolean snapCursor(int keyCode) {
+        EdgeIndex edges = mSpatialIndex.getEdgeIndex();
+        if (edges == null) {
+            return false;
+        }
 
+        Point cursor = mCursor;
+        mDebugView.getCursorLocation(cursor);
+        int x = cursor.x + mPendingCursorDx;
+        int y = cursor.y + mPendingCursorDy;
+        int target = EdgeIndex.NONE;
         switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                target = edges.previousX(x);
+                break;
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                target = edges.nextX(x);
+                break;
             case KeyEvent.KEYCODE_DPAD_UP:
-                xOff = 0;
-                yOff = -mMovingStep;
+                target = edges.previousY(y);
                 break;
             case KeyEvent.KEYCODE_DPAD_DOWN:
-                xOff = 0;
-                yOff = mMovingStep;
+                target = edges.nextY(y);
                 break;
+        }
+        if (target == EdgeIndex.NONE) {
+            // 该方向上没有更多的边, 光标不动
+            return true;
+        }
+
+        if (keyCode == KeyEvent.KEYCODE_DPAD_LEFT || keyCode == KeyEvent.KEYCODE_DPAD_RIGHT) {
+            mPendingCursorDx += target - x;
+        } else {
+            mPendingCursorDy += target - y;
+        }
+        mPendingSnap = true;
+        scheduleFrame();
+        return true;
+    }
+
+    private void toggleSnapMode() {
+        mSnapMode = !mSnapMode;
+        mPendingSnap = false;
+        mDebugView.showCursorJumpDistance(mSnapMode ? 0 : -1);
+    }
+
+    private void flushPendingCursorMove() {
+        if (mPendingCursorDx != 0 || mPendingCursorDy != 0) {
+            int dx = mPendingCursorDx;
+            int dy = mPendingCursorDy;
+            mPendingCursorDx = 0;
+            mPendingCursorDy = 0;
+            if (mPendingSnap) {
+                // 同一帧内的多次跳跃合并显示为总距离
+                mDebugView.showCursorJumpDistance(Math.abs(dx) + Math.abs(dy));
+            }
+            mDebugView.moveCursor(dx, dy);
+            updateRegionStats();
+        }
+        mPendingSnap = false;
+    }
+
+    private int key2OffsetX(int keyCode) {
+        switch (keyCode) {
             case KeyEvent.KEYCODE_DPAD_LEFT:
-                xOff = -mMovingStep;
-                yOff = 0;
-                break;
+                return -mMovingStep;
             case KeyEvent.KEYCODE_DPAD_RIGHT:
-                xOff = mMovingStep;
-                yOff = 0;
-                break;
+                return mMovingStep;
+            default:
+                return 0;
+        }
+    }
+
+    private int key2OffsetY(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_UP:
+                return -mMovingStep;
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+                return mMovingStep;
+            default:
+                return 0;
         }
-        return new Pair<>(xOff, yOff);
     }
 
     private void enableDebugTool(boolean enabled) {
         mEnabled = enabled;
+        if (!enabled) {
+            mPendingCursorDx = 0;
+            mPendingCursorDy = 0;
+            mRegionStatsPending = false;
+            cancelHover();
+            stopProfiling();
+            hideFocusGraph();
+            hideHierarchyChanges();
+            hideLayoutHeatmap();
+            hideLoupe();
+            hideFrameMeter();
+        }
         mDebugView.getView().setVisibility(enabled ? View.VISIBLE : View.INVISIBLE);
+
+        ViewParent viewParent = mDebugView.getView().getParent();
+        if (enabled && viewParent instanceof ViewGroup) {
+            mDrawingOrder.attach((ViewGroup) viewParent);
+            mSpatialIndex.attach((ViewGroup) viewParent);
+            ResourceNameCache.prewarm((ViewGroup) viewParent);
+            mBatchHitTester.register(mDebugView.getView().getContext());
+            int inspectPort = DebugToolProperties.getInstance().getInspectPort();
+            if (inspectPort > 0) {
+                mInspectionServer.start(mDebugView.getView().getRootView(), inspectPort);
+            }
+        } else {
+            mBatchHitTester.unregister();
+            mSpatialIndex.detach();
+            mDrawingOrder.detach();
+            mInspectionServer.stop();
+        }
+    }
+
+    private void exit() {
+        release();
+        if (mOnExitListener != null) {
+            mOnExitListener.onDebugToolExited();
+        }
     }
 
     private void showViewAtCursor() {
+        // 光标位置要包括还没有处理的方向键移动
+        flushPendingCursorMove();
         if (!mIsShowingCurrentView) {
-            getAllViewsAtPoint2(mDebugView.getCursorLocation());
+            mDebugView.getCursorLocation(mCursor);
+            findViewsAtPoint(mCursor);
             dumpViewsAtCursor();
 
             if (!mViewsAtCursor.isEmpty()) {
@@ -268,14 +592,18 @@ public class ViewDebugger {
             //noinspection ConstantConditions
             mCurrentShowingView = mViewsAtCursor.get(mIndexOfShowingViews);
             showView(mCurrentShowingView, true);
+            if (mProfiler.isRunning()) {
+                mProfiler.setTarget(mCurrentShowingView);
+            }
             Log.d(TAG, "Current view: " + mCurrentShowingView +
-                    ", view rect of screen: " + getViewRectOfScreen(mCurrentShowingView));
+                    ", view rect in debug view: " + mSelectedViewBounds);
 
             if (mIndexOfShowingViews > 0) {
                 mIndexOfShowingViews--;
             } else {
                 mIndexOfShowingViews = mViewsAtCursor.size() - 1;
             }
+            updateRegionStats();
         }
     }
 
@@ -285,10 +613,16 @@ public class ViewDebugger {
         }
 
         Rect rectRelative = new Rect(0, 0, view.getRight()-view.getLeft(), view.getBottom()-view.getTop());
-        Rect rectScreen = getViewRectOfScreen(view);
-        Rect rectDebugView = getViewRectOfScreen(mDebugView.getView());
-        Rect rectScreenInDebugView = new Rect(rectScreen);
-        rectScreenInDebugView.offset(-rectDebugView.left, -rectDebugView.top);
+        // 变换后的四个角, 有缩放、旋转等变换时高亮框画成实际显示的形状, 信息中显示其外接矩形
+        float[] quad = new float[8];
+        if (!getViewQuadInDebugView(view, quad)) {
+            return;
+        }
+        Rect rectScreenInDebugView = new Rect();
+        ViewTransforms.getBounds(quad, rectScreenInDebugView);
+        if (ViewTransforms.isAxisAligned(quad)) {
+            quad = null;
+        }
 
         String viewInfo = view.getClass().getSimpleName()
                 + viewId2String(view, view.getId())
@@ -296,62 +630,296 @@ public class ViewDebugger {
                 + ", " + rectScreenInDebugView;
 
         if (isCurrentView) {
-            mDebugView.hightlightView(rectScreenInDebugView, viewInfo);
+            mSelectedViewBounds.set(rectScreenInDebugView);
+            mDebugView.hightlightView(rectScreenInDebugView, quad, viewInfo);
         } else {
-            mDebugView.hightlightFocusedView(rectScreenInDebugView, viewInfo);
+            mDebugView.hightlightFocusedView(rectScreenInDebugView, quad, viewInfo);
         }
     }
 
-    private Rect getViewRectOfScreen(View view) {
-        Rect rectRelative = new Rect(0, 0, view.getRight()-view.getLeft(), view.getBottom()-view.getTop());
-        Rect rectScreen = new Rect(rectRelative);
+    /**
+     * 计算 view 变换后的四个角在 DebugToolView 中的坐标. 沿父View链逐层乘以变换矩阵, 不调用 getLocationOnScreen().
+     *
+     * @return view 不在窗口的 View 树中时返回false
+     */
+    private boolean getViewQuadInDebugView(@NonNull View view, @NonNull float[] quad) {
+        View debugView = mDebugView.getView();
+        View rootView = debugView.getRootView();
+        if (!ViewTransforms.getQuad(view, rootView, quad) || !ViewTransforms.getQuad(debugView, rootView, mDebugViewQuad)) {
+            return false;
+        }
+        // DebugToolView没有变换, 左上角就是其原点
+        for (int i = 0; i < 8; i += 2) {
+            quad[i] -= mDebugViewQuad[0];
+            quad[i + 1] -= mDebugViewQuad[1];
+        }
+        return true;
+    }
 
-        rectRelative.offset(view.getLeft(), view.getTop());
-        int[] viewScreenPos = new int[2];
-        view.getLocationOnScreen(viewScreenPos);
-        rectScreen.offset(viewScreenPos[0], viewScreenPos[1]);
+    private String viewId2String(@NonNull View view, int id) {
+        // 资源名由ResourceNameCache缓存, 工具激活时已在后台线程预先查找
+        Resources r = view.getResources();
+        String name = r != null ? ResourceNameCache.getName(r, id) : null;
+        return name != null ? " " + name : "";
+    }
 
-        return rectScreen;
+    private void toggleProfiling() {
+        if (mProfiler.isRunning()) {
+            stopProfiling();
+        } else {
+            mProfiler.start();
+            mProfiler.setTarget(mIsShowingCurrentView ? mCurrentShowingView : null);
+        }
     }
 
-    private String viewId2String(@NonNull View view, int id) {
+    private void stopProfiling() {
+        if (mProfiler.isRunning()) {
+            mProfiler.stop();
+            mProfileLines.clear();
+            mDebugView.showProfile(mProfileLines);
+        }
+    }
 
-        StringBuilder out = new StringBuilder(32);
-
-        if (id != View.NO_ID) {
-            final Resources r = view.getResources();
-            if (id > 0 && (id >>> 24) != 0 && r != null) {
-                try {
-                    String pkgname;
-                    switch (id&0xff000000) {
-                        case 0x7f000000:
-                            pkgname="app";
-                            break;
-                        case 0x01000000:
-                            pkgname="android";
-                            break;
-                        default:
-                            pkgname = r.getResourcePackageName(id);
-                            break;
-                    }
-                    String typename = r.getResourceTypeName(id);
-                    String entryname = r.getResourceEntryName(id);
-                    out.append(" ");
-                    out.append(typename);
-                    out.append("/");
-                    out.append(entryname);
-                } catch (Resources.NotFoundException e) {
-                }
+    /**
+     * 第一行为帧间隔的百分位数, 之后每行是一个目标View(从选中的View开始, 依次向上到根View)的平均耗时.
+     */
+    private void showProfile(@NonNull ViewProfiler profiler) {
+        mProfileLines.clear();
+        FrameStats frameStats = profiler.getFrameStats();
+        mProfileLines.add(String.format(Locale.US, "frame p50 %.1f  p90 %.1f  p99 %.1f ms (%d)",
+                nanosToMillis(frameStats.getPercentileNanos(50)), nanosToMillis(frameStats.getPercentileNanos(90)),
+                nanosToMillis(frameStats.getPercentileNanos(99)), frameStats.getCount()));
+
+        for (int i = 0; i < profiler.getTargetCount(); i++) {
+            View view = profiler.getTarget(i);
+            if (view == null) {
+                continue;
             }
+            String label = view.getClass().getSimpleName() + viewId2String(view, view.getId());
+            if (profiler.getSampleCount(i) == 0) {
+                mProfileLines.add(label + "  m/l/d --");
+            } else {
+                mProfileLines.add(String.format(Locale.US, "%s  m %.2f  l %.2f  d %.2f ms", label,
+                        nanosToMillis(profiler.getAverageNanos(i, ViewProfiler.PHASE_MEASURE)),
+                        nanosToMillis(profiler.getAverageNanos(i, ViewProfiler.PHASE_LAYOUT)),
+                        nanosToMillis(profiler.getAverageNanos(i, ViewProfiler.PHASE_DRAW))));
+            }
+        }
+        mDebugView.showProfile(mProfileLines);
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private void toggleFocusGraph() {
+        if (mFocusGraph.isAttached()) {
+            hideFocusGraph();
+            return;
+        }
+
+        ViewParent viewParent = mDebugView.getView().getParent();
+        if (viewParent instanceof ViewGroup) {
+            mFocusGraph.attach((ViewGroup) viewParent, mDebugView.getView());
+        }
+    }
+
+    private void hideFocusGraph() {
+        if (mFocusGraph.isAttached()) {
+            mFocusGraph.detach();
+            mDebugView.showFocusGraph(null);
+        }
+    }
+
+    private void dumpFocusGraphProblems(@NonNull FocusGraph graph) {
+        Log.d(TAG, "Focus graph: " + graph.getCount() + " focusables, " + graph.getUnreachableCount()
+                + " unreachable, " + graph.getTrapCount() + " trapped, " + graph.getAsymmetricCount()
+                + " asymmetric edges");
+        for (int i = 0; i < graph.getCount(); i++) {
+            int flags = graph.getFlags(i);
+            if ((flags & (FocusGraph.FLAG_UNREACHABLE | FocusGraph.FLAG_TRAP)) != 0) {
+                View view = graph.getView(i);
+                Log.d(TAG, "    " + ((flags & FocusGraph.FLAG_TRAP) != 0 ? "trap " : "unreachable ")
+                        + view.getClass().getSimpleName() + viewId2String(view, view.getId()));
+            }
+        }
+    }
+
+    private void toggleHierarchyChanges() {
+        if (mChangeTracker.isAttached()) {
+            hideHierarchyChanges();
+            return;
+        }
+
+        mChangeTracker.attach(mDebugView.getView().getRootView(), mDebugView.getView());
+        mDebugView.showHierarchyChanges(mChangeTracker);
+    }
+
+    private void hideHierarchyChanges() {
+        if (mChangeTracker.isAttached()) {
+            mChangeTracker.detach();
+            mDebugView.showHierarchyChanges(null);
+        }
+    }
+
+    private void toggleLayoutHeatmap() {
+        if (mHeatmap.isAttached()) {
+            hideLayoutHeatmap();
+            return;
+        }
+
+        mHeatmap.attach(mDebugView.getView().getRootView(), mDebugView.getView());
+        mDebugView.showLayoutHeatmap(mHeatmap);
+    }
+
+    private void hideLayoutHeatmap() {
+        if (mHeatmap.isAttached()) {
+            mHeatmap.detach();
+            mDebugView.showLayoutHeatmap(null);
+        }
+    }
+
+    private void toggleFrameMeter() {
+        if (mFrameMeter.isRunning()) {
+            hideFrameMeter();
+            return;
+        }
+
+        mFrameMeter.start(mDebugView.getView());
+        mDebugView.showFrameMeter(mFrameMeter);
+    }
+
+    private void hideFrameMeter() {
+        if (mFrameMeter.isRunning()) {
+            mFrameMeter.stop();
+            mDebugView.showFrameMeter(null);
+        }
+    }
+
+    private void cycleLoupeZoom() {
+        mLoupeZoomIndex = (mLoupeZoomIndex + 1) % mLoupeZooms.length;
+        if (mLoupeZoomIndex == 0) {
+            hideLoupe();
+            return;
+        }
+
+        mDebugView.showLoupe(mLoupeZooms[mLoupeZoomIndex]);
+        updateRegionStats();
+    }
+
+    private void hideLoupe() {
+        if (mLoupeZoomIndex != 0) {
+            mLoupeZoomIndex = 0;
+            mRegionStats.cancel();
+            mDebugView.showLoupe(0);
+            mDebugView.showRegionStats(null);
+        }
+    }
+
+    /**
+     * 放大镜打开时重新统计颜色: 选中View时统计View的矩形, 否则统计放大镜中看到的区域.
+     * 计算在工作线程中进行, 连续移动光标时只计算最新的区域.
+     */
+    private void updateRegionStats() {
+        if (mLoupeZoomIndex == 0) {
+            return;
         }
 
-        return out.toString();
+        if (mIsShowingCurrentView) {
+            mStatsRegion.set(mSelectedViewBounds);
+        } else {
+            Point cursor = mCursor;
+            mDebugView.getCursorLocation(cursor);
+            int size = LOUPE_SIZE / mLoupeZooms[mLoupeZoomIndex];
+            int left = cursor.x - size / 2;
+            int top = cursor.y - size / 2;
+            mStatsRegion.set(left, top, left + size, top + size);
+        }
+        mRegionStats.request(mStatsRegion);
+    }
+
+    /**
+     * 在 DebugToolView.onDraw() 中绘制放大镜时调用.
+     *
+     * @param region 输入为根View坐标的区域, 返回时改为其中已截取的部分
+     * @param outSrc 返回该部分在位图中的范围
+     * @return 截屏位图, 没有可用像素时返回null; 只能在本次绘制中使用
+     */
+    @Nullable
+    public Bitmap getScreenRegion(@NonNull Rect region, @NonNull Rect outSrc) {
+        return mScreenCapturer.getFrontRegion(region, outSrc);
+    }
+
+    private void exportHierarchy() {
+        HierarchyExporter.export(mDebugView.getView().getRootView(), new HierarchyExporter.Callback() {
+            @Override
+            public void onHierarchyExported(@Nullable File file) {
+                if (file != null) {
+                    Log.i(TAG, "View hierarchy exported, run: adb pull " + file.getAbsolutePath());
+                }
+            }
+        });
     }
 
+    // View.toString() 会在主线程查找资源名. 主线程只记录类名、id和矩形, 查找资源名和拼接日志在后台线程进行
     private void dumpViewsAtCursor() {
-        Log.d(TAG, "View hierarchy at cursor:");
-        for (View view : mViewsAtCursor) {
-            Log.d(TAG, "    " + view);
+        final int count = mViewsAtCursor.size();
+        final String[] classNames = new String[count];
+        final int[] ids = new int[count];
+        final int[] bounds = new int[count * 4];
+        for (int i = 0; i < count; i++) {
+            View view = mViewsAtCursor.get(i);
+            classNames[i] = view.getClass().getName();
+            ids[i] = view.getId();
+            bounds[4 * i] = view.getLeft();
+            bounds[4 * i + 1] = view.getTop();
+            bounds[4 * i + 2] = view.getRight();
+            bounds[4 * i + 3] = view.getBottom();
+        }
+        final Resources resources = mDebugView.getView().getResources();
+
+        DebugThreads.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                Log.d(TAG, "View hierarchy at cursor:");
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    line.setLength(0);
+                    line.append("    ").append(classNames[i]).append('{');
+                    String name = resources != null ? ResourceNameCache.getName(resources, ids[i]) : null;
+                    if (name != null) {
+                        line.append(name).append(' ');
+                    }
+                    line.append('[').append(bounds[4 * i]).append(',').append(bounds[4 * i + 1]).append("][")
+                            .append(bounds[4 * i + 2]).append(',').append(bounds[4 * i + 3]).append("]}");
+                    Log.d(TAG, line.toString());
+                }
+            }
+        });
+    }
+
+    private void findViewsAtPoint(@NonNull Point pointScreen) {
+        // 空间索引和ViewTreeHitTester只支持SEARCH_NON_VIEW_GROUP为false的匹配方式
+        if (SEARCH_NON_VIEW_GROUP) {
+            getAllViewsAtPoint2(pointScreen);
+            return;
+        }
+        findViewsAtPoint(pointScreen.x, pointScreen.y, mViewsAtCursor);
+    }
+
+    // 结果从根View到最下层的View, 不改变光标处的View链(InspectionServer也使用)
+    private void findViewsAtPoint(int x, int y, @NonNull List<View> out) {
+        if (mSpatialIndex.findViewsAtPoint(x, y, out)) {
+            return;
+        }
+
+        // mDebugView放在View Tree的最上一层，因此其parent View一定是root view
+        ViewParent viewParent = mDebugView.getView().getParent();
+        if (viewParent instanceof ViewGroup) {
+            mDrawingOrder.startQuery();
+            ViewTreeHitTester.findNodesAtPoint(mTreeAdapter, (View) viewParent, x, y, out);
+        } else {
+            out.clear();
         }
     }
 
@@ -371,15 +939,17 @@ public class ViewDebugger {
             mPointOffsetViewGroup.clear();
         }
 
+        mDrawingOrder.startQuery();
         Point pointOffsetViewGroup = pointScreen;
-        int startChildIndex = nextViewGroup.getChildCount() - 1;
+        ChildDrawingOrder.Order order = mDrawingOrder.get(nextViewGroup);
+        int startPosition = order.count - 1;
         while (true) {
             View viewFound = null;
 
-            // 如果没有设置elevation属性, View的绘制顺序是按照添加到ViewGroup的顺序来决定的.
-            // 第一个子View是最先绘制的, 最后一个子View最后绘制, 最后一个子View在图层的最上面.
-            for (int i = startChildIndex; i >= 0; i--) {
-                View child = nextViewGroup.getChildAt(i);
+            // 按实际绘制顺序(Z和自定义绘制顺序)从上往下找, 点在裁剪区域之外时不会命中任何子View
+            for (int i = order.isInClip(pointOffsetViewGroup.x, pointOffsetViewGroup.y) ? startPosition : -1;
+                 i >= 0; i--) {
+                View child = nextViewGroup.getChildAt(order.children[i]);
                 if (child == null || child instanceof IDebugView) continue;
 
                 if (child.getVisibility()==View.VISIBLE && isPointInView(pointOffsetViewGroup, nextViewGroup, child)) {
@@ -395,16 +965,19 @@ public class ViewDebugger {
             if (viewFound != null && viewFound instanceof ViewGroup) {
                 transformPointToViewLocal(pointOffsetViewGroup, nextViewGroup, viewFound);
                 nextViewGroup = (ViewGroup) viewFound;
-                startChildIndex = nextViewGroup.getChildCount() - 1;
+                order = mDrawingOrder.get(nextViewGroup);
+                startPosition = order.count - 1;
             } else {
                 if (SEARCH_NON_VIEW_GROUP) {
                     if (viewFound == null) {
                         int viewCount = mViewsAtCursor.size();
                         if (viewCount >= 2) {
                             nextViewGroup = (ViewGroup) mViewsAtCursor.get(viewCount - 2);
-                            startChildIndex = findNextChildViewIndex(mViewsAtCursor.get(viewCount - 1), nextViewGroup);
-                            Log.w(TAG, "!! Try next child view of " + nextViewGroup + ", startChildIndex=" + startChildIndex);
-                            if (startChildIndex < 0) {
+                            order = mDrawingOrder.get(nextViewGroup);
+                            startPosition = findNextDrawingPosition(mViewsAtCursor.get(viewCount - 1), nextViewGroup,
+                                    order);
+                            Log.w(TAG, "!! Try next child view of " + nextViewGroup + ", startPosition=" + startPosition);
+                            if (startPosition < 0) {
                                 break;
                             }
                             mViewsAtCursor.remove(viewCount - 1);
@@ -422,17 +995,19 @@ public class ViewDebugger {
         }
     }
 
-    private int findNextChildViewIndex(View currentChildView, ViewGroup parentView) {
-        int childIndex = -1;
+    // 返回在currentChildView下面一层(绘制位置减1)的位置
+    private int findNextDrawingPosition(View currentChildView, ViewGroup parentView,
+                                        @NonNull ChildDrawingOrder.Order order) {
+        int position = -1;
 
-        for (int i = parentView.getChildCount() - 1; i >= 0; i--) {
-            if (parentView.getChildAt(i) == currentChildView) {
-                childIndex = i - 1;
+        for (int i = order.count - 1; i >= 0; i--) {
+            if (parentView.getChildAt(order.children[i]) == currentChildView) {
+                position = i - 1;
                 break;
             }
         }
 
-        return childIndex;
+        return position;
     }
 
     private void transformPointToViewLocal(@NonNull Point point, @NonNull View parent, @NonNull View child) {
@@ -440,52 +1015,119 @@ public class ViewDebugger {
     }
 
     private boolean isPointInView(@NonNull Point pointOffParentView, @NonNull View parentView, @NonNull View view) {
-        Point pointOffChildView = new Point(pointOffParentView);
-        transformPointToViewLocal(pointOffChildView, parentView, view);
+        // 与transformPointToViewLocal()的变换相同, 直接用int计算, 不为每个子View创建Point
+        int x = pointOffParentView.x + parentView.getScrollX() - view.getLeft();
+        int y = pointOffParentView.y + parentView.getScrollY() - view.getTop();
 
-        return pointOffChildView.x >= 0 && pointOffChildView.y >= 0
-                && pointOffChildView.x < view.getRight() - view.getLeft()
-                && pointOffChildView.y < view.getBottom() - view.getTop();
+        return x >= 0 && y >= 0
+                && x < view.getRight() - view.getLeft()
+                && y < view.getBottom() - view.getTop();
     }
 
-    @Nullable
-    private Bitmap getScreenPixels() {
-        ViewParent viewParent = mDebugView.getView().getParent();
-        if (viewParent == null) {
-            return null;
+    /**
+     * 异步截取屏幕像素, 截屏期间DebugToolView被隐藏, 截屏结束后在 {@link #onScreenCaptureFinished(boolean, boolean)} 中恢复显示.
+     * debug.view_debugger.capture_radius 大于0时只截取光标周围的区域.
+     */
+    private void captureScreen() {
+        flushPendingCursorMove();
+        int radius = DebugToolProperties.getInstance().getCaptureRadius();
+        if (radius > 0) {
+            Point cursor = mCursor;
+            mDebugView.getCursorLocation(cursor);
+            mCaptureRegion.set(cursor.x - radius, cursor.y - radius, cursor.x + radius + 1, cursor.y + radius + 1);
+            mScreenCapturer.capture(mCaptureRegion);
+        } else {
+            mScreenCapturer.capture(null);
         }
+    }
 
-        mDebugView.getView().setVisibility(View.INVISIBLE);
-        Log.d(TAG, "Get pixels of screen");
-        Bitmap pixels = getPixelsOfView((ViewGroup) viewParent);
-        mDebugView.getView().setVisibility(View.VISIBLE);
+    @Override
+    public void onScreenCaptureFinished(boolean success, boolean cancelled) {
+        // 被 onTrimMemory() 取消时也要恢复显示
+        if (mEnabled) {
+            mDebugView.getView().setVisibility(View.VISIBLE);
+            if (success) {
+                updateRegionStats();
+            }
+        }
+    }
+
+    /**
+     * DebugToolView第一次布局完成, 或者大小变化(例如旋转屏幕)后, 已截取的像素不再对应当前画面, 需要重新截屏.
+     */
+    void onDebugViewSizeChanged() {
+        if (mEnabled) {
+            captureScreen();
+        }
+    }
 
-        return pixels;
+    /**
+     * 在 DebugToolView.onDraw() 中每帧调用, 返回 int 而不是 Integer, 避免装箱分配内存.
+     *
+     * @return 像素的RGB值(0xRRGGBB), 没有可用像素时返回 {@link #NO_PIXEL_COLOR}
+     */
+    public int getRgbOfScreenPixel(int x, int y) {
+        return mScreenCapturer.getRgb(x, y);
     }
 
-    private Bitmap getPixelsOfView(View view) {
-        if (mScreenBitmap == null) {
-            mScreenBitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
+    public void handleTouch(MotionEvent event) {
+        // 触摸直接设置光标位置, 之前累加的方向键移动不再有意义
+        mPendingCursorDx = 0;
+        mPendingCursorDy = 0;
+        mDebugView.setCursorPos((int) event.getX(), (int) event.getY());
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                // 拖动后抬手应显示新位置的View, 而不是继续遍历上次显示的View的父View
+                mIsShowingCurrentView = false;
+                mHoverPending = true;
+                mRegionStatsPending = true;
+                scheduleFrame();
+                break;
+            case MotionEvent.ACTION_UP:
+                cancelHover();
+                showViewAtCursor();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                cancelHover();
+                break;
         }
-        Canvas canvas = new Canvas(mScreenBitmap);
-        view.draw(canvas);
+    }
 
-        return mScreenBitmap;
+    private void scheduleFrame() {
+        if (!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
     }
 
-    @Nullable
-    public Integer getRgbOfScreenPixel(int x, int y) {
-        if (x >= 0 && y >= 0 && x < mScreenBitmap.getWidth() && y < mScreenBitmap.getHeight()) {
-            return mScreenBitmap.getPixel(x, y);
-        } else {
-            return null;
+    private void cancelHover() {
+        mHoverPending = false;
+        mHoveredView = null;
+        mViewsAtHover.clear();
+        // 还有等待处理的光标移动或颜色统计时保留帧回调
+        if (mFrameCallbackPosted && mPendingCursorDx == 0 && mPendingCursorDy == 0 && !mRegionStatsPending) {
+            mFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
         }
     }
 
-    public void handleTouch(MotionEvent event) {
-        mDebugView.setCursorPos((int) event.getX(), (int) event.getY());
-        if (event.getAction() == MotionEvent.ACTION_UP) {
-            showViewAtCursor();
+    private void updateHoveredView() {
+        Point cursor = mCursor;
+        mDebugView.getCursorLocation(cursor);
+        if (!mSpatialIndex.findViewsAtPoint(cursor.x, cursor.y, mViewsAtHover)) {
+            return;
+        }
+
+        View hoveredView = mViewsAtHover.isEmpty() ? null : mViewsAtHover.get(mViewsAtHover.size() - 1);
+        if (hoveredView == mHoveredView) {
+            // 手指仍在同一个View上, 不需要重新生成信息文字和重绘高亮
+            return;
+        }
+        mHoveredView = hoveredView;
+        if (hoveredView != null) {
+            showView(hoveredView, true);
+        } else {
+            mDebugView.hightlightView(null, null, "");
         }
     }
 }
@@ -0,0 +1,215 @@
+package com.stv.debug;
+
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 统计选中的 View 及其所有父 View 的 measure/layout/draw 耗时.
+ * <p>
+ * 做法与 Hierarchy Viewer 的 profile 相同: 对目标 View 的整个子树调用 forceLayout(), 以当前大小做一次 EXACTLY 的 measure,
+ * 在原位置 layout, 再把 draw 录制到 Picture 中, 分别计时. 得到的是包含子 View 在内的耗时.
+ * 为了不明显拖慢被调试的应用, 每隔 {@link #PROFILE_INTERVAL_MS} 只轮流测量一个目标 View.
+ * <p>
+ * 每个目标 View 最近 {@link #WINDOW_SIZE} 次的结果保存在 long 环形缓冲区中; 同时用 {@link FrameStats} 统计帧间隔.
+ * 测量本身会推迟当前帧, 测量之后的那个帧间隔不计入统计, 避免把测量造成的卡顿算到应用头上.
+ */
+final class ViewProfiler implements Choreographer.FrameCallback {
+    static final int MAX_TARGETS = 16;
+    static final int WINDOW_SIZE = 16;
+
+    static final int PHASE_MEASURE = 0;
+    static final int PHASE_LAYOUT = 1;
+    static final int PHASE_DRAW = 2;
+    private static final int PHASE_COUNT = 3;
+
+    private static final long PROFILE_INTERVAL_MS = 50;
+    private static final long REPORT_INTERVAL_MS = 500;
+    private static final int FRAME_WINDOW_SIZE = 240;
+
+    interface Listener {
+        /**
+         * 每隔 {@link #REPORT_INTERVAL_MS} 在主线程调用一次, 可以通过 profiler 的 getter 读取统计结果.
+         */
+        void onProfileUpdated(@NonNull ViewProfiler profiler);
+    }
+
+    @NonNull
+    private final Listener mListener;
+    // mTargets[0] 为选中的View, 之后依次为其父View
+    @NonNull
+    private final View[] mTargets = new View[MAX_TARGETS];
+    private int mTargetCount;
+    // 下标: (target * WINDOW_SIZE + sample) * PHASE_COUNT + phase, 单位纳秒
+    @NonNull
+    private final long[] mSamples = new long[MAX_TARGETS * WINDOW_SIZE * PHASE_COUNT];
+    @NonNull
+    private final int[] mSampleCount = new int[MAX_TARGETS];
+    @NonNull
+    private final int[] mSampleNext = new int[MAX_TARGETS];
+    private int mNextTarget;
+
+    @NonNull
+    private final FrameStats mFrameStats = new FrameStats(FRAME_WINDOW_SIZE);
+    @NonNull
+    private final Picture mPicture = new Picture();
+    private boolean mRunning;
+    private long mLastProfileTime;
+    private long mLastReportTime;
+
+    ViewProfiler(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mFrameStats.reset();
+        mLastReportTime = SystemClock.uptimeMillis();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        setTarget(null);
+    }
+
+    /**
+     * 设置要统计的View, 其父View(直到根View, 最多 {@link #MAX_TARGETS} 个)也会被统计. 之前的统计结果被清除.
+     */
+    void setTarget(@Nullable View view) {
+        for (int i = 0; i < mTargetCount; i++) {
+            mTargets[i] = null;
+            mSampleCount[i] = 0;
+            mSampleNext[i] = 0;
+        }
+        mTargetCount = 0;
+        mNextTarget = 0;
+
+        while (view != null && mTargetCount < MAX_TARGETS) {
+            mTargets[mTargetCount++] = view;
+            ViewParent parent = view.getParent();
+            view = parent instanceof View ? (View) parent : null;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+
+        mFrameStats.onFrame(frameTimeNanos);
+
+        long now = SystemClock.uptimeMillis();
+        if (mTargetCount > 0 && now - mLastProfileTime >= PROFILE_INTERVAL_MS) {
+            mLastProfileTime = now;
+            profile(mNextTarget);
+            mFrameStats.excludeNextInterval();
+            mNextTarget = (mNextTarget + 1) % mTargetCount;
+        }
+        if (now - mLastReportTime >= REPORT_INTERVAL_MS) {
+            mLastReportTime = now;
+            mListener.onProfileUpdated(this);
+        }
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void profile(int target) {
+        View view = mTargets[target];
+        if (view == null || !view.isAttachedToWindow()) {
+            return;
+        }
+
+        int left = view.getLeft();
+        int top = view.getTop();
+        int right = view.getRight();
+        int bottom = view.getBottom();
+
+        forceLayoutRecursive(view);
+        long start = System.nanoTime();
+        view.measure(View.MeasureSpec.makeMeasureSpec(right - left, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(bottom - top, View.MeasureSpec.EXACTLY));
+        long measured = System.nanoTime();
+        view.layout(left, top, right, bottom);
+        long laidOut = System.nanoTime();
+        Canvas canvas = mPicture.beginRecording(Math.max(1, right - left), Math.max(1, bottom - top));
+        view.draw(canvas);
+        mPicture.endRecording();
+        long drawn = System.nanoTime();
+
+        int sample = mSampleNext[target];
+        int base = (target * WINDOW_SIZE + sample) * PHASE_COUNT;
+        mSamples[base + PHASE_MEASURE] = measured - start;
+        mSamples[base + PHASE_LAYOUT] = laidOut - measured;
+        mSamples[base + PHASE_DRAW] = drawn - laidOut;
+        mSampleNext[target] = (sample + 1) % WINDOW_SIZE;
+        if (mSampleCount[target] < WINDOW_SIZE) {
+            mSampleCount[target]++;
+        }
+    }
+
+    private static void forceLayoutRecursive(@NonNull View view) {
+        view.forceLayout();
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                View child = group.getChildAt(i);
+                if (child != null && !(child instanceof IDebugView)) {
+                    forceLayoutRecursive(child);
+                }
+            }
+        }
+    }
+
+    int getTargetCount() {
+        return mTargetCount;
+    }
+
+    @Nullable
+    View getTarget(int target) {
+        return mTargets[target];
+    }
+
+    int getSampleCount(int target) {
+        return mSampleCount[target];
+    }
+
+    /**
+     * @return 目标View在最近的统计窗口内某个阶段的平均耗时(纳秒), 还没有数据时返回0
+     */
+    long getAverageNanos(int target, int phase) {
+        int count = mSampleCount[target];
+        if (count == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int sample = 0; sample < count; sample++) {
+            sum += mSamples[(target * WINDOW_SIZE + sample) * PHASE_COUNT + phase];
+        }
+        return sum / count;
+    }
+
+    @NonNull
+    FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+}
@@ -0,0 +1,618 @@
+package com.stv.debug;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * View 树的屏幕空间索引, 用于快速查找某个点上的所有 View.
+ * <p>
+ * 工具激活时把 View 树按先序遍历展平成数组, 并按 View 的矩形放入均匀网格({@link SpatialGrid}, 不依赖 Android API).
+ * 查询时只检查点所在格子中的 View,
+ * 得到的 View 链与 {@link ViewTreeHitTester} 的逐层遍历结果相同: 兄弟View之间按 {@link ChildDrawingOrder} 的绘制顺序
+ * 取最上层的, 被父View裁剪掉的不命中. 绘制顺序在查询时读取(有缓存), Z变化时不需要重建网格.
+ * <p>
+ * 滚动(OnScrollChangedListener)、焦点变化和布局(OnGlobalLayoutListener)后重新计算所有 View 的位置, 位置或大小
+ * 发生变化的 View 暂时移出网格、在查询时逐个检查, 数量过多时再整体重建. 布局后先检查 View 树的结构(每个节点仍是
+ * 父View在原序号上的子View, 子View数量不变)和根View的大小, 有变化时才整体重建. 重建和更新都推迟到下一次查询时进行.
+ * <p>
+ * 索引包含所有可见性的 View, 是否 VISIBLE 在查询时读取: VISIBLE 和 INVISIBLE 之间的切换不会重新布局.
+ * 吸附光标使用的边索引只包含显示的 View, 绘制前(OnPreDrawListener)沿着需要重绘的路径检查子View的可见性,
+ * 有变化时重新构建边索引.
+ * <p>
+ * 属性动画改变 translation/scale 等不会触发布局, 只能在重绘(OnDrawListener)后发现. 重绘时不遍历整棵树, 只重新检查
+ * 被跟踪的 View: 有变换矩阵的 View, 以及最近获得和失去焦点的 View 和它们的父 View(焦点放大等动画开始时矩阵可能还是单位矩阵).
+ * 只有这些 View 的矩形变化时才更新它们的子树. 没有被跟踪的 View 时重绘什么都不做, 因此 overlay 自身的重绘(光标移动等)
+ * 不会引起更新.
+ * <p>
+ * 自身或父View有变换矩阵的 View 在网格中使用包含变换后四个角的矩形, 查询时再把点经过各层的逆矩阵
+ * ({@link ViewTransforms})变换到 View 自身的坐标系精确判断.
+ * <p>
+ * 坐标系与 getAllViewsAtPoint2() 相同, 是相对于根 View 左上角的坐标.
+ */
+final class ViewSpatialIndex implements ViewTreeObserver.OnGlobalLayoutListener,
+        ViewTreeObserver.OnScrollChangedListener, ViewTreeObserver.OnGlobalFocusChangeListener,
+        ViewTreeObserver.OnDrawListener, ViewTreeObserver.OnPreDrawListener, SpatialGrid.CandidateFilter {
+    @NonNull
+    private final ChildDrawingOrder mDrawingOrder;
+    @NonNull
+    private final ViewTransforms mTransforms;
+    @Nullable
+    private ViewGroup mRoot;
+    @Nullable
+    private ViewTreeObserver mObserver;
+    private boolean mNeedsRebuild = true;
+    private boolean mNeedsLayoutCheck;
+    private boolean mNeedsPositionRefresh;
+    private boolean mNeedsTransformCheck;
+
+    // 按先序遍历展平的View树. 同一个父View的子View按子View序号递增排列, 父节点、矩形和网格在 mGrid 中
+    private int mCount;
+    @NonNull
+    private View[] mViews = new View[0];
+    @NonNull
+    private final SpatialGrid mGrid = new SpatialGrid();
+    // 在父View中的子View序号
+    @NonNull
+    private int[] mChildIndex = new int[0];
+    // 自身或某个父View有变换矩阵, 矩形是变换后的外接矩形
+    @NonNull
+    private boolean[] mTransformed = new boolean[0];
+    // 节点 i 的子树为 [i, mSubtreeEnd[i])
+    @NonNull
+    private int[] mSubtreeEnd = new int[0];
+    // ViewGroup 节点在构建时的 getChildCount(), 包括没有放进索引的 overlay
+    @NonNull
+    private int[] mChildCount = new int[0];
+    private int mRootChildCount;
+    // 最近一次检查时 View 自身是否 VISIBLE, 只用于发现可见性变化
+    @NonNull
+    private boolean[] mVisible = new boolean[0];
+    // 构建边索引时使用: View 及其所有父View都是 VISIBLE
+    @NonNull
+    private boolean[] mShown = new boolean[0];
+    // 重绘后需要重新检查的节点, 按序号递增
+    @NonNull
+    private int[] mWatched = new int[0];
+    private int mWatchedCount;
+    @Nullable
+    private View mOldFocus;
+    @Nullable
+    private View mNewFocus;
+    @NonNull
+    private final float[] mQuad = new float[8];
+    @NonNull
+    private final float[] mPoint = new float[2];
+    @NonNull
+    private final Rect mBounds = new Rect();
+
+    // 吸附光标使用的边索引, 布局或滚动变化后第一次使用时重新构建
+    @NonNull
+    private final EdgeIndex mEdgeIndex = new EdgeIndex();
+    private boolean mEdgeIndexValid;
+
+    ViewSpatialIndex(@NonNull ChildDrawingOrder drawingOrder, @NonNull ViewTransforms transforms) {
+        mDrawingOrder = drawingOrder;
+        mTransforms = transforms;
+    }
+
+    void attach(@NonNull ViewGroup root) {
+        detach();
+
+        mRoot = root;
+        mObserver = root.getViewTreeObserver();
+        mObserver.addOnGlobalLayoutListener(this);
+        mObserver.addOnScrollChangedListener(this);
+        mObserver.addOnGlobalFocusChangeListener(this);
+        mObserver.addOnDrawListener(this);
+        mObserver.addOnPreDrawListener(this);
+        rebuild();
+    }
+
+    void detach() {
+        if (mRoot == null) {
+            return;
+        }
+
+        ViewTreeObserver observer = mObserver;
+        if (observer == null || !observer.isAlive()) {
+            observer = mRoot.getViewTreeObserver();
+        }
+        observer.removeOnGlobalLayoutListener(this);
+        observer.removeOnScrollChangedListener(this);
+        observer.removeOnGlobalFocusChangeListener(this);
+        observer.removeOnDrawListener(this);
+        observer.removeOnPreDrawListener(this);
+        mObserver = null;
+        mRoot = null;
+
+        // 不持有View的引用
+        for (int i = 0; i < mCount; i++) {
+            mViews[i] = null;
+        }
+        mCount = 0;
+        mWatchedCount = 0;
+        mOldFocus = null;
+        mNewFocus = null;
+        mNeedsRebuild = true;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        mNeedsLayoutCheck = true;
+    }
+
+    @Override
+    public void onScrollChanged() {
+        mNeedsPositionRefresh = true;
+    }
+
+    @Override
+    public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+        mOldFocus = oldFocus;
+        mNewFocus = newFocus;
+        mNeedsPositionRefresh = true;
+    }
+
+    @Override
+    public void onDraw() {
+        if (mWatchedCount > 0) {
+            mNeedsTransformCheck = true;
+        }
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        ViewGroup root = mRoot;
+        if (root != null && !mNeedsRebuild && mEdgeIndexValid && root.isDirty()) {
+            checkVisibility();
+        }
+        return true;
+    }
+
+    /**
+     * 检查父View需要重绘的节点的可见性: View 的可见性变化时它的父View一定会被标记为需要重绘.
+     * 按先序遍历, 只进入需要重绘的 ViewGroup, 其他节点跳过整个子树. 根View需要重绘.
+     */
+    private void checkVisibility() {
+        int i = 0;
+        while (i < mCount) {
+            View view = mViews[i];
+            boolean visible = view.getVisibility() == View.VISIBLE;
+            if (visible != mVisible[i]) {
+                mVisible[i] = visible;
+                mEdgeIndexValid = false;
+                return;
+            }
+            i = mGrid.isGroup[i] && view.isDirty() ? i + 1 : mSubtreeEnd[i];
+        }
+    }
+
+    /**
+     * 查找点(x, y)上的View链, 结果按从外到内的顺序放入 outViews.
+     *
+     * @return 索引不可用(没有attach)时返回false, outViews不变
+     */
+    boolean findViewsAtPoint(int x, int y, @NonNull List<View> outViews) {
+        if (mRoot == null) {
+            return false;
+        }
+
+        ensureUpToDate();
+        mDrawingOrder.startQuery();
+        int deepest = findDeepestNode(x, y);
+
+        outViews.clear();
+        for (int i = deepest; i >= 0; i = mGrid.parent[i]) {
+            outViews.add(mViews[i]);
+        }
+        Collections.reverse(outViews);
+        return true;
+    }
+
+    /**
+     * 批量查找多个点上最下层的View. 所有点共用一次索引更新和网格, 每个 ViewGroup 的绘制顺序在整批查询中只检查一次.
+     * 结果是节点序号, 通过 {@link #getNodeParent(int)} 得到祖先链, 在下一次布局或滚动之前有效.
+     *
+     * @param points x0, y0, x1, y1, ... (相对于根 View 左上角)
+     * @param outNodes 返回每个点上最下层 View 的节点序号, 没有命中时为-1
+     * @return 索引不可用(没有attach)时返回false
+     */
+    boolean findNodesAtPoints(@NonNull int[] points, int pointCount, @NonNull int[] outNodes) {
+        if (mRoot == null) {
+            return false;
+        }
+
+        ensureUpToDate();
+        mDrawingOrder.startQuery();
+        for (int p = 0; p < pointCount; p++) {
+            outNodes[p] = findDeepestNode(points[2 * p], points[2 * p + 1]);
+        }
+        return true;
+    }
+
+    int getNodeCount() {
+        return mCount;
+    }
+
+    @NonNull
+    View getNodeView(int i) {
+        return mViews[i];
+    }
+
+    /**
+     * @return 父节点序号, 父View是根View时为-1
+     */
+    int getNodeParent(int i) {
+        return mGrid.parent[i];
+    }
+
+    /**
+     * @param out 返回相对于根 View 的矩形, 有变换时是变换后的外接矩形
+     */
+    void getNodeBounds(int i, @NonNull Rect out) {
+        out.set(mGrid.left[i], mGrid.top[i], mGrid.right[i], mGrid.bottom[i]);
+    }
+
+    // 调用前要先 ensureUpToDate() 和 startQuery()
+    private int findDeepestNode(int x, int y) {
+        return mGrid.findDeepest(x, y, this);
+    }
+
+    /**
+     * @return 所有可见View的边的索引, 索引不可用(没有attach)时返回null
+     */
+    @Nullable
+    EdgeIndex getEdgeIndex() {
+        ViewGroup root = mRoot;
+        if (root == null) {
+            return null;
+        }
+
+        ensureUpToDate();
+        if (!mEdgeIndexValid) {
+            mEdgeIndexValid = true;
+            for (int i = 0; i < mCount; i++) {
+                mVisible[i] = mViews[i].getVisibility() == View.VISIBLE;
+                mShown[i] = mVisible[i] && (mGrid.parent[i] < 0 || mShown[mGrid.parent[i]]);
+            }
+            mEdgeIndex.build(mCount, mGrid.left, mGrid.top, mGrid.right, mGrid.bottom, mShown, root.getWidth(), root.getHeight());
+        }
+        return mEdgeIndex;
+    }
+
+    private void ensureUpToDate() {
+        if (mNeedsRebuild) {
+            rebuild();
+        } else if (mNeedsLayoutCheck) {
+            if (isStructureUnchanged()) {
+                refreshPositions();
+            } else {
+                rebuild();
+            }
+        } else if (mNeedsPositionRefresh) {
+            refreshPositions();
+        } else if (mNeedsTransformCheck) {
+            checkWatched();
+        }
+    }
+
+    /**
+     * 网格查询时检查矩形包含点的 View, 见 {@link SpatialGrid.CandidateFilter}.
+     */
+    @Override
+    public int rankOf(int i, int x, int y) {
+        // 可见性不会触发布局, 在查询时读取. 父View不可见时它不会被选中, 子View也就不会出现在结果中
+        if (mViews[i].getVisibility() != View.VISIBLE) {
+            return -1;
+        }
+
+        int parent = mGrid.parent[i];
+        ViewGroup parentView = parent < 0 ? mRoot : (ViewGroup) mViews[parent];
+        if (parentView == null) {
+            return -1;
+        }
+        ChildDrawingOrder.Order order = mDrawingOrder.get(parentView);
+        int rank = order.rankOf(mChildIndex[i]);
+        if (rank < 0) {
+            // 子View被裁剪掉
+            return -1;
+        }
+        if (mTransformed[i]) {
+            // 外接矩形只用于筛选, 在父View和自身的坐标系中精确判断
+            float[] point = mPoint;
+            point[0] = x;
+            point[1] = y;
+            if ((parent >= 0 && !mapFromRoot(parent, point)) || !order.isInClip(point[0], point[1])) {
+                return -1;
+            }
+            View view = mViews[i];
+            if (!mTransforms.mapFromParent(parentView, view, point) || point[0] < 0 || point[1] < 0
+                    || point[0] >= view.getWidth() || point[1] >= view.getHeight()) {
+                return -1;
+            }
+        } else if (!order.isInClip(parent < 0 ? x : x - mGrid.left[parent], parent < 0 ? y : y - mGrid.top[parent])) {
+            // 点在父View的裁剪区域(例如padding)之外
+            return -1;
+        }
+        return rank;
+    }
+
+    // 把根View坐标系中的点变换到节点 i 的坐标系(左上角为原点, 不包括滚动)
+    private boolean mapFromRoot(int i, @NonNull float[] point) {
+        int parent = mGrid.parent[i];
+        if (parent >= 0 && !mapFromRoot(parent, point)) {
+            return false;
+        }
+        View parentView = parent < 0 ? mRoot : mViews[parent];
+        return parentView != null && mTransforms.mapFromParent(parentView, mViews[i], point);
+    }
+
+    // 包含View变换后四个角的矩形, 相对于根View
+    private boolean getTransformedBounds(@NonNull View view, @NonNull Rect out) {
+        ViewGroup root = mRoot;
+        if (root == null || !ViewTransforms.getQuad(view, root, mQuad)) {
+            return false;
+        }
+        ViewTransforms.getBounds(mQuad, out);
+        return true;
+    }
+
+    private void rebuild() {
+        mNeedsRebuild = false;
+        mNeedsLayoutCheck = false;
+        mNeedsPositionRefresh = false;
+        mNeedsTransformCheck = false;
+        mEdgeIndexValid = false;
+
+        for (int i = 0; i < mCount; i++) {
+            mViews[i] = null;
+        }
+        mCount = 0;
+        mGrid.count = 0;
+        mWatchedCount = 0;
+
+        ViewGroup root = mRoot;
+        if (root == null) {
+            return;
+        }
+        mRootChildCount = root.getChildCount();
+        addChildren(root, -1, 0, 0, false);
+        watchFocusChain();
+        mGrid.count = mCount;
+        mGrid.build(root.getWidth(), root.getHeight());
+    }
+
+    /**
+     * @param transformed group 自身或其父View是否有变换矩阵, 为true时 originX/originY 无意义
+     */
+    private void addChildren(@NonNull ViewGroup group, int groupIndex, int originX, int originY,
+                             boolean transformed) {
+        int scrollX = group.getScrollX();
+        int scrollY = group.getScrollY();
+        int childCount = group.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View child = group.getChildAt(i);
+            if (child == null || child instanceof IDebugView) {
+                continue;
+            }
+
+            int left = originX + child.getLeft() - scrollX;
+            int top = originY + child.getTop() - scrollY;
+            boolean childTransformed = transformed || ViewTransforms.hasTransform(child);
+            int index = addNode(child, groupIndex, i, left, top, childTransformed);
+            if (child instanceof ViewGroup) {
+                addChildren((ViewGroup) child, index, left, top, childTransformed);
+            }
+            mSubtreeEnd[index] = mCount;
+        }
+    }
+
+    private int addNode(@NonNull View view, int parent, int childIndex, int left, int top, boolean transformed) {
+        if (mCount == mViews.length) {
+            grow();
+        }
+
+        int index = mCount++;
+        mViews[index] = view;
+        mGrid.parent[index] = parent;
+        mGrid.isGroup[index] = view instanceof ViewGroup;
+        mChildCount[index] = mGrid.isGroup[index] ? ((ViewGroup) view).getChildCount() : 0;
+        mVisible[index] = view.getVisibility() == View.VISIBLE;
+        mChildIndex[index] = childIndex;
+        mTransformed[index] = transformed;
+        if (ViewTransforms.hasTransform(view)) {
+            watch(index);
+        }
+        if (transformed && getTransformedBounds(view, mBounds)) {
+            mGrid.left[index] = mBounds.left;
+            mGrid.top[index] = mBounds.top;
+            mGrid.right[index] = mBounds.right;
+            mGrid.bottom[index] = mBounds.bottom;
+        } else {
+            mGrid.left[index] = left;
+            mGrid.top[index] = top;
+            mGrid.right[index] = left + view.getWidth();
+            mGrid.bottom[index] = top + view.getHeight();
+        }
+        return index;
+    }
+
+    private void grow() {
+        int capacity = Math.max(256, mViews.length * 2);
+        View[] views = new View[capacity];
+        System.arraycopy(mViews, 0, views, 0, mCount);
+        mViews = views;
+        mGrid.ensureCapacity(capacity);
+        mChildIndex = copyOf(mChildIndex, capacity);
+        mSubtreeEnd = copyOf(mSubtreeEnd, capacity);
+        mChildCount = copyOf(mChildCount, capacity);
+        mVisible = copyOf(mVisible, capacity);
+        mShown = new boolean[capacity];
+        boolean[] transformed = new boolean[capacity];
+        System.arraycopy(mTransformed, 0, transformed, 0, mCount);
+        mTransformed = transformed;
+    }
+
+    @NonNull
+    private static int[] copyOf(@NonNull int[] array, int capacity) {
+        return SpatialGrid.copyOf(array, capacity);
+    }
+
+    @NonNull
+    private static boolean[] copyOf(@NonNull boolean[] array, int capacity) {
+        return SpatialGrid.copyOf(array, capacity);
+    }
+
+    /**
+     * 布局后 View 树的结构是否与索引相同: 每个节点仍是父View在原序号上的子View, 每个 ViewGroup 的子View数量不变,
+     * 根View的大小(网格的范围)不变. 相同时只需要 {@link #refreshPositions()}.
+     */
+    private boolean isStructureUnchanged() {
+        ViewGroup root = mRoot;
+        if (root == null || root.getChildCount() != mRootChildCount || root.getWidth() != mGrid.getWidth()
+                || root.getHeight() != mGrid.getHeight()) {
+            return false;
+        }
+        for (int i = 0; i < mCount; i++) {
+            int parent = mGrid.parent[i];
+            ViewGroup parentView = parent < 0 ? root : (ViewGroup) mViews[parent];
+            View view = mViews[i];
+            if (parentView.getChildAt(mChildIndex[i]) != view
+                    || (mGrid.isGroup[i] && ((ViewGroup) view).getChildCount() != mChildCount[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * View树结构不变时(滚动、属性变化, 或只改变了位置和大小的布局), 按先序重新计算每个View的位置和大小
+     * (有变换的View计算外接矩形). 位置变化的View移出网格, 数量超过一半时整体重建.
+     */
+    private void refreshPositions() {
+        mNeedsLayoutCheck = false;
+        mNeedsPositionRefresh = false;
+        ViewGroup root = mRoot;
+        if (root == null) {
+            return;
+        }
+
+        mNeedsTransformCheck = false;
+        mWatchedCount = 0;
+        for (int i = 0; i < mCount; i++) {
+            refreshPosition(root, i);
+            if (ViewTransforms.hasTransform(mViews[i])) {
+                watch(i);
+            }
+        }
+        watchFocusChain();
+
+        if (mGrid.getLooseCount() > mCount / 2) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 重绘后只重新计算被跟踪的 View 的位置, 矩形变化时再更新它的子树.
+     */
+    private void checkWatched() {
+        mNeedsTransformCheck = false;
+        ViewGroup root = mRoot;
+        if (root == null) {
+            return;
+        }
+
+        int updatedEnd = 0;
+        for (int k = 0; k < mWatchedCount; k++) {
+            int w = mWatched[k];
+            // 已经随父View的子树更新过
+            if (w < updatedEnd || !refreshPosition(root, w)) {
+                continue;
+            }
+            updatedEnd = mSubtreeEnd[w];
+            for (int i = w + 1; i < updatedEnd; i++) {
+                refreshPosition(root, i);
+            }
+        }
+
+        if (mGrid.getLooseCount() > mCount / 2) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 按父View的位置重新计算节点 i 的位置, 调用前父节点的位置必须是最新的.
+     *
+     * @return 位置是否变化
+     */
+    private boolean refreshPosition(@NonNull ViewGroup root, int i) {
+        int parent = mGrid.parent[i];
+        View parentView = parent < 0 ? root : mViews[parent];
+        int originX = parent < 0 ? 0 : mGrid.left[parent];
+        int originY = parent < 0 ? 0 : mGrid.top[parent];
+        View view = mViews[i];
+        boolean transformed = (parent >= 0 && mTransformed[parent]) || ViewTransforms.hasTransform(view);
+        int left;
+        int top;
+        int right;
+        int bottom;
+        if (transformed && getTransformedBounds(view, mBounds)) {
+            left = mBounds.left;
+            top = mBounds.top;
+            right = mBounds.right;
+            bottom = mBounds.bottom;
+        } else {
+            // 父View没有变换, mGrid.left/top就是父View的位置
+            left = originX + view.getLeft() - parentView.getScrollX();
+            top = originY + view.getTop() - parentView.getScrollY();
+            // 布局可能改变大小, 变换刚结束时也要恢复原来的大小
+            right = left + view.getWidth();
+            bottom = top + view.getHeight();
+        }
+        mTransformed[i] = transformed;
+        if (!mGrid.setBounds(i, left, top, right, bottom)) {
+            return false;
+        }
+        mEdgeIndexValid = false;
+        return true;
+    }
+
+    private void watch(int i) {
+        if (mWatchedCount == mWatched.length) {
+            mWatched = copyOf(mWatched, Math.max(16, mWatchedCount * 2));
+        }
+        mWatched[mWatchedCount++] = i;
+    }
+
+    /**
+     * 跟踪最近获得和失去焦点的 View 以及它们的父View, 然后把 mWatched 排序去重.
+     */
+    private void watchFocusChain() {
+        for (int i = 0; i < mCount; i++) {
+            View view = mViews[i];
+            if (view == mOldFocus || view == mNewFocus) {
+                for (int p = i; p >= 0; p = mGrid.parent[p]) {
+                    watch(p);
+                }
+            }
+        }
+
+        Arrays.sort(mWatched, 0, mWatchedCount);
+        int count = 0;
+        for (int k = 0; k < mWatchedCount; k++) {
+            if (count == 0 || mWatched[count - 1] != mWatched[k]) {
+                mWatched[count++] = mWatched[k];
+            }
+        }
+        mWatchedCount = count;
+    }
+}
@@ -0,0 +1,147 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 为 View 分配在多次快照之间保持不变的正整数id, 用于计算两次快照之间的增量. 只能在主线程访问.
+ * <p>
+ * 只持有 View 的弱引用. View 被回收后它的id至少经过 {@link #RECYCLE_DELAY_NANOS} 才会分配给其他 View, 这段时间内
+ * 按id保存的状态(例如最近一段时间的统计)已经过期; 之后重新使用, 使id的最大值只与同时存在的 View 数量有关,
+ * 以id为下标的数组不会在长时间使用中一直增大. 需要在id被重新分配时清除状态的使用者可以设置 {@link RecycleListener}.
+ * {@link #clear()} 之后从1开始重新分配.
+ * <p>
+ * 不依赖 Android API, 节点类型 V 在设备上是 android.view.View, 在普通 JVM 上可以是合成的节点.
+ *
+ * @param <V> 节点类型, 不能重写 equals/hashCode
+ */
+final class ViewStableIds<V> {
+    static final long RECYCLE_DELAY_NANOS = 5000000000L;
+
+    interface RecycleListener {
+        /**
+         * 已回收的 View 的id被重新分配给另一个 View 之前调用.
+         */
+        void onIdRecycled(int id);
+    }
+
+    // View没有重写equals/hashCode, WeakHashMap按对象比较
+    @NonNull
+    private final WeakHashMap<V, Integer> mIds = new WeakHashMap<>();
+    @NonNull
+    private final HashMap<Integer, WeakReference<V>> mViews = new HashMap<>();
+    private int mNextId = 1;
+    // mViews超过该大小时清理已回收的View
+    private int mPruneThreshold = 256;
+    // 已回收的View的id, 按回收时间先后排列的环形队列
+    @NonNull
+    private int[] mFreeIds = new int[16];
+    @NonNull
+    private long[] mFreeTimes = new long[16];
+    private int mFreeFirst;
+    private int mFreeCount;
+    @Nullable
+    private RecycleListener mRecycleListener;
+    private final long mRecycleDelayNanos;
+
+    ViewStableIds() {
+        this(RECYCLE_DELAY_NANOS);
+    }
+
+    /**
+     * @param recycleDelayNanos View 被回收后至少经过这段时间才重新分配它的id
+     */
+    ViewStableIds(long recycleDelayNanos) {
+        mRecycleDelayNanos = recycleDelayNanos;
+    }
+
+    void setRecycleListener(@Nullable RecycleListener listener) {
+        mRecycleListener = listener;
+    }
+
+    int getId(@NonNull V view) {
+        Integer id = mIds.get(view);
+        if (id != null) {
+            return id;
+        }
+
+        id = nextId();
+        mIds.put(view, id);
+        mViews.put(id, new WeakReference<>(view));
+        if (mViews.size() > mPruneThreshold) {
+            prune();
+        }
+        return id;
+    }
+
+    /**
+     * @return id对应的View, 从未分配过该id或View已被回收时返回null
+     */
+    @Nullable
+    V getView(int id) {
+        WeakReference<V> ref = mViews.get(id);
+        return ref != null ? ref.get() : null;
+    }
+
+    void clear() {
+        mIds.clear();
+        mViews.clear();
+        mNextId = 1;
+        mPruneThreshold = 256;
+        mFreeFirst = 0;
+        mFreeCount = 0;
+    }
+
+    private int nextId() {
+        if (mFreeCount > 0 && System.nanoTime() - mFreeTimes[mFreeFirst] >= mRecycleDelayNanos) {
+            int id = mFreeIds[mFreeFirst];
+            mFreeFirst = (mFreeFirst + 1) % mFreeIds.length;
+            mFreeCount--;
+            RecycleListener listener = mRecycleListener;
+            if (listener != null) {
+                listener.onIdRecycled(id);
+            }
+            return id;
+        }
+        return mNextId++;
+    }
+
+    private void prune() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Integer, WeakReference<V>>> iterator = mViews.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, WeakReference<V>> entry = iterator.next();
+            if (entry.getValue().get() == null) {
+                iterator.remove();
+                addFreeId(entry.getKey(), now);
+            }
+        }
+        mPruneThreshold = Math.max(256, mViews.size() * 2);
+    }
+
+    private void addFreeId(int id, long time) {
+        if (mFreeCount == mFreeIds.length) {
+            int capacity = mFreeIds.length * 2;
+            int[] ids = new int[capacity];
+            long[] times = new long[capacity];
+            for (int i = 0; i < mFreeCount; i++) {
+                int k = (mFreeFirst + i) % mFreeIds.length;
+                ids[i] = mFreeIds[k];
+                times[i] = mFreeTimes[k];
+            }
+            mFreeIds = ids;
+            mFreeTimes = times;
+            mFreeFirst = 0;
+        }
+        int k = (mFreeFirst + mFreeCount) % mFreeIds.length;
+        mFreeIds[k] = id;
+        mFreeTimes[k] = time;
+        mFreeCount++;
+    }
+}
@@ -0,0 +1,146 @@
+package com.stv.debug;
+
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * 考虑 View 变换矩阵(translation、scale、rotation, 例如获得焦点时放大的卡片)的坐标变换. 只能在主线程访问.
+ * <p>
+ * 与 ViewGroup 分发触摸事件时相同, 父View坐标系中的点先加上父View的滚动、减去子View的 left/top,
+ * 再乘以子View变换矩阵的逆矩阵, 得到子View自身坐标系中的点. 逆矩阵按 View 缓存在 WeakHashMap 中,
+ * 使用前与 getMatrix() 的当前值比较: 属性动画和布局(改变大小会改变默认的 pivot)都会改变矩阵, 此时重新求逆.
+ * 没有变换的 View(hasIdentityMatrix())不查缓存.
+ */
+final class ViewTransforms {
+    private static final class Entry {
+        @NonNull
+        final float[] values = new float[9];
+        @NonNull
+        final Matrix inverse = new Matrix();
+        boolean invertible;
+    }
+
+    @NonNull
+    private final WeakHashMap<View, Entry> mInverses = new WeakHashMap<>();
+    @NonNull
+    private final float[] mValues = new float[9];
+
+    /**
+     * @return view 是否有变换矩阵
+     */
+    static boolean hasTransform(@NonNull View view) {
+        return !view.hasIdentityMatrix();
+    }
+
+    /**
+     * 把 point 从相对于 view 左上角(变换前)的坐标变换到 view 自身的坐标系.
+     *
+     * @return 矩阵不可逆(例如 scale 为0)时返回false, 此时 view 不可能被命中
+     */
+    boolean unmapPoint(@NonNull View view, @NonNull float[] point) {
+        if (view.hasIdentityMatrix()) {
+            return true;
+        }
+
+        Matrix matrix = view.getMatrix();
+        matrix.getValues(mValues);
+        Entry entry = mInverses.get(view);
+        if (entry == null) {
+            entry = new Entry();
+            mInverses.put(view, entry);
+            entry.invertible = matrix.invert(entry.inverse);
+            System.arraycopy(mValues, 0, entry.values, 0, 9);
+        } else if (!Arrays.equals(entry.values, mValues)) {
+            entry.invertible = matrix.invert(entry.inverse);
+            System.arraycopy(mValues, 0, entry.values, 0, 9);
+        }
+        if (!entry.invertible) {
+            return false;
+        }
+        entry.inverse.mapPoints(point);
+        return true;
+    }
+
+    /**
+     * 把 point 从 parent 的坐标系(左上角为原点, 不包括滚动)变换到其子View child 的坐标系.
+     */
+    boolean mapFromParent(@NonNull View parent, @NonNull View child, @NonNull float[] point) {
+        point[0] += parent.getScrollX() - child.getLeft();
+        point[1] += parent.getScrollY() - child.getTop();
+        return unmapPoint(child, point);
+    }
+
+    /**
+     * 计算 view 的四个角(左上、右上、右下、左下)在 ancestor 坐标系中的位置, 依次乘以每一层的变换矩阵.
+     *
+     * @param quad 8个元素, 返回 x0, y0, x1, y1, ...
+     * @return ancestor 不是 view 的父View(或 view 本身)时返回false
+     */
+    static boolean getQuad(@NonNull View view, @NonNull View ancestor, @NonNull float[] quad) {
+        float width = view.getWidth();
+        float height = view.getHeight();
+        quad[0] = 0;
+        quad[1] = 0;
+        quad[2] = width;
+        quad[3] = 0;
+        quad[4] = width;
+        quad[5] = height;
+        quad[6] = 0;
+        quad[7] = height;
+
+        View current = view;
+        while (current != ancestor) {
+            ViewParent parent = current.getParent();
+            if (!(parent instanceof View)) {
+                return false;
+            }
+            mapToParent(current, (View) parent, quad);
+            current = (View) parent;
+        }
+        return true;
+    }
+
+    // 与 mapFromParent() 相反
+    private static void mapToParent(@NonNull View child, @NonNull View parent, @NonNull float[] points) {
+        if (!child.hasIdentityMatrix()) {
+            child.getMatrix().mapPoints(points);
+        }
+        float dx = child.getLeft() - parent.getScrollX();
+        float dy = child.getTop() - parent.getScrollY();
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] += dx;
+            points[i + 1] += dy;
+        }
+    }
+
+    /**
+     * @return quad 是否是与坐标轴对齐的矩形(没有旋转和透视), 此时可以用 Rect 表示
+     */
+    static boolean isAxisAligned(@NonNull float[] quad) {
+        return quad[1] == quad[3] && quad[2] == quad[4] && quad[5] == quad[7] && quad[6] == quad[0];
+    }
+
+    /**
+     * 包含 quad 的最小整数矩形.
+     */
+    static void getBounds(@NonNull float[] quad, @NonNull Rect out) {
+        float left = quad[0];
+        float top = quad[1];
+        float right = quad[0];
+        float bottom = quad[1];
+        for (int i = 2; i < 8; i += 2) {
+            left = Math.min(left, quad[i]);
+            right = Math.max(right, quad[i]);
+            top = Math.min(top, quad[i + 1]);
+            bottom = Math.max(bottom, quad[i + 1]);
+        }
+        out.set((int) Math.floor(left), (int) Math.floor(top), (int) Math.ceil(right), (int) Math.ceil(bottom));
+    }
+}
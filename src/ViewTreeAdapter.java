@@ -0,0 +1,54 @@
+package com.stv.debug;
+
+/**
+ * 命中测试和遍历 View 树所需的最小接口, 不依赖 Android API.
+ * <p>
+ * 设备上由 {@link AndroidViewTreeAdapter} 实现; 在普通 JVM 上可以用合成的树实现该接口, 用于测量命中测试的性能.
+ * 坐标约定与 android.view.View 相同: left/top/right/bottom 是相对于父节点的坐标(变换前), 子节点的位置还要减去父节点的 scroll.
+ *
+ * @param <N> 节点类型
+ */
+interface ViewTreeAdapter<N> {
+    /**
+     * @return 可能被绘制出来的子节点数量, 完全在裁剪区域之外的子节点不计算在内
+     */
+    int getDrawingChildCount(N node);
+
+    /**
+     * @return 按绘制顺序第 drawingPosition 个子节点, 可能为null. 位置越大的子节点越晚绘制(越靠上)
+     */
+    N getDrawingChildAt(N node, int drawingPosition);
+
+    /**
+     * @param x 相对于节点左上角(不包括滚动)的坐标
+     * @return 点是否在节点对子节点的裁剪区域内
+     */
+    boolean isInClip(N node, float x, float y);
+
+    /**
+     * 把 point 从相对于节点左上角(变换前)的坐标变换到节点自身的坐标系, 即乘以节点变换矩阵(translation、scale、rotation)
+     * 的逆矩阵. 没有变换的节点不改变 point.
+     *
+     * @return 矩阵不可逆时返回false
+     */
+    boolean unmapPoint(N node, float[] point);
+
+    /**
+     * @return 节点是否参与命中测试(可见, 并且不是调试工具自己的View)
+     */
+    boolean isHitTestable(N node);
+
+    boolean isContainer(N node);
+
+    int getLeft(N node);
+
+    int getTop(N node);
+
+    int getRight(N node);
+
+    int getBottom(N node);
+
+    int getScrollX(N node);
+
+    int getScrollY(N node);
+}
@@ -0,0 +1,64 @@
+package com.stv.debug;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * 逐层遍历的命中测试, 与 ViewDebugger.getAllViewsAtPoint2() 在 SEARCH_NON_VIEW_GROUP 为 false 时的结果相同.
+ * 子节点按绘制顺序(包括Z和自定义绘制顺序)从上到下检查, 裁剪区域之外的点不会命中子节点.
+ * 点经过每一层节点变换矩阵的逆矩阵变换到节点自身的坐标系后再判断, 缩放、旋转后的节点按实际显示的范围命中.
+ * <p>
+ * 通过 {@link ViewTreeAdapter} 访问树, 不依赖 Android API, 可以在普通 JVM 上对合成的树运行.
+ * 遍历过程除了一个保存当前坐标的 float[2] 和向 outNodes 添加元素外不分配内存.
+ */
+final class ViewTreeHitTester {
+    private ViewTreeHitTester() {
+    }
+
+    /**
+     * 查找点(x, y)上的节点链: 从 root 的子节点开始, 每一层取包含该点的最上层(最晚绘制的)子节点,
+     * 直到找到的节点不是容器或容器中没有包含该点的子节点为止. 结果按从外到内的顺序放入 outNodes, root 本身不包含在内.
+     *
+     * @param x 相对于 root 左上角的坐标
+     * @param y 相对于 root 左上角的坐标
+     */
+    static <N> void findNodesAtPoint(@NonNull ViewTreeAdapter<N> adapter, @NonNull N root, int x, int y,
+                                     @NonNull List<N> outNodes) {
+        outNodes.clear();
+        // 相对于group左上角(不包括滚动)的坐标
+        float[] point = {x, y};
+        N group = root;
+        while (adapter.isInClip(group, point[0], point[1])) {
+            float localX = point[0] + adapter.getScrollX(group);
+            float localY = point[1] + adapter.getScrollY(group);
+            N found = null;
+            // 最后绘制的子节点在图层的最上面
+            for (int i = adapter.getDrawingChildCount(group) - 1; i >= 0; i--) {
+                N child = adapter.getDrawingChildAt(group, i);
+                if (child == null || !adapter.isHitTestable(child)) {
+                    continue;
+                }
+
+                int left = adapter.getLeft(child);
+                int top = adapter.getTop(child);
+                point[0] = localX - left;
+                point[1] = localY - top;
+                if (adapter.unmapPoint(child, point) && point[0] >= 0 && point[1] >= 0
+                        && point[0] < adapter.getRight(child) - left && point[1] < adapter.getBottom(child) - top) {
+                    found = child;
+                    break;
+                }
+            }
+
+            if (found == null) {
+                break;
+            }
+            outNodes.add(found);
+            if (!adapter.isContainer(found)) {
+                break;
+            }
+            group = found;
+        }
+    }
+}